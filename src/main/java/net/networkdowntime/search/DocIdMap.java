@@ -0,0 +1,138 @@
+package net.networkdowntime.search;
+
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Maps the search results of an index, Long or String, to dense int doc ids that can be shared by all of its histograms.  The postings then
+ * hold 4 byte doc ids instead of the results, the counts of a search can be added up in an array indexed by doc id, and each result is stored
+ * once for the reverse lookup.  Unlike the hash code of a String result, two different results never share a doc id.  Doc ids are assigned in
+ * the order the results are first added starting from 0 and are never reused, a result keeps its doc id even once it is removed from the
+ * index.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public class DocIdMap {
+
+	/**
+	 * The doc id returned for a result that isn't in the map.
+	 */
+	public static final int NO_DOC_ID = -1;
+
+	private final TLongIntHashMap longDocIds = new TLongIntHashMap(16, 0.75f, Long.MIN_VALUE, NO_DOC_ID);
+	private final TObjectIntHashMap<String> stringDocIds = new TObjectIntHashMap<String>(16, 0.75f, NO_DOC_ID);
+
+	// the results by doc id, each array is only created once a result of its type is added
+	private long[] longResults = null;
+	private String[] stringResults = null;
+	private int size = 0;
+
+	/**
+	 * Gets the doc id of the result, assigning the next doc id if the result isn't in the map yet.
+	 * 
+	 * @param result The search result
+	 * @return The doc id of the result
+	 */
+	public int getOrAddDocId(long result) {
+		int docId = longDocIds.get(result);
+		if (docId == NO_DOC_ID) {
+			docId = size++;
+			longResults = ensureCapacity(longResults, docId);
+			longResults[docId] = result;
+			longDocIds.put(result, docId);
+		}
+		return docId;
+	}
+
+	/**
+	 * Gets the doc id of the result, assigning the next doc id if the result isn't in the map yet.
+	 * 
+	 * @param result The search result
+	 * @return The doc id of the result
+	 */
+	public int getOrAddDocId(String result) {
+		int docId = stringDocIds.get(result);
+		if (docId == NO_DOC_ID) {
+			docId = size++;
+			stringResults = ensureCapacity(stringResults, docId);
+			stringResults[docId] = result;
+			stringDocIds.put(result, docId);
+		}
+		return docId;
+	}
+
+	/**
+	 * @param result The search result
+	 * @return The doc id of the result or NO_DOC_ID if the result isn't in the map
+	 */
+	public int getDocId(long result) {
+		return longDocIds.get(result);
+	}
+
+	/**
+	 * @param result The search result
+	 * @return The doc id of the result or NO_DOC_ID if the result isn't in the map
+	 */
+	public int getDocId(String result) {
+		return stringDocIds.get(result);
+	}
+
+	/**
+	 * @param docId The doc id of a Long result
+	 * @return The result with the doc id
+	 */
+	public long getLongResult(int docId) {
+		return longResults[docId];
+	}
+
+	/**
+	 * @param docId The doc id of a String result
+	 * @return The result with the doc id
+	 */
+	public String getStringResult(int docId) {
+		return stringResults[docId];
+	}
+
+	/**
+	 * @return The number of doc ids assigned, all doc ids are less than the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static long[] ensureCapacity(long[] results, int docId) {
+		if (results == null) {
+			return new long[Math.max(16, docId + 1)];
+		} else if (docId >= results.length) {
+			return Arrays.copyOf(results, Math.max(docId + 1, results.length * 2));
+		}
+		return results;
+	}
+
+	private static String[] ensureCapacity(String[] results, int docId) {
+		if (results == null) {
+			return new String[Math.max(16, docId + 1)];
+		} else if (docId >= results.length) {
+			return Arrays.copyOf(results, Math.max(docId + 1, results.length * 2));
+		}
+		return results;
+	}
+}
@@ -0,0 +1,82 @@
+package net.networkdowntime.search;
+
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Assigns dense int ids to the terms (words) of an index, so the tries and histograms can identify a term by an id instead of its string or
+ * its hash code.  Ids are assigned in the order the terms are first added starting from 0, so they can index primitive arrays.  Terms are
+ * matched on their full string, unlike hash codes two different terms never share an id.  Ids are never reused, a term keeps its id even
+ * once it is no longer used by the index.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ * 
+ */
+public class TermDictionary {
+
+	/**
+	 * The id returned for a term that isn't in the dictionary.
+	 */
+	public static final int NO_TERM_ID = -1;
+
+	private final TObjectIntHashMap<String> termIds = new TObjectIntHashMap<String>(16, 0.5f, NO_TERM_ID);
+	private String[] terms = new String[16];
+
+	/**
+	 * Gets the id of the term, assigning the next id if the term isn't in the dictionary yet.
+	 * 
+	 * @param term The term
+	 * @return The id of the term
+	 */
+	public int getOrAddTermId(String term) {
+		int termId = termIds.get(term);
+		if (termId == NO_TERM_ID) {
+			termId = termIds.size();
+			if (termId == terms.length) {
+				terms = Arrays.copyOf(terms, terms.length * 2);
+			}
+			terms[termId] = term;
+			termIds.put(term, termId);
+		}
+		return termId;
+	}
+
+	/**
+	 * @param term The term
+	 * @return The id of the term or NO_TERM_ID if the term isn't in the dictionary
+	 */
+	public int getTermId(String term) {
+		return termIds.get(term);
+	}
+
+	/**
+	 * @param termId The id of a term
+	 * @return The term with the id
+	 */
+	public String getTerm(int termId) {
+		return terms[termId];
+	}
+
+	/**
+	 * @return The number of terms in the dictionary, all ids are less than the size
+	 */
+	public int size() {
+		return termIds.size();
+	}
+}
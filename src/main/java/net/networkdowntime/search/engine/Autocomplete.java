@@ -1,12 +1,15 @@
 package net.networkdowntime.search.engine;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import gnu.trove.set.hash.TLinkedHashSet;
+import net.networkdowntime.search.TermDictionary;
 import net.networkdowntime.search.histogram.DigramHistogram;
 import net.networkdowntime.search.histogram.UnigramHistogram;
 import net.networkdowntime.search.text.processing.ContentSplitter;
@@ -15,11 +18,18 @@ import net.networkdowntime.search.text.processing.KeywordScrubber;
 import net.networkdowntime.search.text.processing.TextScrubber;
 import net.networkdowntime.search.trie.CostString;
 import net.networkdowntime.search.trie.InvertedSuffixTrie;
+import net.networkdowntime.search.trie.SearchTraceSink;
+import net.networkdowntime.search.trie.SuffixArray;
 import net.networkdowntime.search.trie.SuffixTrie;
+import net.networkdowntime.search.trie.TrieBuilder;
+import net.networkdowntime.search.trie.WeightedFst;
+import net.networkdowntime.search.trie.WeightedFstBuilder;
 
 /**
  * Implements auto-complete functionality for words using a full prefix-trie and a partial suffix-trie.  
  * Completions are ordered based on histogram ordering.  Support unigram and digram word ordering.
+ * The tries can be replaced by a WeightedFst compiled from the vocabulary, see setFst(), and the infix search for the unordered
+ * candidate completions by a SuffixArray over the vocabulary, see setSuffixArray().
  *  
  * This software is licensed under the MIT license
  * Copyright (c) 2015 Ryan Wiles
@@ -42,10 +52,36 @@ import net.networkdowntime.search.trie.SuffixTrie;
 public class Autocomplete {
 	private static final Logger LOGGER = LogManager.getLogger(Autocomplete.class.getName());
 
-	private UnigramHistogram unigramHistogram = new UnigramHistogram();
-	private DigramHistogram digramHistogram = new DigramHistogram();
-	private InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie();
-	private SuffixTrie suffixTrie = new SuffixTrie(false);
+	private final TermDictionary termDictionary;
+	private final UnigramHistogram unigramHistogram;
+	private final DigramHistogram digramHistogram;
+	private InvertedSuffixTrie prefixTrie;
+	private SuffixTrie suffixTrie;
+
+	// replaces the tries for completions while set, null to use the tries
+	private WeightedFst fst = null;
+
+	// finds the unordered candidate completions while set, null to use the tries or the fst
+	private SuffixArray suffixArray = null;
+
+	// size of the dead word part caches, kept to set it again on rebuilt tries
+	private int deadWordPartCacheSize = 0;
+
+	// settings of the top completions cache, kept to set them again on rebuilt tries
+	private int topCompletionsMaxDepth = 0;
+	private int topCompletionsK = 0;
+
+	// settings of the parallel fuzzy search, kept to set them again on rebuilt tries
+	private ForkJoinPool parallelSearchPool = null;
+	private int parallelSearchMinLength = 0;
+
+	// settings of the search tracing, kept to set them again on rebuilt tries
+	private SearchTraceSink traceSink = null;
+	private int traceSampleRate = 0;
+	private int traceCapacity = 0;
+
+	// incremented whenever text is added or removed, so an AutocompleteSession knows its state is out of date
+	private long generation = 0;
 
 	private TextScrubber textScrubber = null;
 	private ContentSplitter contentSplitter = null;
@@ -56,9 +92,7 @@ public class Autocomplete {
 	 * Histogram word ordering is used for autocompletion.
 	 */
 	public Autocomplete() {
-		this.textScrubber = new HtmlTagTextScrubber();
-		this.contentSplitter = new ContentSplitter();
-		this.keywordScrubber = new KeywordScrubber();
+		this(new HtmlTagTextScrubber(), new ContentSplitter(), new KeywordScrubber());
 	}
 
 	/**
@@ -69,22 +103,49 @@ public class Autocomplete {
 	 * @param keywordScrubber KeywordScrubber to use
 	 */
 	public Autocomplete(TextScrubber textScrubber, ContentSplitter contentSplitter, KeywordScrubber keywordScrubber) {
+		this(new TermDictionary(), textScrubber, contentSplitter, keywordScrubber);
+	}
+
+	/**
+	 * Allows the term dictionary to be shared with the search histograms, so a word has the same term id in the histograms and the tries.
+	 * 
+	 * @param termDictionary TermDictionary to assign the term ids from
+	 * @param textScrubber TextScrubber to use
+	 * @param contentSplitter ContentSplitter to use
+	 * @param keywordScrubber KeywordScrubber to use
+	 */
+	public Autocomplete(TermDictionary termDictionary, TextScrubber textScrubber, ContentSplitter contentSplitter, KeywordScrubber keywordScrubber) {
+		this.termDictionary = termDictionary;
+		this.unigramHistogram = new UnigramHistogram(termDictionary);
+		this.digramHistogram = new DigramHistogram(termDictionary);
+		createTries();
+
 		this.textScrubber = textScrubber;
 		this.contentSplitter = contentSplitter;
 		this.keywordScrubber = keywordScrubber;
 	}
 
+	private void createTries() {
+		prefixTrie = new InvertedSuffixTrie();
+		suffixTrie = new SuffixTrie(false);
+		prefixTrie.setTermDictionary(termDictionary);
+		suffixTrie.setTermDictionary(termDictionary);
+		prefixTrie.setDeadWordPartCacheSize(deadWordPartCacheSize);
+		suffixTrie.setDeadWordPartCacheSize(deadWordPartCacheSize);
+		prefixTrie.setTopCompletionsCache(topCompletionsMaxDepth, topCompletionsK, suffixTrie);
+		prefixTrie.setParallelSearch(parallelSearchPool, parallelSearchMinLength);
+		suffixTrie.setParallelSearch(parallelSearchPool, parallelSearchMinLength);
+		prefixTrie.setTraceSink(traceSink, traceSampleRate, traceCapacity);
+		suffixTrie.setTraceSink(traceSink, traceSampleRate, traceCapacity);
+	}
+
 	/**
 	 * Adds text to auto-completion
 	 * 
 	 * @param text The text to add
 	 */
 	public void add(String text) {
-		String scrubbedText = textScrubber.scrubText(text);
-		String[] words = contentSplitter.splitContent(scrubbedText);
-		List<String> keywords = keywordScrubber.scrubKeywords(words);
-
-		this.add(keywords);
+		this.add(getKeywords(text));
 	}
 
 	/**
@@ -93,12 +154,15 @@ public class Autocomplete {
 	 * @param keywords The text to add
 	 */
 	void add(List<String> keywords) {
+		generation++;
 		String previousWord = null;
 		for (String currentWord : keywords) {
-			prefixTrie.add(currentWord);
-			suffixTrie.add(currentWord);
-
 			UnigramHistogram.add(unigramHistogram, currentWord);
+			if (fst == null) {
+				prefixTrie.add(currentWord);
+				suffixTrie.add(currentWord);
+				updateWeights(currentWord);
+			}
 			if (previousWord != null) {
 				digramHistogram.add(previousWord, currentWord);
 			}
@@ -107,17 +171,164 @@ public class Autocomplete {
 	}
 
 	/**
-	 * Currently decrements the word from the histogram tracking to lower its auto-completion ranking.
-	 * Does not currently remove them from the Treis.
+	 * Keeps the trie weights used by the top-k completion search in sync with the word's histogram count. The weight of a word part
+	 * in the prefix-trie is the highest count of the words in the suffix-trie that start with it.
+	 * 
+	 * @param word The word whose count changed
+	 */
+	private void updateWeights(String word) {
+		int count = UnigramHistogram.getOccurrenceCount(unigramHistogram, word);
+		suffixTrie.setWeight(word, count);
+		for (int i = 1; i <= word.length(); i++) {
+			String wordPart = word.substring(0, i);
+			prefixTrie.setWeight(wordPart, suffixTrie.getMaxWeight(wordPart));
+		}
+		prefixTrie.updateTopCompletions(word, count);
+	}
+
+	/**
+	 * Compacts the tries into their flat read-only layout.  Call after the bulk of the text has been added, text added 
+	 * afterwards goes into small overlay tries that are merged in by the next call to freeze().  Words removed afterwards
+	 * are cleared in place and their nodes are dropped by the next call as well.
+	 */
+	public void freeze() {
+		prefixTrie.freeze();
+		suffixTrie.freeze();
+	}
+
+	/**
+	 * Caches the word parts the tries found no completions for across queries, see Trie.setDeadWordPartCacheSize().  Helps when the back
+	 * off of a misspelled word repeats the same misses.  Off by default.
+	 * 
+	 * @param capacity Max number of word parts to cache per trie, 0 turns the cache off
+	 */
+	public void setDeadWordPartCache(int capacity) {
+		this.deadWordPartCacheSize = capacity;
+		prefixTrie.setDeadWordPartCacheSize(capacity);
+		suffixTrie.setDeadWordPartCacheSize(capacity);
+	}
+
+	/**
+	 * Keeps precomputed top completions for the words of up to maxDepth characters, so completing a short word, which is contained in the most
+	 * words, reads a list instead of searching the tries. The lists are kept up to date as text is added and removed. Off by default.
+	 * 
+	 * @param maxDepth Max length of the words to keep the completions of, 0 turns the lists off
+	 * @param k Number of completions kept for each word, completions with a larger limit search the tries
+	 */
+	public void setTopCompletionsCache(int maxDepth, int k) {
+		this.topCompletionsMaxDepth = maxDepth;
+		this.topCompletionsK = k;
+		prefixTrie.setTopCompletionsCache(maxDepth, k, suffixTrie);
+	}
+
+	/**
+	 * Searches the misspellings of long words in parallel, see Trie.setParallelSearch(). Off by default.
+	 * 
+	 * @param pool The pool to run the searches in, null turns the parallel search off
+	 * @param minWordLength Min length of the words to search in parallel
+	 */
+	public void setParallelSearch(ForkJoinPool pool, int minWordLength) {
+		this.parallelSearchPool = pool;
+		this.parallelSearchMinLength = minWordLength;
+		prefixTrie.setParallelSearch(pool, minWordLength);
+		suffixTrie.setParallelSearch(pool, minWordLength);
+	}
+
+	/**
+	 * Compiles the current vocabulary and its histogram counts into a WeightedFst, e.g. for a nightly rebuild.  The automaton's bytes can
+	 * be stored and loaded into another Autocomplete with setFst().
+	 * 
+	 * @return The compiled automaton
+	 */
+	public WeightedFst buildFst() {
+		WeightedFstBuilder builder = new WeightedFstBuilder();
+		for (int termId = 0; termId < termDictionary.size(); termId++) {
+			int count = UnigramHistogram.getOccurrenceCount(unigramHistogram, termId);
+			if (count > 0) {
+				builder.add(termDictionary.getTerm(termId), count);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Builds a SuffixArray over the current vocabulary, to be set with setSuffixArray().
+	 * 
+	 * @return The suffix array
+	 */
+	public SuffixArray buildSuffixArray() {
+		return new SuffixArray(getVocabulary());
+	}
+
+	/**
+	 * Finds the candidate completions of the words of a multi-word input with the suffix array instead of fanning out each prefix-trie
+	 * completion to a suffix-trie search.  Words added afterwards aren't found until the next suffix array is set, removed words are left
+	 * out once their last occurrence is removed.
+	 * 
+	 * @param suffixArray The suffix array to search or null to go back to the tries
+	 */
+	public void setSuffixArray(SuffixArray suffixArray) {
+		generation++;
+		this.suffixArray = suffixArray;
+	}
+
+	/**
+	 * @return The words with a histogram count
+	 */
+	private List<String> getVocabulary() {
+		List<String> words = new ArrayList<String>();
+		for (int termId = 0; termId < termDictionary.size(); termId++) {
+			if (UnigramHistogram.getOccurrenceCount(unigramHistogram, termId) > 0) {
+				words.add(termDictionary.getTerm(termId));
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Completes words from the automaton instead of the tries, which are discarded to free their memory.  Text added or removed afterwards
+	 * only updates the histograms, new words aren't completed until the next automaton is set, and removed words are left out of the
+	 * completions once their last occurrence is removed.
+	 * 
+	 * @param fst The automaton to complete words from, or null to go back to the tries, which are rebuilt from the histogram
+	 */
+	public void setFst(WeightedFst fst) {
+		generation++;
+		this.fst = fst;
+		createTries();
+		if (fst == null) {
+			List<String> words = getVocabulary();
+			new TrieBuilder(prefixTrie).addAll(words).build();
+			new TrieBuilder(suffixTrie).addAll(words).build();
+			for (String word : words) {
+				updateWeights(word);
+			}
+		}
+	}
+
+	/**
+	 * Traces a sample of the trie searches, see Trie.setTraceSink().
+	 * 
+	 * @param traceSink The sink to send the traces to, null turns tracing off
+	 * @param sampleRate Traces 1 in every sampleRate searches of each trie
+	 * @param capacity Max number of entries kept per search
+	 */
+	public void setTraceSink(SearchTraceSink traceSink, int sampleRate, int capacity) {
+		prefixTrie.setTraceSink(traceSink, sampleRate, capacity);
+		suffixTrie.setTraceSink(traceSink, sampleRate, capacity);
+		this.traceSink = traceSink;
+		this.traceSampleRate = sampleRate;
+		this.traceCapacity = capacity;
+	}
+
+	/**
+	 * Decrements the words in the histogram tracking to lower their auto-completion ranking.
+	 * A word is removed from the tries once its last occurrence is removed.
 	 * 
 	 * @param text A string containing the text to remove
 	 */
 	public void remove(String text) {
-		String scrubbedText = textScrubber.scrubText(text);
-		String[] words = contentSplitter.splitContent(scrubbedText);
-		List<String> keywords = keywordScrubber.scrubKeywords(words);
-
-		this.remove(keywords);
+		this.remove(getKeywords(text));
 	}
 
 	/**
@@ -126,13 +337,19 @@ public class Autocomplete {
 	 * @param keywords List of strings to remove
 	 */
 	void remove(List<String> keywords) {
+		generation++;
 		String previousWord = null;
 		for (String currentWord : keywords) {
 
 			if (UnigramHistogram.contains(unigramHistogram, currentWord)) {
-				prefixTrie.remove(currentWord);
-				suffixTrie.remove(currentWord);
 				UnigramHistogram.remove(unigramHistogram, currentWord);
+				if (fst == null) {
+					if (!UnigramHistogram.contains(unigramHistogram, currentWord)) {
+						prefixTrie.remove(currentWord);
+						suffixTrie.remove(currentWord);
+					}
+					updateWeights(currentWord);
+				}
 			}
 			if (previousWord != null) {
 				digramHistogram.remove(previousWord, currentWord);
@@ -154,33 +371,61 @@ public class Autocomplete {
 	 */
 	public Set<String> getCompletions(String autocompleteInput, boolean fuzzyMatch, int limit) {
 		boolean hasTrailingSpace = autocompleteInput.endsWith(" ");
+		return getCompletions(getKeywords(autocompleteInput), fuzzyMatch, hasTrailingSpace, limit);
+	}
 
-		String scrubbedInput = textScrubber.scrubText(autocompleteInput);
-		String[] words = contentSplitter.splitContent(scrubbedInput);
-		List<String> keywords = keywordScrubber.scrubKeywords(words);
+	/**
+	 * Scrubs and splits the text into its keywords.
+	 * 
+	 * @param text The text to split
+	 * @return The keywords of the text
+	 */
+	List<String> getKeywords(String text) {
+		String scrubbedText = textScrubber.scrubText(text);
+		String[] words = contentSplitter.splitContent(scrubbedText);
+		return keywordScrubber.scrubKeywords(words);
+	}
+
+	/**
+	 * @return The number of times text has been added or removed
+	 */
+	long getGeneration() {
+		return generation;
+	}
 
-		return getCompletions(keywords, fuzzyMatch, hasTrailingSpace, limit);
+	/**
+	 * Whether getTopCompletionsSingleWord() can return the candidate for the word.  The tries and the automaton, which stores every rotation
+	 * of a word, both complete any word containing the word part.
+	 * 
+	 * @param candidate A known word
+	 * @param word The word being completed
+	 * @return True if the candidate is a completion of the word
+	 */
+	boolean isCompletion(String candidate, String word) {
+		return candidate.contains(word);
 	}
 
 	/**
-	 * For a given set of completions for a search word puts them in histogram rank order.
+	 * Takes the completions for a search word in histogram rank order.
 	 * Also ensures that if the searched for word was a known word that it will be included in the results.
 	 * 
-	 * @param currentWordCompletions The set of full word completions from the tries
+	 * @param orderedCompletions The full word completions from the tries in histogram rank order
 	 * @param word The word being searched for
 	 * @param limit Max number of results to return
 	 * @return A histogram ordered
 	 */
-	private Set<String> getSingleWordCompletions(Set<String> currentWordCompletions, String word, int limit) {
-		Set<String> orderedWordCompletions = new TLinkedHashSet<String>(UnigramHistogram.getOrderedResults(unigramHistogram, currentWordCompletions, limit));
+	Set<String> getSingleWordCompletions(List<String> orderedCompletions, String word, int limit) {
+		Set<String> orderedWordCompletions = new TLinkedHashSet<String>(orderedCompletions);
 		
 		// makes sense that if there is an exact match, it should show up in the results
 		// logic here is that after the histogram ordering, if currentWordCompletions does
 		// contain the word then it fell out in the histogram ordering so add it back at the end.
 		boolean wordExactMatch = UnigramHistogram.contains(unigramHistogram, word);
 		if (wordExactMatch && !orderedWordCompletions.contains(word)) {
-			String[] words = orderedWordCompletions.toArray(new String[0]);
-			orderedWordCompletions.remove(words[words.length - 1]);
+			if (!orderedWordCompletions.isEmpty() && orderedWordCompletions.size() >= limit) {
+				String[] words = orderedWordCompletions.toArray(new String[0]);
+				orderedWordCompletions.remove(words[words.length - 1]);
+			}
 			orderedWordCompletions.add(word);
 		}
 
@@ -207,22 +452,24 @@ public class Autocomplete {
 			return orderedCompletions; // no-op - nothing to do
 		} else {
 			String currentWord = keywords.get(keywords.size() - 1);
-			Set<String> currentWordCompletions = getCompletionsSingleWordUnordered(currentWord, fuzzyMatch, limit * 10);
-
-			if (LOGGER.isDebugEnabled()) {
-				LOGGER.debug("currentWord:" + currentWord);
-				LOGGER.debug("currentWordCompletions:");
-				for (String string : currentWordCompletions) {
-					LOGGER.debug("\t" + string);
-				}
-			}
+			LOGGER.debug("currentWord:" + currentWord);
 
 			if (keywords.size() == 1 && !hasTrailingSpace) { // one word
 				LOGGER.debug("one keyword, no trailing space");
 
-				orderedCompletions = getSingleWordCompletions(currentWordCompletions, currentWord, limit);
+				orderedCompletions = getSingleWordCompletions(getTopCompletionsSingleWord(currentWord, fuzzyMatch, limit), currentWord, limit);
 			} else { // either two words or looking for two words
 
+				// the digram ordering needs a candidate set of completions for the current word rather than just its top ones
+				Set<String> currentWordCompletions = getCompletionsSingleWordUnordered(currentWord, fuzzyMatch, limit * 10);
+
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("currentWordCompletions:");
+					for (String string : currentWordCompletions) {
+						LOGGER.debug("\t" + string);
+					}
+				}
+
 				List<String> digramCompletions;
 
 				if (hasTrailingSpace) {
@@ -255,7 +502,7 @@ public class Autocomplete {
 				}
 
 				if (digramCompletions.isEmpty()) {
-					digramCompletions.addAll(getSingleWordCompletions(currentWordCompletions, currentWord, limit));
+					digramCompletions.addAll(getSingleWordCompletions(UnigramHistogram.getOrderedResults(unigramHistogram, currentWordCompletions, limit), currentWord, limit));
 				}
 
 				if (keywords.size() == 2 && !hasTrailingSpace) {
@@ -274,6 +521,55 @@ public class Autocomplete {
 		return orderedCompletions;
 	}
 
+	/**
+	 * Internal method to get the completions for a single word with the highest histogram counts, in histogram rank order.  Uses the
+	 * trie weights to stop searching once no better completions can be found instead of collecting every completion and sorting them.
+	 *  
+	 * @param word Word to get the completions for
+	 * @param fuzzyMatch provides character back-off and re-searching if no completions are found 
+	 * @param limit Max number of results to return
+	 * @return Not-null list of the suggested completions
+	 */
+	List<String> getTopCompletionsSingleWord(String word, boolean fuzzyMatch, int limit) {
+		List<String> completions = new ArrayList<String>();
+
+		if (word != null && word.length() > 0) {
+			completions.addAll(getKnownWords(getTopCandidatesSingleWord(word, limit)));
+
+			if (fuzzyMatch && completions.isEmpty()) {
+				completions.addAll(getTopCompletionsSingleWord(word.substring(0, word.length() - 1), fuzzyMatch, limit));
+			}
+		}
+
+		return completions;
+	}
+
+	/**
+	 * Gets the completions for a single word with the highest histogram counts from the tries or the automaton, including the words
+	 * removed since the automaton was set.
+	 * 
+	 * @param word Word to get the completions for, not empty
+	 * @param limit Max number of results to return
+	 * @return Not-null list of the candidate completions in histogram rank order
+	 */
+	List<String> getTopCandidatesSingleWord(String word, int limit) {
+		return (fst != null) ? fst.getTopCompletions(word, limit) : prefixTrie.getTopCompletions(word, limit, suffixTrie);
+	}
+
+	/**
+	 * @param candidates The candidates returned by getTopCandidatesSingleWord()
+	 * @return The candidates that still have a histogram count, in the same order
+	 */
+	List<String> getKnownWords(List<String> candidates) {
+		List<String> words = new ArrayList<String>(candidates.size());
+		for (String candidate : candidates) {
+			if (UnigramHistogram.getOccurrenceCount(unigramHistogram, candidate) > 0) {
+				words.add(candidate);
+			}
+		}
+		return words;
+	}
+
 	/**
 	 * Internal method to get the unordered completions for a single word.
 	 *  
@@ -286,9 +582,20 @@ public class Autocomplete {
 		Set<String> completions = new TLinkedHashSet<String>();
 
 		if (word != null && word.length() > 0) {
-			for (CostString wordPlusPrefix : prefixTrie.getCompletions(new CostString(word), limit * 2, true)) {
-				for (CostString completedWord : suffixTrie.getCompletions(wordPlusPrefix, limit * 2, true)) {
-					completions.add(completedWord.str);
+			if (suffixArray != null) { // the words come in suffix order, so the whole range is ranked before it is limited
+				Set<String> words = new TLinkedHashSet<String>(suffixArray.getWordsContaining(word, Integer.MAX_VALUE));
+				completions.addAll(UnigramHistogram.getOrderedResults(unigramHistogram, words, limit));
+			} else if (fst != null) { // the automaton only finds the top completions, which are the best candidates anyway
+				for (String completion : fst.getTopCompletions(word, limit)) {
+					if (UnigramHistogram.contains(unigramHistogram, completion)) {
+						completions.add(completion);
+					}
+				}
+			} else {
+				for (CostString wordPlusPrefix : prefixTrie.getCompletions(new CostString(word), limit * 2, true)) {
+					for (CostString completedWord : suffixTrie.getCompletions(wordPlusPrefix, limit * 2, true)) {
+						completions.add(completedWord.str);
+					}
 				}
 			}
 
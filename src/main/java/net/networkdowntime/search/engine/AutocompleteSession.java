@@ -0,0 +1,216 @@
+package net.networkdowntime.search.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the state of an Autocomplete between keystrokes of a type-ahead input, so each keystroke only does the work for the characters that
+ * changed. Returns the same completions as Autocomplete.getCompletions() for the same input, fuzzyMatch and limit.
+ * 
+ * A state is kept for every input given to the session. For a single word the state holds the frontier of candidates: every full word
+ * containing the word, in histogram rank order, as long as there are no more than MAX_FRONTIER_SIZE of them. Words shorter than
+ * MIN_FRONTIER_WORD_LENGTH only keep a frontier when the search for the top completions already found all of them. Every word containing a longer
+ * word also contains the shorter one, so when characters are appended to the word the new frontier is the previous frontier filtered by the
+ * longer word and the tries aren't searched again. The fuzzy back-off to the word without its last character is the previous keystroke's
+ * state. A backspace goes back to the previous state without any work.
+ * 
+ * The tries can't be resumed from the previous walk, the prefix trie is walked over the reversed word, so an appended character changes the
+ * start of the walk. Inputs of more than one word are passed on to Autocomplete.getCompletions(). Adding or removing text from the
+ * Autocomplete discards the kept states.
+ * 
+ * A session is meant for a single input and isn't thread safe.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public class AutocompleteSession {
+
+	// max number of candidates kept for a word, a word with more completions is searched for again on the next keystroke
+	static final int MAX_FRONTIER_SIZE = 64;
+
+	// shorter words rarely have few enough completions to be worth searching for the whole frontier
+	static final int MIN_FRONTIER_WORD_LENGTH = 3;
+
+	private final Autocomplete autocomplete;
+	private final boolean fuzzyMatch;
+	private final int limit;
+
+	private final List<State> states = new ArrayList<State>();
+	private long generation;
+
+	/**
+	 * @param autocomplete The Autocomplete to get the completions from
+	 * @param fuzzyMatch provides character back-off and re-searching if no completions are found
+	 * @param limit Max number of results to return
+	 */
+	public AutocompleteSession(Autocomplete autocomplete, boolean fuzzyMatch, int limit) {
+		this.autocomplete = autocomplete;
+		this.fuzzyMatch = fuzzyMatch;
+		this.limit = limit;
+		this.generation = autocomplete.getGeneration();
+	}
+
+	/**
+	 * Gets the completions for the current input. Characters appended to or removed from the end of the previous input reuse the kept states.
+	 * 
+	 * @param input The full text of the input
+	 * @return Not-null, unmodifiable set of the suggested completions
+	 */
+	public Set<String> getCompletions(String input) {
+		if (generation != autocomplete.getGeneration()) {
+			reset();
+		}
+
+		// drop the states of the characters that were removed
+		while (!states.isEmpty() && !input.startsWith(getLastState().input)) {
+			states.remove(states.size() - 1);
+		}
+		if (!states.isEmpty() && getLastState().input.equals(input)) {
+			return getLastState().completions;
+		}
+
+		State previous = (states.isEmpty()) ? null : getLastState();
+		boolean hasTrailingSpace = input.endsWith(" ");
+		List<String> keywords = autocomplete.getKeywords(input);
+
+		State state;
+		if (keywords.size() == 1 && !hasTrailingSpace) {
+			state = getSingleWordState(input, keywords.get(0), previous);
+		} else {
+			Set<String> completions = autocomplete.getCompletions(keywords, fuzzyMatch, hasTrailingSpace, limit);
+			state = new State(input, null, null, null, completions);
+		}
+		states.add(state);
+		return state.completions;
+	}
+
+	/**
+	 * Appends characters to the input.
+	 * 
+	 * @param characters The characters typed
+	 * @return Not-null, unmodifiable set of the suggested completions
+	 */
+	public Set<String> append(String characters) {
+		return getCompletions(getInput() + characters);
+	}
+
+	/**
+	 * Removes the last character of the input.
+	 * 
+	 * @return Not-null, unmodifiable set of the suggested completions
+	 */
+	public Set<String> backspace() {
+		String input = getInput();
+		return getCompletions(input.isEmpty() ? input : input.substring(0, input.length() - 1));
+	}
+
+	/**
+	 * @return The input of the last call, an empty string if there wasn't one
+	 */
+	public String getInput() {
+		return (states.isEmpty()) ? "" : getLastState().input;
+	}
+
+	/**
+	 * Discards the kept states.
+	 */
+	public void reset() {
+		states.clear();
+		generation = autocomplete.getGeneration();
+	}
+
+	private State getLastState() {
+		return states.get(states.size() - 1);
+	}
+
+	/**
+	 * Builds the state for an input of a single word, from the previous state's frontier when the word extends the previous state's word.
+	 */
+	private State getSingleWordState(String input, String word, State previous) {
+		String[] frontier = null;
+		List<String> topCompletions;
+
+		if (previous != null && previous.frontier != null && word.startsWith(previous.word)) {
+			frontier = filter(previous.frontier, word);
+			topCompletions = autocomplete.getKnownWords(getFirst(frontier, limit));
+		} else {
+			// the candidates still include the words removed since an automaton was set, so their count shows whether every match was found
+			List<String> candidates = autocomplete.getTopCandidatesSingleWord(word, (word.length() >= MIN_FRONTIER_WORD_LENGTH) ? Math.max(limit, MAX_FRONTIER_SIZE + 1) : limit);
+			if (candidates.size() <= MAX_FRONTIER_SIZE && (word.length() >= MIN_FRONTIER_WORD_LENGTH || candidates.size() < limit)) {
+				frontier = candidates.toArray(new String[candidates.size()]);
+			}
+			topCompletions = autocomplete.getKnownWords(getFirst(candidates, limit));
+		}
+
+		if (topCompletions.isEmpty() && fuzzyMatch) { // back off to the word without its last character
+			String shorterWord = word.substring(0, word.length() - 1);
+			if (previous != null && shorterWord.equals(previous.word)) {
+				topCompletions = previous.topCompletions;
+			} else {
+				topCompletions = autocomplete.getTopCompletionsSingleWord(shorterWord, fuzzyMatch, limit);
+			}
+		}
+
+		Set<String> completions = autocomplete.getSingleWordCompletions(topCompletions, word, limit);
+		return new State(input, word, frontier, topCompletions, completions);
+	}
+
+	/**
+	 * @return The candidates Autocomplete completes the word with, in the same order
+	 */
+	private String[] filter(String[] candidates, String word) {
+		String[] filtered = new String[candidates.length];
+		int count = 0;
+		for (String candidate : candidates) {
+			if (autocomplete.isCompletion(candidate, word)) {
+				filtered[count++] = candidate;
+			}
+		}
+		return Arrays.copyOf(filtered, count);
+	}
+
+	private static List<String> getFirst(String[] candidates, int limit) {
+		return getFirst(Arrays.asList(candidates), limit);
+	}
+
+	private static List<String> getFirst(List<String> candidates, int limit) {
+		return candidates.subList(0, Math.min(limit, candidates.size()));
+	}
+
+	/**
+	 * The completions of one input.
+	 */
+	private static class State {
+		final String input;
+		final String word; // the word of a single word input, null otherwise
+		final String[] frontier; // every candidate completion of the word in histogram rank order, null if there are too many or it isn't a single word
+		final List<String> topCompletions; // the top completions of the word before the exact match is added back
+		final Set<String> completions;
+
+		State(String input, String word, String[] frontier, List<String> topCompletions, Set<String> completions) {
+			this.input = input;
+			this.word = word;
+			this.frontier = frontier;
+			this.topCompletions = topCompletions;
+			this.completions = Collections.unmodifiableSet(completions);
+		}
+	}
+}
@@ -6,12 +6,15 @@ import gnu.trove.map.hash.TObjectIntHashMap;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import net.networkdowntime.search.DocIdMap;
 import net.networkdowntime.search.SearchResult;
 import net.networkdowntime.search.SearchResultType;
+import net.networkdowntime.search.TermDictionary;
 import net.networkdowntime.search.histogram.DigramLongSearchHistogram;
 import net.networkdowntime.search.histogram.DigramStringSearchHistogram;
 import net.networkdowntime.search.histogram.FixedSizeSortedSet;
@@ -22,6 +25,7 @@ import net.networkdowntime.search.text.processing.ContentSplitter;
 import net.networkdowntime.search.text.processing.HtmlTagTextScrubber;
 import net.networkdowntime.search.text.processing.KeywordScrubber;
 import net.networkdowntime.search.text.processing.TextScrubber;
+import net.networkdowntime.search.trie.SearchTraceSink;
 
 /**
  * Implementation of an in-memory search engine with robust auto-complete capabilities and ordering of the results based on their
@@ -48,11 +52,17 @@ import net.networkdowntime.search.text.processing.TextScrubber;
 public class InMemorySearchEngine implements SearchEngine {
 	private static final Logger LOGGER = LogManager.getLogger(InMemorySearchEngine.class.getName());
 
-	private UnigramLongSearchHistogram unigramLongSearchHistogram = new UnigramLongSearchHistogram();
-	private UnigramStringSearchHistogram unigramStringSearchHistogram = new UnigramStringSearchHistogram();
+	// shared by the histograms and the autocomplete tries so each word is stored once with one term id
+	private TermDictionary termDictionary = new TermDictionary();
 
-	private DigramLongSearchHistogram digramLongSearchHistogram = new DigramLongSearchHistogram();
-	private DigramStringSearchHistogram digramStringSearchHistogram = new DigramStringSearchHistogram();
+	// shared by the histograms so each search result is stored once with one doc id
+	private DocIdMap docIdMap = new DocIdMap();
+
+	private UnigramLongSearchHistogram unigramLongSearchHistogram = new UnigramLongSearchHistogram(termDictionary, docIdMap);
+	private UnigramStringSearchHistogram unigramStringSearchHistogram = new UnigramStringSearchHistogram(termDictionary, docIdMap);
+
+	private DigramLongSearchHistogram digramLongSearchHistogram = new DigramLongSearchHistogram(termDictionary, docIdMap);
+	private DigramStringSearchHistogram digramStringSearchHistogram = new DigramStringSearchHistogram(termDictionary, docIdMap);
 
 	private Autocomplete autocomplete = null;
 
@@ -73,7 +83,7 @@ public class InMemorySearchEngine implements SearchEngine {
 	 * Default constructor
 	 */
 	public InMemorySearchEngine() {
-		autocomplete = new Autocomplete(textScrubber, splitter, keywordScrubber);
+		autocomplete = new Autocomplete(termDictionary, textScrubber, splitter, keywordScrubber);
 	}
 
 	/**
@@ -109,6 +119,44 @@ public class InMemorySearchEngine implements SearchEngine {
 		resetTimes();
 	}
 
+	/**
+	 * Compacts the autocomplete tries into their flat read-only layout. Intended to be called once the initial indexing is done.
+	 */
+	public void freeze() {
+		autocomplete.freeze();
+	}
+
+	/**
+	 * Keeps precomputed top completions for short words, see Autocomplete.setTopCompletionsCache().
+	 * 
+	 * @param maxDepth Max length of the words to keep the completions of, 0 turns the lists off
+	 * @param k Number of completions kept for each word
+	 */
+	public void setTopCompletionsCache(int maxDepth, int k) {
+		autocomplete.setTopCompletionsCache(maxDepth, k);
+	}
+
+	/**
+	 * Searches the misspellings of long words in parallel, see Autocomplete.setParallelSearch().
+	 * 
+	 * @param pool The pool to run the searches in, null turns the parallel search off
+	 * @param minWordLength Min length of the words to search in parallel
+	 */
+	public void setParallelSearch(ForkJoinPool pool, int minWordLength) {
+		autocomplete.setParallelSearch(pool, minWordLength);
+	}
+
+	/**
+	 * Traces a sample of the autocomplete trie searches, see Trie.setTraceSink().
+	 * 
+	 * @param traceSink The sink to send the traces to, null turns tracing off
+	 * @param sampleRate Traces 1 in every sampleRate searches
+	 * @param capacity Max number of entries kept per search
+	 */
+	public void setTraceSink(SearchTraceSink traceSink, int sampleRate, int capacity) {
+		autocomplete.setTraceSink(traceSink, sampleRate, capacity);
+	}
+
 	@Override
 	public void add(Long searchResult, String text) {
 		addCount++;
@@ -0,0 +1,185 @@
+package net.networkdowntime.search.histogram;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.procedure.TIntProcedure;
+
+import java.util.Arrays;
+
+/**
+ * The doc ids of the search results of a common word of a search histogram with their counts, kept as an OrdinalBitmap. Most counts are 1,
+ * so only the doc ids with a larger count are kept in a second bitmap, with their counts in an array in doc id order. A count of 255 or more
+ * is kept in a small map instead of the array. A dense word's result costs a bit or two.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+class BitmapPostingList {
+
+	private static final int LARGE_COUNT = 0xFF; // a count stored in largeCounts
+
+	private final OrdinalBitmap docIds = new OrdinalBitmap();
+
+	private OrdinalBitmap multiDocIds = null; // the doc ids with a count of more than 1
+	private byte[] multiCounts = null; // count of each of the multi doc ids in doc id order
+	private TIntIntHashMap largeCounts = null; // counts of LARGE_COUNT or more by doc id
+	private int multiCardinality = 0;
+	private int totalCount = 0; // sum of the counts of the results
+
+	/**
+	 * Adds to the count of the doc id.
+	 * 
+	 * @param docId The doc id of the search result
+	 * @param count The count to add, at least 1
+	 */
+	void add(int docId, int count) {
+		int previousCount = (docIds.add(docId)) ? 0 : getCount(docId);
+		totalCount += count;
+		count += previousCount;
+		if (count == 1) {
+			return;
+		}
+
+		if (multiDocIds == null) {
+			multiDocIds = new OrdinalBitmap();
+			multiCounts = new byte[16];
+		}
+
+		int rank = multiDocIds.rank(docId);
+		if (multiDocIds.add(docId)) {
+			multiCardinality++;
+			if (multiCardinality > multiCounts.length) {
+				multiCounts = Arrays.copyOf(multiCounts, multiCardinality + (multiCardinality >> 1));
+			}
+			System.arraycopy(multiCounts, rank, multiCounts, rank + 1, multiCardinality - 1 - rank);
+		}
+
+		if (count >= LARGE_COUNT) {
+			if (largeCounts == null) {
+				largeCounts = new TIntIntHashMap();
+			}
+			largeCounts.put(docId, count);
+			multiCounts[rank] = (byte) LARGE_COUNT;
+		} else {
+			multiCounts[rank] = (byte) count;
+		}
+	}
+
+	/**
+	 * Removes the doc id with all of its count.
+	 * 
+	 * @param docId The doc id of the search result
+	 * @return true if the result was in the list
+	 */
+	boolean remove(int docId) {
+		if (!docIds.remove(docId)) {
+			return false;
+		}
+
+		int count = getCount(docId);
+		if (count > 1) {
+			int rank = multiDocIds.rank(docId);
+			multiDocIds.remove(docId);
+			multiCardinality--;
+			System.arraycopy(multiCounts, rank + 1, multiCounts, rank, multiCardinality - rank);
+			if (largeCounts != null) {
+				largeCounts.remove(docId);
+			}
+		}
+
+		totalCount -= count;
+		return true;
+	}
+
+	/**
+	 * @return The sum of the counts of the results
+	 */
+	int getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return The first doc id, the only one if the list's total count is 1
+	 */
+	int getFirstDocId() {
+		return docIds.first();
+	}
+
+	/**
+	 * Adds the count of each doc id, times the weight multiplier, to the accumulator.
+	 * 
+	 * @param accumulator The accumulator of the counts
+	 * @param weightMultiplier The multiplier of the counts
+	 */
+	void addTo(final ResultAccumulator accumulator, final int weightMultiplier) {
+		accumulator.ensureCapacity(docIds.getCardinality());
+		docIds.forEach(new TIntProcedure() {
+			@Override
+			public boolean execute(int docId) {
+				accumulator.add(docId, weightMultiplier);
+				return true;
+			}
+		});
+
+		if (multiDocIds != null) { // the rest of the larger counts
+			multiDocIds.forEach(new MultiCountProcedure() {
+				@Override
+				void execute(int docId, int count) {
+					accumulator.add(docId, (count - 1) * weightMultiplier);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return The approximate size of the list's arrays in bytes
+	 */
+	long getEstimatedSize() {
+		long estimatedSize = docIds.getEstimatedSize() + ((largeCounts == null) ? 0 : largeCounts.size() * 16L);
+		if (multiDocIds != null) {
+			estimatedSize += multiDocIds.getEstimatedSize() + multiCounts.length;
+		}
+		return estimatedSize;
+	}
+
+	/**
+	 * @return The count of a doc id in the list
+	 */
+	private int getCount(int docId) {
+		if (multiDocIds == null || !multiDocIds.contains(docId)) {
+			return 1;
+		}
+		int count = multiCounts[multiDocIds.rank(docId)] & 0xFF;
+		return (count == LARGE_COUNT) ? largeCounts.get(docId) : count;
+	}
+
+	/**
+	 * Walks the multi doc ids in order along with the rank of each, to pass the doc id's count.
+	 */
+	private abstract class MultiCountProcedure implements TIntProcedure {
+		private int rank = 0;
+
+		abstract void execute(int docId, int count);
+
+		@Override
+		public boolean execute(int docId) {
+			int count = multiCounts[rank++] & 0xFF;
+			execute(docId, (count == LARGE_COUNT) ? largeCounts.get(docId) : count);
+			return true;
+		}
+	}
+}
@@ -1,15 +1,25 @@
 package net.networkdowntime.search.histogram;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import net.networkdowntime.search.TermDictionary;
 
 /**
  * Implements a digram histogram.  For any two word pairs it tracks the frequency that those words were added.
  * 
+ * Each word pair is a single entry of one primitive map, keyed by the term ids of both words packed into a long, whose value is the pair's slot in
+ * a set of int arrays holding its count, its second word and the next slot of the same first word. The slots of a first word's followers are a
+ * linked list starting at the first word's entry of a second map, so a first word seen once costs a few dozen bytes instead of a histogram of its
+ * own. The most common followers of a first word are found by walking its list when they are asked for, and only kept for the first words with
+ * many followers until one of their pairs changes.
+ * 
  * This software is licensed under the MIT license
  * Copyright (c) 2015 Ryan Wiles
  * 
@@ -30,7 +40,43 @@ import gnu.trove.map.hash.TIntObjectHashMap;
  */
 public class DigramHistogram {
 
-	TIntObjectHashMap<UnigramHistogram> histogram = new TIntObjectHashMap<UnigramHistogram>();
+	// first words with at least this many followers keep their most common followers between queries
+	static final int HOT_FIRST_WORD_SIZE = 16;
+
+	private static final int NO_SLOT = -1;
+
+	// odd, so multiplying by it maps each packed key to a different long, see getKey()
+	private static final long KEY_SCRAMBLE = 0x9E3779B97F4A7C15L;
+
+	private final TermDictionary termDictionary;
+
+	// slot of each word pair by getKey(), and the first slot of the followers of each first word
+	private final TLongIntHashMap slots = new TLongIntHashMap(16, 0.75f, 0L, NO_SLOT);
+	private final TIntIntHashMap firstSlots = new TIntIntHashMap(16, 0.5f, TermDictionary.NO_TERM_ID, NO_SLOT);
+
+	// by slot, the count of the pair, the term id of its second word and the next slot of the same first word or of the free slots
+	private int[] slotCounts = new int[16];
+	private int[] slotSecondIds = new int[16];
+	private int[] slotNext = new int[16];
+	private int slotEnd = 0; // slots from here on have never been used
+	private int freeSlot = NO_SLOT;
+
+	// most common followers of the hot first words, dropped when one of the first word's pairs changes
+	private final TIntObjectHashMap<Tuple<String>[]> hotFollowers = new TIntObjectHashMap<Tuple<String>[]>();
+
+	/**
+	 * Creates a digram histogram with its own term dictionary
+	 */
+	public DigramHistogram() {
+		this(new TermDictionary());
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 */
+	public DigramHistogram(TermDictionary termDictionary) {
+		this.termDictionary = termDictionary;
+	}
 
 	/**
 	 * Adds a word pair to the digram histogram
@@ -39,15 +85,21 @@ public class DigramHistogram {
 	 * @param secondWord
 	 */
 	public void add(String firstWord, String secondWord) {
-		UnigramHistogram unigram = histogram.get(firstWord.hashCode());
-
-		if (unigram == null) {
-			unigram = new UnigramHistogram();
-			histogram.put(firstWord.hashCode(), unigram);
+		int firstWordId = termDictionary.getOrAddTermId(firstWord);
+		int secondWordId = termDictionary.getOrAddTermId(secondWord);
+		long key = getKey(firstWordId, secondWordId);
+
+		int slot = slots.get(key);
+		if (slot == NO_SLOT) {
+			slot = newSlot();
+			slotCounts[slot] = 0;
+			slotSecondIds[slot] = secondWordId;
+			slotNext[slot] = firstSlots.get(firstWordId);
+			firstSlots.put(firstWordId, slot);
+			slots.put(key, slot);
 		}
-
-		UnigramHistogram.add(unigram, secondWord);
-
+		slotCounts[slot]++;
+		dropHotFollowers(firstWordId);
 	}
 
 	/**
@@ -57,11 +109,82 @@ public class DigramHistogram {
 	 * @param secondWord The second word to remove
 	 */
 	public void remove(String firstWord, String secondWord) {
-		UnigramHistogram unigram = histogram.get(firstWord.hashCode());
-		if (unigram != null) {
-			int count = UnigramHistogram.remove(unigram, secondWord);
-			if (count == 0)
-				histogram.remove(firstWord.hashCode());
+		int firstWordId = termDictionary.getTermId(firstWord);
+		int secondWordId = termDictionary.getTermId(secondWord);
+		if (firstWordId == TermDictionary.NO_TERM_ID || secondWordId == TermDictionary.NO_TERM_ID) {
+			return;
+		}
+
+		long key = getKey(firstWordId, secondWordId);
+		int slot = slots.get(key);
+		if (slot == NO_SLOT) {
+			return;
+		}
+
+		if (--slotCounts[slot] == 0) {
+			slots.remove(key);
+			unlinkSlot(firstWordId, slot);
+		}
+		dropHotFollowers(firstWordId);
+	}
+
+	/**
+	 * The term ids are packed into a long, the first word's in the high 32 bits and the second word's in the low 32 bits, and then scrambled.
+	 * The map hashes a long as its high bits xor its low bits, which would put every pair of the same two words, and many others, on the same
+	 * hash.
+	 * 
+	 * @return The key of the word pair
+	 */
+	static long getKey(int firstWordId, int secondWordId) {
+		return (((long) firstWordId << 32) | (secondWordId & 0xFFFFFFFFL)) * KEY_SCRAMBLE;
+	}
+
+	/**
+	 * @return A free slot, reusing the slots of removed pairs first
+	 */
+	private int newSlot() {
+		if (freeSlot != NO_SLOT) {
+			int slot = freeSlot;
+			freeSlot = slotNext[slot];
+			return slot;
+		}
+
+		if (slotEnd == slotCounts.length) {
+			int length = slotEnd * 2;
+			slotCounts = Arrays.copyOf(slotCounts, length);
+			slotSecondIds = Arrays.copyOf(slotSecondIds, length);
+			slotNext = Arrays.copyOf(slotNext, length);
+		}
+		return slotEnd++;
+	}
+
+	/**
+	 * Removes the slot from the followers of the first word and frees it. Walks the followers up to the slot, removing is rare compared to
+	 * adding.
+	 */
+	private void unlinkSlot(int firstWordId, int slot) {
+		int previous = NO_SLOT;
+		for (int s = firstSlots.get(firstWordId); s != slot; s = slotNext[s]) {
+			previous = s;
+		}
+
+		if (previous != NO_SLOT) {
+			slotNext[previous] = slotNext[slot];
+		} else if (slotNext[slot] != NO_SLOT) {
+			firstSlots.put(firstWordId, slotNext[slot]);
+		} else {
+			firstSlots.remove(firstWordId);
+		}
+
+		slotNext[slot] = freeSlot;
+		freeSlot = slot;
+	}
+
+	private void dropHotFollowers(int firstWordId) {
+		synchronized (hotFollowers) {
+			if (!hotFollowers.isEmpty()) {
+				hotFollowers.remove(firstWordId);
+			}
 		}
 	}
 
@@ -73,14 +196,14 @@ public class DigramHistogram {
 	 * @return The occurrence count of the word pair
 	 */
 	public int getOccuranceCount(String firstWord, String secondWord) {
-		int count = 0;
-
-		UnigramHistogram unigram = histogram.get(firstWord.hashCode());
-		if (unigram != null) {
-			count = UnigramHistogram.getOccurrenceCount(unigram, secondWord);
+		int firstWordId = termDictionary.getTermId(firstWord);
+		int secondWordId = termDictionary.getTermId(secondWord);
+		if (firstWordId == TermDictionary.NO_TERM_ID || secondWordId == TermDictionary.NO_TERM_ID) {
+			return 0;
 		}
 
-		return count;
+		int slot = slots.get(getKey(firstWordId, secondWordId));
+		return (slot == NO_SLOT) ? 0 : slotCounts[slot];
 	}
 
 	/**
@@ -157,11 +280,8 @@ public class DigramHistogram {
 		}
 
 		if (secondWords.isEmpty()) {
-			UnigramHistogram unigram = histogram.get(firstWord.hashCode());
-			if (unigram != null) {
-				for (Tuple<String> t : UnigramHistogram.getMostCommonWords(unigram)) {
-					orderedResults.add(t);
-				}
+			for (Tuple<String> t : getMostCommonFollowers(firstWord)) {
+				orderedResults.add(t);
 			}
 		}
 
@@ -171,18 +291,73 @@ public class DigramHistogram {
 	private SortedSet<Tuple<String>> getResults(String firstWord) {
 		SortedSet<Tuple<String>> orderedResults = Tuple.createOrderedResultsTree(new String());
 
-		UnigramHistogram unigramHistogram = histogram.get(firstWord.hashCode());
+		for (Tuple<String> t : getMostCommonFollowers(firstWord)) {
+			Tuple<String> tuple = new Tuple<String>(firstWord + " " + t.word, t.count);
+			orderedResults.add(tuple);
+		}
 
-		if (unigramHistogram != null) {
-			for (Tuple<String> t : UnigramHistogram.getMostCommonWords(unigramHistogram)) {
-				if (t != null) {
-					Tuple<String> tuple = new Tuple<String>(firstWord + " " + t.word, t.count);
-					orderedResults.add(tuple);
-				}
+		return orderedResults;
+	}
+
+	/**
+	 * Gets the most common words following the first word, up to the same number as UnigramHistogram.getMostCommonWords(), highest count first
+	 * and then alphabetically.
+	 * 
+	 * @param firstWord The first word
+	 * @return The followers with their counts, empty if the first word has none
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	Tuple<String>[] getMostCommonFollowers(String firstWord) {
+		int firstWordId = termDictionary.getTermId(firstWord);
+		if (firstWordId == TermDictionary.NO_TERM_ID) {
+			return new Tuple[0];
+		}
+
+		synchronized (hotFollowers) {
+			Tuple<String>[] followers = hotFollowers.get(firstWordId);
+			if (followers != null) {
+				return followers;
 			}
 		}
 
-		return orderedResults;
+		int[] topSlots = new int[UnigramHistogram.MOST_COMMON_WORDS_SIZE];
+		int topSize = 0;
+		int followerCount = 0;
+		for (int slot = firstSlots.get(firstWordId); slot != NO_SLOT; slot = slotNext[slot]) {
+			followerCount++;
+			if (topSize == topSlots.length && compare(slot, topSlots[topSize - 1]) > 0) {
+				continue;
+			}
+
+			int index = (topSize < topSlots.length) ? topSize++ : topSize - 1;
+			while (index > 0 && compare(slot, topSlots[index - 1]) < 0) {
+				topSlots[index] = topSlots[index - 1];
+				index--;
+			}
+			topSlots[index] = slot;
+		}
+
+		Tuple<String>[] followers = new Tuple[topSize];
+		for (int i = 0; i < topSize; i++) {
+			followers[i] = new Tuple<String>(termDictionary.getTerm(slotSecondIds[topSlots[i]]), slotCounts[topSlots[i]]);
+		}
+
+		if (followerCount >= HOT_FIRST_WORD_SIZE) {
+			synchronized (hotFollowers) {
+				hotFollowers.put(firstWordId, followers);
+			}
+		}
+		return followers;
+	}
+
+	/**
+	 * Same ordering as Tuple.TupleComparator, highest count first and then alphabetically.
+	 */
+	private int compare(int slot1, int slot2) {
+		if (slotCounts[slot1] != slotCounts[slot2]) {
+			return (slotCounts[slot1] > slotCounts[slot2]) ? -1 : 1;
+		}
+		return termDictionary.getTerm(slotSecondIds[slot1]).compareTo(termDictionary.getTerm(slotSecondIds[slot2]));
 	}
 
 	/**
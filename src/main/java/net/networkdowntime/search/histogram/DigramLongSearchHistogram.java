@@ -3,6 +3,8 @@ package net.networkdowntime.search.histogram;
 import java.util.Set;
 
 import gnu.trove.map.hash.TLongIntHashMap;
+import net.networkdowntime.search.DocIdMap;
+import net.networkdowntime.search.TermDictionary;
 
 /**
  * Wrapper around DigramSearchHistogram to provide String lookups for search results.
@@ -27,6 +29,28 @@ import gnu.trove.map.hash.TLongIntHashMap;
  */
 public class DigramLongSearchHistogram extends DigramSearchHistogram {
 
+	/**
+	 * Creates a search histogram with its own term dictionary
+	 */
+	public DigramLongSearchHistogram() {
+		super();
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 */
+	public DigramLongSearchHistogram(TermDictionary termDictionary) {
+		this(termDictionary, new DocIdMap());
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 * @param docIdMap The map to get the doc ids of the results from, can be shared with the other histograms
+	 */
+	public DigramLongSearchHistogram(TermDictionary termDictionary, DocIdMap docIdMap) {
+		super(termDictionary, docIdMap);
+	}
+
 	/**
 	 * Adds a word along with it's result to the search histogram
 	 * 
@@ -34,9 +58,8 @@ public class DigramLongSearchHistogram extends DigramSearchHistogram {
 	 * @param secondWord Word to be added
 	 * @param result The search result to associate with the word
 	 */
-	@Override
 	public void add(String firstWord, String secondWord, long result) {
-		super.add(firstWord, secondWord, result);
+		super.add(firstWord, secondWord, docIdMap.getOrAddDocId(result));
 	}
 
 	/**
@@ -46,9 +69,12 @@ public class DigramLongSearchHistogram extends DigramSearchHistogram {
 	 * @param secondWord The second word to remove the result for.
 	 * @param result The result to be removed.
 	 */
-	@Override
 	public void remove(String firstWord, String secondWord, long result) {
-		super.remove(firstWord, secondWord, result);
+		int docId = docIdMap.getDocId(result);
+
+		if (docId != DocIdMap.NO_DOC_ID) {
+			super.remove(firstWord, secondWord, docId);
+		}
 	}
 
 	/**
@@ -58,6 +84,6 @@ public class DigramLongSearchHistogram extends DigramSearchHistogram {
 	 * @return A set containing the matched search results up to the specified limit
 	 */
 	public TLongIntHashMap getSearchResults(Set<String> searchTerms, int weightMultiplier) {
-		return super.getResultsRaw(searchTerms, weightMultiplier);
+		return super.getResultsRaw(searchTerms, weightMultiplier).toLongResults(docIdMap);
 	}
 }
\ No newline at end of file
@@ -6,7 +6,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.map.hash.TLongIntHashMap;
+import net.networkdowntime.search.DocIdMap;
+import net.networkdowntime.search.TermDictionary;
 
 /**
  * Implements a digram search histogram.  For any two word pairs it tracks the results that those words appear together.
@@ -34,21 +35,41 @@ class DigramSearchHistogram {
 
 	TIntObjectHashMap<UnigramSearchHistogram> histogram = new TIntObjectHashMap<UnigramSearchHistogram>();
 
+	protected final TermDictionary termDictionary;
+	protected final DocIdMap docIdMap;
+
+	/**
+	 * Creates a search histogram with its own term dictionary and doc id map
+	 */
+	DigramSearchHistogram() {
+		this(new TermDictionary(), new DocIdMap());
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 * @param docIdMap The map to get the doc ids of the results from
+	 */
+	DigramSearchHistogram(TermDictionary termDictionary, DocIdMap docIdMap) {
+		this.termDictionary = termDictionary;
+		this.docIdMap = docIdMap;
+	}
+
 	/**
 	 * Adds a word pair search result to the digram histogram
 	 * 
 	 * @param firstWord
 	 * @param secondWord
 	 */
-	protected void add(String firstWord, String secondWord, long resultKey) {
-		UnigramSearchHistogram unigram = histogram.get(firstWord.hashCode());
+	protected void add(String firstWord, String secondWord, int docId) {
+		int firstWordKey = termDictionary.getOrAddTermId(firstWord);
+		UnigramSearchHistogram unigram = histogram.get(firstWordKey);
 
 		if (unigram == null) {
-			unigram = new UnigramSearchHistogram();
-			histogram.put(firstWord.hashCode(), unigram);
+			unigram = new UnigramSearchHistogram(termDictionary, docIdMap);
+			histogram.put(firstWordKey, unigram);
 		}
 
-		UnigramSearchHistogram.addInternal(unigram, secondWord.hashCode(), resultKey);
+		UnigramSearchHistogram.addInternal(unigram, termDictionary.getOrAddTermId(secondWord), docId);
 
 	}
 
@@ -58,14 +79,15 @@ class DigramSearchHistogram {
 	 * @param firstWord The first word to remove
 	 * @param secondWord The second word to remove
 	 */
-	protected void remove(String firstWord, String secondWord, long resultKey) {
-		UnigramSearchHistogram unigram = histogram.get(firstWord.hashCode());
+	protected void remove(String firstWord, String secondWord, int docId) {
+		int firstWordKey = termDictionary.getTermId(firstWord);
+		UnigramSearchHistogram unigram = histogram.get(firstWordKey);
 		if (unigram != null) {
 
-			int count = UnigramSearchHistogram.removeInternal(unigram, secondWord.hashCode(), resultKey);
+			int count = UnigramSearchHistogram.removeInternal(unigram, termDictionary.getTermId(secondWord), docId);
 
 			if (count == 0) {
-				histogram.remove(firstWord.hashCode());
+				histogram.remove(firstWordKey);
 			}
 		}
 	}
@@ -76,10 +98,10 @@ class DigramSearchHistogram {
 	 * 
 	 * @param searchTerms Set of potentially multiple word strings
 	 * @param weightMultiplier Multiplier of how much additional weight to apply to these results
-	 * @return A TLongIntHashMap containing all of the results and their weights
+	 * @return The counts of all of the results by doc id
 	 */
-	protected TLongIntHashMap getResultsRaw(Set<String> searchTerms, int weightMultiplier) {
-		TLongIntHashMap results = new TLongIntHashMap();
+	protected ResultAccumulator getResultsRaw(Set<String> searchTerms, int weightMultiplier) {
+		ResultAccumulator results = new ResultAccumulator(docIdMap.size());
 
 		for (String term : searchTerms) {
 			String[] keywords;
@@ -94,10 +116,10 @@ class DigramSearchHistogram {
 			for (String currentWord : keywords) {
 				if (previousWord != null) {
 					LOGGER.debug("Looking for " + previousWord + " " + currentWord);
-					UnigramSearchHistogram.getSearchResults(histogram.get(previousWord.hashCode()), results, currentWord, weightMultiplier);
+					UnigramSearchHistogram.getSearchResults(histogram.get(termDictionary.getTermId(previousWord)), results, currentWord, weightMultiplier);
 
 					LOGGER.debug("Looking for " + currentWord + " " + previousWord);
-					UnigramSearchHistogram.getSearchResults(histogram.get(currentWord.hashCode()), results, previousWord, weightMultiplier);
+					UnigramSearchHistogram.getSearchResults(histogram.get(termDictionary.getTermId(currentWord)), results, previousWord, weightMultiplier);
 				}
 
 				previousWord = currentWord;
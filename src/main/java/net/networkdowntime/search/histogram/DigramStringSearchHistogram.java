@@ -2,9 +2,9 @@ package net.networkdowntime.search.histogram;
 
 import java.util.Set;
 
-import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.map.hash.TLongIntHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import net.networkdowntime.search.DocIdMap;
+import net.networkdowntime.search.TermDictionary;
 
 /**
  * Wrapper around DigramSearchHistogram to provide String lookups for search results.
@@ -29,7 +29,27 @@ import gnu.trove.map.hash.TObjectIntHashMap;
  */
 public class DigramStringSearchHistogram extends DigramSearchHistogram {
 
-	private TIntObjectHashMap<String> stringLookupMap = new TIntObjectHashMap<String>();
+	/**
+	 * Creates a search histogram with its own term dictionary
+	 */
+	public DigramStringSearchHistogram() {
+		super();
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 */
+	public DigramStringSearchHistogram(TermDictionary termDictionary) {
+		this(termDictionary, new DocIdMap());
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 * @param docIdMap The map to get the doc ids of the results from, can be shared with the other histograms
+	 */
+	public DigramStringSearchHistogram(TermDictionary termDictionary, DocIdMap docIdMap) {
+		super(termDictionary, docIdMap);
+	}
 
 	/**
 	 * Adds a word along with it's result to the search histogram
@@ -39,13 +59,7 @@ public class DigramStringSearchHistogram extends DigramSearchHistogram {
 	 * @param result The search result to associate with the word
 	 */
 	public void add(String firstWord, String secondWord, String result) {
-		int resultKey = result.hashCode();
-
-		if (!stringLookupMap.containsKey(resultKey)) {
-			stringLookupMap.put(resultKey, result);
-		}
-
-		super.add(firstWord, secondWord, resultKey);
+		super.add(firstWord, secondWord, docIdMap.getOrAddDocId(result));
 	}
 
 	/**
@@ -56,9 +70,11 @@ public class DigramStringSearchHistogram extends DigramSearchHistogram {
 	 * @param result The result to be removed.
 	 */
 	public void remove(String firstWord, String secondWord, String result) {
-		int resultKey = result.hashCode();
+		int docId = docIdMap.getDocId(result);
 
-		super.remove(firstWord, secondWord, (long) resultKey);
+		if (docId != DocIdMap.NO_DOC_ID) {
+			super.remove(firstWord, secondWord, docId);
+		}
 	}
 
 	/**
@@ -69,15 +85,6 @@ public class DigramStringSearchHistogram extends DigramSearchHistogram {
 	 */
 	public TObjectIntHashMap<String> getSearchResults(Set<String> searchTerms, int weightMultiplier) {
 
-		TLongIntHashMap longResults = super.getResultsRaw(searchTerms, weightMultiplier);
-		TObjectIntHashMap<String> results = new TObjectIntHashMap<String>();
-
-		long[] longResultKeys = longResults.keys();
-		int[] longResultValues = longResults.values();
-
-		for (int i = 0; i < longResultKeys.length; i++) {
-			results.put(stringLookupMap.get((int) longResultKeys[i]), longResultValues[i]);
-		}
-		return results;
+		return super.getResultsRaw(searchTerms, weightMultiplier).toStringResults(docIdMap);
 	}
 }
\ No newline at end of file
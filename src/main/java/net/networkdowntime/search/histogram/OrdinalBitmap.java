@@ -0,0 +1,295 @@
+package net.networkdowntime.search.histogram;
+
+import gnu.trove.procedure.TIntProcedure;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative int ordinals in the style of a roaring bitmap. The ordinals are split into containers by their high 16 bits,
+ * kept sorted by that key. A container holds the low 16 bits of its ordinals either as a sorted char array, while it has at most ARRAY_MAX
+ * ordinals, or as a bitmap of 1024 longs once it has more. A sparse container costs 2 bytes per ordinal and a dense one 1 bit per possible
+ * ordinal, never more than 8 KB.
+ *
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * @author rwiles
+ *
+ */
+class OrdinalBitmap {
+
+	// max number of ordinals in an array container, a bitmap container is the smaller one past this
+	static final int ARRAY_MAX = 4096;
+
+	private static final int BITMAP_WORDS = 1024;
+
+	// the containers sorted by key, a container has either an array or a bitmap
+	private char[] keys = new char[1];
+	private char[][] arrays = new char[1][];
+	private long[][] bitmaps = new long[1][];
+	private int[] cardinalities = new int[1];
+	private int size = 0; // number of containers
+
+	/**
+	 * @param ordinal The ordinal to add, at least 0
+	 * @return true if the ordinal wasn't in the bitmap
+	 */
+	boolean add(int ordinal) {
+		char low = (char) ordinal;
+		int index = getContainerIndex(ordinal);
+		if (index < 0) {
+			index = -index - 1;
+			insertContainer(index, (char) (ordinal >>> 16), new char[4], null, 0);
+		}
+
+		int cardinality = cardinalities[index];
+		long[] bitmap = bitmaps[index];
+		if (bitmap != null) {
+			long bit = 1L << low;
+			if ((bitmap[low >>> 6] & bit) != 0) {
+				return false;
+			}
+			bitmap[low >>> 6] |= bit;
+		} else {
+			char[] array = arrays[index];
+			int position = Arrays.binarySearch(array, 0, cardinality, low);
+			if (position >= 0) {
+				return false;
+			}
+			position = -position - 1;
+
+			if (cardinality == ARRAY_MAX) { // full, switches to a bitmap
+				bitmap = new long[BITMAP_WORDS];
+				for (int i = 0; i < cardinality; i++) {
+					bitmap[array[i] >>> 6] |= 1L << array[i];
+				}
+				bitmap[low >>> 6] |= 1L << low;
+				bitmaps[index] = bitmap;
+				arrays[index] = null;
+			} else {
+				if (cardinality == array.length) {
+					array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+					arrays[index] = array;
+				}
+				System.arraycopy(array, position, array, position + 1, cardinality - position);
+				array[position] = low;
+			}
+		}
+		cardinalities[index]++;
+		return true;
+	}
+
+	/**
+	 * @param ordinal The ordinal to remove
+	 * @return true if the ordinal was in the bitmap
+	 */
+	boolean remove(int ordinal) {
+		char low = (char) ordinal;
+		int index = getContainerIndex(ordinal);
+		if (index < 0) {
+			return false;
+		}
+
+		int cardinality = cardinalities[index];
+		long[] bitmap = bitmaps[index];
+		if (bitmap != null) {
+			long bit = 1L << low;
+			if ((bitmap[low >>> 6] & bit) == 0) {
+				return false;
+			}
+			bitmap[low >>> 6] &= ~bit;
+			cardinality--;
+			if (cardinality <= ARRAY_MAX / 2) { // switches back once well below the limit, so removes and adds at the limit don't flip it each time
+				arrays[index] = toArray(bitmap, cardinality);
+				bitmaps[index] = null;
+			}
+		} else {
+			char[] array = arrays[index];
+			int position = Arrays.binarySearch(array, 0, cardinality, low);
+			if (position < 0) {
+				return false;
+			}
+			cardinality--;
+			System.arraycopy(array, position + 1, array, position, cardinality - position);
+		}
+
+		cardinalities[index] = cardinality;
+		if (cardinality == 0) {
+			removeContainer(index);
+		}
+		return true;
+	}
+
+	/**
+	 * @param ordinal The ordinal
+	 * @return true if the ordinal is in the bitmap
+	 */
+	boolean contains(int ordinal) {
+		char low = (char) ordinal;
+		int index = getContainerIndex(ordinal);
+		if (index < 0) {
+			return false;
+		} else if (bitmaps[index] != null) {
+			return (bitmaps[index][low >>> 6] & (1L << low)) != 0;
+		}
+		return Arrays.binarySearch(arrays[index], 0, cardinalities[index], low) >= 0;
+	}
+
+	/**
+	 * @param ordinal The ordinal
+	 * @return The number of ordinals in the bitmap that are less than the ordinal
+	 */
+	int rank(int ordinal) {
+		char key = (char) (ordinal >>> 16);
+		char low = (char) ordinal;
+		int rank = 0;
+
+		for (int index = 0; index < size && keys[index] <= key; index++) {
+			if (keys[index] < key) {
+				rank += cardinalities[index];
+			} else if (bitmaps[index] != null) {
+				long[] bitmap = bitmaps[index];
+				int word = low >>> 6;
+				for (int i = 0; i < word; i++) {
+					rank += Long.bitCount(bitmap[i]);
+				}
+				rank += Long.bitCount(bitmap[word] & ((1L << low) - 1));
+			} else {
+				int position = Arrays.binarySearch(arrays[index], 0, cardinalities[index], low);
+				rank += (position >= 0) ? position : -position - 1;
+			}
+		}
+		return rank;
+	}
+
+	/**
+	 * @return The number of ordinals in the bitmap
+	 */
+	int getCardinality() {
+		int cardinality = 0;
+		for (int index = 0; index < size; index++) {
+			cardinality += cardinalities[index];
+		}
+		return cardinality;
+	}
+
+	/**
+	 * @return The smallest ordinal in the bitmap or -1 if it is empty
+	 */
+	int first() {
+		if (size == 0) {
+			return -1;
+		}
+
+		int high = keys[0] << 16;
+		if (bitmaps[0] == null) {
+			return high | arrays[0][0];
+		}
+		int word = 0;
+		while (bitmaps[0][word] == 0) {
+			word++;
+		}
+		return high | (word << 6) | Long.numberOfTrailingZeros(bitmaps[0][word]);
+	}
+
+	/**
+	 * Calls the procedure with each ordinal in ascending order.
+	 *
+	 * @param procedure The procedure to call, iterating stops if it returns false
+	 * @return false if the procedure stopped the iterating
+	 */
+	boolean forEach(TIntProcedure procedure) {
+		for (int index = 0; index < size; index++) {
+			int high = keys[index] << 16;
+
+			if (bitmaps[index] != null) {
+				long[] bitmap = bitmaps[index];
+				for (int word = 0; word < BITMAP_WORDS; word++) {
+					long bits = bitmap[word];
+					while (bits != 0) {
+						if (!procedure.execute(high | (word << 6) | Long.numberOfTrailingZeros(bits))) {
+							return false;
+						}
+						bits &= bits - 1;
+					}
+				}
+			} else {
+				char[] array = arrays[index];
+				for (int i = 0; i < cardinalities[index]; i++) {
+					if (!procedure.execute(high | array[i])) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The approximate size of the bitmap's arrays in bytes
+	 */
+	long getEstimatedSize() {
+		long estimatedSize = keys.length * 2L + cardinalities.length * 4L + (arrays.length + bitmaps.length) * 4L;
+		for (int index = 0; index < size; index++) {
+			estimatedSize += (bitmaps[index] != null) ? BITMAP_WORDS * 8L : arrays[index].length * 2L;
+		}
+		return estimatedSize;
+	}
+
+	private int getContainerIndex(int ordinal) {
+		return Arrays.binarySearch(keys, 0, size, (char) (ordinal >>> 16));
+	}
+
+	private void insertContainer(int index, char key, char[] array, long[] bitmap, int cardinality) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			arrays = Arrays.copyOf(arrays, size * 2);
+			bitmaps = Arrays.copyOf(bitmaps, size * 2);
+			cardinalities = Arrays.copyOf(cardinalities, size * 2);
+		}
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(arrays, index, arrays, index + 1, size - index);
+		System.arraycopy(bitmaps, index, bitmaps, index + 1, size - index);
+		System.arraycopy(cardinalities, index, cardinalities, index + 1, size - index);
+		keys[index] = key;
+		arrays[index] = array;
+		bitmaps[index] = bitmap;
+		cardinalities[index] = cardinality;
+		size++;
+	}
+
+	private void removeContainer(int index) {
+		size--;
+		System.arraycopy(keys, index + 1, keys, index, size - index);
+		System.arraycopy(arrays, index + 1, arrays, index, size - index);
+		System.arraycopy(bitmaps, index + 1, bitmaps, index, size - index);
+		System.arraycopy(cardinalities, index + 1, cardinalities, index, size - index);
+		arrays[size] = null;
+		bitmaps[size] = null;
+	}
+
+	private static char[] toArray(long[] bitmap, int cardinality) {
+		char[] array = new char[Math.max(4, cardinality)];
+		int i = 0;
+		for (int word = 0; word < BITMAP_WORDS; word++) {
+			long bits = bitmap[word];
+			while (bits != 0) {
+				array[i++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+				bits &= bits - 1;
+			}
+		}
+		return array;
+	}
+}
@@ -0,0 +1,427 @@
+package net.networkdowntime.search.histogram;
+
+import gnu.trove.procedure.TIntIntProcedure;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.Arrays;
+
+/**
+ * The doc ids of the search results of one word of a search histogram with their counts, compressed. The postings are sealed in blocks of up
+ * to BLOCK_SIZE doc ids in ascending order, each block written as its number of postings, the width of its counts, the counts and then the
+ * differences between consecutive doc ids as variable length ints. The width of the counts is the fewest bytes that hold the block's largest
+ * count, and no bytes at all when every count is 1, the usual case. Doc ids are dense, so a common word's result costs a byte or two.
+ * 
+ * New postings go into a small sorted pending buffer first. Once it is full it is sealed as a new block when its doc ids all follow the last
+ * sealed doc id, e.g. for results added in order, and otherwise the blocks and the buffer are merged and written again. Adding a doc id that
+ * is already sealed adds a second posting for it to the buffer, the counts of the same doc id are added up by the merge and by the readers.
+ * Removing a sealed doc id adds a tombstone that the readers skip, the tombstones are dropped by the next merge.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+class PostingList {
+
+	// max number of postings in a block and in the pending buffer
+	static final int BLOCK_SIZE = 128;
+
+	private static final byte[] NO_BLOCKS = new byte[0];
+
+	// the sealed blocks
+	private byte[] blocks = NO_BLOCKS;
+	private int blocksLength = 0;
+	private int sealedCount = 0; // number of postings in the blocks
+	private int lastSealed = 0; // the largest sealed doc id
+
+	// postings not sealed yet, sorted by doc id
+	private int[] pendingDocIds = new int[4];
+	private int[] pendingCounts = new int[4];
+	private int pendingSize = 0;
+
+	// sealed doc ids that were removed, null if there are none
+	private TIntHashSet tombstones = null;
+
+	private int totalCount = 0; // sum of the counts of the doc ids
+
+	// the range of the doc ids ever added, how dense they are
+	private int minDocId = Integer.MAX_VALUE;
+	private int maxDocId = Integer.MIN_VALUE;
+
+	/**
+	 * Adds to the count of the doc id.
+	 * 
+	 * @param docId The doc id of the search result, at least 0
+	 * @param count The count to add, at least 1
+	 */
+	void add(int docId, int count) {
+		if (tombstones != null && tombstones.contains(docId)) { // the sealed count was removed and has to be dropped first
+			merge();
+		}
+
+		int index = Arrays.binarySearch(pendingDocIds, 0, pendingSize, docId);
+		if (index >= 0) {
+			pendingCounts[index] += count;
+		} else {
+			if (pendingSize == BLOCK_SIZE) {
+				seal();
+				index = -1;
+			} else if (pendingSize == pendingDocIds.length) {
+				pendingDocIds = Arrays.copyOf(pendingDocIds, pendingSize * 2);
+				pendingCounts = Arrays.copyOf(pendingCounts, pendingSize * 2);
+			}
+			index = -index - 1;
+			System.arraycopy(pendingDocIds, index, pendingDocIds, index + 1, pendingSize - index);
+			System.arraycopy(pendingCounts, index, pendingCounts, index + 1, pendingSize - index);
+			pendingDocIds[index] = docId;
+			pendingCounts[index] = count;
+			pendingSize++;
+		}
+		totalCount += count;
+		minDocId = Math.min(minDocId, docId);
+		maxDocId = Math.max(maxDocId, docId);
+	}
+
+	/**
+	 * Removes the doc id with all of its count.
+	 * 
+	 * @param docId The doc id of the search result
+	 * @return true if the doc id was in the list
+	 */
+	boolean remove(int docId) {
+		int removedCount = 0;
+
+		int index = Arrays.binarySearch(pendingDocIds, 0, pendingSize, docId);
+		if (index >= 0) {
+			removedCount = pendingCounts[index];
+			pendingSize--;
+			System.arraycopy(pendingDocIds, index + 1, pendingDocIds, index, pendingSize - index);
+			System.arraycopy(pendingCounts, index + 1, pendingCounts, index, pendingSize - index);
+		}
+
+		int removedSealedCount = getSealedCount(docId);
+		if (removedSealedCount > 0) {
+			removedCount += removedSealedCount;
+			if (tombstones == null) {
+				tombstones = new TIntHashSet();
+			}
+			tombstones.add(docId);
+			if (tombstones.size() * 4 > sealedCount) {
+				merge();
+			}
+		}
+
+		totalCount -= removedCount;
+		return removedCount > 0;
+	}
+
+	/**
+	 * @return The sum of the counts of the doc ids
+	 */
+	int getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return The number of postings, a doc id added again since the last merge is counted twice
+	 */
+	int getPostingCount() {
+		return sealedCount + pendingSize;
+	}
+
+	/**
+	 * @return The difference between the largest and the smallest doc id ever added
+	 */
+	int getDocIdSpan() {
+		return maxDocId - minDocId;
+	}
+
+	/**
+	 * @return The only doc id of the list, only meaningful if the list's total count is 1
+	 */
+	int getOnlyDocId() {
+		if (pendingSize > 0) {
+			return pendingDocIds[0];
+		}
+
+		final int[] onlyDocId = new int[1];
+		forEachSealed(new TIntIntProcedure() {
+			@Override
+			public boolean execute(int docId, int count) {
+				onlyDocId[0] = docId;
+				return false;
+			}
+		});
+		return onlyDocId[0];
+	}
+
+	/**
+	 * Adds the count of each doc id, times the weight multiplier, to the accumulator.
+	 * 
+	 * @param accumulator The accumulator of the counts
+	 * @param weightMultiplier The multiplier of the counts
+	 */
+	void addTo(ResultAccumulator accumulator, int weightMultiplier) {
+		accumulator.ensureCapacity(getPostingCount());
+		byte[] blocks = this.blocks;
+		TIntHashSet tombstones = this.tombstones;
+		int docId = 0;
+		int pos = 0;
+
+		while (pos < blocksLength) {
+			// block header
+			int size = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = blocks[pos++];
+				size |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					break;
+				}
+			}
+			int width = blocks[pos++];
+			int countPos = pos;
+			pos += size * width;
+
+			for (int i = 0; i < size; i++) {
+				for (int shift = 0, delta = 0;; shift += 7) {
+					byte b = blocks[pos++];
+					delta |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						docId += delta;
+						break;
+					}
+				}
+
+				int count;
+				if (width == 0) {
+					count = 1;
+				} else if (width == 1) {
+					count = blocks[countPos++] & 0xFF;
+				} else {
+					count = readFixed(blocks, countPos, width);
+					countPos += width;
+				}
+
+				if (tombstones == null || !tombstones.contains(docId)) {
+					accumulator.add(docId, count * weightMultiplier);
+				}
+			}
+		}
+
+		for (int i = 0; i < pendingSize; i++) {
+			accumulator.add(pendingDocIds[i], pendingCounts[i] * weightMultiplier);
+		}
+	}
+
+	/**
+	 * Adds the doc ids of the list to the bitmap.
+	 * 
+	 * @param docIds The bitmap to add to
+	 */
+	void addTo(final OrdinalBitmap docIds) {
+		forEachSealed(new TIntIntProcedure() {
+			@Override
+			public boolean execute(int docId, int count) {
+				docIds.add(docId);
+				return true;
+			}
+		});
+
+		for (int i = 0; i < pendingSize; i++) {
+			docIds.add(pendingDocIds[i]);
+		}
+	}
+
+	/**
+	 * Decodes the sealed blocks in doc id order, skipping the tombstones.
+	 * 
+	 * @param procedure Called with each doc id and its count, decoding stops if it returns false
+	 */
+	private void forEachSealed(TIntIntProcedure procedure) {
+		int docId = 0;
+		int pos = 0;
+
+		while (pos < blocksLength) {
+			int size = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = blocks[pos++];
+				size |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					break;
+				}
+			}
+			int width = blocks[pos++];
+			int countPos = pos;
+			pos += size * width;
+
+			for (int i = 0; i < size; i++) {
+				for (int shift = 0, delta = 0;; shift += 7) {
+					byte b = blocks[pos++];
+					delta |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						docId += delta;
+						break;
+					}
+				}
+				int count = (width == 0) ? 1 : readFixed(blocks, countPos + i * width, width);
+
+				if ((tombstones == null || !tombstones.contains(docId)) && !procedure.execute(docId, count)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The count of the doc id in the sealed blocks, 0 if it isn't sealed or was removed
+	 */
+	private int getSealedCount(final int docId) {
+		if (sealedCount == 0 || docId > lastSealed || (tombstones != null && tombstones.contains(docId))) {
+			return 0;
+		}
+
+		final int[] sealedCount = new int[1];
+		forEachSealed(new TIntIntProcedure() {
+			@Override
+			public boolean execute(int sealedDocId, int count) {
+				if (sealedDocId == docId) {
+					sealedCount[0] = count;
+				}
+				return sealedDocId < docId; // sorted, stops once past it
+			}
+		});
+		return sealedCount[0];
+	}
+
+	/**
+	 * Seals the full pending buffer, as a new block if its doc ids follow the sealed doc ids and otherwise by merging.
+	 */
+	private void seal() {
+		if (sealedCount == 0 || pendingDocIds[0] > lastSealed) {
+			writeBlock(pendingDocIds, pendingCounts, 0, pendingSize);
+			pendingSize = 0;
+		} else {
+			merge();
+		}
+	}
+
+	/**
+	 * Writes the sealed postings, without the tombstones, and the pending postings into new blocks.
+	 */
+	private void merge() {
+		final int[] sealedDocIds = new int[sealedCount];
+		final int[] sealedCounts = new int[sealedCount];
+		final int[] sealedSize = new int[1];
+		forEachSealed(new TIntIntProcedure() {
+			@Override
+			public boolean execute(int docId, int count) {
+				sealedDocIds[sealedSize[0]] = docId;
+				sealedCounts[sealedSize[0]++] = count;
+				return true;
+			}
+		});
+
+		// both are sorted, a doc id in both gets the sum of its counts
+		int[] docIds = new int[sealedSize[0] + pendingSize];
+		int[] counts = new int[docIds.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < sealedSize[0] || j < pendingSize) {
+			if (j == pendingSize || (i < sealedSize[0] && sealedDocIds[i] < pendingDocIds[j])) {
+				docIds[size] = sealedDocIds[i];
+				counts[size++] = sealedCounts[i++];
+			} else if (i == sealedSize[0] || pendingDocIds[j] < sealedDocIds[i]) {
+				docIds[size] = pendingDocIds[j];
+				counts[size++] = pendingCounts[j++];
+			} else {
+				docIds[size] = sealedDocIds[i];
+				counts[size++] = sealedCounts[i++] + pendingCounts[j++];
+			}
+		}
+
+		blocks = NO_BLOCKS;
+		blocksLength = 0;
+		sealedCount = 0;
+		tombstones = null;
+		pendingSize = 0;
+		for (int start = 0; start < size; start += BLOCK_SIZE) {
+			writeBlock(docIds, counts, start, Math.min(size, start + BLOCK_SIZE));
+		}
+		if (blocksLength < blocks.length) {
+			blocks = Arrays.copyOf(blocks, blocksLength);
+		}
+	}
+
+	/**
+	 * Appends a block of the sorted postings from index from to index to, which follow the sealed doc ids.
+	 */
+	private void writeBlock(int[] docIds, int[] counts, int from, int to) {
+		int maxCount = 0;
+		for (int i = from; i < to; i++) {
+			maxCount = Math.max(maxCount, counts[i]);
+		}
+		int width = (maxCount == 1) ? 0 : (maxCount <= 0xFF) ? 1 : (maxCount <= 0xFFFF) ? 2 : 4;
+
+		int size = to - from;
+		ensureCapacity(5 + 1 + size * (width + 5));
+		writeVInt(size);
+		blocks[blocksLength++] = (byte) width;
+		for (int i = from; i < to; i++) {
+			for (int b = width - 1; b >= 0; b--) {
+				blocks[blocksLength++] = (byte) (counts[i] >>> (b * 8));
+			}
+		}
+
+		int previous = (sealedCount == 0) ? 0 : lastSealed;
+		for (int i = from; i < to; i++) {
+			writeVInt(docIds[i] - previous);
+			previous = docIds[i];
+		}
+
+		sealedCount += size;
+		lastSealed = previous;
+	}
+
+	private void writeVInt(int value) {
+		while ((value & ~0x7F) != 0) {
+			blocks[blocksLength++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		blocks[blocksLength++] = (byte) value;
+	}
+
+	private void ensureCapacity(int extra) {
+		if (blocksLength + extra > blocks.length) {
+			blocks = Arrays.copyOf(blocks, Math.max(blocksLength + extra, blocks.length + (blocks.length >> 1)));
+		}
+	}
+
+	private static int readFixed(byte[] bytes, int pos, int width) {
+		int value = 0;
+		for (int i = 0; i < width; i++) {
+			value = (value << 8) | (bytes[pos + i] & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * @return The approximate size of the list's arrays in bytes
+	 */
+	long getEstimatedSize() {
+		return blocks.length + (pendingDocIds.length + pendingCounts.length) * 4L + ((tombstones == null) ? 0 : tombstones.size() * 8L);
+	}
+}
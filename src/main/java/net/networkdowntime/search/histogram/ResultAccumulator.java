@@ -0,0 +1,168 @@
+package net.networkdowntime.search.histogram;
+
+import java.util.Arrays;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import net.networkdowntime.search.DocIdMap;
+
+/**
+ * Adds up the counts of a search by doc id. The counts start out in a hash map, so a search touching a few postings costs the same no matter
+ * how many doc ids the engine has. Once more than 1 in DENSE_FRACTION of the doc ids have a count, e.g. from a dense word's postings, they
+ * are moved to a plain array indexed by doc id instead. The doc ids that got a count are listed as well, so turning the array into results
+ * only visits those.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+class ResultAccumulator {
+
+	// the counts move to an array once more than 1 in this many doc ids have one
+	static final int DENSE_FRACTION = 32;
+
+	private final int docIdCount;
+	private TIntIntHashMap sparseCounts = new TIntIntHashMap(); // count of each doc id with one, null once the counts are dense
+	private int[] counts = null; // count of each doc id once dense
+	private int[] docIds = null; // the doc ids with a count, in the order they got it, once dense
+	private int size = 0;
+
+	/**
+	 * @param docIdCount The number of doc ids, all doc ids added have to be less than it
+	 */
+	ResultAccumulator(int docIdCount) {
+		this.docIdCount = docIdCount;
+	}
+
+	/**
+	 * Prepares for adding the counts of more doc ids, moving the counts to the array up front if they would be dense afterwards or growing
+	 * the hash map otherwise.
+	 * 
+	 * @param resultCount The number of doc ids about to be added
+	 */
+	void ensureCapacity(int resultCount) {
+		if (counts != null) {
+			return;
+		} else if (isDense(sparseCounts.size() + resultCount)) {
+			toDense();
+		} else {
+			sparseCounts.ensureCapacity(resultCount);
+		}
+	}
+
+	/**
+	 * @param docId The doc id of a search result
+	 * @param count The count to add to the result
+	 */
+	void add(int docId, int count) {
+		if (count == 0) {
+			return;
+		} else if (counts == null) {
+			sparseCounts.adjustOrPutValue(docId, count, count);
+			if (isDense(sparseCounts.size())) {
+				toDense();
+			}
+			return;
+		} else if (counts[docId] == 0) {
+			if (size == docIds.length) {
+				docIds = Arrays.copyOf(docIds, size * 2);
+			}
+			docIds[size++] = docId;
+		}
+		counts[docId] += count;
+	}
+
+	/**
+	 * @param docId The doc id of a search result
+	 * @return The count of the result
+	 */
+	int getCount(int docId) {
+		return (counts == null) ? sparseCounts.get(docId) : counts[docId];
+	}
+
+	/**
+	 * @return The number of results with a count
+	 */
+	int size() {
+		return (counts == null) ? sparseCounts.size() : size;
+	}
+
+	/**
+	 * @return True if the counts are kept in the array
+	 */
+	boolean isDense() {
+		return counts != null;
+	}
+
+	/**
+	 * @param docIdMap The map the doc ids are from
+	 * @return The Long results with their counts
+	 */
+	TLongIntHashMap toLongResults(DocIdMap docIdMap) {
+		TLongIntHashMap results = new TLongIntHashMap(Math.max(16, size() * 2));
+		if (counts == null) {
+			for (TIntIntIterator iter = sparseCounts.iterator(); iter.hasNext();) {
+				iter.advance();
+				results.put(docIdMap.getLongResult(iter.key()), iter.value());
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				results.put(docIdMap.getLongResult(docIds[i]), counts[docIds[i]]);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @param docIdMap The map the doc ids are from
+	 * @return The String results with their counts
+	 */
+	TObjectIntHashMap<String> toStringResults(DocIdMap docIdMap) {
+		TObjectIntHashMap<String> results = new TObjectIntHashMap<String>(Math.max(16, size() * 2));
+		if (counts == null) {
+			for (TIntIntIterator iter = sparseCounts.iterator(); iter.hasNext();) {
+				iter.advance();
+				results.put(docIdMap.getStringResult(iter.key()), iter.value());
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				results.put(docIdMap.getStringResult(docIds[i]), counts[docIds[i]]);
+			}
+		}
+		return results;
+	}
+
+	private boolean isDense(int resultCount) {
+		return resultCount > docIdCount / DENSE_FRACTION;
+	}
+
+	/**
+	 * Moves the counts from the hash map to the array.
+	 */
+	private void toDense() {
+		counts = new int[docIdCount];
+		docIds = new int[Math.max(16, sparseCounts.size() * 2)];
+		for (TIntIntIterator iter = sparseCounts.iterator(); iter.hasNext();) {
+			iter.advance();
+			counts[iter.key()] = iter.value();
+			docIds[size++] = iter.key();
+		}
+		sparseCounts = null;
+	}
+}
@@ -1,19 +1,24 @@
 package net.networkdowntime.search.histogram;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 
 import gnu.trove.map.hash.TIntIntHashMap;
+import net.networkdowntime.search.TermDictionary;
 
 /**
  * Single word/string histogram.
  * 
- * This implementation stores the hashcode of the word and a count based on how many times it has been added/removed.
+ * This implementation stores the term id of the word and a count based on how many times it has been added/removed.
  * Methods are static to reduce the memory footprint of the class.  The rational behind this is to keep the unigram histogram
  * suitable for embedding within say a 2-gram histogram. 
+ * 
+ * The term ids come from a TermDictionary that can be shared with the tries and the other histograms.  A dense histogram keeps
+ * the counts in an array indexed by term id, a sparse histogram (e.g. the second words of a digram) keeps them in a hash map.
  *  
  * This software is licensed under the MIT license
  * Copyright (c) 2015 Ryan Wiles
@@ -35,10 +40,50 @@ import gnu.trove.map.hash.TIntIntHashMap;
  */
 public class UnigramHistogram {
 
-	@SuppressWarnings("unchecked")
-	private Tuple<String>[] mostCommonWords = new Tuple[15];
+	// number of most common words kept
+	static final int MOST_COMMON_WORDS_SIZE = 15;
+
+	// the most common words, highest count first and then alphabetically, updated in place as the counts change
+	private final int[] mostCommonTermIds = new int[MOST_COMMON_WORDS_SIZE];
+	private final int[] mostCommonCounts = new int[MOST_COMMON_WORDS_SIZE];
+	private int mostCommonSize = 0;
+
+	private final TermDictionary termDictionary;
+
+	// counts by term id, only one of them is used depending on whether the histogram is dense
+	private int[] counts = null;
+	private TIntIntHashMap sparseCounts = null;
+
+	private int size = 0; // number of words with a count
+
+	/**
+	 * Creates a dense histogram with its own term dictionary
+	 */
+	public UnigramHistogram() {
+		this(new TermDictionary());
+	}
 
-	private TIntIntHashMap histogram = new TIntIntHashMap();
+	/**
+	 * Creates a dense histogram using the given term dictionary
+	 * 
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 */
+	public UnigramHistogram(TermDictionary termDictionary) {
+		this(termDictionary, true);
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 * @param isDense Whether to keep the counts in an array indexed by term id or in a hash map
+	 */
+	UnigramHistogram(TermDictionary termDictionary, boolean isDense) {
+		this.termDictionary = termDictionary;
+		if (isDense) {
+			counts = new int[16];
+		} else {
+			sparseCounts = new TIntIntHashMap();
+		}
+	}
 
 	/**
 	 * Returns the most common words stored in the histogram.
@@ -46,8 +91,13 @@ public class UnigramHistogram {
 	 * @param unigram Instance of the histogram
 	 * @return A Tuple array containing the most common words
 	 */
+	@SuppressWarnings("unchecked")
 	public static Tuple<String>[] getMostCommonWords(UnigramHistogram unigram) {
-		return unigram.mostCommonWords;
+		Tuple<String>[] mostCommonWords = new Tuple[unigram.mostCommonSize];
+		for (int i = 0; i < unigram.mostCommonSize; i++) {
+			mostCommonWords[i] = new Tuple<String>(unigram.termDictionary.getTerm(unigram.mostCommonTermIds[i]), unigram.mostCommonCounts[i]);
+		}
+		return mostCommonWords;
 	}
 
 	/**
@@ -57,15 +107,13 @@ public class UnigramHistogram {
 	 * @param word The word to be added
 	 */
 	public static void add(UnigramHistogram unigram, String word) {
-		Integer count = unigram.histogram.get(word.hashCode());
-		if (unigram.histogram.getNoEntryValue() == count) {
-			count = 1;
-		} else {
-			count = count + 1;
+		int termId = unigram.termDictionary.getOrAddTermId(word);
+		int count = getOccurrenceCount(unigram, termId) + 1;
+		if (count == 1) {
+			unigram.size++;
 		}
-		unigram.histogram.put(word.hashCode(), count);
-
-		unigram.mostCommonWords = Tuple.updateSortTupleArray(unigram.mostCommonWords, word, count, 15);
+		setCount(unigram, termId, count);
+		updateMostCommonWords(unigram, termId, count);
 	}
 
 	/**
@@ -76,20 +124,80 @@ public class UnigramHistogram {
 	 * @return The number of elements left in the histogram
 	 */
 	public static int remove(UnigramHistogram unigram, String word) {
-		int wordKey = word.hashCode();
+		int termId = unigram.termDictionary.getTermId(word);
+		int count = getOccurrenceCount(unigram, termId);
+
+		if (count <= 1) {
+			if (count == 1) {
+				setCount(unigram, termId, 0);
+				updateMostCommonWords(unigram, termId, 0);
+				unigram.size--;
+			}
+		} else {
+			count = count - 1;
+			setCount(unigram, termId, count);
+			updateMostCommonWords(unigram, termId, count);
+		}
+		return unigram.size;
+	}
+
+	/**
+	 * Moves the word to its place in the most common words for its new count, without allocating. A word that isn't kept is only added
+	 * if its count is ahead of the last word kept, and a word whose count drops to 0 is dropped.
+	 * 
+	 * @param unigram Instance of the histogram
+	 * @param termId The term id of the word whose count changed
+	 * @param count The new count of the word
+	 */
+	private static void updateMostCommonWords(UnigramHistogram unigram, int termId, int count) {
+		int[] termIds = unigram.mostCommonTermIds;
+		int[] counts = unigram.mostCommonCounts;
 
-		Integer count = unigram.histogram.get(wordKey);
+		int index = 0;
+		while (index < unigram.mostCommonSize && termIds[index] != termId) {
+			index++;
+		}
 
-		if (count != null) {
-			if (count <= 1) {
-				unigram.histogram.remove(wordKey);
+		if (index == unigram.mostCommonSize) { // not kept
+			if (count == 0) {
+				return;
+			} else if (unigram.mostCommonSize < MOST_COMMON_WORDS_SIZE) {
+				unigram.mostCommonSize++;
+			} else if (compare(unigram, termId, count, termIds[index - 1], counts[index - 1]) < 0) {
+				index--; // replaces the last word
 			} else {
-				count = count - 1;
-				unigram.histogram.put(wordKey, count);
-				unigram.mostCommonWords = Tuple.updateSortTupleArray(unigram.mostCommonWords, word, count, 15);
+				return;
 			}
+		} else if (count == 0) {
+			unigram.mostCommonSize--;
+			System.arraycopy(termIds, index + 1, termIds, index, unigram.mostCommonSize - index);
+			System.arraycopy(counts, index + 1, counts, index, unigram.mostCommonSize - index);
+			return;
+		}
+
+		// shift the words the word passes, towards whichever end it moves
+		while (index > 0 && compare(unigram, termId, count, termIds[index - 1], counts[index - 1]) < 0) {
+			termIds[index] = termIds[index - 1];
+			counts[index] = counts[index - 1];
+			index--;
+		}
+		while (index + 1 < unigram.mostCommonSize && compare(unigram, termId, count, termIds[index + 1], counts[index + 1]) > 0) {
+			termIds[index] = termIds[index + 1];
+			counts[index] = counts[index + 1];
+			index++;
 		}
-		return unigram.histogram.size();
+		termIds[index] = termId;
+		counts[index] = count;
+	}
+
+	/**
+	 * Same ordering as Tuple.TupleComparator, highest count first and then alphabetically.
+	 */
+	private static int compare(UnigramHistogram unigram, int termId1, int count1, int termId2, int count2) {
+		if (count1 != count2) {
+			return (count1 > count2) ? -1 : 1;
+		}
+		return unigram.termDictionary.getTerm(termId1).compareTo(unigram.termDictionary.getTerm(termId2));
 	}
 
 	/**
@@ -99,8 +207,7 @@ public class UnigramHistogram {
 	 * @return true/false based on whether the word was found
 	 */
 	public static boolean contains(UnigramHistogram unigram, String word) {
-		int wordKey = word.hashCode();
-		return unigram.histogram.containsKey(wordKey);
+		return getOccurrenceCount(unigram, word) > 0;
 	}
 
 	/**
@@ -111,15 +218,36 @@ public class UnigramHistogram {
 	 * @return The number of occurrences of the word or 0 if it is not in the histogram
 	 */
 	public static int getOccurrenceCount(UnigramHistogram unigram, String word) {
-		int wordKey = word.hashCode();
-
-		Integer count = unigram.histogram.get(wordKey);
+		return getOccurrenceCount(unigram, unigram.termDictionary.getTermId(word));
+	}
 
-		if (unigram.histogram.getNoEntryValue() == count) {
-			count = 0;
+	/**
+	 * Gets the histogram occurrence count of the word with the term id.
+	 * 
+	 * @param unigram Instance of the histogram
+	 * @param termId The term id of the word in the histogram's term dictionary
+	 * @return The number of occurrences of the word or 0 if it is not in the histogram
+	 */
+	public static int getOccurrenceCount(UnigramHistogram unigram, int termId) {
+		if (termId == TermDictionary.NO_TERM_ID) {
+			return 0;
+		} else if (unigram.counts != null) {
+			return (termId < unigram.counts.length) ? unigram.counts[termId] : 0;
 		}
+		return unigram.sparseCounts.get(termId);
+	}
 
-		return count;
+	private static void setCount(UnigramHistogram unigram, int termId, int count) {
+		if (unigram.counts != null) {
+			if (termId >= unigram.counts.length) {
+				unigram.counts = Arrays.copyOf(unigram.counts, Math.max(termId + 1, unigram.counts.length * 2));
+			}
+			unigram.counts[termId] = count;
+		} else if (count == 0) {
+			unigram.sparseCounts.remove(termId);
+		} else {
+			unigram.sparseCounts.put(termId, count);
+		}
 	}
 
 	/**
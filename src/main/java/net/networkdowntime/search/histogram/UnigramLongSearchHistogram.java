@@ -1,5 +1,8 @@
 package net.networkdowntime.search.histogram;
 
+import net.networkdowntime.search.DocIdMap;
+import net.networkdowntime.search.TermDictionary;
+
 /**
  * Extends the UnigramSearchHistogram and provides public methods for add and remove.
  * 
@@ -23,6 +26,28 @@ package net.networkdowntime.search.histogram;
  */
 public class UnigramLongSearchHistogram extends UnigramSearchHistogram {
 
+	/**
+	 * Creates a search histogram with its own term dictionary
+	 */
+	public UnigramLongSearchHistogram() {
+		super();
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 */
+	public UnigramLongSearchHistogram(TermDictionary termDictionary) {
+		this(termDictionary, new DocIdMap());
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 * @param docIdMap The map to get the doc ids of the results from, can be shared with the other histograms
+	 */
+	public UnigramLongSearchHistogram(TermDictionary termDictionary, DocIdMap docIdMap) {
+		super(termDictionary, docIdMap);
+	}
+
 	/**
 	 * Adds a word along with it's result to the search histogram
 	 * 
@@ -30,9 +55,9 @@ public class UnigramLongSearchHistogram extends UnigramSearchHistogram {
 	 * @param result The search result to associate with the word
 	 */
 	public void add(String word, Long result) {
-		int wordKey = word.hashCode();
+		int wordKey = termDictionary.getOrAddTermId(word);
 
-		addInternal(this, wordKey, result);
+		addInternal(this, wordKey, docIdMap.getOrAddDocId(result));
 	}
 
 	/**
@@ -42,9 +67,12 @@ public class UnigramLongSearchHistogram extends UnigramSearchHistogram {
 	 * @param result The result to be removed.
 	 */
 	public void remove(String word, Long result) {
-		int wordKey = word.hashCode();
+		int wordKey = termDictionary.getTermId(word);
+		int docId = docIdMap.getDocId(result);
 
-		removeInternal(this, wordKey, result);
+		if (docId != DocIdMap.NO_DOC_ID) {
+			removeInternal(this, wordKey, docId);
+		}
 	}
 
 }
\ No newline at end of file
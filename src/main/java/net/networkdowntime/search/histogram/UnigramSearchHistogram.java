@@ -1,9 +1,11 @@
 package net.networkdowntime.search.histogram;
 
-import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.map.hash.TLongByteHashMap;
 import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.procedure.TIntProcedure;
+import net.networkdowntime.search.DocIdMap;
+import net.networkdowntime.search.TermDictionary;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -17,19 +19,30 @@ import org.apache.logging.log4j.Logger;
  * The search histogram tracks the association between a key word, it's search results,
  * and the occurrence count/weight of the result.
  * 
- * This implementation stores the hashcode of the word and a count based on how
- * many times it has been added/removed. Methods are static to reduce the memory
+ * This implementation stores the term id of the word and a count based on how
+ * many times it has been added/removed.  The term ids come from a TermDictionary
+ * and the results are stored as int doc ids from a DocIdMap, both can be shared
+ * with the other histograms. Methods are static to reduce the memory
  * footprint of the class.
  * 
- * So there are two different key data structures in the Search Histogram. 
+ * So there are three different key data structures in the Search Histogram. 
  * 	1. Single Result Map - This is an optimization to reduce overhead for sparsely used
  * 		words that are indexed. Basically, if a word only matches one result then it
- * 		only incurs the penalty of an extra int and long value being stored. Words
+ * 		only incurs the penalty of an extra two int values being stored. Words
  * 		that show up in this data structure have an implied count of 1.
  * 	2. Multi-Result Map - Words that have multiple search results get stored here.
  * 		This applies to counts of 2 for the same word or matches more than one search
- * 		result.  The key is the word's hashcode and the value is a histogram hashmap
- * 		containing the search result and it's histogram count.
+ * 		result.  The key is the word's term id and the value is a compressed PostingList
+ * 		of the doc ids and their histogram counts, a common word's results
+ * 		cost a byte or two each and are decoded in one pass by getSearchResults.
+ * 	3. Dense Result Map - Words with at least DENSE_MIN_POSTINGS results that are at least
+ * 		1 in DENSE_FRACTION of the range of doc ids they span, e.g. a word in most
+ * 		documents, are moved here from the multi-result map.  Their doc ids are kept
+ * 		as a BitmapPostingList, the results containing all of a query's words are found
+ * 		with bitmap ANDs.  A word stays here until it has only one result left.
+ * 
+ * The counts of a search are added up in a ResultAccumulator by doc id, a hash map until the search touches enough of the doc ids
+ * for an array indexed by doc id to be cheaper, e.g. when a dense word's postings are added.
  * 
  * This software is licensed under the MIT license
  * Copyright (c) 2015 Ryan Wiles
@@ -52,105 +65,149 @@ import org.apache.logging.log4j.Logger;
 class UnigramSearchHistogram {
 	private static final Logger LOGGER = LogManager.getLogger(UnigramSearchHistogram.class.getName());
 
-	protected TIntObjectHashMap<TLongByteHashMap> multiResultMap = new TIntObjectHashMap<TLongByteHashMap>();
-	protected TIntLongHashMap singleResultMap = new TIntLongHashMap();
+	protected TIntObjectHashMap<PostingList> multiResultMap = new TIntObjectHashMap<PostingList>();
+	protected TIntIntHashMap singleResultMap = new TIntIntHashMap();
+	protected TIntObjectHashMap<BitmapPostingList> denseResultMap = new TIntObjectHashMap<BitmapPostingList>();
+
+	// number of results of a word that moves it to the dense result map, if they are at least 1 in DENSE_FRACTION of the doc ids they span
+	static final int DENSE_MIN_POSTINGS = 4096;
+	static final int DENSE_FRACTION = 8;
+
+	protected final TermDictionary termDictionary;
+	protected final DocIdMap docIdMap;
+
+	/**
+	 * Creates a search histogram with its own term dictionary and doc id map
+	 */
+	UnigramSearchHistogram() {
+		this(new TermDictionary(), new DocIdMap());
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 * @param docIdMap The map to get the doc ids of the results from
+	 */
+	UnigramSearchHistogram(TermDictionary termDictionary, DocIdMap docIdMap) {
+		this.termDictionary = termDictionary;
+		this.docIdMap = docIdMap;
+	}
 
 	/**
 	 * Get the total search weight from the multi-result hashmap.
 	 * 
 	 * @param UnigramSearchHistogram The histogram to perform the action on
-	 * @param word Key Hash key of the word
+	 * @param wordKey Term id of the word
 	 * @return The total weight of the word in the multi-result map
 	 */
 	protected static int getMultiResultCount(UnigramSearchHistogram histogram, int wordKey) {
-		TLongByteHashMap hashMap = histogram.multiResultMap.get(wordKey);
-		int count = 0;
-
-		if (hashMap != null) {
-			for (byte resultCount : hashMap.values()) {
-				count += resultCount;
-			}
+		PostingList postings = histogram.multiResultMap.get(wordKey);
+		if (postings != null) {
+			return postings.getTotalCount();
 		}
-		return count;
+		BitmapPostingList densePostings = histogram.denseResultMap.get(wordKey);
+		return (densePostings == null) ? 0 : densePostings.getTotalCount();
 	}
 
 	/**
 	 * Adds a word along with it's result to the search histogram
 	 * 
 	 * @param UnigramSearchHistogram The histogram to perform the action on
-	 * @param word Key Hash key of the word 
-	 * @param resultKey The search result to associate with the word
+	 * @param wordKey Term id of the word 
+	 * @param docId The doc id of the search result to associate with the word
 	 */
-	protected static void addInternal(UnigramSearchHistogram histogram, int wordKey, Long resultKey) {
-		TLongByteHashMap hashMap = histogram.multiResultMap.get(wordKey);
+	protected static void addInternal(UnigramSearchHistogram histogram, int wordKey, int docId) {
+		BitmapPostingList densePostings = histogram.denseResultMap.get(wordKey);
+		if (densePostings != null) {
+			densePostings.add(docId, 1);
+			return;
+		}
+
+		PostingList postings = histogram.multiResultMap.get(wordKey);
 
-		if (hashMap == null) { // not more than 1 result already
+		if (postings == null) { // not more than 1 result already
 
 			if (!histogram.singleResultMap.contains(wordKey)) { // no matches, put result into the single result map
-				histogram.singleResultMap.put(wordKey, resultKey);
+				histogram.singleResultMap.put(wordKey, docId);
 			} else { // one result already
-				hashMap = new TLongByteHashMap();
-				histogram.multiResultMap.put(wordKey, hashMap);
+				postings = new PostingList();
+				histogram.multiResultMap.put(wordKey, postings);
 
 				// move match from the single result map to the multi result map
-				long originalResult = histogram.singleResultMap.remove(wordKey);
-
-				if (originalResult == resultKey) { // we now have a count of two for the original result
-					hashMap.put(originalResult, (byte) 2);
-				} else {
-					hashMap.put(originalResult, (byte) 1);
-					hashMap.put(resultKey, (byte) 1);
-				}
+				postings.add(histogram.singleResultMap.remove(wordKey), 1);
+				postings.add(docId, 1);
 			}
 
 		} else { // more than 1 result already
-			hashMap = histogram.multiResultMap.get(wordKey);
-			if (hashMap.contains(resultKey)) {
-				hashMap.put(resultKey, (byte) (hashMap.get(resultKey) + 1));
-			} else {
-				hashMap.put(resultKey, (byte) 1);
+			postings.add(docId, 1);
+
+			int postingCount = postings.getPostingCount();
+			if (postingCount >= DENSE_MIN_POSTINGS && postings.getDocIdSpan() <= (long) postingCount * DENSE_FRACTION) {
+				toDense(histogram, wordKey, postings);
 			}
 		}
 	}
 
+	/**
+	 * Moves a word's results from the multi-result map to the dense result map.
+	 */
+	private static void toDense(UnigramSearchHistogram histogram, int wordKey, PostingList postings) {
+		OrdinalBitmap docIds = new OrdinalBitmap();
+		postings.addTo(docIds);
+		final ResultAccumulator counts = new ResultAccumulator(histogram.docIdMap.size());
+		postings.addTo(counts, 1);
+
+		final BitmapPostingList densePostings = new BitmapPostingList();
+		docIds.forEach(new TIntProcedure() { // in doc id order, so the dense postings are appended to
+			@Override
+			public boolean execute(int docId) {
+				densePostings.add(docId, counts.getCount(docId));
+				return true;
+			}
+		});
+
+		histogram.multiResultMap.remove(wordKey);
+		histogram.denseResultMap.put(wordKey, densePostings);
+	}
+
 	/**
 	 * Removes a word/result from the search histogram.  If the word is associated with multiple results, they will be left alone.
 	 * 
 	 * @param UnigramSearchHistogram The histogram to perform the action on
-	 * @param word Key Hash key of the word
-	 * @param resultKey The result to be removed.
+	 * @param wordKey Term id of the word
+	 * @param docId The doc id of the result to be removed.
 	 * @return Returns the total number of words in this histogram after removal
 	 */
-	protected static int removeInternal(UnigramSearchHistogram histogram, int wordKey, Long resultKey) {
-		int count = 0;
-
-		TLongByteHashMap hashMap = histogram.multiResultMap.get(wordKey);
-
-		if (hashMap == null) { // not more than 1 result already
-			if (histogram.singleResultMap.contains(wordKey)) { // one result
+	protected static int removeInternal(UnigramSearchHistogram histogram, int wordKey, int docId) {
+		PostingList postings = histogram.multiResultMap.get(wordKey);
+		BitmapPostingList densePostings = histogram.denseResultMap.get(wordKey);
+
+		if (densePostings != null) {
+			densePostings.remove(docId);
+
+			int count = densePostings.getTotalCount();
+			if (count == 1) { // the remaining result is moved to the single result map
+				histogram.singleResultMap.put(wordKey, densePostings.getFirstDocId());
+				histogram.denseResultMap.remove(wordKey);
+			} else if (count == 0) {
+				histogram.denseResultMap.remove(wordKey);
+			}
+		} else if (postings == null) { // not more than 1 result already
+			if (histogram.singleResultMap.contains(wordKey) && histogram.singleResultMap.get(wordKey) == docId) { // the one result
 				histogram.singleResultMap.remove(wordKey); // now no results
 			}
 		} else { // more than 1 result already
-			if (hashMap.contains(resultKey)) {
-				hashMap.remove(resultKey);
+			postings.remove(docId);
+
+			int count = postings.getTotalCount();
+			if (count == 1) { // the remaining result is moved to the single result map
+				histogram.singleResultMap.put(wordKey, postings.getOnlyDocId());
+				histogram.multiResultMap.remove(wordKey);
+			} else if (count == 0) {
+				histogram.multiResultMap.remove(wordKey);
 			}
-
-			count = UnigramSearchHistogram.getMultiResultCount(histogram, wordKey);
-
-			if (count == 1) {
-				histogram.singleResultMap.put(wordKey, resultKey);
-				count = 1;
-			}
-		}
-
-		count = UnigramSearchHistogram.getOccuranceCount(histogram, wordKey);
-
-		if (count == 1) {
-			histogram.singleResultMap.put(wordKey, resultKey); // now one result
-			histogram.multiResultMap.remove(wordKey);
 		}
 
-		return histogram.singleResultMap.size() + histogram.multiResultMap.size();
+		return histogram.singleResultMap.size() + histogram.multiResultMap.size() + histogram.denseResultMap.size();
 	}
 
 	/**
@@ -161,15 +218,15 @@ class UnigramSearchHistogram {
 	 * @return true/false based on whether the word was found
 	 */
 	protected static boolean contains(UnigramSearchHistogram histogram, String word) {
-		int wordKey = word.hashCode();
-		return (histogram.singleResultMap.contains(wordKey)) || (histogram.multiResultMap.get(wordKey) != null);
+		int wordKey = histogram.termDictionary.getTermId(word);
+		return (histogram.singleResultMap.contains(wordKey)) || (histogram.multiResultMap.get(wordKey) != null) || (histogram.denseResultMap.get(wordKey) != null);
 	}
 
 	/**
 	 * Gets the total occurrence count of the word in the search histogram
 	 * 
 	 * @param UnigramSearchHistogram The histogram to perform the action on
-	 * @param word Key Hash key of the word 
+	 * @param wordKey Term id of the word 
 	 * @return The total occurrence count of the word or 0 if not found
 	 */
 	protected static int getOccuranceCount(UnigramSearchHistogram histogram, int wordKey) {
@@ -198,7 +255,7 @@ class UnigramSearchHistogram {
 		for (String word : words) {
 			Tuple<String> t = new Tuple<String>();
 			t.word = word;
-			t.count = UnigramSearchHistogram.getOccuranceCount(histogram, word.hashCode());
+			t.count = UnigramSearchHistogram.getOccuranceCount(histogram, histogram.termDictionary.getTermId(word));
 			if (t.count > 0) {
 				orderedResults.add(t);
 			}
@@ -222,16 +279,25 @@ class UnigramSearchHistogram {
 	/**
 	 * Get the search results by the words submitted, aggregating each word's resulting ids and ordering those resulting id's by result weight.
 	 * 
-	 * @param UnigramSearchHistogram The histogram to perform the action on
+	 * @param UnigramSearchHistogram The histogram of Long results to perform the action on
 	 * @param searchTerm The set of words to get the search results for
-	 * @param weightMultiplier Adjusts the weight by a scalar multiplier
-	 * @param limit Max number of results to return
 	 *  
-	 * @return A set containing the matched search results up to the specified limit
+	 * @return The matched search results with their weights
 	 */
 	public static TLongIntHashMap getSearchResults(UnigramSearchHistogram histogram, Set<String> searchTerm) {
+		return getResultsRaw(histogram, searchTerm).toLongResults(histogram.docIdMap);
+	}
+
+	/**
+	 * Adds up the counts of each word's results by doc id.
+	 * 
+	 * @param UnigramSearchHistogram The histogram to perform the action on
+	 * @param searchTerm The set of words to get the search results for
+	 * @return The counts of the matched search results
+	 */
+	static ResultAccumulator getResultsRaw(UnigramSearchHistogram histogram, Set<String> searchTerm) {
 
-		TLongIntHashMap results = new TLongIntHashMap();
+		ResultAccumulator results = new ResultAccumulator(histogram.docIdMap.size());
 
 		for (String term : searchTerm) {
 			String[] words;
@@ -242,29 +308,7 @@ class UnigramSearchHistogram {
 			}
 
 			for (String word : words) {
-				LOGGER.debug("Looking for word: " + word);
-
-				if (word != null) {
-					int wordKey = word.hashCode();
-					TLongByteHashMap hashMap = histogram.multiResultMap.get(wordKey);
-
-					if (hashMap == null) { // 0 or 1 result
-
-						if (histogram.singleResultMap.contains(wordKey)) { // 1 result
-							long result = histogram.singleResultMap.get(wordKey);
-
-							SearchHistogramUtil.addResultToMap(results, result, 1);
-						}
-					} else { // more than one result
-						long[] hashMapResults = hashMap.keys();
-						byte[] hashMapCounts = hashMap.values();
-
-						for (int i = 0; i < hashMapResults.length; i++) {
-							long result = hashMapResults[i];
-							SearchHistogramUtil.addResultToMap(results, result, hashMapCounts[i]);
-						}
-					}
-				}
+				getSearchResults(histogram, results, word, 1);
 			}
 		}
 
@@ -275,38 +319,30 @@ class UnigramSearchHistogram {
 	 * For a given word, checks the histogram and if the word is in the histogram adds it's counts to the results
 	 * 
 	 * @param histogram The histogram to search within or null
-	 * @param results The map to add the results to
+	 * @param results The accumulator to add the results to
 	 * @param word The word to search the histogram for
 	 * @param weightMultiplier How much additional weight to apply to the match rank
-	 * @return The modified results map
 	 */
-	static TLongIntHashMap getSearchResults(UnigramSearchHistogram histogram, TLongIntHashMap results, String word, int weightMultiplier) {
+	static void getSearchResults(UnigramSearchHistogram histogram, ResultAccumulator results, String word, int weightMultiplier) {
 
 		LOGGER.debug("Looking for word: " + word);
 
 		if (histogram != null && word != null) {
-			int wordKey = word.hashCode();
-			TLongByteHashMap hashMap = histogram.multiResultMap.get(wordKey);
+			int wordKey = histogram.termDictionary.getTermId(word);
+			PostingList postings = histogram.multiResultMap.get(wordKey);
+			BitmapPostingList densePostings = histogram.denseResultMap.get(wordKey);
 
-			if (hashMap == null) { // 0 or 1 result
+			if (densePostings != null) { // many results
+				densePostings.addTo(results, weightMultiplier);
+			} else if (postings == null) { // 0 or 1 result
 
 				if (histogram.singleResultMap.contains(wordKey)) { // 1 result
-					long result = histogram.singleResultMap.get(wordKey);
-
-					SearchHistogramUtil.addResultToMap(results, result, weightMultiplier);
+					results.add(histogram.singleResultMap.get(wordKey), weightMultiplier);
 				}
 			} else { // more than one result
-				long[] hashMapResults = hashMap.keys();
-				byte[] hashMapCounts = hashMap.values();
-
-				for (int i = 0; i < hashMapResults.length; i++) {
-					long result = hashMapResults[i];
-					SearchHistogramUtil.addResultToMap(results, result, hashMapCounts[i] * weightMultiplier);
-				}
+				postings.addTo(results, weightMultiplier);
 			}
 		}
-
-		return results;
 	}
 
 }
\ No newline at end of file
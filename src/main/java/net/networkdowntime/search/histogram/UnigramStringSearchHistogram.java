@@ -2,9 +2,9 @@ package net.networkdowntime.search.histogram;
 
 import java.util.Set;
 
-import gnu.trove.map.hash.TIntObjectHashMap;
-import gnu.trove.map.hash.TLongIntHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import net.networkdowntime.search.DocIdMap;
+import net.networkdowntime.search.TermDictionary;
 
 /**
  * Wrapper around UnigramSearchHistogram to provide String lookups for search results.
@@ -29,7 +29,27 @@ import gnu.trove.map.hash.TObjectIntHashMap;
  */
 public class UnigramStringSearchHistogram extends UnigramSearchHistogram {
 
-	private TIntObjectHashMap<String> stringLookupMap = new TIntObjectHashMap<String>();
+	/**
+	 * Creates a search histogram with its own term dictionary
+	 */
+	public UnigramStringSearchHistogram() {
+		super();
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 */
+	public UnigramStringSearchHistogram(TermDictionary termDictionary) {
+		this(termDictionary, new DocIdMap());
+	}
+
+	/**
+	 * @param termDictionary The dictionary to get the term ids of the words from
+	 * @param docIdMap The map to get the doc ids of the results from, can be shared with the other histograms
+	 */
+	public UnigramStringSearchHistogram(TermDictionary termDictionary, DocIdMap docIdMap) {
+		super(termDictionary, docIdMap);
+	}
 
 	/**
 	 * Adds a word along with it's result to the search histogram
@@ -38,14 +58,9 @@ public class UnigramStringSearchHistogram extends UnigramSearchHistogram {
 	 * @param result The search result to associate with the word
 	 */
 	public void add(String word, String result) {
-		int wordKey = word.hashCode();
-		int resultKey = result.hashCode();
-
-		if (!stringLookupMap.containsKey(resultKey)) {
-			stringLookupMap.put(resultKey, result);
-		}
+		int wordKey = termDictionary.getOrAddTermId(word);
 
-		addInternal(this, wordKey, (long) resultKey);
+		addInternal(this, wordKey, docIdMap.getOrAddDocId(result));
 	}
 
 	/**
@@ -55,14 +70,12 @@ public class UnigramStringSearchHistogram extends UnigramSearchHistogram {
 	 * @param result The result to be removed.
 	 */
 	public void remove(String word, String result) {
-		int wordKey = word.hashCode();
-		int resultKey = result.hashCode();
+		int wordKey = termDictionary.getTermId(word);
+		int docId = docIdMap.getDocId(result);
 
-		if (!multiResultMap.containsKey(wordKey)) {
-			stringLookupMap.remove(resultKey);
+		if (docId != DocIdMap.NO_DOC_ID) {
+			removeInternal(this, wordKey, docId);
 		}
-
-		removeInternal(this, wordKey, (long) resultKey);
 	}
 
 	/**
@@ -74,15 +87,6 @@ public class UnigramStringSearchHistogram extends UnigramSearchHistogram {
 	 */
 	public TObjectIntHashMap<String> getSearchResults(Set<String> words) {
 
-		TLongIntHashMap longResults = super.getSearchResults(this, words);
-		TObjectIntHashMap<String> stringResults = new TObjectIntHashMap<String>();
-
-		long[] longResultKeys = longResults.keys();
-		int[] longResultValues = longResults.values();
-
-		for (int i = 0; i < longResultKeys.length; i++) {
-			stringResults.put(stringLookupMap.get(((Long) longResultKeys[i]).intValue()), longResultValues[i]);
-		}
-		return stringResults;
+		return getResultsRaw(this, words).toStringResults(docIdMap);
 	}
 }
\ No newline at end of file
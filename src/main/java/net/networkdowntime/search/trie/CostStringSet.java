@@ -1,83 +1,177 @@
 package net.networkdowntime.search.trie;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TreeMap;
 
+/**
+ * A set of CostStrings where each string is only held once, with the lowest cost it was added with. Elements are equal when their strings are
+ * equal.
+ * 
+ * Implemented as an open addressing hash table with linear probing. The string hash codes are kept in a parallel int array, so probing only
+ * compares the strings of elements with the same hash code and doesn't box anything.
+ */
 public class CostStringSet<C extends CostString> implements Set<C> {
 
-	private TreeMap<Integer, C> map = new TreeMap<Integer, C>();
+	private static final int MIN_CAPACITY = 16;
+
+	private CostString[] elements = new CostString[MIN_CAPACITY];
+	private int[] hashCodes = new int[MIN_CAPACITY];
+	private int size = 0;
 
 	@Override
 	public int size() {
-		return map.size();
+		return size;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return map.isEmpty();
+		return size == 0;
 	}
 
 	@Override
 	public boolean contains(Object o) {
-		return map.containsValue(o);
+		if (o instanceof CostString) {
+			return indexOf(((CostString) o).str) >= 0;
+		} else if (o instanceof String) {
+			return indexOf((String) o) >= 0;
+		}
+		return false;
 	}
 
 	@Override
 	public Iterator<C> iterator() {
-		return map.values().iterator();
+		return new Iterator<C>() {
+			private int index = nextIndex(0);
+
+			@Override
+			public boolean hasNext() {
+				return index < elements.length;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public C next() {
+				if (index >= elements.length) {
+					throw new NoSuchElementException();
+				}
+				C element = (C) elements[index];
+				index = nextIndex(index + 1);
+				return element;
+			}
+
+			private int nextIndex(int from) {
+				while (from < elements.length && elements[from] == null) {
+					from++;
+				}
+				return from;
+			}
+		};
 	}
 
 	@Override
 	public Object[] toArray() {
-		return map.values().toArray();
+		return toList().toArray();
 	}
 
 	@Override
 	public <T> T[] toArray(T[] a) {
-		return map.values().toArray(a);
+		return toList().toArray(a);
 	}
 
+	/**
+	 * Adds the element, or replaces the element with the same string if the new element has a lower cost.
+	 * 
+	 * @return true if there wasn't an element with the same string
+	 */
 	@Override
 	public boolean add(C csToAdd) {
 		Objects.requireNonNull(csToAdd);
 
-		C existingCs = map.get(csToAdd.hashCode());
-		boolean isNewElement = existingCs == null;
+		int hashCode = csToAdd.str.hashCode();
+		int index = indexOf(csToAdd.str, hashCode);
 
-		if (isNewElement) {
-			map.put(csToAdd.hashCode(), csToAdd);
-		} else {
-			if (csToAdd.cost < existingCs.cost) {
-				map.put(csToAdd.hashCode(), csToAdd);
+		if (index >= 0) {
+			if (csToAdd.cost < elements[index].cost) {
+				elements[index] = csToAdd;
 			}
+			return false;
 		}
-		return isNewElement;
+
+		if ((size + 1) * 4 > elements.length * 3) { // keeps the load factor at or below 0.75
+			resize(elements.length * 2);
+		}
+		insert(csToAdd, hashCode);
+		size++;
+		return true;
 	}
 
+	@SuppressWarnings("unchecked")
 	public C get(C costString) {
 		Objects.requireNonNull(costString);
-		return map.get(costString.hashCode());
+		int index = indexOf(costString.str);
+		return (index >= 0) ? (C) elements[index] : null;
+	}
+
+	/**
+	 * Gets the element with the string.
+	 * 
+	 * @param str The string to look up
+	 * @return The element or null if there isn't one
+	 */
+	@SuppressWarnings("unchecked")
+	C get(String str) {
+		int index = indexOf(str);
+		return (index >= 0) ? (C) elements[index] : null;
+	}
+
+	/**
+	 * Gets the element with the same string as the word part, without creating the word part's string.
+	 * 
+	 * @param wordPart The word part to look up
+	 * @return The element or null if there isn't one
+	 */
+	@SuppressWarnings("unchecked")
+	C get(WordPartBuffer wordPart) {
+		int hashCode = wordPart.getStringHashCode();
+		int mask = elements.length - 1;
+		for (int index = mix(hashCode) & mask; elements[index] != null; index = (index + 1) & mask) {
+			if (hashCodes[index] == hashCode && wordPart.contentEquals(elements[index].str)) {
+				return (C) elements[index];
+			}
+		}
+		return null;
 	}
 
 	@Override
 	public boolean remove(Object csToRemove) {
 		Objects.requireNonNull(csToRemove);
 
-		return map.remove(csToRemove.hashCode()) != null;
+		int index;
+		if (csToRemove instanceof CostString) {
+			index = indexOf(((CostString) csToRemove).str);
+		} else if (csToRemove instanceof String) {
+			index = indexOf((String) csToRemove);
+		} else {
+			return false;
+		}
+
+		if (index < 0) {
+			return false;
+		}
+		delete(index);
+		return true;
 	}
 
 	@Override
 	public boolean containsAll(Collection<?> collection) {
 		for (Object o : collection) {
-			if (o instanceof CostString) {
-				if (!map.containsKey(((CostString) o).hashCode())) {
-					return false;
-				}
-			} else {
+			if (!contains(o)) {
 				return false;
 			}
 		}
@@ -96,20 +190,18 @@ public class CostStringSet<C extends CostString> implements Set<C> {
 	@Override
 	public boolean retainAll(Collection<?> collection) {
 		Objects.requireNonNull(collection);
-		boolean modified = false;
 
-		Set<Integer> toKeep = new HashSet<Integer>();
+		CostStringSet<CostString> toKeep = new CostStringSet<CostString>();
 		for (Object c : collection) {
 			if (c instanceof CostString) {
-				toKeep.add(((CostString) c).hashCode());
+				toKeep.add((CostString) c);
 			}
 		}
 
-		Set<Integer> existing = map.keySet();
-		for (Integer hash : existing) {
-			if (!toKeep.contains(hash)) {
-				existing.remove(hash);
-				modified = true;
+		boolean modified = false;
+		for (C c : toList()) {
+			if (!toKeep.contains(c)) {
+				modified |= remove(c);
 			}
 		}
 		return modified;
@@ -120,18 +212,9 @@ public class CostStringSet<C extends CostString> implements Set<C> {
 		Objects.requireNonNull(collection);
 		boolean modified = false;
 
-		Set<Integer> toRemove = new HashSet<Integer>();
 		for (Object c : collection) {
 			if (c instanceof CostString) {
-				toRemove.add(((CostString) c).hashCode());
-			}
-		}
-
-		Set<Integer> existing = map.keySet();
-		for (Integer hash : existing) {
-			if (toRemove.contains(hash)) {
-				existing.remove(hash);
-				modified = true;
+				modified |= remove(c);
 			}
 		}
 		return modified;
@@ -139,7 +222,86 @@ public class CostStringSet<C extends CostString> implements Set<C> {
 
 	@Override
 	public void clear() {
-		map.clear();
+		Arrays.fill(elements, null);
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		return toList().toString();
+	}
+
+	private List<C> toList() {
+		List<C> list = new ArrayList<C>(size);
+		for (C c : this) {
+			list.add(c);
+		}
+		return list;
+	}
+
+	private int indexOf(String str) {
+		return indexOf(str, str.hashCode());
+	}
+
+	private int indexOf(String str, int hashCode) {
+		int mask = elements.length - 1;
+		for (int index = mix(hashCode) & mask; elements[index] != null; index = (index + 1) & mask) {
+			if (hashCodes[index] == hashCode && elements[index].str.equals(str)) {
+				return index;
+			}
+		}
+		return -1;
 	}
 
+	private void insert(CostString element, int hashCode) {
+		int mask = elements.length - 1;
+		int index = mix(hashCode) & mask;
+		while (elements[index] != null) {
+			index = (index + 1) & mask;
+		}
+		elements[index] = element;
+		hashCodes[index] = hashCode;
+	}
+
+	/**
+	 * Deletes the element at the index and shifts the following elements of the probe sequence back, so lookups don't need tombstones.
+	 */
+	private void delete(int index) {
+		int mask = elements.length - 1;
+		int gap = index;
+		elements[gap] = null;
+		size--;
+
+		for (int i = (gap + 1) & mask; elements[i] != null; i = (i + 1) & mask) {
+			int home = mix(hashCodes[i]) & mask;
+			// the element can fill the gap if its home slot isn't cyclically between the gap and its current slot
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				elements[gap] = elements[i];
+				hashCodes[gap] = hashCodes[i];
+				elements[i] = null;
+				gap = i;
+			}
+		}
+	}
+
+	private void resize(int capacity) {
+		CostString[] oldElements = elements;
+		int[] oldHashCodes = hashCodes;
+		elements = new CostString[capacity];
+		hashCodes = new int[capacity];
+
+		for (int i = 0; i < oldElements.length; i++) {
+			if (oldElements[i] != null) {
+				insert(oldElements[i], oldHashCodes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of the hash code, string hash codes of similar strings mostly differ in their low bits.
+	 */
+	private static int mix(int hashCode) {
+		int h = hashCode * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
 }
@@ -0,0 +1,118 @@
+package net.networkdowntime.search.trie;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the word parts that Trie.getCompletions() found no completions for, shared across queries so a repeated miss is answered
+ * without walking the trie again. For each word part it keeps the largest remaining edit distance that found nothing, separately for substring
+ * only and fuzzy queries. A query with the same or a smaller remaining edit distance can't find anything either, and a fuzzy miss also covers
+ * substring only queries.
+ * 
+ * Adding words can turn a miss into a hit, so the entries are only valid for the generation of the trie they were found in. The cache is cleared
+ * the first time it is used with a newer generation. Removing words can't turn a miss into a hit and doesn't invalidate the cache.
+ * 
+ * The least recently used word part is evicted once the cache is full.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+class DeadWordPartCache {
+
+	// the edit distances are stored + 1 in the low (substring only) and high (fuzzy) 16 bits, 0 when no miss is known
+	private static final int FUZZY_SHIFT = 16;
+	private static final int MASK = 0xFFFF;
+
+	private final Map<String, Integer> editDistances;
+	private long generation = 0;
+
+	/**
+	 * @param capacity Max number of word parts to keep
+	 */
+	DeadWordPartCache(final int capacity) {
+		this.editDistances = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Checks if a query for the word part is known to find no completions.
+	 * 
+	 * @param wordPart The word part being completed
+	 * @param editDistance The remaining edit distance of the query
+	 * @param subStringOnly Whether the query only looks for substring matches
+	 * @param generation The current generation of the trie
+	 * @return true if the query is known to find no completions
+	 */
+	synchronized boolean isDead(String wordPart, int editDistance, boolean subStringOnly, long generation) {
+		if (generation != this.generation) {
+			clear(generation);
+			return false;
+		}
+
+		Integer editDistances = this.editDistances.get(wordPart);
+		if (editDistances == null) {
+			return false;
+		}
+		int fuzzy = (editDistances >>> FUZZY_SHIFT) - 1;
+		int subStringOnlyDistance = (editDistances & MASK) - 1;
+		return editDistance <= fuzzy || (subStringOnly && editDistance <= subStringOnlyDistance);
+	}
+
+	/**
+	 * Records that a query for the word part found no completions.
+	 * 
+	 * @param wordPart The word part being completed
+	 * @param editDistance The remaining edit distance of the query
+	 * @param subStringOnly Whether the query only looked for substring matches
+	 * @param generation The generation of the trie the query was run against
+	 */
+	synchronized void addDead(String wordPart, int editDistance, boolean subStringOnly, long generation) {
+		if (generation != this.generation) {
+			clear(generation);
+		}
+		int stored = Math.min(editDistance, MASK - 1) + 1;
+
+		Integer editDistances = this.editDistances.get(wordPart);
+		int fuzzy = (editDistances == null) ? 0 : editDistances >>> FUZZY_SHIFT;
+		int subStringOnlyDistance = (editDistances == null) ? 0 : editDistances & MASK;
+		if (subStringOnly) {
+			subStringOnlyDistance = Math.max(subStringOnlyDistance, stored);
+		} else {
+			fuzzy = Math.max(fuzzy, stored);
+		}
+		this.editDistances.put(wordPart, (fuzzy << FUZZY_SHIFT) | subStringOnlyDistance);
+	}
+
+	/**
+	 * @return The number of word parts in the cache
+	 */
+	synchronized int size() {
+		return editDistances.size();
+	}
+
+	private void clear(long generation) {
+		editDistances.clear();
+		this.generation = generation;
+	}
+}
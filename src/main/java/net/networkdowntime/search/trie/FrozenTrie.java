@@ -0,0 +1,618 @@
+package net.networkdowntime.search.trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.networkdowntime.search.TermDictionary;
+
+/**
+ * A flat representation of a trie built by Trie.freeze(). Instead of a TrieNode object per node the trie is
+ * stored in a handful of primitive arrays with the nodes numbered in breadth first order:
+ * 	- The children of a node are stored contiguously and in ascending character order, so a node only needs the index of
+ * 	  its first child and the range ends at the first child of the next node.
+ * 	- The end markers are packed into a byte per node.
+ * 	- The runs of a path compressed trie are stored back to back in one char array.
+ * 	- The weights and subtree max weights are int arrays. They can still be updated.
+ * 	- The term ids of the full word ends are an int array, which is only created when the trie has term ids.
+ * 	- The end counts are an int array, which is only created when a word part is shared by more than one full word, e.g. in a
+ * 	  full trie. Otherwise every end has a count of 1.
+ * 
+ * Removing a word clears its end markers in place, see removeEnd(). The nodes that are left without an end below them are
+ * still walked but never completed to, they are dropped by thaw() when the trie is frozen again.
+ * 
+ * Child lookups are a binary search over the contiguous child characters. Nodes are addressed by their int index, the root
+ * node is always index 0.
+ * 
+ * When the trie has no more than 256 distinct characters, which is the usual case for a mostly ASCII vocabulary, the node and
+ * run characters are stored as a byte code per character instead of a char, halving the size of the keys. The codes are
+ * assigned in character order so the children stay sorted by code, and a character that isn't in the trie at all is rejected
+ * without walking. The nodes of the top levels, the root node and the nodes below it up to BITMAP_DEPTH, then also get a 256
+ * bit bitmap of their children's codes: a child lookup there is a bit test, and the index of the child is its first child's
+ * index plus the number of lower bits set, so the hot top of the trie is searched like a 256-way direct table for 32 bytes
+ * a node.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+class FrozenTrie {
+
+	static final int ROOT = 0;
+
+	// depth of the deepest nodes that get a child bitmap when the characters are byte codes
+	static final int BITMAP_DEPTH = 2;
+
+	private static final byte END = 1;
+	private static final byte FULL_WORD_END = 2;
+
+	// max number of distinct characters that can be stored as byte codes
+	private static final int MAX_CODES = 256;
+
+	// the node and run characters, either as chars or as byte codes into alphabet
+	private char[] chars = null;
+	private char[] runChars = null;
+	private byte[] codes = null;
+	private byte[] runCodes = null;
+	private char[] alphabet = null; // the characters of the codes, sorted
+	private short[] asciiCodes = null; // code + 1 of each ASCII character, 0 if it isn't in the alphabet
+
+	// 4 longs per node for the nodes before bitmapEnd, the bits of the node's children's codes
+	private long[] childBitmaps = null;
+	private int bitmapEnd = 0;
+
+	private final int nodeCount;
+	private final byte[] flags;
+	private final int[] firstChild; // one extra entry so the children of node i are firstChild[i] to firstChild[i + 1] - 1
+	private final int[] runStart; // one extra entry so the run of node i is runStart[i] to runStart[i + 1] - 1
+	private final int[] weights;
+	private final int[] maxWeights;
+	private int[] termIds = null;
+	private int[] endCounts = null;
+	private int removedEndCount = 0;
+
+	private FrozenTrie(int nodeCount) {
+		this.nodeCount = nodeCount;
+		flags = new byte[nodeCount];
+		firstChild = new int[nodeCount + 1];
+		runStart = new int[nodeCount + 1];
+		weights = new int[nodeCount];
+		maxWeights = new int[nodeCount];
+	}
+
+	/**
+	 * Builds the flat representation of the trie starting at the given root node.
+	 * 
+	 * @param root The root node of the trie to freeze
+	 * @return The frozen trie
+	 */
+	static FrozenTrie freeze(TrieNode root) {
+		List<TrieNode> nodes = new ArrayList<TrieNode>();
+		int runCharCount = 0;
+		boolean hasSharedEnds = false;
+		boolean[] isUsed = new boolean[Character.MAX_VALUE + 1];
+
+		nodes.add(root);
+		for (int i = 0; i < nodes.size(); i++) {
+			TrieNode node = nodes.get(i);
+			runCharCount += node.getRunLength();
+			hasSharedEnds = hasSharedEnds || node.endCount > 1;
+			if (i != ROOT) {
+				isUsed[node.c] = true;
+			}
+			for (int r = 0; r < node.getRunLength(); r++) {
+				isUsed[node.run[r]] = true;
+			}
+			for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+				TrieNode child = node.getChildInSlot(slot);
+				if (child != null) {
+					nodes.add(child);
+				}
+			}
+		}
+
+		FrozenTrie frozen = new FrozenTrie(nodes.size());
+		frozen.setAlphabet(isUsed);
+		if (hasSharedEnds) {
+			frozen.endCounts = new int[nodes.size()];
+		}
+		if (frozen.alphabet != null) {
+			frozen.codes = new byte[nodes.size()];
+			frozen.runCodes = new byte[runCharCount];
+		} else {
+			frozen.chars = new char[nodes.size()];
+			frozen.runChars = new char[runCharCount];
+		}
+		int nextChild = 1;
+		int nextRunChar = 0;
+
+		for (int i = 0; i < nodes.size(); i++) {
+			TrieNode node = nodes.get(i);
+			if (frozen.codes != null) {
+				frozen.codes[i] = (i == ROOT) ? 0 : (byte) frozen.getCode(node.c);
+			} else {
+				frozen.chars[i] = node.c;
+			}
+			frozen.flags[i] = (byte) ((node.isEnd ? END : 0) | (node.isFullWordEnd ? FULL_WORD_END : 0));
+			frozen.firstChild[i] = nextChild;
+			frozen.runStart[i] = nextRunChar;
+			frozen.weights[i] = node.weight;
+			frozen.maxWeights[i] = node.maxWeight;
+			if (node.termId != TermDictionary.NO_TERM_ID) {
+				if (frozen.termIds == null) {
+					frozen.termIds = new int[nodes.size()];
+					Arrays.fill(frozen.termIds, TermDictionary.NO_TERM_ID);
+				}
+				frozen.termIds[i] = node.termId;
+			}
+			if (frozen.endCounts != null) {
+				frozen.endCounts[i] = node.endCount;
+			}
+
+			nextChild += node.getChildCount();
+			if (node.run != null) {
+				for (char c : node.run) {
+					if (frozen.runCodes != null) {
+						frozen.runCodes[nextRunChar++] = (byte) frozen.getCode(c);
+					} else {
+						frozen.runChars[nextRunChar++] = c;
+					}
+				}
+			}
+		}
+		frozen.firstChild[nodes.size()] = nextChild;
+		frozen.runStart[nodes.size()] = nextRunChar;
+
+		if (frozen.codes != null) {
+			frozen.setChildBitmaps();
+		}
+		return frozen;
+	}
+
+	/**
+	 * Assigns the byte codes when there are few enough distinct characters, in character order.
+	 */
+	private void setAlphabet(boolean[] isUsed) {
+		char[] usedChars = new char[MAX_CODES];
+		int count = 0;
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			if (isUsed[c]) {
+				if (count == MAX_CODES) {
+					return; // too many, the characters are stored as chars
+				}
+				usedChars[count++] = (char) c;
+			}
+		}
+
+		alphabet = Arrays.copyOf(usedChars, count);
+		asciiCodes = new short[128];
+		for (int code = 0; code < count && alphabet[code] < 128; code++) {
+			asciiCodes[alphabet[code]] = (short) (code + 1);
+		}
+	}
+
+	/**
+	 * Sets the child bitmaps of the nodes down to BITMAP_DEPTH. The nodes are in breadth first order, so the nodes of each level follow the
+	 * nodes of the level above and end at the first child of the level's first node.
+	 */
+	private void setChildBitmaps() {
+		int levelEnd = ROOT + 1;
+		for (int depth = 1; depth <= BITMAP_DEPTH && levelEnd < nodeCount; depth++) {
+			levelEnd = firstChild[levelEnd];
+		}
+		bitmapEnd = levelEnd;
+
+		childBitmaps = new long[bitmapEnd * 4];
+		for (int node = 0; node < bitmapEnd; node++) {
+			for (int child = firstChild[node]; child < firstChild[node + 1]; child++) {
+				int code = codes[child] & 0xFF;
+				childBitmaps[node * 4 + (code >>> 6)] |= 1L << code;
+			}
+		}
+	}
+
+	/**
+	 * @return The byte code of the character, 0 to 255, or -1 if the character isn't in the trie
+	 */
+	private int getCode(char c) {
+		if (c < 128) {
+			return asciiCodes[c] - 1;
+		}
+		int code = Arrays.binarySearch(alphabet, c);
+		return (code >= 0) ? code : -1;
+	}
+
+	/**
+	 * Rebuilds the TrieNode representation of the frozen trie, leaving out the nodes without an end below them once words have been removed.
+	 * Runs aren't merged back together, a node can be left with a single child.
+	 * 
+	 * @return The root node of the rebuilt trie
+	 */
+	TrieNode thaw() {
+		TrieNode[] nodes = new TrieNode[nodeCount];
+
+		// the children follow their parent in breadth first order, so walking backwards sees every child before its parent
+		boolean[] isLive = new boolean[nodeCount];
+		for (int i = nodeCount - 1; i >= 0; i--) {
+			isLive[i] = isLive[i] || i == ROOT || removedEndCount == 0 || isEnd(i) || isFullWordEnd(i);
+			if (isLive[i] && i != ROOT) {
+				isLive[getParent(i)] = true;
+			}
+		}
+
+		for (int i = 0; i < nodes.length; i++) {
+			if (!isLive[i]) {
+				continue;
+			}
+			TrieNode node = (i == ROOT) ? new TrieNode() : new TrieNode(getChar(i));
+			node.isEnd = isEnd(i);
+			node.isFullWordEnd = isFullWordEnd(i);
+			node.endCount = getEndCount(i);
+			node.weight = weights[i];
+			node.maxWeight = maxWeights[i];
+			node.termId = getTermId(i);
+			if (getRunLength(i) > 0) {
+				node.run = new char[getRunLength(i)];
+				for (int r = 0; r < node.run.length; r++) {
+					node.run[r] = getRunChar(i, r);
+				}
+			}
+			nodes[i] = node;
+		}
+
+		for (int i = 0; i < nodes.length; i++) {
+			for (int child = firstChild[i]; child < firstChild[i + 1]; child++) {
+				if (isLive[child]) {
+					nodes[i].putChild(nodes[child]);
+				}
+			}
+		}
+		return nodes[ROOT];
+	}
+
+	/**
+	 * @return The parent of a node other than the root node, a binary search over the first children
+	 */
+	private int getParent(int node) {
+		int low = ROOT;
+		int high = nodeCount - 1;
+		while (low < high) { // the last node whose first child isn't after the node
+			int mid = (low + high + 1) >>> 1;
+			if (firstChild[mid] <= node) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the child of the node for the given character.
+	 * 
+	 * @param node The parent node
+	 * @param key The character of the child
+	 * @return The child node or -1 if there isn't a child for the character
+	 */
+	int getChild(int node, char key) {
+		if (codes != null) {
+			int code = getCode(key);
+			return (code < 0) ? -1 : getChildByCode(node, code);
+		}
+
+		int low = firstChild[node];
+		int high = firstChild[node + 1] - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char midChar = chars[mid];
+			if (midChar < key) {
+				low = mid + 1;
+			} else if (midChar > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Same as getChild() for the byte code of the character.
+	 */
+	private int getChildByCode(int node, int code) {
+		if (node < bitmapEnd) {
+			int word = node * 4 + (code >>> 6);
+			long bit = 1L << code;
+			if ((childBitmaps[word] & bit) == 0) {
+				return -1;
+			}
+
+			int rank = Long.bitCount(childBitmaps[word] & (bit - 1));
+			for (int w = node * 4; w < word; w++) {
+				rank += Long.bitCount(childBitmaps[w]);
+			}
+			return firstChild[node] + rank;
+		}
+
+		int low = firstChild[node];
+		int high = firstChild[node + 1] - 1;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midCode = codes[mid] & 0xFF;
+			if (midCode < code) {
+				low = mid + 1;
+			} else if (midCode > code) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The index of the node's first child, the children are the nodes up to getChildEnd()
+	 */
+	int getFirstChild(int node) {
+		return firstChild[node];
+	}
+
+	/**
+	 * @return One past the index of the node's last child
+	 */
+	int getChildEnd(int node) {
+		return firstChild[node + 1];
+	}
+
+	boolean hasChildren(int node) {
+		return firstChild[node] < firstChild[node + 1];
+	}
+
+	char getChar(int node) {
+		return (codes != null) ? alphabet[codes[node] & 0xFF] : chars[node];
+	}
+
+	boolean isEnd(int node) {
+		return (flags[node] & END) != 0;
+	}
+
+	boolean isFullWordEnd(int node) {
+		return (flags[node] & FULL_WORD_END) != 0;
+	}
+
+	int getTermId(int node) {
+		return (termIds == null) ? TermDictionary.NO_TERM_ID : termIds[node];
+	}
+
+	/**
+	 * @return The number of full words with a word part ending at the node
+	 */
+	int getEndCount(int node) {
+		if (endCounts != null) {
+			return endCounts[node];
+		}
+		return isEnd(node) ? 1 : 0;
+	}
+
+	int getRunLength(int node) {
+		return runStart[node + 1] - runStart[node];
+	}
+
+	char getRunChar(int node, int offset) {
+		return (runCodes != null) ? alphabet[runCodes[runStart[node] + offset] & 0xFF] : runChars[runStart[node] + offset];
+	}
+
+	/**
+	 * @return true if the characters are stored as byte codes
+	 */
+	boolean hasByteKeys() {
+		return codes != null;
+	}
+
+	int getWeight(int node) {
+		return weights[node];
+	}
+
+	int getMaxWeight(int node) {
+		return maxWeights[node];
+	}
+
+	/**
+	 * Sets the weight of the word part ending at the last node of the path and updates the max weights of the nodes on the path.
+	 * 
+	 * @param path The nodes from the root node to the word part's node
+	 * @param depth The index of the word part's node in path
+	 * @param weight The new weight
+	 */
+	void setWeight(int[] path, int depth, int weight) {
+		weights[path[depth]] = weight;
+		for (int d = depth; d >= 0; d--) {
+			if (!updateMaxWeight(path[d])) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Removes one full word's word part ending at the last node of the path. The full word end is cleared right away, the end once no other full
+	 * word shares the word part, which also clears its weight. The nodes stay in the arrays until the trie is frozen again.
+	 * 
+	 * @param path The nodes from the root node to the word part's node
+	 * @param depth The index of the word part's node in path
+	 * @param isFullWord Whether the word part is the full word or one of its suffixes
+	 */
+	void removeEnd(int[] path, int depth, boolean isFullWord) {
+		int node = path[depth];
+		if (isFullWord) {
+			flags[node] &= ~FULL_WORD_END;
+			if (termIds != null) {
+				termIds[node] = TermDictionary.NO_TERM_ID;
+			}
+		}
+
+		int endCount = getEndCount(node) - 1;
+		if (endCounts != null) {
+			endCounts[node] = Math.max(0, endCount);
+		}
+		if (endCount <= 0) { // no other word shares this word part
+			flags[node] &= ~END;
+			setWeight(path, depth, 0);
+		}
+		removedEndCount++;
+	}
+
+	/**
+	 * @return true if words have been removed since the trie was frozen
+	 */
+	boolean hasRemovedEnds() {
+		return removedEndCount > 0;
+	}
+
+	/**
+	 * @return true if the node or a node below it is an end
+	 */
+	private boolean hasEnd(int node) {
+		if (isEnd(node) || isFullWordEnd(node)) {
+			return true;
+		}
+		for (int child = firstChild[node]; child < firstChild[node + 1]; child++) {
+			if (hasEnd(child)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean updateMaxWeight(int node) {
+		int max = weights[node];
+		for (int child = firstChild[node]; child < firstChild[node + 1]; child++) {
+			max = Math.max(max, maxWeights[child]);
+		}
+		boolean isChanged = max != maxWeights[node];
+		maxWeights[node] = max;
+		return isChanged;
+	}
+
+	/**
+	 * Walks the path of the word part from the root node.
+	 * 
+	 * @param wordCharArr The word part in getCharArr() ordering
+	 * @param path Filled in with the nodes walked, the root node first
+	 * @return The index in path of the last node walked, the word part can end within that node's run, or -1 if the word part isn't in the
+	 *         frozen trie
+	 */
+	int walk(char[] wordCharArr, int[] path) {
+		int depth = 0;
+		int node = ROOT;
+		int offset = 0;
+		path[0] = ROOT;
+
+		for (char c : wordCharArr) {
+			if (offset < getRunLength(node)) {
+				if (getRunChar(node, offset++) != c) {
+					return -1;
+				}
+				continue;
+			}
+
+			node = getChild(node, c);
+			offset = 0;
+			if (node < 0) {
+				return -1;
+			}
+			path[++depth] = node;
+		}
+		return depth;
+	}
+
+	/**
+	 * Checks if the word is in the frozen trie.
+	 * 
+	 * @param wordCharArr The word in getCharArr() ordering
+	 * @param fullWordMatch Whether the word has to be a full word or can be any indexed word part
+	 * @return true if the word is in the frozen trie
+	 */
+	boolean containsWord(char[] wordCharArr, boolean fullWordMatch) {
+		int node = ROOT;
+		int offset = 0;
+
+		for (char c : wordCharArr) {
+			if (offset < getRunLength(node)) {
+				if (getRunChar(node, offset++) != c) {
+					return false;
+				}
+				continue;
+			}
+
+			node = getChild(node, c);
+			offset = 0;
+
+			if (node < 0) {
+				return false;
+			}
+		}
+
+		if (fullWordMatch) {
+			return offset == getRunLength(node) && isFullWordEnd(node);
+		}
+		return removedEndCount == 0 || hasEnd(node); // a removed word's nodes are left in place
+	}
+
+	/**
+	 * @return The number of nodes in the frozen trie, including the root node
+	 */
+	int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return The number of full words in the frozen trie
+	 */
+	int getFullWordCount() {
+		int count = 0;
+		for (int i = 0; i < flags.length; i++) {
+			if (isFullWordEnd(i)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Estimates the number of bytes used by the frozen trie's arrays. Assumes a 64-bit JVM using compressed oops.
+	 * 
+	 * @return The estimated number of bytes used
+	 */
+	long getEstimatedSize() {
+		long keySize;
+		if (codes != null) {
+			keySize = align(16 + codes.length) + align(16 + runCodes.length) + align(16 + 2L * alphabet.length) + align(16 + 2L * asciiCodes.length)
+					+ align(16 + 8L * childBitmaps.length);
+		} else {
+			keySize = align(16 + 2L * chars.length) + align(16 + 2L * runChars.length);
+		}
+		return keySize + align(16 + flags.length) + align(16 + 4L * firstChild.length) + align(16 + 4L * runStart.length)
+				+ 2 * align(16 + 4L * weights.length) + ((termIds == null) ? 0 : align(16 + 4L * termIds.length))
+				+ ((endCounts == null) ? 0 : align(16 + 4L * endCounts.length)) + align(12 + 15 * 4);
+	}
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+}
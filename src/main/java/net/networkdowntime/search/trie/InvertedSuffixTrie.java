@@ -8,7 +8,8 @@ package net.networkdowntime.search.trie;
  * 
  * One of the downsides to a trie is memory usage in a performant implementation. Several attempts were made to improve the memory usage of this class: - Switching out from the common hashmap
  * implementation to the trove data structures. - Experimenting with the initial size and load factor of the hashmaps. - Creating the children hashmap on demand (children are null if there are not
- * children).
+ * children). - Replacing the children hashmap with an adaptive per node layout (inline single child, sorted arrays, direct tables). - Optionally compressing
+ * chains of single child nodes into one node holding a run of characters (radix/Patricia trie).
  * 
  * Full Inverted Suffix Trie vs Partial: The full inverted tree to includes not just the word, but also every prefix of the word. The non-full inverted trie does not recursively index all of the
  * word's suffixes.
@@ -51,14 +52,19 @@ public class InvertedSuffixTrie extends Trie {
 		super(createFullTrie);
 	}
 
-	@Override
-	protected char getChar(String word) {
-		return word.charAt(word.length() - 1);
+	/**
+	 * Allows the creator to create either a full of non-full trie and to store chains of single child nodes as a single compressed node
+	 * 
+	 * @param createFullTrie
+	 * @param compressPaths
+	 */
+	public InvertedSuffixTrie(boolean createFullTrie, boolean compressPaths) {
+		super(createFullTrie, compressPaths);
 	}
 
 	@Override
-	protected char getOppositeChar(String word) {
-		return word.charAt(0);
+	protected char getChar(String word) {
+		return word.charAt(word.length() - 1);
 	}
 
 	@Override
@@ -66,37 +72,23 @@ public class InvertedSuffixTrie extends Trie {
 		return word.substring(0, word.length() - 1);
 	}
 
-	@Override
-	protected String getSubstring(String word, int index) {
-		return word.substring(index, word.length());
-	}
 	@Override
 	protected CostString addCharToWordPart(char c, CostString wordPart, int cost) {
 		return new CostString(c + wordPart.str, wordPart.cost + cost);
 	}
 
 	@Override
-	protected CostString addCharToWordPart(char c, int index, CostString wordPart, int cost) {
-		String insertion = wordPart.substring(0, wordPart.length() - index) + c + wordPart.substring(wordPart.length() - index, wordPart.length());
-		return new CostString(insertion, wordPart.cost + cost);
-	}
-
-	@Override
-	protected CostString deleteCharFromWordPart(int index, CostString wordPart, int cost) {
-		String deletion = wordPart.substring(0, wordPart.length() - (index + 1)) + wordPart.substring(wordPart.length() - index, wordPart.length());
-		return new CostString(deletion, wordPart.cost + cost);
+	protected String getWordFromCharArr(char[] charArr, int length) {
+		char[] word = new char[length];
+		for (int i = 0; i < length; i++) {
+			word[i] = charArr[length - 1 - i];
+		}
+		return new String(word);
 	}
 
 	@Override
-	protected CostString transposeCharsInWordPart(int startIndex, CostString wordPart, int cost) {
-		int altIndex = wordPart.length() - startIndex - 1;
-//		System.out.println("wordPart: " + wordPart + "; wordPart.length(): " + wordPart.length() + "; startIndex: " + startIndex + "; altIndex: " + altIndex);
-//		System.out.println("wordPart.substring(0, " + (altIndex - 1) + "): " + wordPart.substring(0, altIndex - 1));
-//		System.out.println("wordPart.substring(" + (altIndex - 1) + ", " + (altIndex) + "): " + wordPart.substring(altIndex - 1, altIndex));
-//		System.out.println("wordPart.substring(" + (altIndex) + ", " + (altIndex + 1) + "): " + wordPart.substring(altIndex, altIndex + 1));
-//		System.out.println("wordPart.substring(" + (altIndex + 1) + ", " + wordPart.length() + "): " + wordPart.substring(altIndex + 1, wordPart.length()));
-		String transpose = wordPart.substring(0, altIndex - 1) + wordPart.substring(altIndex, altIndex + 1) + wordPart.substring(altIndex - 1, altIndex) + wordPart.substring(altIndex + 1, wordPart.length());
-		return new CostString(transpose, wordPart.cost + cost);
+	protected boolean isCharArrReversed() {
+		return true;
 	}
 
 	@Override
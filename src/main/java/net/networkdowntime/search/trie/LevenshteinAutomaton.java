@@ -0,0 +1,133 @@
+package net.networkdowntime.search.trie;
+
+/**
+ * A Levenshtein automaton for a single query that is stepped one character at a time while walking down a trie. Each state is a row
+ * of the edit distance matrix between the query and the characters walked so far, so a whole trie path can be matched against the
+ * query in a single traversal instead of exploring every misspelling of the query separately.
+ * 
+ * The distance is the same one Trie's edit exploration uses: deletions, insertions, replacements and transpositions of adjacent
+ * characters all cost 1, characters walked past the end of the query cost 1 each, and a character can't be inserted before the
+ * first character of the query. Since the exploration can keep editing around transposed characters the rows are computed with
+ * the (unrestricted) Damerau-Levenshtein recurrence of Lowrance and Wagner rather than optimal string alignment.
+ * 
+ * The rows for every depth are allocated up front, so stepping the automaton doesn't allocate. Rows are indexed by trie depth, which
+ * lets a depth first walk of the trie backtrack by simply stepping again from a shallower depth.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+class LevenshteinAutomaton {
+
+	private final char[] query;
+	private final int maxDistance;
+	private final int rejected; // any distance above maxDistance is capped to this value
+
+	private final int[][] rows;
+	private final int[][] lastMatchingDepths; // per depth and query character, the last depth up to it walking the same character
+	private final char[] path;
+
+	/**
+	 * @param query The query characters in trie traversal order
+	 * @param maxDistance The max edit distance of a match
+	 */
+	LevenshteinAutomaton(char[] query, int maxDistance) {
+		this.query = query;
+		this.maxDistance = maxDistance;
+		this.rejected = maxDistance + 1;
+
+		// no path deeper than the query length + maxDistance can be within maxDistance of the query
+		int maxDepth = query.length + maxDistance + 1;
+		this.rows = new int[maxDepth + 1][query.length + 1];
+		this.lastMatchingDepths = new int[maxDepth + 1][query.length + 1];
+		this.path = new char[maxDepth];
+
+		for (int j = 0; j <= query.length; j++) {
+			rows[0][j] = Math.min(j, rejected);
+		}
+	}
+
+	/**
+	 * Steps the automaton with the character at the given depth of the trie path.
+	 * 
+	 * @param depth The depth of the character, 1 for a child of the root node
+	 * @param c The character
+	 * @return true if a path continuing from this character can still be within maxDistance of the query
+	 */
+	boolean step(int depth, char c) {
+		if (depth >= rows.length) {
+			return false;
+		}
+
+		int[] previous = rows[depth - 1];
+		int[] current = rows[depth];
+		int[] previousMatchingDepths = lastMatchingDepths[depth - 1];
+		int[] currentMatchingDepths = lastMatchingDepths[depth];
+		path[depth - 1] = c;
+
+		int n = query.length;
+		int min = current[0] = (depth > 1 || n == 0) ? Math.min(previous[0] + 1, rejected) : rejected;
+		int lastMatchingColumn = 0;
+
+		for (int j = 1; j <= n; j++) {
+			boolean isMatch = query[j - 1] == c;
+			int distance = previous[j - 1] + ((isMatch) ? 0 : 1); // replacement or match
+			distance = Math.min(distance, current[j - 1] + 1); // deletion of the query character
+			if (depth > 1 || j == n) { // insertion of c, only after the first character or past the end of the query
+				distance = Math.min(distance, previous[j] + 1);
+			}
+
+			// transposition of query[j - 1] with the query character matching c, with any characters in between deleted or inserted
+			int k = previousMatchingDepths[j];
+			int l = lastMatchingColumn;
+			if (k > 0 && l > 0) {
+				distance = Math.min(distance, rows[k - 1][l - 1] + (depth - k - 1) + 1 + (j - l - 1));
+			}
+
+			current[j] = Math.min(distance, rejected);
+			currentMatchingDepths[j] = (isMatch) ? depth : previousMatchingDepths[j];
+			if (isMatch) {
+				lastMatchingColumn = j;
+			}
+			min = Math.min(min, current[j]);
+		}
+		return min <= maxDistance;
+	}
+
+	/**
+	 * @param depth The depth of the trie path
+	 * @return The edit distance between the query and the trie path up to the depth, maxDistance + 1 if it is greater than maxDistance
+	 */
+	int getDistance(int depth) {
+		return rows[depth][query.length];
+	}
+
+	/**
+	 * @param depth The depth of the trie path
+	 * @return true if the trie path up to the depth is within maxDistance of the query
+	 */
+	boolean isMatch(int depth) {
+		return rows[depth][query.length] <= maxDistance;
+	}
+
+	/**
+	 * @return The characters of the trie path, valid up to the depth last stepped
+	 */
+	char[] getPath() {
+		return path;
+	}
+}
@@ -0,0 +1,86 @@
+package net.networkdowntime.search.trie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The trace of a single Trie.getCompletions() query: the search paths that were recorded as a completion or a failure. Entries are kept in a fixed
+ * size ring buffer, so a query exploring a large number of misspellings only keeps its latest entries.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public class SearchTrace {
+
+	private final String query;
+	private final String[] entries;
+	private int next = 0;
+	private long entryCount = 0;
+
+	/**
+	 * @param query Description of the traced query
+	 * @param capacity Max number of entries to keep
+	 */
+	SearchTrace(String query, int capacity) {
+		this.query = query;
+		this.entries = new String[capacity];
+	}
+
+	/**
+	 * Adds an entry, overwriting the oldest entry once the trace is full.
+	 * 
+	 * @param entry The entry to add
+	 */
+	void add(String entry) {
+		entries[next] = entry;
+		next = (next + 1) % entries.length;
+		entryCount++;
+	}
+
+	/**
+	 * @return Description of the traced query
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return The kept entries, oldest first
+	 */
+	public List<String> getEntries() {
+		List<String> list = new ArrayList<String>();
+		int kept = (int) Math.min(entryCount, entries.length);
+		int first = (entryCount > entries.length) ? next : 0;
+		for (int i = 0; i < kept; i++) {
+			list.add(entries[(first + i) % entries.length]);
+		}
+		return list;
+	}
+
+	/**
+	 * @return The total number of entries added, including the ones that have been overwritten
+	 */
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	@Override
+	public String toString() {
+		return query + ": " + getEntries();
+	}
+}
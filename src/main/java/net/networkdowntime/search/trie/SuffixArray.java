@@ -0,0 +1,241 @@
+package net.networkdowntime.search.trie;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A read-only infix index over a vocabulary: the words are concatenated into one character array, each followed by a separator, and the
+ * suffixes starting in each word are sorted. A suffix only runs to the end of its word, the separator is never compared. The words containing a
+ * word part are then the suffixes starting with it, which are next to each other in the sorted order, so a query is a binary search for the
+ * first of them and a scan of the following suffixes while the longest common prefix (LCP) with the previous suffix is at least the word part's
+ * length. This replaces fanning out each completion of a full InvertedSuffixTrie to a SuffixTrie search, in a fraction of the memory of the
+ * tries.
+ * 
+ * The binary search skips the characters the word part is known to share with both ends of the search range (Manber and Myers), so each step
+ * only compares the characters past that.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public class SuffixArray {
+
+	/**
+	 * Follows each word in the text, words can't contain it.
+	 */
+	public static final char SEPARATOR = '\u0000';
+
+	// ranges shorter than this are sorted with an insertion sort
+	private static final int INSERTION_SORT_MAX = 12;
+
+	private final char[] text; // the words, each followed by the separator
+	private final int[] wordStarts; // text offset of each word, ascending
+	private final int[] suffixes; // text offsets of the suffixes in sorted order
+	private final int[] lcp; // length of the longest common prefix of each suffix and the one before it
+
+	/**
+	 * Builds the index. Duplicate words, empty words and words containing the separator are left out.
+	 * 
+	 * @param words The vocabulary
+	 */
+	public SuffixArray(Collection<String> words) {
+		List<String> distinctWords = new ArrayList<String>();
+		int length = 0;
+		for (String word : new LinkedHashSet<String>(words)) {
+			if (word.length() > 0 && word.indexOf(SEPARATOR) < 0) {
+				distinctWords.add(word);
+				length += word.length() + 1;
+			}
+		}
+
+		text = new char[length];
+		wordStarts = new int[distinctWords.size()];
+		suffixes = new int[length - distinctWords.size()];
+		int offset = 0;
+		int suffix = 0;
+		for (int i = 0; i < distinctWords.size(); i++) {
+			String word = distinctWords.get(i);
+			wordStarts[i] = offset;
+			word.getChars(0, word.length(), text, offset);
+			for (int j = 0; j < word.length(); j++) {
+				suffixes[suffix++] = offset + j;
+			}
+			offset += word.length();
+			text[offset++] = SEPARATOR;
+		}
+
+		sort(0, suffixes.length, 0);
+
+		lcp = new int[suffixes.length];
+		for (int i = 1; i < suffixes.length; i++) {
+			int l = 0;
+			while (charAt(suffixes[i - 1], l) >= 0 && charAt(suffixes[i - 1], l) == charAt(suffixes[i], l)) {
+				l++;
+			}
+			lcp[i] = l;
+		}
+	}
+
+	/**
+	 * @return The number of words in the index
+	 */
+	public int size() {
+		return wordStarts.length;
+	}
+
+	/**
+	 * @return The approximate size of the index's arrays in bytes
+	 */
+	public long sizeInBytes() {
+		return text.length * 2L + (wordStarts.length + suffixes.length + lcp.length) * 4L;
+	}
+
+	/**
+	 * Gets the words containing the word part, in the sorted order of their suffixes starting with the word part.
+	 * 
+	 * @param wordPart The word part
+	 * @param limit Max number of words to return
+	 * @return The words
+	 */
+	public List<String> getWordsContaining(String wordPart, int limit) {
+		List<String> words = new ArrayList<String>();
+		char[] chars = wordPart.toCharArray();
+		if (chars.length == 0 || limit <= 0) {
+			return words;
+		}
+
+		int first = getLowerBound(chars);
+		if (first == suffixes.length || getMatchLength(suffixes[first], chars, 0) < chars.length) {
+			return words;
+		}
+
+		TIntHashSet wordIndexes = new TIntHashSet();
+		for (int i = first; i < suffixes.length && (i == first || lcp[i] >= chars.length) && words.size() < limit; i++) {
+			int wordIndex = getWordIndex(suffixes[i]);
+			if (wordIndexes.add(wordIndex)) { // a word containing the word part more than once is found once per occurrence
+				int start = wordStarts[wordIndex];
+				int end = (wordIndex + 1 < wordStarts.length) ? wordStarts[wordIndex + 1] - 1 : text.length - 1;
+				words.add(new String(text, start, end - start));
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * @return The index of the first suffix that doesn't sort before the characters, comparing only as many characters as there are
+	 */
+	private int getLowerBound(char[] chars) {
+		int lo = 0;
+		int hi = suffixes.length;
+		int lcpLo = 0; // characters shared with the suffix before lo
+		int lcpHi = 0; // characters shared with the suffix at hi
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int matched = getMatchLength(suffixes[mid], chars, Math.min(lcpLo, lcpHi));
+			if (matched < chars.length && charAt(suffixes[mid], matched) < chars[matched]) {
+				lo = mid + 1;
+				lcpLo = matched;
+			} else {
+				hi = mid;
+				lcpHi = matched;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return The number of characters the suffix shares with the characters, known to be at least from
+	 */
+	private int getMatchLength(int suffix, char[] chars, int from) {
+		int matched = from;
+		while (matched < chars.length && charAt(suffix, matched) == chars[matched]) {
+			matched++;
+		}
+		return matched;
+	}
+
+	/**
+	 * @return The character of the suffix at the index or -1 past the end of its word
+	 */
+	private int charAt(int suffix, int index) {
+		char c = text[suffix + index];
+		return (c == SEPARATOR) ? -1 : c;
+	}
+
+	private int getWordIndex(int offset) {
+		int index = Arrays.binarySearch(wordStarts, offset);
+		return (index >= 0) ? index : -index - 2;
+	}
+
+	/**
+	 * Sorts the suffixes from index from to index to, which share the same first depth characters, with a multikey quicksort. A suffix sorts
+	 * before the suffixes it is a prefix of.
+	 */
+	private void sort(int from, int to, int depth) {
+		while (to - from > INSERTION_SORT_MAX) {
+			int pivot = charAt(suffixes[(from + to) >>> 1], depth);
+			int lt = from;
+			int gt = to - 1;
+			int i = from;
+			while (i <= gt) {
+				int c = charAt(suffixes[i], depth);
+				if (c < pivot) {
+					swap(lt++, i++);
+				} else if (c > pivot) {
+					swap(i, gt--);
+				} else {
+					i++;
+				}
+			}
+
+			sort(from, lt, depth);
+			if (pivot >= 0) { // suffixes ending at depth are equal
+				sort(lt, gt + 1, depth + 1);
+			}
+			from = gt + 1;
+		}
+
+		for (int i = from + 1; i < to; i++) {
+			for (int j = i; j > from && compare(suffixes[j - 1], suffixes[j], depth) > 0; j--) {
+				swap(j - 1, j);
+			}
+		}
+	}
+
+	private int compare(int suffix1, int suffix2, int depth) {
+		while (true) {
+			int c1 = charAt(suffix1, depth);
+			int c2 = charAt(suffix2, depth);
+			if (c1 != c2 || c1 < 0) {
+				return c1 - c2;
+			}
+			depth++;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int suffix = suffixes[i];
+		suffixes[i] = suffixes[j];
+		suffixes[j] = suffix;
+	}
+}
@@ -0,0 +1,368 @@
+package net.networkdowntime.search.trie;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A generalized suffix automaton (DAWG) of a set of words, an alternative to a full SuffixTrie or InvertedSuffixTrie for substring completion. A full
+ * trie adds every suffix of a word from the root node, so its size grows with the square of the word length, which is a problem for long tokens
+ * like urls. The automaton merges the states of word parts that end at the same positions, so it has at most 2n states and 3n transitions for
+ * words with n characters in total and is built in linear time.
+ * 
+ * Answers getCompletions() and containsWord() the same as a full trie using FuzzyMatchMode.LEVENSHTEIN_AUTOMATON: every path from the initial
+ * state is a substring of a word and a state is terminal when its word parts are suffixes of a word. The edit exploration isn't supported since a
+ * state is reached by many word parts. The automaton is add-only, words can't be removed since the states of a word are shared with other
+ * words without any count of how many words use them. The trie has to be used when removal is needed.
+ * 
+ * The states and transitions are kept in primitive arrays, a state's transitions are a linked list of edges.
+ * 
+ * Example suffix automaton for "abab" (terminal states are marked with a *):
+ * 	0: a -> 1, b -> 2
+ * 	1: b -> 2
+ * 	2*: a -> 3
+ * 	3: b -> 4
+ * 	4*:
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public class SuffixAutomaton implements WordPartIndex {
+	private static final Logger LOGGER = LogManager.getLogger(SuffixAutomaton.class.getName());
+
+	private static final int INITIAL = 0;
+	private static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 16;
+
+	// whether words are indexed in reverse like the InvertedSuffixTrie
+	private final boolean isInverted;
+
+	// per state: length of its longest word part, suffix link, first edge, whether it is terminal and whether its longest word part is a full word
+	private int stateCount = 0;
+	private int[] lengths = new int[INITIAL_CAPACITY];
+	private int[] links = new int[INITIAL_CAPACITY];
+	private int[] firstEdges = new int[INITIAL_CAPACITY];
+	private boolean[] isTerminal = new boolean[INITIAL_CAPACITY];
+	private boolean[] isFullWordEnd = new boolean[INITIAL_CAPACITY];
+
+	// per edge: character, target state and the next edge of the same state
+	private int edgeCount = 0;
+	private char[] edgeChars = new char[INITIAL_CAPACITY];
+	private int[] edgeTargets = new int[INITIAL_CAPACITY];
+	private int[] edgeNexts = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Default constructor creates an automaton for completing suffixes like a full SuffixTrie
+	 */
+	public SuffixAutomaton() {
+		this(false);
+	}
+
+	/**
+	 * Allows the creator to index the words in reverse for completing prefixes like a full InvertedSuffixTrie
+	 * 
+	 * @param isInverted
+	 */
+	public SuffixAutomaton(boolean isInverted) {
+		this.isInverted = isInverted;
+		newState(0);
+		links[INITIAL] = NONE;
+	}
+
+	/**
+	 * Gets the characters of the word in the order they are indexed, reversed for an inverted automaton.
+	 * 
+	 * @param word
+	 * @return
+	 */
+	public char[] getCharArr(String word) {
+		char[] chars = word.toCharArray();
+		if (isInverted) {
+			for (int i = 0, j = chars.length - 1; i < j; i++, j--) {
+				char c = chars[i];
+				chars[i] = chars[j];
+				chars[j] = c;
+			}
+		}
+		return chars;
+	}
+
+	private String getWordFromCharArr(char[] charArr, int length) {
+		if (!isInverted) {
+			return new String(charArr, 0, length);
+		}
+		char[] word = new char[length];
+		for (int i = 0; i < length; i++) {
+			word[i] = charArr[length - 1 - i];
+		}
+		return new String(word);
+	}
+
+	/**
+	 * Adds a word to the automaton. Adding a word that is already in the automaton doesn't change it.
+	 * 
+	 * @param word
+	 * @return The number of states created, 0 if the word was already in the automaton
+	 */
+	@Override
+	public int add(String word) {
+		char[] chars = getCharArr(word);
+		if (chars.length == 0 || containsWord(chars, true)) {
+			return 0;
+		}
+
+		int previousStateCount = stateCount;
+		int last = INITIAL;
+		for (char c : chars) {
+			last = extend(last, c);
+		}
+
+		// the word is the longest word part of the last state, the states on its suffix link path hold the word's suffixes
+		isFullWordEnd[last] = true;
+		for (int state = last; state != INITIAL && !isTerminal[state]; state = links[state]) {
+			isTerminal[state] = true;
+		}
+		return stateCount - previousStateCount;
+	}
+
+	/**
+	 * Not supported, the automaton is add-only.
+	 * 
+	 * @param word
+	 * @throws UnsupportedOperationException Always
+	 */
+	@Override
+	public void remove(String word) {
+		throw new UnsupportedOperationException("Words can't be removed from a SuffixAutomaton");
+	}
+
+	@Override
+	public boolean isRemoveSupported() {
+		return false;
+	}
+
+	/**
+	 * Extends the automaton by the character following the word part of the last state, the generalized suffix automaton construction that
+	 * restarts from the initial state for each word.
+	 * 
+	 * @param last The state of the word part added so far
+	 * @param c The next character of the word
+	 * @return The state of the word part with the character added
+	 */
+	private int extend(int last, char c) {
+		int q = getTransition(last, c);
+		if (q != NONE) { // the word part is already a substring of another word
+			if (lengths[last] + 1 == lengths[q]) {
+				return q;
+			}
+			return cloneState(last, q, c);
+		}
+
+		int current = newState(lengths[last] + 1);
+		int p = last;
+		while (p != NONE && getTransition(p, c) == NONE) {
+			addTransition(p, c, current);
+			p = links[p];
+		}
+
+		if (p == NONE) {
+			links[current] = INITIAL;
+		} else {
+			q = getTransition(p, c);
+			int link = (lengths[p] + 1 == lengths[q]) ? q : cloneState(p, q, c); // cloning can reallocate the arrays
+			links[current] = link;
+		}
+		return current;
+	}
+
+	/**
+	 * Splits off the shorter word parts of state q reached from p by c into a new state, redirecting p and its suffix links to it.
+	 * 
+	 * @return The new state
+	 */
+	private int cloneState(int p, int q, char c) {
+		int clone = newState(lengths[p] + 1);
+		links[clone] = links[q];
+		isTerminal[clone] = isTerminal[q];
+		for (int edge = firstEdges[q]; edge != NONE; edge = edgeNexts[edge]) {
+			addTransition(clone, edgeChars[edge], edgeTargets[edge]);
+		}
+
+		for (; p != NONE; p = links[p]) {
+			int edge = getEdge(p, c);
+			if (edge == NONE || edgeTargets[edge] != q) {
+				break;
+			}
+			edgeTargets[edge] = clone;
+		}
+		links[q] = clone;
+		return clone;
+	}
+
+	private int newState(int length) {
+		if (stateCount == lengths.length) {
+			int capacity = stateCount * 2;
+			lengths = Arrays.copyOf(lengths, capacity);
+			links = Arrays.copyOf(links, capacity);
+			firstEdges = Arrays.copyOf(firstEdges, capacity);
+			isTerminal = Arrays.copyOf(isTerminal, capacity);
+			isFullWordEnd = Arrays.copyOf(isFullWordEnd, capacity);
+		}
+		lengths[stateCount] = length;
+		links[stateCount] = NONE;
+		firstEdges[stateCount] = NONE;
+		return stateCount++;
+	}
+
+	private void addTransition(int state, char c, int target) {
+		if (edgeCount == edgeChars.length) {
+			int capacity = edgeCount * 2;
+			edgeChars = Arrays.copyOf(edgeChars, capacity);
+			edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+			edgeNexts = Arrays.copyOf(edgeNexts, capacity);
+		}
+		edgeChars[edgeCount] = c;
+		edgeTargets[edgeCount] = target;
+		edgeNexts[edgeCount] = firstEdges[state];
+		firstEdges[state] = edgeCount++;
+	}
+
+	private int getEdge(int state, char c) {
+		for (int edge = firstEdges[state]; edge != NONE; edge = edgeNexts[edge]) {
+			if (edgeChars[edge] == c) {
+				return edge;
+			}
+		}
+		return NONE;
+	}
+
+	private int getTransition(int state, char c) {
+		int edge = getEdge(state, c);
+		return (edge == NONE) ? NONE : edgeTargets[edge];
+	}
+
+	/**
+	 * Walks the transitions for the characters.
+	 * 
+	 * @return The state reached or NONE if the characters aren't a substring of a word
+	 */
+	private int walk(char[] wordCharArr) {
+		int state = INITIAL;
+		for (int i = 0; i < wordCharArr.length && state != NONE; i++) {
+			state = getTransition(state, wordCharArr[i]);
+		}
+		return state;
+	}
+
+	/**
+	 * @param wordCharArr The characters in getCharArr() ordering
+	 * @param fullWordMatch Whether the characters have to be a full word or can be any substring of a word
+	 * @return true if the automaton contains the characters
+	 */
+	@Override
+	public boolean containsWord(char[] wordCharArr, boolean fullWordMatch) {
+		int state = walk(wordCharArr);
+		return state != NONE && (!fullWordMatch || (isFullWordEnd[state] && lengths[state] == wordCharArr.length));
+	}
+
+	/**
+	 * Gets the completions for the given word part, the suffixes (prefixes if inverted) of the words that start with the word part.
+	 * 
+	 * @param wordPart The word part to find completions for.
+	 * @param editDistanceMax Max edit distance for the requested completions, each character completed costs 1
+	 * @param subStringOnly Assume that there are no typos in the wordPart (i.e. exact pattern match), use edit distance to only find word completions
+	 * @return A set of the completed word parts.
+	 */
+	@Override
+	public Set<CostString> getCompletions(CostString wordPart, int editDistanceMax, boolean subStringOnly) {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(getClass().getSimpleName() + "(wordPart=" + wordPart.str + ";" + wordPart.cost + ", editDistanceMax=" + editDistanceMax + ", subStringOnly=" + subStringOnly + "):");
+		}
+		CostStringSet<CostString> completions = new CostStringSet<CostString>();
+		char[] chars = getCharArr(wordPart.str);
+
+		if (subStringOnly) {
+			int state = walk(chars);
+			if (state != NONE) {
+				char[] path = Arrays.copyOf(chars, chars.length + Math.max(0, editDistanceMax - wordPart.cost));
+				getTailCompletions(completions, state, path, chars.length, wordPart.cost, editDistanceMax);
+			}
+		} else {
+			LevenshteinAutomaton automaton = new LevenshteinAutomaton(chars, Math.max(0, editDistanceMax - wordPart.cost));
+			for (int edge = firstEdges[INITIAL]; edge != NONE; edge = edgeNexts[edge]) {
+				getAutomatonCompletions(completions, edgeTargets[edge], edgeChars[edge], 1, automaton, wordPart.cost);
+			}
+		}
+		return completions;
+	}
+
+	/**
+	 * Adds the word part if the state is terminal and completes it with the following characters while the cost is below editDistanceMax.
+	 * 
+	 * @param path The characters of the word part in getCharArr() ordering, with room for the completed characters
+	 * @param length The number of characters in path
+	 */
+	private void getTailCompletions(CostStringSet<CostString> completions, int state, char[] path, int length, int cost, int editDistanceMax) {
+		if (isTerminal[state]) {
+			completions.add(new CostString(getWordFromCharArr(path, length), cost));
+		}
+		if (cost < editDistanceMax) {
+			for (int edge = firstEdges[state]; edge != NONE; edge = edgeNexts[edge]) {
+				path[length] = edgeChars[edge];
+				getTailCompletions(completions, edgeTargets[edge], path, length + 1, cost + 1, editDistanceMax);
+			}
+		}
+	}
+
+	private void getAutomatonCompletions(CostStringSet<CostString> completions, int state, char c, int depth, LevenshteinAutomaton automaton, int baseCost) {
+		if (!automaton.step(depth, c)) {
+			return;
+		}
+
+		if (isTerminal[state] && automaton.isMatch(depth)) {
+			completions.add(new CostString(getWordFromCharArr(automaton.getPath(), depth), baseCost + automaton.getDistance(depth)));
+		}
+
+		for (int edge = firstEdges[state]; edge != NONE; edge = edgeNexts[edge]) {
+			getAutomatonCompletions(completions, edgeTargets[edge], edgeChars[edge], depth + 1, automaton, baseCost);
+		}
+	}
+
+	/**
+	 * @return The number of states, including the initial state
+	 */
+	public int getStateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * @return The number of transitions between the states
+	 */
+	public int getTransitionCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * @return An estimate of the memory used by the states and transitions in bytes, not counting unused array capacity
+	 */
+	public long getEstimatedSize() {
+		return stateCount * (4L + 4L + 4L + 1L + 1L) + edgeCount * (2L + 4L + 4L);
+	}
+}
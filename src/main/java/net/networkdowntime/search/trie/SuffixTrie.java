@@ -14,17 +14,19 @@ package net.networkdowntime.search.trie;
  * 	- Switching out from the common hashmap implementation to the trove data structures.
  * 	- Experimenting with the initial size and load factor of the hashmaps.
  * 	- Creating the children hashmap on demand (children are null if there are not children).
+ * 	- Replacing the children hashmap with an adaptive per node layout (inline single child, sorted arrays, direct tables).
+ * 	- Optionally compressing chains of single child nodes into one node holding a run of characters (radix/Patricia trie).
  * 
  * Full Suffix Trie vs Partial: The full suffix trie includes not just the word, but also every suffix of the 
  * word. The non-full suffix trie does not recursively index all of the word's prefixes.
  * 
  * Example full suffix trie for "foo":
- *	Root Node: 2 children [o, f]
- *		Child Node: o: 1 children [o, ￿]
- *			Child Node: o: 0 children [￿]
+ *	Root Node: 2 children [f, o]
  *		Child Node: f: 1 children [o]
  *			Child Node: o: 1 children [o]
  *				Child Node: o: 0 children [￿, FWE]
+ *		Child Node: o: 1 children [o, ￿]
+ *			Child Node: o: 0 children [￿]
  * 
  * Example non-full suffix tree for "foo":
  *	Root Node: 1 children [f]
@@ -68,14 +70,19 @@ public class SuffixTrie extends Trie {
 		super(createFullTrie);
 	}
 
-	@Override
-	protected char getChar(String word) {
-		return word.charAt(0);
+	/**
+	 * Allows the creator to create either a full of non-full trie and to store chains of single child nodes as a single compressed node
+	 * 
+	 * @param createFullTrie
+	 * @param compressPaths
+	 */
+	public SuffixTrie(boolean createFullTrie, boolean compressPaths) {
+		super(createFullTrie, compressPaths);
 	}
 
 	@Override
-	protected char getOppositeChar(String word) {
-		return word.charAt(word.length() - 1);
+	protected char getChar(String word) {
+		return word.charAt(0);
 	}
 
 	@Override
@@ -83,32 +90,19 @@ public class SuffixTrie extends Trie {
 		return word.substring(1);
 	}
 
-	@Override
-	protected String getSubstring(String word, int index) {
-		return word.substring(0, index);
-	}
-
 	@Override
 	protected CostString addCharToWordPart(char c, CostString wordPart, int cost) {
 		return new CostString(wordPart.str + c, wordPart.cost + cost);
 	}
 
 	@Override
-	protected CostString addCharToWordPart(char c, int index, CostString wordPart, int cost) {
-		String insterion = wordPart.substring(0, index) + c + wordPart.substring(index, wordPart.length());
-		return new CostString(insterion, wordPart.cost + cost);
-	}
-
-	@Override
-	protected CostString deleteCharFromWordPart(int index, CostString wordPart, int cost) {
-		String deletion = wordPart.substring(0, index) + wordPart.substring(index + 1, wordPart.length());
-		return new CostString(deletion, wordPart.cost + cost);
+	protected String getWordFromCharArr(char[] charArr, int length) {
+		return new String(charArr, 0, length);
 	}
 
 	@Override
-	protected CostString transposeCharsInWordPart(int startIndex, CostString wordPart, int cost) {
-		String transpose = wordPart.substring(0, startIndex) + wordPart.substring(startIndex + 1, startIndex + 2) + wordPart.substring(startIndex, startIndex + 1) + wordPart.substring(startIndex + 2, wordPart.length());
-		return new CostString(transpose, wordPart.cost + cost);
+	protected boolean isCharArrReversed() {
+		return false;
 	}
 
 	@Override
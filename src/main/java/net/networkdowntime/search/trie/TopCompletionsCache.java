@@ -0,0 +1,218 @@
+package net.networkdowntime.search.trie;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed top completions of the short word parts of a trie, the word parts with the largest subtrees and the most expensive
+ * Trie.getTopCompletions() queries. For each word part it keeps up to k completions with their weights, ordered by descending weight and then
+ * alphabetically the same as Trie.getTopCompletions(). A list with fewer than k completions holds every completion of its word part.
+ * 
+ * The lists are filled by the first query for a word part and kept up to date by update() as the weights of the words change. When a word in
+ * a full list drops below the last completion of the list, a completion that wasn't kept could now be ahead of it, so the list is discarded and
+ * filled again by the next query. Only completions with a weight above 0 are kept.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+class TopCompletionsCache {
+
+	private final int maxDepth;
+	private final int k;
+	private final Map<String, TopCompletions> topCompletions = new HashMap<String, TopCompletions>();
+
+	/**
+	 * @param maxDepth Max length of the word parts to keep the completions of
+	 * @param k Number of completions to keep for each word part
+	 */
+	TopCompletionsCache(int maxDepth, int k) {
+		this.maxDepth = maxDepth;
+		this.k = k;
+	}
+
+	/**
+	 * @return Max length of the word parts kept
+	 */
+	int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return Number of completions kept for each word part
+	 */
+	int getK() {
+		return k;
+	}
+
+	/**
+	 * @param wordPart The word part being completed
+	 * @param k Number of completions wanted
+	 * @return true if the query can be answered from the cache
+	 */
+	boolean isCacheable(String wordPart, int k) {
+		return wordPart.length() > 0 && wordPart.length() <= maxDepth && k <= this.k;
+	}
+
+	/**
+	 * @param wordPart The word part being completed
+	 * @param k Number of completions wanted
+	 * @return The top k completions of the word part or null if they aren't in the cache
+	 */
+	synchronized List<String> get(String wordPart, int k) {
+		TopCompletions completions = topCompletions.get(wordPart);
+		return (completions == null) ? null : completions.getWords(k);
+	}
+
+	/**
+	 * Keeps the top completions found by a search for the word part.
+	 * 
+	 * @param wordPart The word part that was completed
+	 * @param words The top completions of the word part, ordered the same as Trie.getTopCompletions()
+	 * @param weights The weights of the completions
+	 * @param count The number of completions, less than the cache's k only if the word part has no other completions with a weight above 0
+	 * @param k Number of completions wanted
+	 * @return The top k completions of the word part
+	 */
+	synchronized List<String> put(String wordPart, String[] words, int[] weights, int count, int k) {
+		TopCompletions completions = new TopCompletions(this.k);
+		System.arraycopy(words, 0, completions.words, 0, count);
+		System.arraycopy(weights, 0, completions.weights, 0, count);
+		completions.size = count;
+		topCompletions.put(wordPart, completions);
+		return completions.getWords(k);
+	}
+
+	/**
+	 * Updates the list of the word part for a word, containing the word part, whose weight changed.
+	 * 
+	 * @param wordPart The word part that the word completes
+	 * @param word The word
+	 * @param weight The new weight of the word, 0 if the word was removed
+	 */
+	synchronized void update(String wordPart, String word, int weight) {
+		TopCompletions completions = topCompletions.get(wordPart);
+		if (completions == null) {
+			return;
+		}
+
+		boolean isFull = completions.size == k;
+		int lastWeight = (completions.size > 0) ? completions.weights[completions.size - 1] : 0;
+		String lastWord = (completions.size > 0) ? completions.words[completions.size - 1] : null;
+
+		int index = completions.indexOf(word);
+		if (index >= 0) {
+			if (completions.weights[index] == weight) {
+				return;
+			}
+			completions.removeAt(index);
+			if (weight <= 0 || (isFull && compare(weight, word, lastWeight, lastWord) > 0)) {
+				// words that weren't kept could now be ahead of it
+				if (isFull) {
+					topCompletions.remove(wordPart);
+				}
+				return;
+			}
+			completions.insert(word, weight);
+		} else if (weight > 0) {
+			if (!isFull) {
+				completions.insert(word, weight);
+			} else if (compare(weight, word, lastWeight, lastWord) < 0) {
+				completions.size--;
+				completions.insert(word, weight);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of word parts in the cache
+	 */
+	synchronized int size() {
+		return topCompletions.size();
+	}
+
+	/**
+	 * Discards all of the lists.
+	 */
+	synchronized void clear() {
+		topCompletions.clear();
+	}
+
+	/**
+	 * Same ordering as Trie.getTopCompletions(), highest weight first and then alphabetically.
+	 */
+	private static int compare(int weight1, String word1, int weight2, String word2) {
+		if (weight1 != weight2) {
+			return (weight1 > weight2) ? -1 : 1;
+		}
+		return word1.compareTo(word2);
+	}
+
+	/**
+	 * The completions kept for one word part.
+	 */
+	private static class TopCompletions {
+		final String[] words;
+		final int[] weights;
+		int size = 0;
+
+		TopCompletions(int k) {
+			this.words = new String[k];
+			this.weights = new int[k];
+		}
+
+		List<String> getWords(int k) {
+			List<String> list = new ArrayList<String>(Math.min(k, size));
+			for (int i = 0; i < size && i < k; i++) {
+				list.add(words[i]);
+			}
+			return list;
+		}
+
+		int indexOf(String word) {
+			for (int i = 0; i < size; i++) {
+				if (words[i].equals(word)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void removeAt(int index) {
+			System.arraycopy(words, index + 1, words, index, size - index - 1);
+			System.arraycopy(weights, index + 1, weights, index, size - index - 1);
+			words[--size] = null;
+		}
+
+		/**
+		 * Inserts the word in order, there has to be room for it.
+		 */
+		void insert(String word, int weight) {
+			int index = size;
+			while (index > 0 && compare(weight, word, weights[index - 1], words[index - 1]) < 0) {
+				index--;
+			}
+			System.arraycopy(words, index, words, index + 1, size - index);
+			System.arraycopy(weights, index, weights, index + 1, size - index);
+			words[index] = word;
+			weights[index] = weight;
+			size++;
+		}
+	}
+}
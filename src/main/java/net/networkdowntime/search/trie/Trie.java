@@ -1,14 +1,21 @@
 package net.networkdowntime.search.trie;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import gnu.trove.map.hash.TCharObjectHashMap;
+import net.networkdowntime.search.TermDictionary;
 
 /**
  * Base class for implementing a trie or a partial trie. The trie can either a Suffix Trie or an Inverted Suffix Trie depending on the implementation of the abstract methods.
@@ -28,15 +35,41 @@ import gnu.trove.map.hash.TCharObjectHashMap;
  * @author rwiles
  *
  */
-public abstract class Trie {
+public abstract class Trie implements WordPartIndex {
 	private static final Logger LOGGER = LogManager.getLogger(Trie.class.getName());
 
 	protected boolean createFullTrie = true;
+	protected boolean compressPaths = false;
+	protected FuzzyMatchMode fuzzyMatchMode = FuzzyMatchMode.EDIT_EXPLORATION;
 	protected TrieNode rootNode = new TrieNode();
 
+	// flat read-only copy of the trie created by freeze(), rootNode then holds the words added since
+	private FrozenTrie frozenTrie = null;
+
+	// assigns the term ids stored at the full word ends, null if the trie doesn't keep term ids
+	private TermDictionary termDictionary = null;
+
+	// word parts known to have no completions, null while the cache is off, only valid for the current generation
+	private DeadWordPartCache deadWordPartCache = null;
+	private long generation = 0; // incremented whenever the completions of a word part can change
+
+	// precomputed getTopCompletions() results of the short word parts, null while off, only used for queries with topCompletionsTrie
+	private TopCompletionsCache topCompletionsCache = null;
+	private Trie topCompletionsTrie = null;
+
 	// tracks the maximium height of the tree
 	private int height;
 
+	// tracing of sampled getCompletions() queries, off while traceSink is null
+	private SearchTraceSink traceSink = null;
+	private int traceSampleRate = 1;
+	private int traceCapacity = 0;
+	private final AtomicLong traceQueryCount = new AtomicLong();
+
+	// searches the typo branches of long word parts in parallel while set, null to search them on the calling thread
+	private ForkJoinPool parallelSearchPool = null;
+	private int parallelSearchMinLength = 0;
+
 	/**
 	 * Default constructor generates a full suffix trie
 	 */
@@ -53,20 +86,23 @@ public abstract class Trie {
 	}
 
 	/**
-	 * Gets either the beginning or ending character from the word. Beginning character for a Suffix, ending for an Inverted Suffix
+	 * Allows the creator to create either a full of non-full trie and to compress chains of single child nodes into a single node (radix/Patricia trie).
 	 * 
-	 * @param word
-	 * @return
+	 * @param createFullTrie
+	 * @param compressPaths
 	 */
-	protected abstract char getChar(String word);
+	public Trie(boolean createFullTrie, boolean compressPaths) {
+		this.createFullTrie = createFullTrie;
+		this.compressPaths = compressPaths;
+	}
 
 	/**
-	 * Gets the character from the opposite end of the word than getChar()
+	 * Gets either the beginning or ending character from the word. Beginning character for a Suffix, ending for an Inverted Suffix
 	 * 
 	 * @param word
 	 * @return
 	 */
-	protected abstract char getOppositeChar(String word);
+	protected abstract char getChar(String word);
 
 	/**
 	 * Removes a character from a end of the string and returns the substring. Remove the beginning character for a Suffix, ending for an Inverted Suffix
@@ -76,8 +112,6 @@ public abstract class Trie {
 	 */
 	protected abstract String getSubstring(String word);
 
-	protected abstract String getSubstring(String word, int index);
-
 	/**
 	 * Concatenates the character and the wordPart string and returns the new cost string. wordPart + c for Suffix, c + wordPart for Inverted Suffix
 	 * 
@@ -89,60 +123,203 @@ public abstract class Trie {
 	protected abstract CostString addCharToWordPart(char c, CostString wordPart, int cost);
 
 	/**
-	 * Inserts the character into the wordPart string at the specified index and returns the new cost string. wordPart + c for Suffix, c + wordPart for Inverted Suffix
+	 * Concatenates the character and the wordPart string and returns the new cost string. wordPart + c for Suffix, c + wordPart for Inverted Suffix
 	 * 
 	 * @param c
 	 * @param wordPart
 	 * @param cost How much to increment the returned cost by
 	 * @return
 	 */
-	protected abstract CostString addCharToWordPart(char c, int index, CostString wordPart, int cost);
+	//	protected abstract CostString addCharToWordPartBackwards(char c, CostString wordPart, int cost);
 
 	/**
-	 * Inserts the character into the wordPart string at the specified index and returns the new cost string. wordPart + c for Suffix, c + wordPart for Inverted Suffix
+	 * Gets a char[] in the correct order for node traversal to find completions. left to right for Suffix, reverse order for Inverted Suffix
 	 * 
-	 * @param c
-	 * @param wordPart
-	 * @param cost How much to increment the returned cost by
+	 * @param word
 	 * @return
 	 */
-	protected abstract CostString deleteCharFromWordPart(int index, CostString wordPart, int cost);
+	protected abstract char[] getCharArr(String word);
 
 	/**
-	 * Transposes the character at the specified index with the following character and returns the new cost string.
+	 * Inverse of getCharArr(), gets the word for the characters in node traversal order.
 	 * 
-	 * @param c
-	 * @param wordPart
-	 * @param cost How much to increment the returned cost by
+	 * @param charArr Characters in node traversal order
+	 * @param length The number of characters to use from charArr
 	 * @return
 	 */
-	protected abstract CostString transposeCharsInWordPart(int startIndex, CostString wordPart, int cost);
+	protected abstract String getWordFromCharArr(char[] charArr, int length);
 
 	/**
-	 * Concatenates the character and the wordPart string and returns the new cost string. wordPart + c for Suffix, c + wordPart for Inverted Suffix
+	 * @return true if getCharArr() returns the characters of a word in reverse order
+	 */
+	protected abstract boolean isCharArrReversed();
+
+	/**
+	 * Sets the algorithm used to find completions for word parts that may contain typos, i.e. getCompletions() with subStringOnly = false.
 	 * 
-	 * @param c
-	 * @param wordPart
-	 * @param cost How much to increment the returned cost by
-	 * @return
+	 * @param fuzzyMatchMode The algorithm to use
 	 */
-	//	protected abstract CostString addCharToWordPartBackwards(char c, CostString wordPart, int cost);
+	public void setFuzzyMatchMode(FuzzyMatchMode fuzzyMatchMode) {
+		this.fuzzyMatchMode = fuzzyMatchMode;
+		generation++;
+	}
 
 	/**
-	 * Gets a char[] in the correct order for node traversal to find completions. left to right for Suffix, reverse order for Inverted Suffix
+	 * Caches the word parts that getCompletions() found no completions for across queries, so repeating a query that misses, e.g. a typo or the
+	 * back off of Autocomplete, returns without walking the trie. The cache is invalidated whenever a word is added.
 	 * 
-	 * @param word
-	 * @return
+	 * @param capacity Max number of word parts to cache, the least recently used are evicted first, 0 turns the cache off
 	 */
-	protected abstract char[] getCharArr(String word);
+	public void setDeadWordPartCacheSize(int capacity) {
+		deadWordPartCache = (capacity > 0) ? new DeadWordPartCache(capacity) : null;
+	}
+
+	/**
+	 * Searches the typo branches of getCompletions() with subStringOnly = false in parallel. Each branch off the exact word part, a deletion,
+	 * transposition, insertion or replacement at one index, is searched as a separate task with its own completions and failures, and the
+	 * completions of the tasks are merged when they are all done. Only used for the edit exploration, and for word parts of at least
+	 * minWordPartLength characters so short queries, which cost less than the tasks, stay on the calling thread. Off by default.
+	 * 
+	 * @param pool The pool to run the tasks in, null turns the parallel search off
+	 * @param minWordPartLength Min length of the word parts to search in parallel
+	 */
+	public void setParallelSearch(ForkJoinPool pool, int minWordPartLength) {
+		this.parallelSearchPool = pool;
+		this.parallelSearchMinLength = minWordPartLength;
+	}
 
 	/**
-	 * Adds a word to the trie
+	 * Keeps precomputed top completions for the word parts of up to maxDepth characters, so getTopCompletions() for a short word part, whose
+	 * subtree is the largest, reads a list instead of searching the trie. The list of a word part is filled by its first query and then kept up
+	 * to date by updateTopCompletions(), which has to be called whenever the weight of a full word changes. Only completions with a weight above 0
+	 * are kept.
+	 * 
+	 * @param maxDepth Max length of the word parts to keep the top completions of, 0 turns the cache off
+	 * @param k Number of completions kept for each word part, queries for more completions search the trie
+	 * @param completionTrie The completion trie the queries are made with, or null for queries without one, see getTopCompletions(). With a
+	 *            completion trie the completions of a word part are the words containing it, which requires this trie to be a full trie.
+	 */
+	public void setTopCompletionsCache(int maxDepth, int k, Trie completionTrie) {
+		if (completionTrie != null && !createFullTrie) {
+			throw new IllegalArgumentException("The top completions can only be cached with a completion trie on a full trie");
+		}
+		topCompletionsCache = (maxDepth > 0 && k > 0) ? new TopCompletionsCache(maxDepth, k) : null;
+		topCompletionsTrie = completionTrie;
+	}
+
+	/**
+	 * Updates the precomputed top completions for a full word whose weight changed, see setTopCompletionsCache(). Without a completion trie the
+	 * weight is the word's weight in this trie, otherwise its weight in the completion trie.
+	 * 
+	 * @param word The full word
+	 * @param weight The new weight of the word, 0 once the word is removed
+	 */
+	public void updateTopCompletions(String word, int weight) {
+		TopCompletionsCache cache = topCompletionsCache;
+		if (cache == null) {
+			return;
+		}
+
+		if (topCompletionsTrie != null) { // every substring of the word
+			for (int start = 0; start < word.length(); start++) {
+				for (int end = start + 1; end <= word.length() && end - start <= cache.getMaxDepth(); end++) {
+					cache.update(word.substring(start, end), word, weight);
+				}
+			}
+		} else { // the word parts the word completes in this trie's ordering
+			char[] wordChars = getCharArr(word);
+			for (int length = 1; length <= wordChars.length && length <= cache.getMaxDepth(); length++) {
+				cache.update(getWordFromCharArr(wordChars, length), word, weight);
+			}
+		}
+	}
+
+	/**
+	 * Sets the dictionary used to store the term id of each full word at the node the word ends at. Completions ending at a full word are then
+	 * the dictionary's string for the term instead of a new string built from the walked characters. Can only be set while the trie is empty, so
+	 * every term id in the trie is from the same dictionary.
+	 * 
+	 * @param termDictionary The dictionary to get the term ids from or null to not store term ids
+	 */
+	public void setTermDictionary(TermDictionary termDictionary) {
+		if (frozenTrie != null || rootNode.hasChildren()) {
+			throw new IllegalStateException("The term dictionary can only be set on an empty trie");
+		}
+		this.termDictionary = termDictionary;
+	}
+
+	public TermDictionary getTermDictionary() {
+		return termDictionary;
+	}
+
+	public FuzzyMatchMode getFuzzyMatchMode() {
+		return fuzzyMatchMode;
+	}
+
+	/**
+	 * Traces a sample of the getCompletions() queries: the completions and failures recorded for each search path. Tracing is off by default and
+	 * doesn't cost anything while off.
+	 * 
+	 * @param traceSink The sink to send the trace of each sampled query to once it completes, null turns tracing off
+	 * @param sampleRate Traces 1 in every sampleRate queries
+	 * @param capacity Max number of entries kept per query, the latest entries are kept
+	 */
+	public void setTraceSink(SearchTraceSink traceSink, int sampleRate, int capacity) {
+		if (traceSink != null && (sampleRate < 1 || capacity < 1)) {
+			throw new IllegalArgumentException("sampleRate and capacity have to be at least 1");
+		}
+		this.traceSampleRate = sampleRate;
+		this.traceCapacity = capacity;
+		this.traceSink = traceSink;
+	}
+
+	/**
+	 * @return A new trace if tracing is on and the query is sampled, otherwise null
+	 */
+	private SearchTrace startTrace(CostString wordPart, int editDistanceMax, boolean subStringOnly) {
+		SearchTraceSink sink = traceSink;
+		if (sink == null || traceQueryCount.getAndIncrement() % traceSampleRate != 0) {
+			return null;
+		}
+		return new SearchTrace(getClass().getSimpleName() + "(wordPart=" + wordPart.str + ";" + wordPart.cost + ", editDistanceMax=" + editDistanceMax + ", subStringOnly=" + subStringOnly + ")",
+				traceCapacity);
+	}
+
+	private void finishTrace(SearchTrace trace) {
+		SearchTraceSink sink = traceSink;
+		if (trace != null && sink != null) {
+			sink.traceCompleted(trace);
+		}
+	}
+
+	/**
+	 * Adds a word to the trie. Adding a word that is already in the trie doesn't change the trie.
 	 * 
 	 * @param word
+	 * @return The number of nodes walked or created, 0 if the word was already in the trie
 	 */
+	@Override
 	public int add(String word) {
-		int cost = addInternal(rootNode, word, true, 0);
+		if (containsWord(getCharArr(word), true)) { // the end counts are per distinct full word
+			return 0;
+		}
+		generation++;
+
+		int cost = 0;
+		String wordPart = word;
+		boolean isFullWord = true;
+		int termId = (termDictionary != null) ? termDictionary.getOrAddTermId(word) : TermDictionary.NO_TERM_ID;
+
+		while (true) {
+			cost += addInternal(rootNode, getCharArr(wordPart), true, isFullWord, termId);
+
+			if (!createFullTrie || wordPart.length() == 1) { // full tree also indexes every suffix of the word from the root node
+				break;
+			}
+			wordPart = getSubstring(wordPart);
+			isFullWord = false;
+		}
+
 		if (word.length() > height) {
 			height = word.length();
 		}
@@ -150,102 +327,593 @@ public abstract class Trie {
 	}
 
 	/**
-	 * Private internal method to recursively add the wordPart to the trie structure
+	 * Private internal method to add the wordPart to the trie structure from the given root node. When compressing paths a new branch is added as a
+	 * single node holding the remaining characters and existing nodes are split where the wordPart diverges from them.
 	 * 
-	 * @param wordPart Word part to be added to the trie
+	 * @param root The root node of the trie to add to
+	 * @param wordPartChars Word part to be added to the trie in getCharArr() ordering
+	 * @param isEnd Whether to mark the last node as the end of a word part
+	 * @param isFullWord Whether to mark the last node as the end of a full word
+	 * @param termId The term id of the full word, only stored when isFullWord is true
+	 * @return The number of nodes walked or created
 	 */
-	private int addInternal(TrieNode node, String wordPart, boolean isFullWord, int cost) {
-		cost += 1;
-		// LOGGER.debugprintln("\t\t" + this.getClass().getSimpleName() +
-		// ": adding wordPart: " + wordPart + ", currentCost: " + cost);
+	private int addInternal(TrieNode root, char[] wordPartChars, boolean isEnd, boolean isFullWord, int termId) {
+		int cost = 0;
+		TrieNode node = root;
+		int i = 0;
+
+		while (i < wordPartChars.length) {
+			TrieNode child = node.getChild(wordPartChars[i]);
+			i++;
+
+			if (child == null) {
+				child = new TrieNode(wordPartChars[i - 1]);
+				if (compressPaths && i < wordPartChars.length) {
+					child.run = Arrays.copyOfRange(wordPartChars, i, wordPartChars.length);
+					i = wordPartChars.length;
+				}
+				node.putChild(child);
+			} else {
+				int matched = child.matchRun(wordPartChars, i);
+				if (matched < child.getRunLength()) { // the word part diverges or ends within the run
+					child.splitRun(matched);
+				}
+				i += matched;
+			}
 
-		int length = wordPart.length();
-		node.children = (node.children != null) ? node.children : new TCharObjectHashMap<TrieNode>(1, 0.9f);
+			node = child;
+			cost++;
+		}
 
-		char c = getChar(wordPart);
-		TrieNode child = node.children.get(c);
+		// This is the end of the string and not on the root node, add a child marker to denote end of suffix
+		if (isEnd) {
+			node.endCount++;
+		}
+		node.isEnd = node.isEnd || isEnd;
+		node.isFullWordEnd = node.isFullWordEnd || isFullWord;
+		if (isFullWord) {
+			node.termId = termId;
+		}
+		return cost;
+	}
 
-		if (child == null) {
-			child = new TrieNode(c);
-			node.children.put(c, child);
+	/**
+	 * Remove a word from the trie. Decrements the end counts of the word's word parts, so only the nodes of the word are visited. A word of a
+	 * frozen trie has its ends cleared in the frozen trie instead, its nodes are dropped by the next call to freeze().
+	 * 
+	 * @param wordToRemove
+	 */
+	@Override
+	public void remove(String wordToRemove) {
+		char[] wordChars = getCharArr(wordToRemove);
+		boolean isFrozenWord = !containsWord(rootNode, wordChars, true);
+		if (isFrozenWord && (frozenTrie == null || !frozenTrie.containsWord(wordChars, true))) { // the end counts only account for full words in the trie
+			return;
 		}
 
-		if (length == 1) { // This is the end of the string and not on the root
-							// node, add a child marker to denote end of suffix
-			child.isEnd = true;
-			child.isFullWordEnd = child.isFullWordEnd || isFullWord;
-		} else {
-			String subString = getSubstring(wordPart);
+		String wordPart = wordToRemove;
+		boolean isFullWord = true;
 
-			cost += addInternal(child, subString, isFullWord, cost);
+		while (true) {
+			if (isFrozenWord) {
+				removeFrozenInternal(getCharArr(wordPart), isFullWord);
+			} else {
+				removeInternal(getCharArr(wordPart), isFullWord);
+			}
 
-			if (createFullTrie && node.isRootNode()) { // full tree and root node
-				cost += addInternal(node, subString, false, cost);
+			if (!createFullTrie || wordPart.length() == 1) { // full tree also has to remove every suffix of the word
+				break;
 			}
+			wordPart = getSubstring(wordPart);
+			isFullWord = false;
 		}
-		return cost;
+	}
+
+	@Override
+	public boolean isRemoveSupported() {
+		return true;
 	}
 
 	/**
-	 * Remove a word from the trie. Much more expensive than adding a word because the entire trie has to be walked to ensure nodes needed to ensure the integrity of the trie are not pruned.
+	 * Private internal method to remove the wordPart from the trie structure, pruning the nodes that are no longer needed. When compressing paths
+	 * nodes left with a single child are merged back together.
 	 * 
-	 * @param wordToRemove
+	 * @param wordPartChars Word part to remove in getCharArr() ordering
+	 * @param isFullWord Whether the word part is a full word or one of its suffixes
 	 */
-	public void remove(String wordToRemove) {
-		Set<String> wordsToPreserve = new HashSet<String>();
+	private void removeInternal(char[] wordPartChars, boolean isFullWord) {
+		TrieNode[] path = new TrieNode[wordPartChars.length + 1];
+		int depth = 0;
+		path[0] = rootNode;
+
+		TrieNode node = rootNode;
+		int i = 0;
+		while (i < wordPartChars.length) {
+			node = node.getChild(wordPartChars[i]);
+			i++;
+
+			if (node == null || node.matchRun(wordPartChars, i) < node.getRunLength()) { // not in the trie
+				return;
+			}
+			i += node.getRunLength();
+			path[++depth] = node;
+		}
 
-		if (createFullTrie) { // have to account for all words that share a
-								// character with wordToRemove
-			getFullWordsForRemoval(rootNode, wordToRemove, wordsToPreserve, new CostString("", 0));
-			wordsToPreserve.remove(wordToRemove);
+		node.isFullWordEnd = node.isFullWordEnd && !isFullWord;
+		if (isFullWord) {
+			node.termId = TermDictionary.NO_TERM_ID;
 		}
 
-		removeInternal(rootNode, wordToRemove, true, wordsToPreserve);
+		if (node.endCount > 0) {
+			node.endCount--;
+		}
+		if (node.endCount == 0) { // no other word shares this word part
+			node.isEnd = false;
+			node.weight = 0;
+		}
 
+		for (int d = depth; d > 0; d--) {
+			TrieNode child = path[d];
+			if (child.hasChildren() || child.isEnd || child.isFullWordEnd) {
+				break;
+			}
+			path[d - 1].removeChild(child.c);
+		}
+
+		for (int d = depth; d >= 0; d--) {
+			path[d].updateMaxWeight();
+		}
+
+		if (compressPaths) {
+			for (int d = depth; d > 0; d--) {
+				path[d].mergeWithOnlyChild();
+			}
+		}
 	}
 
 	/**
-	 * Private internal method to recursively remove the wordPart from the trie structure
+	 * Private internal method to remove the wordPart from the frozen trie, see FrozenTrie.removeEnd().
 	 * 
-	 * @param node
-	 * @param wordPart
-	 * @param isFullWord
-	 * @param wordsToPreserve
+	 * @param wordPartChars Word part to remove in getCharArr() ordering
+	 * @param isFullWord Whether the word part is a full word or one of its suffixes
 	 */
-	private void removeInternal(TrieNode node, String wordPart, boolean isFullWord, Set<String> wordsToPreserve) {
-		int length = wordPart.length();
+	private void removeFrozenInternal(char[] wordPartChars, boolean isFullWord) {
+		int[] frozenPath = new int[wordPartChars.length + 1];
+		int frozenDepth = frozenTrie.walk(wordPartChars, frozenPath);
+		if (frozenDepth > 0 && frozenTrie.isEnd(frozenPath[frozenDepth]) && getFrozenPathLength(frozenPath, frozenDepth) == wordPartChars.length) {
+			frozenTrie.removeEnd(frozenPath, frozenDepth, isFullWord);
+		}
+	}
 
-		char c = getChar(wordPart);
-		TrieNode child = node.children.get(c);
-		boolean isRootNode = node.isRootNode();
-		boolean isPartOfWordToPreserve = false;
+	/**
+	 * Compacts the trie into a flat primitive array layout without any per node objects. Intended for read heavy use after the bulk of the words
+	 * have been added. Words added after freezing go into a small mutable overlay trie that is searched along with the frozen trie and merged into it
+	 * by the next call to freeze(). Words removed after freezing are cleared in the frozen trie and their nodes are dropped by the next call as well.
+	 */
+	public void freeze() {
+		if (frozenTrie == null || rootNode.hasChildren() || frozenTrie.hasRemovedEnds()) {
+			frozenTrie = FrozenTrie.freeze(getMergedRootNode());
+			rootNode = new TrieNode();
+		}
+	}
 
-		for (String wordToPreserve : wordsToPreserve) {
-			isPartOfWordToPreserve = isPartOfWordToPreserve || child.c == getOppositeChar(wordToPreserve);
+	/**
+	 * @return true if the trie has been frozen and not loaded since
+	 */
+	public boolean isFrozen() {
+		return frozenTrie != null;
+	}
+
+	/**
+	 * Replaces the contents of the trie with nodes built outside of the trie, used by TrieBuilder.
+	 *
+	 * @param root The root node of the built trie
+	 * @param height The length of the longest word in the built trie
+	 */
+	void load(TrieNode root, int height) {
+		this.rootNode = root;
+		this.frozenTrie = null;
+		this.height = height;
+		this.generation++;
+		if (topCompletionsCache != null) {
+			topCompletionsCache.clear();
 		}
+	}
 
-		if (length == 1) {
-			child.isFullWordEnd = child.isFullWordEnd && !isFullWord;
+	/**
+	 * Gets the node a word part ends at. Every suffix of a word in getCharArr() ordering starts at a later index of the same array.
+	 * 
+	 * @param root The root node to start from
+	 * @param wordPartChars The characters in getCharArr() ordering
+	 * @param start The index of the first character of the word part
+	 * @return The node or null if the word part doesn't end at a node
+	 */
+	private TrieNode getNode(TrieNode root, char[] wordPartChars, int start) {
+		TrieNode node = root;
+		int i = start;
+		while (i < wordPartChars.length) {
+			node = node.getChild(wordPartChars[i++]);
+			if (node == null || node.matchRun(wordPartChars, i) < node.getRunLength()) {
+				return null;
+			}
+			i += node.getRunLength();
+		}
+		return node;
+	}
 
-			if (!isPartOfWordToPreserve || !createFullTrie) {
-				child.isEnd = false;
+	/**
+	 * Gets the mutable nodes for the frozen trie with the word parts of the overlay merged in. Doesn't modify the state of the trie.
+	 * 
+	 * @return The root node of the merged trie
+	 */
+	private TrieNode getMergedRootNode() {
+		if (frozenTrie == null) {
+			return rootNode;
+		}
+		TrieNode mergedRootNode = frozenTrie.thaw();
+		if (compressPaths && frozenTrie.hasRemovedEnds()) { // the nodes left with a single child by the removed words
+			mergeOnlyChildren(mergedRootNode);
+		}
+		mergeInto(mergedRootNode, rootNode, new char[height + 1], 0);
+		updateMaxWeights(mergedRootNode);
+		return mergedRootNode;
+	}
+
+	/**
+	 * Adds every word part ending in the subtree of the node to the trie at the given root node.
+	 * 
+	 * @param root The root node to merge into
+	 * @param node The current node of the trie being merged
+	 * @param path The characters walked to reach the node in getCharArr() ordering
+	 * @param length The number of characters in path
+	 */
+	private void mergeInto(TrieNode root, TrieNode node, char[] path, int length) {
+		if (!node.isRootNode()) {
+			path[length++] = node.c;
+			for (int i = 0; i < node.getRunLength(); i++) {
+				path[length++] = node.run[i];
 			}
+			if (node.isEnd || node.isFullWordEnd) {
+				char[] wordPartChars = Arrays.copyOf(path, length);
+				addInternal(root, wordPartChars, node.isEnd, node.isFullWordEnd, node.termId);
+
+				TrieNode[] mergedPath = new TrieNode[length + 1];
+				TrieNode mergedNode = mergedPath[walk(root, wordPartChars, mergedPath)];
+				mergedNode.weight = Math.max(mergedNode.weight, node.weight);
+				if (node.isEnd) { // addInternal() counted one of the node's words
+					mergedNode.endCount += node.endCount - 1;
+				}
+			}
+		}
 
-			if (!child.isEnd && !child.isFullWordEnd && child.children == null) {
-				node.children.remove(c);
+		for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+			TrieNode child = node.getChildInSlot(slot);
+			if (child != null) {
+				mergeInto(root, child, path, length);
 			}
-		} else {
-			String subString = getSubstring(wordPart);
-			removeInternal(child, subString, isFullWord, wordsToPreserve);
+		}
+	}
+
+	/**
+	 * Merges the nodes of the subtree that are left with a single child and no end into their child, see TrieNode.mergeWithOnlyChild().
+	 * 
+	 * @param node The root of the subtree
+	 */
+	private void mergeOnlyChildren(TrieNode node) {
+		while (node.mergeWithOnlyChild()) {
+			// the merged child's only child can be merged as well
+		}
+		for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+			TrieNode child = node.getChildInSlot(slot);
+			if (child != null) {
+				mergeOnlyChildren(child);
+			}
+		}
+	}
+
+	/**
+	 * Recalculates the max weights of the node's subtree.
+	 * 
+	 * @param node The root of the subtree
+	 */
+	private void updateMaxWeights(TrieNode node) {
+		for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+			TrieNode child = node.getChildInSlot(slot);
+			if (child != null) {
+				updateMaxWeights(child);
+			}
+		}
+		node.updateMaxWeight();
+	}
+
+	/**
+	 * Walks the path of the word part from the given root node.
+	 * 
+	 * @param root The root node to start from
+	 * @param wordPartChars The word part in getCharArr() ordering
+	 * @param path Filled in with the nodes walked, the root node first
+	 * @return The index in path of the last node walked, the word part can end within that node's run, or -1 if the word part isn't in the trie
+	 */
+	private int walk(TrieNode root, char[] wordPartChars, TrieNode[] path) {
+		int depth = 0;
+		TrieNode node = root;
+		path[0] = root;
+
+		int i = 0;
+		while (i < wordPartChars.length) {
+			node = node.getChild(wordPartChars[i++]);
+			if (node == null) {
+				return -1;
+			}
+
+			int matched = node.matchRun(wordPartChars, i);
+			if (matched < node.getRunLength() && i + matched < wordPartChars.length) { // diverges within the run
+				return -1;
+			}
+			i += matched;
+			path[++depth] = node;
+		}
+		return depth;
+	}
 
-			if (createFullTrie && isRootNode) { // full tree and root node
-				removeInternal(node, subString, false, wordsToPreserve);
+	/**
+	 * Sets the weight of a word part that is in the trie, e.g. the number of occurrences of a word, and updates the max weights of the nodes above it.
+	 * The weights are used by getTopCompletions() to find the best completions without walking the whole subtree of the word part.
+	 * 
+	 * @param wordPart The word part
+	 * @param weight The new weight of the word part
+	 */
+	public void setWeight(String wordPart, int weight) {
+		char[] wordPartChars = getCharArr(wordPart);
+
+		TrieNode[] path = new TrieNode[wordPartChars.length + 1];
+		int depth = walk(rootNode, wordPartChars, path);
+		if (depth > 0 && path[depth].isEnd && getPathLength(path, depth) == wordPartChars.length) {
+			path[depth].weight = weight;
+			for (int d = depth; d >= 0 && path[d].updateMaxWeight(); d--) {
+				// stop as soon as a node's max weight is unchanged, the nodes above it are then unchanged as well
 			}
+		}
 
-			if (child.children.isEmpty() && !child.isEnd) {
-				node.children.remove(child.c);
+		if (frozenTrie != null) {
+			int[] frozenPath = new int[wordPartChars.length + 1];
+			int frozenDepth = frozenTrie.walk(wordPartChars, frozenPath);
+			if (frozenDepth > 0 && frozenTrie.isEnd(frozenPath[frozenDepth]) && getFrozenPathLength(frozenPath, frozenDepth) == wordPartChars.length) {
+				frozenTrie.setWeight(frozenPath, frozenDepth, weight);
 			}
+		}
+	}
+
+	private int getPathLength(TrieNode[] path, int depth) {
+		int length = 0;
+		for (int d = 1; d <= depth; d++) {
+			length += 1 + path[d].getRunLength();
+		}
+		return length;
+	}
 
+	private int getFrozenPathLength(int[] path, int depth) {
+		int length = 0;
+		for (int d = 1; d <= depth; d++) {
+			length += 1 + frozenTrie.getRunLength(path[d]);
+		}
+		return length;
+	}
+
+	/**
+	 * Gets the term id stored for a full word, see setTermDictionary().
+	 *
+	 * @param word The full word
+	 * @return The term id or TermDictionary.NO_TERM_ID if the word isn't a full word in the trie or was added without a term dictionary
+	 */
+	public int getTermId(String word) {
+		char[] wordChars = getCharArr(word);
+
+		TrieNode node = getNode(rootNode, wordChars, 0);
+		if (node != null && node.isFullWordEnd) {
+			return node.termId;
+		}
+
+		if (frozenTrie != null) {
+			int[] frozenPath = new int[wordChars.length + 1];
+			int frozenDepth = frozenTrie.walk(wordChars, frozenPath);
+			if (frozenDepth > 0 && frozenTrie.isFullWordEnd(frozenPath[frozenDepth]) && getFrozenPathLength(frozenPath, frozenDepth) == wordChars.length) {
+				return frozenTrie.getTermId(frozenPath[frozenDepth]);
+			}
+		}
+		return TermDictionary.NO_TERM_ID;
+	}
+
+	/**
+	 * Gets the max weight of all of the word parts starting with the given word part.
+	 * 
+	 * @param wordPart The word part
+	 * @return The max weight or 0 if there aren't any word parts starting with the word part
+	 */
+	public int getMaxWeight(String wordPart) {
+		char[] wordPartChars = getCharArr(wordPart);
+		int maxWeight = 0;
+
+		TrieNode[] path = new TrieNode[wordPartChars.length + 1];
+		int depth = walk(rootNode, wordPartChars, path);
+		if (depth >= 0) {
+			maxWeight = path[depth].maxWeight;
+		}
+
+		if (frozenTrie != null) {
+			int[] frozenPath = new int[wordPartChars.length + 1];
+			int frozenDepth = frozenTrie.walk(wordPartChars, frozenPath);
+			if (frozenDepth >= 0) {
+				maxWeight = Math.max(maxWeight, frozenTrie.getMaxWeight(frozenPath[frozenDepth]));
+			}
+		}
+		return maxWeight;
+	}
+
+	/**
+	 * Gets the k full words with the highest weight that complete the word part, ordered by descending weight and then alphabetically.
+	 * 
+	 * @param wordPart The word part to complete
+	 * @param k Max number of completions to return
+	 * @return The completions
+	 */
+	public List<String> getTopCompletions(String wordPart, int k) {
+		return getTopCompletions(wordPart, k, null);
+	}
+
+	/**
+	 * Gets the k full words with the highest weight that complete the word part, ordered by descending weight and then alphabetically. When a
+	 * completion trie is given, each word part in this trie that completes the word part is in turn completed to full words in the completion
+	 * trie, e.g. a full InvertedSuffixTrie finding the beginnings of the word part and a SuffixTrie finding the endings of those. The weight of a
+	 * word part in this trie then has to be the max weight of its completions in the completion trie.
+	 * 
+	 * Searches best first, ordered by the max weight of each node's subtree, and stops as soon as no remaining node can hold a completion with a
+	 * higher weight than the k-th completion found. The cost of a query depends on k instead of on the size of the word part's subtree. Short
+	 * word parts are read from the precomputed lists when setTopCompletionsCache() is on for the completion trie.
+	 * 
+	 * @param wordPart The word part to complete
+	 * @param k Max number of completions to return
+	 * @param completionTrie Trie to complete the word parts found in this trie to full words, or null to only return full words from this trie
+	 * @return The completions
+	 */
+	public List<String> getTopCompletions(String wordPart, int k, Trie completionTrie) {
+		TopCompletionsCache cache = topCompletionsCache;
+		if (cache != null && completionTrie == topCompletionsTrie && cache.isCacheable(wordPart, k)) {
+			List<String> topCompletions = cache.get(wordPart, k);
+			if (topCompletions == null) {
+				List<TopCompletionCandidate> completions = getTopCompletionCandidates(wordPart, cache.getK(), completionTrie);
+				String[] words = new String[completions.size()];
+				int[] weights = new int[completions.size()];
+				int count = 0;
+				for (TopCompletionCandidate completion : completions) {
+					if (completion.weight > 0) {
+						words[count] = completion.wordPart.str;
+						weights[count++] = completion.weight;
+					}
+				}
+				topCompletions = cache.put(wordPart, words, weights, count, k);
+			}
+			return topCompletions;
+		}
+
+		List<TopCompletionCandidate> completions = getTopCompletionCandidates(wordPart, k, completionTrie);
+		List<String> topCompletions = new ArrayList<String>();
+		for (TopCompletionCandidate completion : completions) {
+			topCompletions.add(completion.wordPart.str);
+		}
+		return topCompletions;
+	}
+
+	/**
+	 * Searches for the top k completions of the word part, see getTopCompletions().
+	 * 
+	 * @return At most k completions, in order
+	 */
+	private List<TopCompletionCandidate> getTopCompletionCandidates(String wordPart, int k, Trie completionTrie) {
+		PriorityQueue<TopCompletionCandidate> candidates = new PriorityQueue<TopCompletionCandidate>(11, TopCompletionCandidate.BEST_FIRST);
+		List<TopCompletionCandidate> completions = new ArrayList<TopCompletionCandidate>();
+		Set<String> completedWords = new HashSet<String>();
+
+		addTopCompletionStartCandidates(candidates, new CostString(wordPart), false);
+
+		while (!candidates.isEmpty() && k > 0) {
+			TopCompletionCandidate candidate = candidates.poll();
+
+			if (completions.size() >= k && candidate.weight < completions.get(k - 1).weight) { // no better completions are left
+				break;
+			}
+
+			if (candidate.isCompletion) {
+				if (completedWords.add(candidate.wordPart.str)) {
+					completions.add(candidate);
+				}
+			} else {
+				candidate.trie.expandTopCompletionCandidate(candidates, candidate, completionTrie);
+			}
+		}
+
+		// completions with the same weight as the k-th completion can be found out of alphabetical order
+		Collections.sort(completions, TopCompletionCandidate.BEST_FIRST);
+
+		return (completions.size() > k) ? completions.subList(0, k) : completions;
+	}
+
+	/**
+	 * Adds the candidates for the nodes the word part ends at.
+	 */
+	private void addTopCompletionStartCandidates(PriorityQueue<TopCompletionCandidate> candidates, CostString wordPart, boolean isCompletionTrie) {
+		char[] wordPartChars = getCharArr(wordPart.str);
+
+		TrieNode[] path = new TrieNode[wordPartChars.length + 1];
+		int depth = walk(rootNode, wordPartChars, path);
+		if (depth >= 0) {
+			TrieNode node = path[depth];
+			CostString nodeWordPart = wordPart;
+			for (int i = node.getRunLength() - (getPathLength(path, depth) - wordPartChars.length); i < node.getRunLength(); i++) {
+				nodeWordPart = addCharToWordPart(node.run[i], nodeWordPart, 1);
+			}
+			candidates.add(new TopCompletionCandidate(this, node, -1, nodeWordPart, node.maxWeight, false, isCompletionTrie));
+		}
+
+		if (frozenTrie != null) {
+			int[] frozenPath = new int[wordPartChars.length + 1];
+			int frozenDepth = frozenTrie.walk(wordPartChars, frozenPath);
+			if (frozenDepth >= 0) {
+				int node = frozenPath[frozenDepth];
+				CostString nodeWordPart = wordPart;
+				for (int i = frozenTrie.getRunLength(node) - (getFrozenPathLength(frozenPath, frozenDepth) - wordPartChars.length); i < frozenTrie.getRunLength(node); i++) {
+					nodeWordPart = addCharToWordPart(frozenTrie.getRunChar(node, i), nodeWordPart, 1);
+				}
+				candidates.add(new TopCompletionCandidate(this, null, node, nodeWordPart, frozenTrie.getMaxWeight(node), false, isCompletionTrie));
+			}
+		}
+	}
+
+	/**
+	 * Adds the completion for the candidate's node, if any, and the candidates for the node's children.
+	 */
+	private void expandTopCompletionCandidate(PriorityQueue<TopCompletionCandidate> candidates, TopCompletionCandidate candidate, Trie completionTrie) {
+		boolean isEnd;
+		boolean isFullWordEnd;
+		int weight;
+
+		if (candidate.node != null) {
+			TrieNode node = candidate.node;
+			isEnd = node.isEnd;
+			isFullWordEnd = node.isFullWordEnd;
+			weight = node.weight;
+
+			for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+				TrieNode child = node.getChildInSlot(slot);
+				if (child != null) {
+					CostString childWordPart = addCharToWordPart(child.c, candidate.wordPart, 1);
+					for (int i = 0; i < child.getRunLength(); i++) {
+						childWordPart = addCharToWordPart(child.run[i], childWordPart, 1);
+					}
+					candidates.add(new TopCompletionCandidate(this, child, -1, childWordPart, child.maxWeight, false, candidate.isCompletionTrie));
+				}
+			}
+		} else {
+			int node = candidate.frozenNode;
+			isEnd = frozenTrie.isEnd(node);
+			isFullWordEnd = frozenTrie.isFullWordEnd(node);
+			weight = frozenTrie.getWeight(node);
+
+			for (int child = frozenTrie.getFirstChild(node); child < frozenTrie.getChildEnd(node); child++) {
+				CostString childWordPart = addCharToWordPart(frozenTrie.getChar(child), candidate.wordPart, 1);
+				for (int i = 0; i < frozenTrie.getRunLength(child); i++) {
+					childWordPart = addCharToWordPart(frozenTrie.getRunChar(child, i), childWordPart, 1);
+				}
+				candidates.add(new TopCompletionCandidate(this, null, child, childWordPart, frozenTrie.getMaxWeight(child), false, candidate.isCompletionTrie));
+			}
+		}
+
+		if (completionTrie != null && !candidate.isCompletionTrie) {
+			if (isEnd) {
+				completionTrie.addTopCompletionStartCandidates(candidates, new CostString(candidate.wordPart.str), true);
+			}
+		} else if (isFullWordEnd) {
+			candidates.add(new TopCompletionCandidate(this, null, -1, candidate.wordPart, weight, true, candidate.isCompletionTrie));
 		}
 	}
 
@@ -258,39 +926,174 @@ public abstract class Trie {
 	 * @param subStringOnly Assume that there are no typos in the wordPart (i.e. exact pattern match), use edit distance to only find word completions
 	 * @return A list of the completed words.
 	 */
+	@Override
 	public Set<CostString> getCompletions(CostString wordPart, int editDistanceMax, boolean subStringOnly) {
-		LOGGER.debug(getClass().getSimpleName() + "(wordPart=" + wordPart.str + ";" + wordPart.cost + ", editDistanceMax=" + editDistanceMax + ", subStringOnly=" + subStringOnly + "):");
-		logs.add(getClass().getSimpleName() + "(wordPart=" + wordPart.str + ";" + wordPart.cost + ", editDistanceMax=" + editDistanceMax + ", subStringOnly=" + subStringOnly + "):");
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(getClass().getSimpleName() + "(wordPart=" + wordPart.str + ";" + wordPart.cost + ", editDistanceMax=" + editDistanceMax + ", subStringOnly=" + subStringOnly + "):");
+		}
+		SearchTrace trace = startTrace(wordPart, editDistanceMax, subStringOnly);
 		CostStringSet<CostString> completions = new CostStringSet<CostString>();
-		CostStringSet<CostString> failures = new CostStringSet<CostString>();
 
-		getRootCompletions(completions, failures, wordPart, editDistanceMax, subStringOnly, 0);
+		DeadWordPartCache deadWordPartCache = this.deadWordPartCache;
+		long generation = this.generation;
+		int remainingEditDistance = Math.max(0, editDistanceMax - wordPart.cost);
+		if (deadWordPartCache != null && deadWordPartCache.isDead(wordPart.str, remainingEditDistance, subStringOnly, generation)) {
+			String message = "getCompletions(): " + wordPart + " - " + wordPart.cost + " is known to have no completions";
+			if (trace != null) {
+				trace.add(message);
+			}
+			LOGGER.debug(message);
+			finishTrace(trace);
+			return completions;
+		}
+
+		if (!subStringOnly && fuzzyMatchMode == FuzzyMatchMode.LEVENSHTEIN_AUTOMATON) {
+			getAutomatonCompletions(completions, wordPart, editDistanceMax, trace);
+		} else {
+			CostStringSet<CostString> failures = new CostStringSet<CostString>();
+			ForkJoinPool pool = this.parallelSearchPool;
+			boolean isParallel = pool != null && trace == null && !subStringOnly && wordPart.cost < editDistanceMax && wordPart.str.length() >= parallelSearchMinLength;
+			List<CompletionSearch> searches = (isParallel) ? new ArrayList<CompletionSearch>() : null;
+
+			getRootCompletions(completions, failures, wordPart, editDistanceMax, subStringOnly, false, searches, trace, 0);
+
+			if (frozenTrie != null) { // the frozen trie is searched separately so the overlay's completions and failures don't prune its search paths
+				CostStringSet<CostString> frozenCompletions = new CostStringSet<CostString>();
+				getRootCompletions(frozenCompletions, new CostStringSet<CostString>(), wordPart, editDistanceMax, subStringOnly, true, searches, trace, 0);
+				completions.addAll(frozenCompletions);
+			}
 
+			if (searches != null && !searches.isEmpty()) {
+				runSearches(pool, searches);
+				for (CompletionSearch search : searches) {
+					completions.addAll(search.completions);
+				}
+			}
+		}
+
+		if (deadWordPartCache != null && completions.isEmpty()) {
+			deadWordPartCache.addDead(wordPart.str, remainingEditDistance, subStringOnly, generation);
+		}
+
+		finishTrace(trace);
 		return completions;
 	}
 
-	private void getRootCompletions(CostStringSet<CostString> completions, CostStringSet<CostString> failures, CostString wordPart, int editDistanceMax, boolean subStringOnly, int tabs) {
-		LOGGER.debug(getTabs(tabs) + "getRootCompletions(): '" + wordPart + "' - " + wordPart.cost + ", failures.size(): " + failures.size());
+	/**
+	 * Finds the completions by walking the trie once with a Levenshtein automaton for the word part. Finds the same completions as the edit
+	 * exploration, each with the lowest cost the edit exploration can reach it at.
+	 * 
+	 * @param completions The set to add the completions to
+	 * @param wordPart The word part to find completions for
+	 * @param editDistanceMax Max edit distance for the completions, including the cost of the word part
+	 */
+	private void getAutomatonCompletions(CostStringSet<CostString> completions, CostString wordPart, int editDistanceMax, SearchTrace trace) {
+		int maxDistance = Math.max(0, editDistanceMax - wordPart.cost);
+		LevenshteinAutomaton automaton = new LevenshteinAutomaton(getCharArr(wordPart.str), maxDistance);
+
+		for (int slot = 0; slot < rootNode.getChildSlotCount(); slot++) {
+			TrieNode child = rootNode.getChildInSlot(slot);
+			if (child != null) {
+				getAutomatonCompletions(completions, child, 1, automaton, wordPart.cost, trace);
+			}
+		}
+
+		if (frozenTrie != null) {
+			for (int child = frozenTrie.getFirstChild(FrozenTrie.ROOT); child < frozenTrie.getChildEnd(FrozenTrie.ROOT); child++) {
+				getFrozenAutomatonCompletions(completions, child, 1, automaton, wordPart.cost, trace);
+			}
+		}
+	}
+
+	private void getAutomatonCompletions(CostStringSet<CostString> completions, TrieNode node, int depth, LevenshteinAutomaton automaton, int baseCost, SearchTrace trace) {
+		if (!automaton.step(depth, node.c)) {
+			return;
+		}
+		for (int i = 0; i < node.getRunLength(); i++) {
+			if (!automaton.step(++depth, node.run[i])) {
+				return;
+			}
+		}
+
+		if (node.isEnd && automaton.isMatch(depth)) {
+			addCompletion(completions, new CostString(getWord(automaton.getPath(), depth, node.termId), baseCost + automaton.getDistance(depth)), trace, 0);
+		}
+
+		for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+			TrieNode child = node.getChildInSlot(slot);
+			if (child != null) {
+				getAutomatonCompletions(completions, child, depth + 1, automaton, baseCost, trace);
+			}
+		}
+	}
+
+	private void getFrozenAutomatonCompletions(CostStringSet<CostString> completions, int node, int depth, LevenshteinAutomaton automaton, int baseCost, SearchTrace trace) {
+		if (!automaton.step(depth, frozenTrie.getChar(node))) {
+			return;
+		}
+		for (int i = 0; i < frozenTrie.getRunLength(node); i++) {
+			if (!automaton.step(++depth, frozenTrie.getRunChar(node, i))) {
+				return;
+			}
+		}
+
+		if (frozenTrie.isEnd(node) && automaton.isMatch(depth)) {
+			addCompletion(completions, new CostString(getWord(automaton.getPath(), depth, frozenTrie.getTermId(node)), baseCost + automaton.getDistance(depth)), trace, 0);
+		}
+
+		for (int child = frozenTrie.getFirstChild(node); child < frozenTrie.getChildEnd(node); child++) {
+			getFrozenAutomatonCompletions(completions, child, depth + 1, automaton, baseCost, trace);
+		}
+	}
+
+	/**
+	 * @param searches Collects the typo branches to search in parallel, null to search them right away
+	 */
+	private void getRootCompletions(CostStringSet<CostString> completions, CostStringSet<CostString> failures, CostString wordPart, int editDistanceMax, boolean subStringOnly, boolean searchFrozen,
+			List<CompletionSearch> searches, SearchTrace trace, int tabs) {
+		// room for the insertions and tail insertions allowed by editDistanceMax
+		WordPartBuffer wordPartBuffer = new WordPartBuffer(getCharArr(wordPart.str), wordPart.cost, isCharArrReversed(), editDistanceMax - wordPart.cost);
+		getRootCompletions(completions, failures, wordPartBuffer, editDistanceMax, subStringOnly, searchFrozen, searches, trace, tabs);
+	}
+
+	private void getRootCompletions(CostStringSet<CostString> completions, CostStringSet<CostString> failures, WordPartBuffer wordPart, int editDistanceMax, boolean subStringOnly,
+			boolean searchFrozen, List<CompletionSearch> searches, SearchTrace trace, int tabs) {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(getTabs(tabs) + "getRootCompletions(): '" + wordPart + "' - " + wordPart.cost + ", failures.size(): " + failures.size());
+		}
 
 		// try the exact wordPart first to handle no misspellings in the wordPart, but allow all completions
 		CostString failure = failures.get(wordPart);
 		if (failure == null || wordPart.cost < failure.cost) {
-			getCompletionsWalkTree(completions, failures, rootNode, wordPart, 0, editDistanceMax, subStringOnly, tabs + 1);
-		} else {
+			if (searchFrozen) {
+				getFrozenCompletionsWalkTree(completions, failures, FrozenTrie.ROOT, 0, wordPart, 0, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+			} else {
+				getCompletionsWalkTree(completions, failures, rootNode, 0, wordPart, 0, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+			}
+		} else if (LOGGER.isDebugEnabled()) {
 			LOGGER.debug(getTabs(tabs) + "\tFailure found for " + wordPart + " - " + wordPart.cost + ", skipping");
 		}
 
 		if (!subStringOnly && wordPart.cost < editDistanceMax) {
+			wordPart.cost++;
 			for (int i = 0; i < wordPart.length(); i++) {
 				// find allowable deletions at current index
-				CostString deletionMisspelling = deleteCharFromWordPart(i, wordPart, 1);
-				LOGGER.debug(getTabs(tabs) + "\tdeleted char at index: " + i + "; new wordPart: '" + deletionMisspelling + "' - " + deletionMisspelling.cost);
-				getRootCompletions(completions, failures, deletionMisspelling, editDistanceMax, subStringOnly, tabs + 1);
+				char deleted = wordPart.delete(i);
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug(getTabs(tabs) + "\tdeleted char at index: " + i + "; new wordPart: '" + wordPart + "' - " + wordPart.cost);
+				}
+				if (searches != null) {
+					searches.add(new CompletionSearch(null, FrozenTrie.ROOT, 0, wordPart.copy(), -1, editDistanceMax, searchFrozen));
+				} else {
+					getRootCompletions(completions, failures, wordPart, editDistanceMax, subStringOnly, searchFrozen, null, trace, tabs + 1);
+				}
+				wordPart.insert(i, deleted);
 			}
+			wordPart.cost--;
 		}
 	}
 
-	private boolean isValidPath(CostString wordPart, CostStringSet<CostString> completions, CostStringSet<CostString> failures, int tabs) {
+	private boolean isValidPath(WordPartBuffer wordPart, CostStringSet<CostString> completions, CostStringSet<CostString> failures, int tabs) {
 		CostString failure = failures.get(wordPart);
 		if (failure != null && failure.cost <= wordPart.cost) {
 			LOGGER.debug(getTabs(tabs) + "isValidPath(): aborting search path due to previous failure at equal or lesser cost");
@@ -304,20 +1107,34 @@ public abstract class Trie {
 		return true;
 	}
 
-	private void getCompletionsWalkTree(CostStringSet<CostString> completions, CostStringSet<CostString> failures, TrieNode node, CostString wordPart, int startingWordPartIndex, int editDistanceMax,
-			boolean subStringOnly, int tabs) {
+	/**
+	 * Walks the trie based on the characters in the wordPart, branching off for each allowable misspelling. Calls getCompletionsTailInsertions() once
+	 * the end of the wordPart has been reached. Each misspelling is applied to the wordPart in place and undone after its branch has been walked, so
+	 * the wordPart is unchanged when this returns.
+	 * 
+	 * @param node The current node
+	 * @param nodeOffset The number of characters of the current node's run that have already been matched
+	 */
+	private void getCompletionsWalkTree(CostStringSet<CostString> completions, CostStringSet<CostString> failures, TrieNode node, int nodeOffset, WordPartBuffer wordPart, int startingWordPartIndex,
+			int editDistanceMax, boolean subStringOnly, List<CompletionSearch> searches, SearchTrace trace, int tabs) {
 		TrieNode currentNode = node;
-		char[] charArray = getCharArr(wordPart.str);
+		int currentOffset = nodeOffset;
 
 		// walks the Trie based on the characters in the wordPart. fails if wordPart is not in Trie.
-		for (int i = startingWordPartIndex; i < charArray.length; i++) {
+		for (int i = startingWordPartIndex; i < wordPart.length(); i++) {
+			boolean inRun = currentOffset < currentNode.getRunLength();
 
 			if (LOGGER.isDebugEnabled()) {
-				StringBuilder sb = new StringBuilder(getTabs(tabs) + "getCompletionsWalkTree(): index: " + i + "; char '" + charArray[i] + "'; " + wordPart + " - " + wordPart.cost + "; node char '"
+				StringBuilder sb = new StringBuilder(getTabs(tabs) + "getCompletionsWalkTree(): index: " + i + "; char '" + wordPart.charAt(i) + "'; " + wordPart + " - " + wordPart.cost + "; node char '"
 						+ currentNode.c + "'; children [");
-				if (currentNode.children != null) {
-					for (TrieNode n : currentNode.children.valueCollection()) {
-						sb.append(n.c + ", ");
+				if (inRun) {
+					sb.append(currentNode.run[currentOffset] + ", ");
+				} else {
+					for (int slot = 0; slot < currentNode.getChildSlotCount(); slot++) {
+						TrieNode n = currentNode.getChildInSlot(slot);
+						if (n != null) {
+							sb.append(n.c + ", ");
+						}
 					}
 				}
 				sb.append("]");
@@ -325,154 +1142,450 @@ public abstract class Trie {
 			}
 
 			if (!subStringOnly && currentNode != null && wordPart.cost < editDistanceMax) {
+				wordPart.cost++;
 
 				// find allowable deletions at current index
-				CostString deletionMisspelling = deleteCharFromWordPart(i, wordPart, 1);
-				LOGGER.debug(getTabs(tabs) + "\tdeleted char at index: " + i + "; new wordPart: '" + deletionMisspelling + "' - " + deletionMisspelling.cost);
-				if (isValidPath(deletionMisspelling, completions, failures, tabs + 1)) {
-					getCompletionsWalkTree(completions, failures, currentNode, deletionMisspelling, i, editDistanceMax, subStringOnly, tabs + 1);
+				char deleted = wordPart.delete(i);
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug(getTabs(tabs) + "\tdeleted char at index: " + i + "; new wordPart: '" + wordPart + "' - " + wordPart.cost);
 				}
+				getCompletionsEditBranch(completions, failures, currentNode, currentOffset, wordPart, i, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+				wordPart.insert(i, deleted);
 
-				if (i + 1 < charArray.length) {
+				if (i + 1 < wordPart.length()) {
 					// find allowable transpositions at current index
-					CostString transposeMisspelling = transposeCharsInWordPart(i, wordPart, 1);
-					LOGGER.debug(getTabs(tabs) + "\ttransposed characters at indexes: " + i + "," + (i + 1) + "; new wordPart: '" + transposeMisspelling + "'");
-					if (isValidPath(transposeMisspelling, completions, failures, tabs + 1)) {
-						getCompletionsWalkTree(completions, failures, currentNode, transposeMisspelling, i, editDistanceMax, subStringOnly, tabs + 1);
+					wordPart.transpose(i);
+					if (LOGGER.isDebugEnabled()) {
+						LOGGER.debug(getTabs(tabs) + "\ttransposed characters at indexes: " + i + "," + (i + 1) + "; new wordPart: '" + wordPart + "'");
 					}
+					getCompletionsEditBranch(completions, failures, currentNode, currentOffset, wordPart, i, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+					wordPart.transpose(i);
 				}
 
-				// find allowable insertion at current index
-				if (currentNode.children != null) {
-					for (TrieNode n : currentNode.children.valueCollection()) {
-						if (i > 0) {
-							CostString insertionMisspelling = addCharToWordPart(n.c, i, wordPart, 1);
-							LOGGER.debug(getTabs(tabs) + "\tinserted '" + n.c + "' at index: " + (i + 1) + "; new wordPart: '" + insertionMisspelling + "'");
-							if (isValidPath(insertionMisspelling, completions, failures, tabs + 1)) {
-								getCompletionsWalkTree(completions, failures, currentNode, insertionMisspelling, i, editDistanceMax, subStringOnly, tabs + 1);
-							}
+				// find allowable insertion at current index, inside of a run the only possible next character is the next one in the run
+				int slotCount = (inRun) ? 1 : currentNode.getChildSlotCount();
+				for (int slot = 0; slot < slotCount; slot++) {
+					char nextChar;
+					if (inRun) {
+						nextChar = currentNode.run[currentOffset];
+					} else {
+						TrieNode n = currentNode.getChildInSlot(slot);
+						if (n == null) {
+							continue;
 						}
+						nextChar = n.c;
+					}
 
-						CostString replacementMisspelling = addCharToWordPart(n.c, i, deletionMisspelling, 0);
-						LOGGER.debug(getTabs(tabs) + "\treplaced '" + n.c + "' at index: " + (i + 1) + "; new wordPart: " + replacementMisspelling + " - " + replacementMisspelling.cost);
-						if (isValidPath(replacementMisspelling, completions, failures, tabs + 1)) {
-							getCompletionsWalkTree(completions, failures, currentNode, replacementMisspelling, i, editDistanceMax, subStringOnly, tabs + 1);
+					if (i > 0) {
+						wordPart.insert(i, nextChar);
+						if (LOGGER.isDebugEnabled()) {
+							LOGGER.debug(getTabs(tabs) + "\tinserted '" + nextChar + "' at index: " + (i + 1) + "; new wordPart: '" + wordPart + "'");
 						}
+						getCompletionsEditBranch(completions, failures, currentNode, currentOffset, wordPart, i, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+						wordPart.delete(i);
 					}
+
+					char replaced = wordPart.replace(i, nextChar);
+					if (LOGGER.isDebugEnabled()) {
+						LOGGER.debug(getTabs(tabs) + "\treplaced '" + nextChar + "' at index: " + (i + 1) + "; new wordPart: " + wordPart + " - " + wordPart.cost);
+					}
+					getCompletionsEditBranch(completions, failures, currentNode, currentOffset, wordPart, i, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+					wordPart.replace(i, replaced);
 				}
+
+				wordPart.cost--;
 			}
 
-			char c = charArray[i];
-			if (currentNode != null && currentNode.children != null) {
-				currentNode = currentNode.children.get(c);
+			char c = wordPart.charAt(i);
+			if (inRun) {
+				if (currentNode.run[currentOffset] == c) {
+					currentOffset++;
+				} else {
+					currentNode = null;
+				}
 			} else {
-				currentNode = null;
+				currentNode = currentNode.getChild(c);
+				currentOffset = 0;
 			}
 
 			if (currentNode == null) { // no match in the part of the string processed so far
-				// 					failures.add(wordPart);
-				// The below can be replaced with the line above, but leaving it in for clearity in alg. analysis
-				LOGGER.debug(getTabs(tabs) + "\tFailure for " + wordPart + " - " + wordPart.cost + " in getCompletionsExactWordPartMatch()");
-
-				CostString failure = failures.get(wordPart);
-				if (failure != null && wordPart.cost < failure.cost) { // lower failure cost
-					LOGGER.debug(getTabs(tabs) + "\tAdded failure for " + wordPart + " - " + wordPart.cost + " in getCompletionsExactWordPartMatch()");
-					logs.add(getTabs(tabs) + "\tAdded failure for " + wordPart + " - " + wordPart.cost + " in getCompletionsExactWordPartMatch()");
-					failures.add(wordPart);
-				}
+				addFailure(failures, wordPart, trace, tabs);
 				return; // then return
 			}
 		}
 
-		getCompletionsTailInsertions(completions, failures, currentNode, wordPart, editDistanceMax, subStringOnly, tabs + 1);
+		getCompletionsTailInsertions(completions, failures, currentNode, currentOffset, wordPart, editDistanceMax, subStringOnly, trace, tabs + 1);
+	}
+
+	/**
+	 * Walks the branch for a misspelling applied to the wordPart, unless a previous search path already covers it. With searches the branch is
+	 * collected to be searched in parallel instead, with a copy of the wordPart.
+	 */
+	private void getCompletionsEditBranch(CostStringSet<CostString> completions, CostStringSet<CostString> failures, TrieNode node, int nodeOffset, WordPartBuffer wordPart, int wordPartIndex,
+			int editDistanceMax, boolean subStringOnly, List<CompletionSearch> searches, SearchTrace trace, int tabs) {
+		if (!isValidPath(wordPart, completions, failures, tabs)) {
+			return;
+		}
+
+		if (searches != null) {
+			searches.add(new CompletionSearch(node, -1, nodeOffset, wordPart.copy(), wordPartIndex, editDistanceMax, false));
+		} else {
+			getCompletionsWalkTree(completions, failures, node, nodeOffset, wordPart, wordPartIndex, editDistanceMax, subStringOnly, null, trace, tabs);
+		}
+	}
+
+	private void addFailure(CostStringSet<CostString> failures, WordPartBuffer wordPart, SearchTrace trace, int tabs) {
+		// 					failures.add(wordPart);
+		// The below can be replaced with the line above, but leaving it in for clearity in alg. analysis
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(getTabs(tabs) + "\tFailure for " + wordPart + " - " + wordPart.cost + " in getCompletionsExactWordPartMatch()");
+		}
+
+		CostString failure = failures.get(wordPart);
+		if (failure != null && wordPart.cost < failure.cost) { // lower failure cost
+			if (trace != null || LOGGER.isDebugEnabled()) {
+				String message = getTabs(tabs) + "\tAdded failure for " + wordPart + " - " + wordPart.cost + " in getCompletionsExactWordPartMatch()";
+				if (trace != null) {
+					trace.add(message);
+				}
+				LOGGER.debug(message);
+			}
+			failures.add(wordPart.toCostString());
+		}
 	}
 
 	/**
 	 * Private internal method to walk the trie and find the completions beyond the wordPart, this is called from the last matching node of the suffix. Pre-condition, that the trie has been walked to
-	 * the end of the wordPart.
+	 * the end of the wordPart. The characters appended to the wordPart are removed again before returning.
 	 * 
 	 * @param node The current node
+	 * @param nodeOffset The number of characters of the current node's run that have already been matched
 	 * @param completions The list of completed words
 	 * @param wordPart The word being build up from walking the trie
 	 * @param size Tracks the number of found completions
 	 * @param limit Max number of results to return
 	 * @return the current number of completions
 	 */
-	private void getCompletionsTailInsertions(CostStringSet<CostString> completions, CostStringSet<CostString> failures, TrieNode node, CostString wordPart, int editDistanceMax, boolean subStringOnly,
-			int tabs) {
+	private void getCompletionsTailInsertions(CostStringSet<CostString> completions, CostStringSet<CostString> failures, TrieNode node, int nodeOffset, WordPartBuffer wordPart, int editDistanceMax,
+			boolean subStringOnly, SearchTrace trace, int tabs) {
 		LOGGER.debug(getTabs(tabs) + "getCompletionsTailInsertions():");
 		if (node != null) {
+			int length = wordPart.length();
+			int cost = wordPart.cost;
+
+			// the remainder of a run has no branches or word ends, each character is appended the same as a single child
+			for (int i = nodeOffset; i < node.getRunLength(); i++) {
+				if (wordPart.cost >= editDistanceMax) {
+					if (LOGGER.isDebugEnabled()) {
+						LOGGER.debug(getTabs(tabs) + "Stopped looking completions of '" + wordPart + "': wordPart.cost of " + wordPart.cost + " >= editDistanceMax of " + editDistanceMax);
+					}
+					wordPart.truncate(length);
+					wordPart.cost = cost;
+					return;
+				}
+				wordPart.append(node.run[i]);
+				wordPart.cost++;
+			}
+
 			if (node.isEnd) {
-				addCompletion(completions, wordPart, tabs);
+				addCompletion(completions, wordPart, node.termId, trace, tabs);
 			}
 
-			if (node.children != null) {
+			if (node.hasChildren()) {
 				if (wordPart.cost < editDistanceMax) {
-					for (Object obj : node.children.values()) {
-						TrieNode child = (TrieNode) obj;
-						getCompletionsTailInsertions(completions, failures, child, addCharToWordPart(child.c, wordPart, 1), editDistanceMax, subStringOnly, tabs);
+					for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+						TrieNode child = node.getChildInSlot(slot);
+						if (child != null) {
+							wordPart.append(child.c);
+							wordPart.cost++;
+							getCompletionsTailInsertions(completions, failures, child, 0, wordPart, editDistanceMax, subStringOnly, trace, tabs);
+							wordPart.truncate(wordPart.length() - 1);
+							wordPart.cost--;
+						}
 					}
-				} else {
+				} else if (LOGGER.isDebugEnabled()) {
 					LOGGER.debug(getTabs(tabs) + "Stopped looking completions of '" + wordPart + "': wordPart.cost of " + wordPart.cost + " >= editDistanceMax of " + editDistanceMax);
 				}
 			}
+
+			wordPart.truncate(length);
+			wordPart.cost = cost;
 		}
 	}
 
-	public static List<String> logs = new ArrayList<String>();
-
 	/**
-	 * Only adds the wordPart if it's not in completions or this wordPart has a lower cost than an existing completion for the same string
+	 * Same as getCompletionsWalkTree() but walks the frozen trie.
 	 * 
-	 * @param completions The list of completed words
-	 * @param wordPart A completed word part, i.e. pattern match up to a end node
+	 * @param node The index of the current node in the frozen trie
+	 * @param nodeOffset The number of characters of the current node's run that have already been matched
 	 */
-	private void addCompletion(CostStringSet<CostString> completions, CostString wordPart, int tabs) {
-		//		completions.add(wordPart);
-		// The below can be replaced with the line above, but leaving it in for clearity in alg. analysis
+	private void getFrozenCompletionsWalkTree(CostStringSet<CostString> completions, CostStringSet<CostString> failures, int node, int nodeOffset, WordPartBuffer wordPart, int startingWordPartIndex,
+			int editDistanceMax, boolean subStringOnly, List<CompletionSearch> searches, SearchTrace trace, int tabs) {
+		int currentNode = node;
+		int currentOffset = nodeOffset;
 
-		CostString existing = completions.get(wordPart);
+		for (int i = startingWordPartIndex; i < wordPart.length(); i++) {
+			boolean inRun = currentOffset < frozenTrie.getRunLength(currentNode);
 
-		StringBuilder sb = new StringBuilder((getTabs(tabs) + "addCompletion(): " + wordPart + " - " + wordPart.cost));
+			if (!subStringOnly && wordPart.cost < editDistanceMax) {
+				wordPart.cost++;
 
-		if (existing == null) {
-			completions.add(wordPart);
-			sb.append(" added, hashcode = " + wordPart.hashCode() + " no previous existing");
-		} else if (wordPart.cost < existing.cost) {
-			completions.add(wordPart);
-			sb.append(" added, hashcode = " + wordPart.hashCode() + " lesser cost than existing: " + existing.cost);
+				// find allowable deletions at current index
+				char deleted = wordPart.delete(i);
+				getFrozenCompletionsEditBranch(completions, failures, currentNode, currentOffset, wordPart, i, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+				wordPart.insert(i, deleted);
+
+				if (i + 1 < wordPart.length()) {
+					// find allowable transpositions at current index
+					wordPart.transpose(i);
+					getFrozenCompletionsEditBranch(completions, failures, currentNode, currentOffset, wordPart, i, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+					wordPart.transpose(i);
+				}
+
+				// find allowable insertion at current index, inside of a run the only possible next character is the next one in the run
+				int firstChild = (inRun) ? 0 : frozenTrie.getFirstChild(currentNode);
+				int childEnd = (inRun) ? 1 : frozenTrie.getChildEnd(currentNode);
+				for (int child = firstChild; child < childEnd; child++) {
+					char nextChar = (inRun) ? frozenTrie.getRunChar(currentNode, currentOffset) : frozenTrie.getChar(child);
+
+					if (i > 0) {
+						wordPart.insert(i, nextChar);
+						getFrozenCompletionsEditBranch(completions, failures, currentNode, currentOffset, wordPart, i, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+						wordPart.delete(i);
+					}
+
+					char replaced = wordPart.replace(i, nextChar);
+					getFrozenCompletionsEditBranch(completions, failures, currentNode, currentOffset, wordPart, i, editDistanceMax, subStringOnly, searches, trace, tabs + 1);
+					wordPart.replace(i, replaced);
+				}
+
+				wordPart.cost--;
+			}
+
+			char c = wordPart.charAt(i);
+			if (inRun) {
+				currentNode = (frozenTrie.getRunChar(currentNode, currentOffset) == c) ? currentNode : -1;
+				currentOffset++;
+			} else {
+				currentNode = frozenTrie.getChild(currentNode, c);
+				currentOffset = 0;
+			}
+
+			if (currentNode < 0) { // no match in the part of the string processed so far
+				addFailure(failures, wordPart, trace, tabs);
+				return;
+			}
+		}
+
+		getFrozenCompletionsTailInsertions(completions, currentNode, currentOffset, wordPart, editDistanceMax, trace, tabs + 1);
+	}
+
+	/**
+	 * Same as getCompletionsEditBranch() but walks the frozen trie.
+	 */
+	private void getFrozenCompletionsEditBranch(CostStringSet<CostString> completions, CostStringSet<CostString> failures, int node, int nodeOffset, WordPartBuffer wordPart, int wordPartIndex,
+			int editDistanceMax, boolean subStringOnly, List<CompletionSearch> searches, SearchTrace trace, int tabs) {
+		if (!isValidPath(wordPart, completions, failures, tabs)) {
+			return;
+		}
+
+		if (searches != null) {
+			searches.add(new CompletionSearch(null, node, nodeOffset, wordPart.copy(), wordPartIndex, editDistanceMax, true));
 		} else {
-			sb.append(" already there with equal or lesser cost " + existing.cost + ", hashcode = " + wordPart.hashCode());
+			getFrozenCompletionsWalkTree(completions, failures, node, nodeOffset, wordPart, wordPartIndex, editDistanceMax, subStringOnly, null, trace, tabs);
 		}
-		logs.add(sb.toString());
-		LOGGER.debug(sb.toString());
 	}
 
 	/**
-	 * Special method needed to support removing words from a non-partial (full) trie. For a given full word to remove, finds all of the words that could be impacted and need to be preserved.
+	 * Runs the searches in the pool and waits for them to finish.
+	 */
+	private static void runSearches(ForkJoinPool pool, final List<CompletionSearch> searches) {
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(searches);
+			}
+		});
+	}
+
+	/**
+	 * Same as getCompletionsTailInsertions() but walks the frozen trie.
 	 * 
-	 * @param node The current node
-	 * @param wordToRemove A full word that is part of the trie to be removed
-	 * @param completions A list of the complete words that need to be preserved
-	 * @param wordBeingBuilt The word being build up from walking the trie
+	 * @param node The index of the current node in the frozen trie
+	 * @param nodeOffset The number of characters of the current node's run that have already been matched
 	 */
-	private void getFullWordsForRemoval(TrieNode node, String wordToRemove, Set<String> completions, CostString wordBeingBuilt) {
-		if (node.isFullWordEnd && node.isEnd && wordBeingBuilt.str.contains(wordToRemove)) {
-			completions.add(wordBeingBuilt.str);
+	private void getFrozenCompletionsTailInsertions(CostStringSet<CostString> completions, int node, int nodeOffset, WordPartBuffer wordPart, int editDistanceMax, SearchTrace trace, int tabs) {
+		int length = wordPart.length();
+		int cost = wordPart.cost;
+
+		for (int i = nodeOffset; i < frozenTrie.getRunLength(node); i++) {
+			if (wordPart.cost >= editDistanceMax) {
+				wordPart.truncate(length);
+				wordPart.cost = cost;
+				return;
+			}
+			wordPart.append(frozenTrie.getRunChar(node, i));
+			wordPart.cost++;
 		}
 
-		if (node.children != null) {
-			if (node.isRootNode() && wordBeingBuilt.str.length() > 0) { // root node
-				TrieNode child = node.children.get(getChar(wordBeingBuilt.str));
-				if (child != null) {
-					getFullWordsForRemoval(child, wordToRemove, completions, wordBeingBuilt);
-				}
+		if (frozenTrie.isEnd(node)) {
+			addCompletion(completions, wordPart, frozenTrie.getTermId(node), trace, tabs);
+		}
+
+		if (wordPart.cost < editDistanceMax) {
+			for (int child = frozenTrie.getFirstChild(node); child < frozenTrie.getChildEnd(node); child++) {
+				wordPart.append(frozenTrie.getChar(child));
+				wordPart.cost++;
+				getFrozenCompletionsTailInsertions(completions, child, 0, wordPart, editDistanceMax, trace, tabs);
+				wordPart.truncate(wordPart.length() - 1);
+				wordPart.cost--;
+			}
+		}
+
+		wordPart.truncate(length);
+		wordPart.cost = cost;
+	}
+
+	/**
+	 * A typo branch of a getCompletions() query searched in parallel, see setParallelSearch(). It has its own copy of the word part and its own
+	 * completions and failures, so it doesn't share any state with the other branches while it runs.
+	 */
+	private class CompletionSearch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final TrieNode node; // the overlay node to walk from, null when searching the frozen trie or from the root
+		final int frozenNode;
+		final int nodeOffset;
+		final WordPartBuffer wordPart;
+		final int wordPartIndex; // the index to walk from, -1 to search from the root including the word part's deletions
+		final int editDistanceMax;
+		final boolean searchFrozen;
+		final CostStringSet<CostString> completions = new CostStringSet<CostString>();
+
+		CompletionSearch(TrieNode node, int frozenNode, int nodeOffset, WordPartBuffer wordPart, int wordPartIndex, int editDistanceMax, boolean searchFrozen) {
+			this.node = node;
+			this.frozenNode = frozenNode;
+			this.nodeOffset = nodeOffset;
+			this.wordPart = wordPart;
+			this.wordPartIndex = wordPartIndex;
+			this.editDistanceMax = editDistanceMax;
+			this.searchFrozen = searchFrozen;
+		}
+
+		@Override
+		protected void compute() {
+			CostStringSet<CostString> failures = new CostStringSet<CostString>();
+			if (wordPartIndex < 0) {
+				getRootCompletions(completions, failures, wordPart, editDistanceMax, false, searchFrozen, null, null, 0);
+			} else if (searchFrozen) {
+				getFrozenCompletionsWalkTree(completions, failures, frozenNode, nodeOffset, wordPart, wordPartIndex, editDistanceMax, false, null, null, 0);
 			} else {
-				for (Object obj : node.children.values()) {
-					TrieNode child = (TrieNode) obj;
-					getFullWordsForRemoval(child, wordToRemove, completions, addCharToWordPart(child.c, wordBeingBuilt, 0));
+				getCompletionsWalkTree(completions, failures, node, nodeOffset, wordPart, wordPartIndex, editDistanceMax, false, null, null, 0);
+			}
+		}
+	}
+
+	/**
+	 * A node, or a found completion, waiting to be visited by getTopCompletions().
+	 */
+	private static class TopCompletionCandidate {
+		// highest weight first, completions before nodes of the same weight, then alphabetically
+		static final Comparator<TopCompletionCandidate> BEST_FIRST = new Comparator<TopCompletionCandidate>() {
+			@Override
+			public int compare(TopCompletionCandidate o1, TopCompletionCandidate o2) {
+				if (o1.weight != o2.weight) {
+					return (o1.weight > o2.weight) ? -1 : 1;
+				} else if (o1.isCompletion != o2.isCompletion) {
+					return (o1.isCompletion) ? -1 : 1;
 				}
+				return o1.wordPart.str.compareTo(o2.wordPart.str);
+			}
+		};
+
+		final Trie trie;
+		final TrieNode node;
+		final int frozenNode;
+		final CostString wordPart;
+		final int weight; // the max weight of the node's subtree or the weight of the completion
+		final boolean isCompletion;
+		final boolean isCompletionTrie;
+
+		TopCompletionCandidate(Trie trie, TrieNode node, int frozenNode, CostString wordPart, int weight, boolean isCompletion, boolean isCompletionTrie) {
+			this.trie = trie;
+			this.node = node;
+			this.frozenNode = frozenNode;
+			this.wordPart = wordPart;
+			this.weight = weight;
+			this.isCompletion = isCompletion;
+			this.isCompletionTrie = isCompletionTrie;
+		}
+	}
+
+	/**
+	 * Gets the word part walked to reach a node. When the node is the end of a full word with a term id the term's string is returned, so the
+	 * characters aren't copied into a new string.
+	 * 
+	 * @param wordPartChars The characters walked in getCharArr() ordering
+	 * @param length The number of characters walked
+	 * @param termId The term id of the node
+	 * @return The word part
+	 */
+	private String getWord(char[] wordPartChars, int length, int termId) {
+		return (termId != TermDictionary.NO_TERM_ID) ? termDictionary.getTerm(termId) : getWordFromCharArr(wordPartChars, length);
+	}
+
+	/**
+	 * Same as addCompletion(CostString) but only creates the CostString for the wordPart if it is added. When the wordPart ends at a full word
+	 * with a term id the CostString uses the term's string instead of copying the wordPart.
+	 * 
+	 * @param termId The term id of the node the wordPart ends at
+	 */
+	private void addCompletion(CostStringSet<CostString> completions, WordPartBuffer wordPart, int termId, SearchTrace trace, int tabs) {
+		String term = (termId != TermDictionary.NO_TERM_ID) ? termDictionary.getTerm(termId) : null;
+		CostString existing = (term != null) ? completions.get(term) : completions.get(wordPart);
+		if (existing == null || wordPart.cost < existing.cost) {
+			addCompletion(completions, (term != null) ? new CostString(term, wordPart.cost) : wordPart.toCostString(), trace, tabs);
+		} else if (trace != null || LOGGER.isDebugEnabled()) {
+			String message = getTabs(tabs) + "addCompletion(): " + wordPart + " - " + wordPart.cost + " already there with equal or lesser cost " + existing.cost + ", hashcode = " + existing.hashCode();
+			if (trace != null) {
+				trace.add(message);
 			}
+			LOGGER.debug(message);
+		}
+	}
+
+	/**
+	 * Only adds the wordPart if it's not in completions or this wordPart has a lower cost than an existing completion for the same string
+	 * 
+	 * @param completions The list of completed words
+	 * @param wordPart A completed word part, i.e. pattern match up to a end node
+	 * @param trace The trace of the query, null if the query isn't traced
+	 */
+	private void addCompletion(CostStringSet<CostString> completions, CostString wordPart, SearchTrace trace, int tabs) {
+		//		completions.add(wordPart);
+		// The below can be replaced with the line above, but leaving it in for clearity in alg. analysis
+
+		CostString existing = completions.get(wordPart);
+
+		if (existing == null || wordPart.cost < existing.cost) {
+			completions.add(wordPart);
+		}
+
+		if (trace != null || LOGGER.isDebugEnabled()) {
+			StringBuilder sb = new StringBuilder((getTabs(tabs) + "addCompletion(): " + wordPart + " - " + wordPart.cost));
+			if (existing == null) {
+				sb.append(" added, hashcode = " + wordPart.hashCode() + " no previous existing");
+			} else if (wordPart.cost < existing.cost) {
+				sb.append(" added, hashcode = " + wordPart.hashCode() + " lesser cost than existing: " + existing.cost);
+			} else {
+				sb.append(" already there with equal or lesser cost " + existing.cost + ", hashcode = " + wordPart.hashCode());
+			}
+			if (trace != null) {
+				trace.add(sb.toString());
+			}
+			LOGGER.debug(sb.toString());
 		}
 	}
 
@@ -482,22 +1595,56 @@ public abstract class Trie {
 	 * @param wordCharArr The word to check if it is a known full word in the trie in getCharArr() ordering
 	 * @return true if the word is a known full word otherwise false
 	 */
+	@Override
 	public boolean containsWord(char[] wordCharArr, boolean fullWordMatch) {
-		TrieNode currentNode = rootNode;
+		return containsWord(rootNode, wordCharArr, fullWordMatch) || (frozenTrie != null && frozenTrie.containsWord(wordCharArr, fullWordMatch));
+	}
+
+	private boolean containsWord(TrieNode root, char[] wordCharArr, boolean fullWordMatch) {
+		TrieNode currentNode = root;
+		int offset = 0;
 
 		for (char c : wordCharArr) {
-			if (currentNode != null && currentNode.children != null) {
-				currentNode = currentNode.children.get(c);
-			} else {
-				currentNode = null;
+			if (offset < currentNode.getRunLength()) {
+				if (currentNode.run[offset++] != c) { // no match
+					return false;
+				}
+				continue;
 			}
 
+			currentNode = currentNode.getChild(c);
+			offset = 0;
+
 			if (currentNode == null) { // no match
 				return false;
 			}
 		}
 
-		return !fullWordMatch || currentNode.isFullWordEnd;
+		return !fullWordMatch || (offset == currentNode.getRunLength() && currentNode.isFullWordEnd);
+	}
+
+	/**
+	 * Walks the trie and gathers node count and memory statistics.
+	 * 
+	 * @return The statistics for the current state of the trie
+	 */
+	public TrieStats getStats() {
+		TrieStats stats = new TrieStats();
+		getStats(rootNode, stats);
+		if (frozenTrie != null) {
+			stats.addFrozenTrie(frozenTrie);
+		}
+		return stats;
+	}
+
+	private void getStats(TrieNode node, TrieStats stats) {
+		stats.addNode(node);
+		for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+			TrieNode child = node.getChildInSlot(slot);
+			if (child != null) {
+				getStats(child, stats);
+			}
+		}
 	}
 
 	/**
@@ -531,7 +1678,7 @@ public abstract class Trie {
 	 * @return
 	 */
 	public List<String> getTrace() {
-		return getTrace(rootNode, 0);
+		return getTrace(getMergedRootNode(), 0);
 	}
 
 	/**
@@ -546,28 +1693,13 @@ public abstract class Trie {
 		String tabs = getTabs(tabSpaces);
 
 		if (node.isRootNode()) {
-			boolean isFirst = true;
-			int childrenSize = (node.children == null) ? 0 : node.children.size();
-			StringBuilder buff = new StringBuilder(tabs + "Root Node: " + childrenSize + " children [");
-			if (node.children != null) {
-				for (Object obj : node.children.values()) {
-					buff.append(addCommaIfNeeded(isFirst));
-					buff.append(((TrieNode) obj).c);
-					isFirst = false;
-				}
-			}
+			StringBuilder buff = new StringBuilder(tabs + "Root Node: " + node.getChildCount() + " children [");
+			appendChildChars(buff, node, true);
 			buff.append("]");
 			trace.add(buff.toString());
 		} else {
-			StringBuilder buff = new StringBuilder(tabs + "Child Node: " + node.c + ": " + ((node.children == null) ? "0" : node.children.size()) + " children [");
-			boolean isFirst = true;
-			if (node.children != null) {
-				for (Object obj : node.children.values()) {
-					buff.append(addCommaIfNeeded(isFirst));
-					buff.append(((TrieNode) obj).c);
-					isFirst = false;
-				}
-			}
+			StringBuilder buff = new StringBuilder(tabs + "Child Node: " + node.c + ((node.run != null) ? new String(node.run) : "") + ": " + node.getChildCount() + " children [");
+			boolean isFirst = appendChildChars(buff, node, true);
 			if (node.isEnd) {
 				buff.append(addCommaIfNeeded(isFirst));
 				buff.append(Character.MAX_VALUE);
@@ -582,15 +1714,35 @@ public abstract class Trie {
 			trace.add(buff.toString());
 		}
 
-		if (node.children != null) {
-			for (Object obj : node.children.values()) {
-				TrieNode childNode = (TrieNode) obj;
+		for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+			TrieNode childNode = node.getChildInSlot(slot);
+			if (childNode != null) {
 				trace.addAll(getTrace(childNode, tabSpaces + 1));
 			}
 		}
 		return trace;
 	}
 
+	/**
+	 * Appends the characters of the node's children to the buffer as a comma separated list.
+	 * 
+	 * @param buff The buffer to append to
+	 * @param node The node whose children to append
+	 * @param isFirst Whether the next appended value is the first in the list
+	 * @return Whether the next appended value is the first in the list
+	 */
+	private boolean appendChildChars(StringBuilder buff, TrieNode node, boolean isFirst) {
+		for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+			TrieNode childNode = node.getChildInSlot(slot);
+			if (childNode != null) {
+				buff.append(addCommaIfNeeded(isFirst));
+				buff.append(childNode.c);
+				isFirst = false;
+			}
+		}
+		return isFirst;
+	}
+
 	private String addCommaIfNeeded(boolean isFirst) {
 		return (isFirst) ? "" : ", ";
 	}
@@ -0,0 +1,336 @@
+package net.networkdowntime.search.trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import net.networkdowntime.search.TermDictionary;
+
+/**
+ * Bulk loads a vocabulary into an empty SuffixTrie or InvertedSuffixTrie. Instead of walking the trie from the root for every word, the word parts
+ * of all the words are bucketed by their first character and sorted, then each node is built from the range of sorted word parts that pass
+ * through it, so a node is created with its final children, end markers and compressed run and is never split. The buckets are sorted and built
+ * into the subtrees of the root's children in parallel, one task per first character.
+ * 
+ * The trie ends up the same as adding each distinct word with Trie.add(). The words don't need to be sorted or distinct. When the trie isn't empty
+ * the words are added to it one at a time. When the trie has a term dictionary the term ids are assigned up front in sorted word order and stored
+ * at the full word ends as the nodes are built.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public class TrieBuilder {
+
+	// ranges shorter than this are sorted with an insertion sort
+	private static final int INSERTION_SORT_MAX = 12;
+
+	private final Trie trie;
+	private final List<String> words = new ArrayList<String>();
+
+	// term ids of the distinct words being built, null when the trie doesn't keep term ids
+	private int[] termIds = null;
+
+	/**
+	 * @param trie The trie to load the words into
+	 */
+	public TrieBuilder(Trie trie) {
+		this.trie = trie;
+	}
+
+	/**
+	 * Adds a word to be loaded by build(). Empty words are ignored.
+	 * 
+	 * @param word
+	 * @return This builder
+	 */
+	public TrieBuilder add(String word) {
+		if (word != null && !word.isEmpty()) {
+			words.add(word);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the words to be loaded by build().
+	 * 
+	 * @param words
+	 * @return This builder
+	 */
+	public TrieBuilder addAll(Iterable<String> words) {
+		for (String word : words) {
+			add(word);
+		}
+		return this;
+	}
+
+	/**
+	 * Loads the added words into the trie.
+	 * 
+	 * @return The trie
+	 */
+	public Trie build() {
+		String[] distinctWords = getDistinctWords();
+
+		if (trie.isFrozen() || trie.rootNode.hasChildren()) {
+			for (String word : distinctWords) {
+				trie.add(word);
+			}
+			return trie;
+		}
+
+		TermDictionary termDictionary = trie.getTermDictionary();
+		if (termDictionary != null) {
+			termIds = new int[distinctWords.length];
+			for (int i = 0; i < distinctWords.length; i++) {
+				termIds[i] = termDictionary.getOrAddTermId(distinctWords[i]);
+			}
+		}
+
+		char[][] wordChars = new char[distinctWords.length][];
+		int height = 0;
+		for (int i = 0; i < distinctWords.length; i++) {
+			wordChars[i] = trie.getCharArr(distinctWords[i]);
+			height = Math.max(height, wordChars[i].length);
+		}
+
+		// bucket the word parts by their first character, each bucket is a subtree of the root node
+		int[] bucketStarts = new int[Character.MAX_VALUE + 2];
+		for (char[] chars : wordChars) {
+			for (int start = 0; start < (trie.createFullTrie ? chars.length : 1); start++) {
+				bucketStarts[chars[start] + 1]++;
+			}
+		}
+		for (int i = 1; i < bucketStarts.length; i++) {
+			bucketStarts[i] += bucketStarts[i - 1];
+		}
+
+		long[] wordParts = new long[bucketStarts[bucketStarts.length - 1]];
+		int[] bucketEnds = Arrays.copyOf(bucketStarts, bucketStarts.length);
+		for (int word = 0; word < wordChars.length; word++) {
+			char[] chars = wordChars[word];
+			for (int start = 0; start < (trie.createFullTrie ? chars.length : 1); start++) {
+				wordParts[bucketEnds[chars[start]]++] = getWordPart(word, start);
+			}
+		}
+
+		List<SubtreeTask> tasks = new ArrayList<SubtreeTask>();
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			if (bucketStarts[c] < bucketStarts[c + 1]) {
+				tasks.add(new SubtreeTask(wordChars, wordParts, bucketStarts[c], bucketStarts[c + 1]));
+			}
+		}
+		ForkJoinTask.invokeAll(tasks);
+
+		TrieNode[] children = new TrieNode[tasks.size()];
+		for (int i = 0; i < children.length; i++) {
+			children[i] = tasks.get(i).join();
+		}
+		TrieNode root = new TrieNode();
+		root.setChildren(children, children.length);
+		root.updateMaxWeight();
+
+		trie.load(root, height);
+		termIds = null;
+		return trie;
+	}
+
+	private String[] getDistinctWords() {
+		String[] sortedWords = words.toArray(new String[words.size()]);
+		Arrays.parallelSort(sortedWords);
+
+		int count = 0;
+		for (int i = 0; i < sortedWords.length; i++) {
+			if (count == 0 || !sortedWords[i].equals(sortedWords[count - 1])) {
+				sortedWords[count++] = sortedWords[i];
+			}
+		}
+		return Arrays.copyOf(sortedWords, count);
+	}
+
+	/**
+	 * A word part is packed into a long as the index of its word and the index of its first character in the word's getCharArr() ordering.
+	 */
+	private static long getWordPart(int word, int start) {
+		return ((long) word << 32) | start;
+	}
+
+	private static int getWord(long wordPart) {
+		return (int) (wordPart >>> 32);
+	}
+
+	private static char[] getChars(char[][] wordChars, long wordPart) {
+		return wordChars[getWord(wordPart)];
+	}
+
+	private static int getStart(long wordPart) {
+		return (int) wordPart;
+	}
+
+	private static int getLength(char[][] wordChars, long wordPart) {
+		return getChars(wordChars, wordPart).length - getStart(wordPart);
+	}
+
+	/**
+	 * @return The character of the word part at the index or -1 if the word part is shorter
+	 */
+	private static int charAt(char[][] wordChars, long wordPart, int index) {
+		char[] chars = getChars(wordChars, wordPart);
+		int i = getStart(wordPart) + index;
+		return (i < chars.length) ? chars[i] : -1;
+	}
+
+	/**
+	 * Sorts the word parts from index from to index to, which share the same first depth characters, with a multikey quicksort. A word part sorts
+	 * before the word parts it is a prefix of.
+	 */
+	private static void sort(char[][] wordChars, long[] wordParts, int from, int to, int depth) {
+		while (to - from > INSERTION_SORT_MAX) {
+			int pivot = charAt(wordChars, wordParts[(from + to) >>> 1], depth);
+			int lt = from;
+			int gt = to - 1;
+			int i = from;
+			while (i <= gt) {
+				int c = charAt(wordChars, wordParts[i], depth);
+				if (c < pivot) {
+					swap(wordParts, lt++, i++);
+				} else if (c > pivot) {
+					swap(wordParts, i, gt--);
+				} else {
+					i++;
+				}
+			}
+
+			sort(wordChars, wordParts, from, lt, depth);
+			if (pivot >= 0) { // word parts ending at depth are equal
+				sort(wordChars, wordParts, lt, gt + 1, depth + 1);
+			}
+			from = gt + 1;
+		}
+
+		for (int i = from + 1; i < to; i++) {
+			for (int j = i; j > from && compare(wordChars, wordParts[j - 1], wordParts[j], depth) > 0; j--) {
+				swap(wordParts, j - 1, j);
+			}
+		}
+	}
+
+	private static int compare(char[][] wordChars, long wordPart1, long wordPart2, int depth) {
+		while (true) {
+			int c1 = charAt(wordChars, wordPart1, depth);
+			int c2 = charAt(wordChars, wordPart2, depth);
+			if (c1 != c2 || c1 < 0) {
+				return c1 - c2;
+			}
+			depth++;
+		}
+	}
+
+	private static void swap(long[] wordParts, int i, int j) {
+		long wordPart = wordParts[i];
+		wordParts[i] = wordParts[j];
+		wordParts[j] = wordPart;
+	}
+
+	/**
+	 * Builds the node for the sorted word parts from index from to index to, which share the same first depth + 1 characters.
+	 * 
+	 * @param wordChars The characters of the words in getCharArr() ordering
+	 * @param wordParts The sorted word parts
+	 * @param from Index of the first word part of the node
+	 * @param to Index after the last word part of the node
+	 * @param depth Index of the node's character in the word parts
+	 * @return The node along with its subtree
+	 */
+	private TrieNode buildNode(char[][] wordChars, long[] wordParts, int from, int to, int depth) {
+		long first = wordParts[from];
+		long last = wordParts[to - 1];
+
+		TrieNode node = new TrieNode((char) charAt(wordChars, first, depth));
+		int end = depth + 1;
+
+		if (trie.compressPaths) { // the run continues while no word part ends and the word parts don't branch
+			while (getLength(wordChars, first) > end && charAt(wordChars, first, end) == charAt(wordChars, last, end)) {
+				end++;
+			}
+			if (end > depth + 1) {
+				node.run = Arrays.copyOfRange(getChars(wordChars, first), getStart(first) + depth + 1, getStart(first) + end);
+			}
+		}
+
+		int i = from;
+		while (i < to && getLength(wordChars, wordParts[i]) == end) { // word parts ending at the node sort first
+			node.endCount++;
+			node.isEnd = true;
+			if (getStart(wordParts[i]) == 0) {
+				node.isFullWordEnd = true;
+				if (termIds != null) {
+					node.termId = termIds[getWord(wordParts[i])];
+				}
+			}
+			i++;
+		}
+
+		TrieNode[] children = null;
+		int childCount = 0;
+		while (i < to) {
+			int c = charAt(wordChars, wordParts[i], end);
+			int childTo = i + 1;
+			while (childTo < to && charAt(wordChars, wordParts[childTo], end) == c) {
+				childTo++;
+			}
+
+			if (children == null) {
+				children = new TrieNode[4];
+			} else if (childCount == children.length) {
+				children = Arrays.copyOf(children, childCount * 2);
+			}
+			children[childCount++] = buildNode(wordChars, wordParts, i, childTo, end);
+			i = childTo;
+		}
+		node.setChildren(children, childCount);
+		node.updateMaxWeight();
+		return node;
+	}
+
+	/**
+	 * Sorts and builds the subtree of one of the root node's children.
+	 */
+	private class SubtreeTask extends RecursiveTask<TrieNode> {
+		private static final long serialVersionUID = 1L;
+
+		private final char[][] wordChars;
+		private final long[] wordParts;
+		private final int from;
+		private final int to;
+
+		SubtreeTask(char[][] wordChars, long[] wordParts, int from, int to) {
+			this.wordChars = wordChars;
+			this.wordParts = wordParts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected TrieNode compute() {
+			sort(wordChars, wordParts, from, to, 1);
+			return buildNode(wordChars, wordParts, from, to, 0);
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package net.networkdowntime.search.trie;
 
-import gnu.trove.map.hash.TCharObjectHashMap;
+import java.util.Arrays;
+
+import net.networkdowntime.search.TermDictionary;
 
 /**
  * An individual node of a Trie data structure.
@@ -9,6 +11,25 @@ import gnu.trove.map.hash.TCharObjectHashMap;
  * 
  * The addition of marking full word ends is necessary to support the remove operation on a full trie.
  * 
+ * endCount is the number of full words in the trie that have a word part ending at the node, e.g. in a full trie the node 
+ * for "an" is shared by "ban" and "can". Removing a word decrements the counts of its word parts and only unmarks a node 
+ * once its count reaches 0, so a removal doesn't have to look for other words using the same nodes.
+ * 
+ * termId is the id of the full word ending at the node when the trie was given a TermDictionary.
+ * 
+ * Children are stored in an adaptive layout that is chosen per node based on the number of children and upgraded or 
+ * downgraded as children are added and removed:
+ * 	- No children: nothing is allocated.
+ * 	- One child: the child is held inline without any container.
+ * 	- Small fanout: a sorted char array of keys and a parallel child array, searched with a binary search.
+ * 	- Large fanout: a direct table indexed by the child's character offset from the smallest key.
+ * 
+ * When the trie compresses paths a node also spans a run of characters following c, so that a chain of single child 
+ * nodes is stored as one node. Children and the end markers then belong to the last character of the run.
+ * 
+ * Nodes also carry a weight for the word part ending at the node and the max weight in the node's subtree, which allows 
+ * the best completions to be found without walking the whole subtree.
+ * 
  * This software is licensed under the MIT license
  * Copyright (c) 2015 Ryan Wiles
  * 
@@ -29,10 +50,35 @@ import gnu.trove.map.hash.TCharObjectHashMap;
  */
 public class TrieNode {
 
+	// max number of children kept in a sorted array before upgrading to a direct table
+	static final int SORTED_MAX_CHILDREN = 16;
+
+	// a direct table with fewer children than this is downgraded back to a sorted array
+	static final int DIRECT_MIN_CHILDREN = 12;
+
+	// max distance between the smallest and largest key that a direct table will cover
+	static final int DIRECT_MAX_SPAN = 256;
+
 	char c = 0;
 	boolean isEnd = false;
 	boolean isFullWordEnd = false;
-	TCharObjectHashMap<TrieNode> children = null;
+	int endCount = 0;
+
+	// term id of the full word ending at this node when the trie has a term dictionary
+	int termId = TermDictionary.NO_TERM_ID;
+
+	// characters following c that are spanned by this node when paths are compressed, null otherwise
+	char[] run = null;
+
+	// weight of the word part ending at this node and the max weight of any word part in this node's subtree
+	int weight = 0;
+	int maxWeight = 0;
+
+	// null, a single TrieNode, or a TrieNode[] (sorted when keys != null, otherwise a direct table)
+	private Object children = null;
+	private char[] keys = null;
+	private char directBase = 0;
+	private short directSize = 0;
 
 	public TrieNode() {
 	}
@@ -44,4 +90,452 @@ public class TrieNode {
 	public boolean isRootNode() {
 		return c == 0;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @return The number of characters spanned by this node after c
+	 */
+	int getRunLength() {
+		return (run == null) ? 0 : run.length;
+	}
+
+	/**
+	 * Counts how many characters of the run match the given characters.
+	 * 
+	 * @param chars The characters to match
+	 * @param from Index in chars to start matching the run against
+	 * @return The number of matching characters, the run length if the whole run matches
+	 */
+	int matchRun(char[] chars, int from) {
+		if (run == null) {
+			return 0;
+		}
+		int matched = 0;
+		while (matched < run.length && from + matched < chars.length && run[matched] == chars[from + matched]) {
+			matched++;
+		}
+		return matched;
+	}
+
+	/**
+	 * Splits the run at the given offset. This node keeps c and the first at characters of the run, a new single child takes over the rest of the
+	 * run along with the end markers and the children.
+	 * 
+	 * @param at Number of run characters to keep, 0 to getRunLength() - 1
+	 * @return The new child node
+	 */
+	TrieNode splitRun(int at) {
+		TrieNode tail = new TrieNode(run[at]);
+		tail.run = (at + 1 < run.length) ? Arrays.copyOfRange(run, at + 1, run.length) : null;
+		tail.isEnd = isEnd;
+		tail.isFullWordEnd = isFullWordEnd;
+		tail.endCount = endCount;
+		tail.termId = termId;
+		tail.weight = weight;
+		tail.maxWeight = maxWeight;
+		tail.children = children;
+		tail.keys = keys;
+		tail.directBase = directBase;
+		tail.directSize = directSize;
+
+		run = (at > 0) ? Arrays.copyOf(run, at) : null;
+		isEnd = false;
+		isFullWordEnd = false;
+		endCount = 0;
+		termId = TermDictionary.NO_TERM_ID;
+		weight = 0;
+		children = tail;
+		keys = null;
+		directBase = 0;
+		directSize = 0;
+		return tail;
+	}
+
+	/**
+	 * Merges the only child of this node into this node's run. Only done when this node isn't the root and isn't the end of a word.
+	 * 
+	 * @return true if the child was merged
+	 */
+	boolean mergeWithOnlyChild() {
+		if (isRootNode() || isEnd || isFullWordEnd || !(children instanceof TrieNode)) {
+			return false;
+		}
+		TrieNode child = (TrieNode) children;
+		int runLength = getRunLength();
+		char[] newRun = new char[runLength + 1 + child.getRunLength()];
+		if (run != null) {
+			System.arraycopy(run, 0, newRun, 0, runLength);
+		}
+		newRun[runLength] = child.c;
+		if (child.run != null) {
+			System.arraycopy(child.run, 0, newRun, runLength + 1, child.run.length);
+		}
+
+		run = newRun;
+		isEnd = child.isEnd;
+		isFullWordEnd = child.isFullWordEnd;
+		endCount = child.endCount;
+		termId = child.termId;
+		weight = child.weight;
+		maxWeight = child.maxWeight;
+		children = child.children;
+		keys = child.keys;
+		directBase = child.directBase;
+		directSize = child.directSize;
+		return true;
+	}
+
+	/**
+	 * Recalculates the max weight of this node's subtree from its own weight and its children's max weights.
+	 * 
+	 * @return true if the max weight changed
+	 */
+	boolean updateMaxWeight() {
+		int max = weight;
+		for (int slot = 0; slot < getChildSlotCount(); slot++) {
+			TrieNode child = getChildInSlot(slot);
+			if (child != null && child.maxWeight > max) {
+				max = child.maxWeight;
+			}
+		}
+		boolean isChanged = max != maxWeight;
+		maxWeight = max;
+		return isChanged;
+	}
+
+	/**
+	 * Gets the child for the given character.
+	 * 
+	 * @param key The character of the child
+	 * @return The child node or null if there isn't a child for the character
+	 */
+	TrieNode getChild(char key) {
+		if (children == null) {
+			return null;
+		} else if (children instanceof TrieNode) {
+			TrieNode child = (TrieNode) children;
+			return (child.c == key) ? child : null;
+		} else if (keys != null) {
+			int index = Arrays.binarySearch(keys, key);
+			return (index >= 0) ? ((TrieNode[]) children)[index] : null;
+		} else {
+			TrieNode[] table = (TrieNode[]) children;
+			int index = key - directBase;
+			return (index >= 0 && index < table.length) ? table[index] : null;
+		}
+	}
+
+	/**
+	 * Gets the child for the given character, creating it if it doesn't exist yet.
+	 * 
+	 * @param key The character of the child
+	 * @return The existing or newly created child node
+	 */
+	TrieNode addChild(char key) {
+		TrieNode child = getChild(key);
+		if (child == null) {
+			child = new TrieNode(key);
+			putChild(child);
+		}
+		return child;
+	}
+
+	/**
+	 * Replaces the children with the given child nodes in the layout for their count, used when the children are all known up front.
+	 * 
+	 * @param sortedChildren The child nodes sorted by their character
+	 * @param count The number of child nodes in sortedChildren
+	 */
+	void setChildren(TrieNode[] sortedChildren, int count) {
+		keys = null;
+		directBase = 0;
+		directSize = 0;
+
+		if (count == 0) {
+			children = null;
+		} else if (count == 1) {
+			children = sortedChildren[0];
+		} else {
+			TrieNode[] nodes = Arrays.copyOf(sortedChildren, count);
+			char[] newKeys = new char[count];
+			for (int i = 0; i < count; i++) {
+				newKeys[i] = nodes[i].c;
+			}
+
+			int span = newKeys[count - 1] - newKeys[0] + 1;
+			if (count > SORTED_MAX_CHILDREN && span <= DIRECT_MAX_SPAN) {
+				upgradeToDirect(nodes, newKeys[0], span);
+			} else {
+				setSorted(newKeys, nodes);
+			}
+		}
+	}
+
+	/**
+	 * Adds the child node, replacing any existing child with the same character. Upgrades the layout if needed.
+	 * 
+	 * @param child The child node to add
+	 */
+	void putChild(TrieNode child) {
+		char key = child.c;
+
+		if (children == null) {
+			children = child;
+		} else if (children instanceof TrieNode) {
+			TrieNode existing = (TrieNode) children;
+			if (existing.c == key) {
+				children = child;
+			} else if (existing.c < key) {
+				setSorted(new char[] { existing.c, key }, new TrieNode[] { existing, child });
+			} else {
+				setSorted(new char[] { key, existing.c }, new TrieNode[] { child, existing });
+			}
+		} else if (keys != null) {
+			putSorted(child);
+		} else {
+			putDirect(child);
+		}
+	}
+
+	/**
+	 * Removes the child for the given character. Downgrades the layout if needed.
+	 * 
+	 * @param key The character of the child to remove
+	 * @return The removed child or null if there wasn't a child for the character
+	 */
+	TrieNode removeChild(char key) {
+		TrieNode removed = null;
+
+		if (children == null) {
+			return null;
+		} else if (children instanceof TrieNode) {
+			if (((TrieNode) children).c == key) {
+				removed = (TrieNode) children;
+				children = null;
+			}
+		} else if (keys != null) {
+			int index = Arrays.binarySearch(keys, key);
+			if (index >= 0) {
+				TrieNode[] nodes = (TrieNode[]) children;
+				removed = nodes[index];
+				if (nodes.length == 2) {
+					children = nodes[1 - index];
+					keys = null;
+				} else {
+					char[] newKeys = new char[keys.length - 1];
+					TrieNode[] newNodes = new TrieNode[nodes.length - 1];
+					System.arraycopy(keys, 0, newKeys, 0, index);
+					System.arraycopy(keys, index + 1, newKeys, index, newKeys.length - index);
+					System.arraycopy(nodes, 0, newNodes, 0, index);
+					System.arraycopy(nodes, index + 1, newNodes, index, newNodes.length - index);
+					setSorted(newKeys, newNodes);
+				}
+			}
+		} else {
+			TrieNode[] table = (TrieNode[]) children;
+			int index = key - directBase;
+			if (index >= 0 && index < table.length && table[index] != null) {
+				removed = table[index];
+				table[index] = null;
+				directSize--;
+				if (directSize < DIRECT_MIN_CHILDREN) {
+					downgradeDirect();
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return true if the node has at least one child
+	 */
+	boolean hasChildren() {
+		return children != null;
+	}
+
+	/**
+	 * @return The number of children of this node
+	 */
+	int getChildCount() {
+		if (children == null) {
+			return 0;
+		} else if (children instanceof TrieNode) {
+			return 1;
+		} else if (keys != null) {
+			return keys.length;
+		} else {
+			return directSize;
+		}
+	}
+
+	/**
+	 * Gets the number of child slots that can be iterated with getChildInSlot(). Slots of a direct table can be empty, so the number of slots can be
+	 * larger than the number of children.
+	 * 
+	 * @return The number of child slots
+	 */
+	int getChildSlotCount() {
+		if (children == null) {
+			return 0;
+		} else if (children instanceof TrieNode) {
+			return 1;
+		} else {
+			return ((TrieNode[]) children).length;
+		}
+	}
+
+	/**
+	 * Gets the child in the given slot. Children are returned in ascending character order when iterating the slots.
+	 * 
+	 * @param slot Index of the slot, 0 to getChildSlotCount() - 1
+	 * @return The child in the slot or null if the slot is empty
+	 */
+	TrieNode getChildInSlot(int slot) {
+		if (children instanceof TrieNode) {
+			return (TrieNode) children;
+		}
+		return ((TrieNode[]) children)[slot];
+	}
+
+	/**
+	 * @return The current child layout of this node
+	 */
+	Layout getLayout() {
+		if (children == null) {
+			return Layout.LEAF;
+		} else if (children instanceof TrieNode) {
+			return Layout.SINGLE;
+		} else if (keys != null) {
+			return Layout.SORTED;
+		} else {
+			return Layout.DIRECT;
+		}
+	}
+
+	/**
+	 * Estimates the number of bytes used by this node and its child containers, not including the child nodes themselves. Assumes a 64-bit JVM using
+	 * compressed oops.
+	 * 
+	 * @return The estimated number of bytes used by the node
+	 */
+	long getEstimatedSize() {
+		long size = align(12 + 2 + 1 + 1 + 2 + 2 + 4 + 4 + 4 + 4 + 4 + 4 + 4); // header, c, isEnd, isFullWordEnd, directBase, directSize, children, keys, run, weight, maxWeight, endCount, termId
+		if (children instanceof TrieNode[]) {
+			size += align(16 + 4 * ((TrieNode[]) children).length);
+		}
+		if (keys != null) {
+			size += align(16 + 2 * keys.length);
+		}
+		if (run != null) {
+			size += align(16 + 2 * run.length);
+		}
+		return size;
+	}
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	private void setSorted(char[] newKeys, TrieNode[] newNodes) {
+		keys = newKeys;
+		children = newNodes;
+		directBase = 0;
+		directSize = 0;
+	}
+
+	private void putSorted(TrieNode child) {
+		TrieNode[] nodes = (TrieNode[]) children;
+		int index = Arrays.binarySearch(keys, child.c);
+
+		if (index >= 0) {
+			nodes[index] = child;
+			return;
+		}
+
+		int insertAt = -(index + 1);
+		char[] newKeys = new char[keys.length + 1];
+		TrieNode[] newNodes = new TrieNode[nodes.length + 1];
+		System.arraycopy(keys, 0, newKeys, 0, insertAt);
+		System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+		System.arraycopy(nodes, 0, newNodes, 0, insertAt);
+		System.arraycopy(nodes, insertAt, newNodes, insertAt + 1, nodes.length - insertAt);
+		newKeys[insertAt] = child.c;
+		newNodes[insertAt] = child;
+
+		int span = newKeys[newKeys.length - 1] - newKeys[0] + 1;
+		if (newKeys.length > SORTED_MAX_CHILDREN && span <= DIRECT_MAX_SPAN) {
+			upgradeToDirect(newNodes, newKeys[0], span);
+		} else {
+			setSorted(newKeys, newNodes);
+		}
+	}
+
+	private void putDirect(TrieNode child) {
+		TrieNode[] table = (TrieNode[]) children;
+		int index = child.c - directBase;
+
+		if (index >= 0 && index < table.length) {
+			if (table[index] == null) {
+				directSize++;
+			}
+			table[index] = child;
+			return;
+		}
+
+		// the key is outside of the table, grow the table if the span allows it otherwise fall back to a sorted array
+		int low = Math.min(directBase, child.c);
+		int high = Math.max(directBase + table.length - 1, child.c);
+		if (high - low + 1 <= DIRECT_MAX_SPAN) {
+			TrieNode[] newTable = new TrieNode[high - low + 1];
+			System.arraycopy(table, 0, newTable, directBase - low, table.length);
+			newTable[child.c - low] = child;
+			children = newTable;
+			directBase = (char) low;
+			directSize++;
+		} else {
+			downgradeDirect();
+			putSorted(child);
+		}
+	}
+
+	private void upgradeToDirect(TrieNode[] sortedNodes, char base, int span) {
+		TrieNode[] table = new TrieNode[span];
+		for (TrieNode node : sortedNodes) {
+			table[node.c - base] = node;
+		}
+		children = table;
+		keys = null;
+		directBase = base;
+		directSize = (short) sortedNodes.length;
+	}
+
+	private void downgradeDirect() {
+		TrieNode[] table = (TrieNode[]) children;
+		char[] newKeys = new char[directSize];
+		TrieNode[] newNodes = new TrieNode[directSize];
+
+		int i = 0;
+		for (TrieNode node : table) {
+			if (node != null) {
+				newKeys[i] = node.c;
+				newNodes[i] = node;
+				i++;
+			}
+		}
+
+		if (newNodes.length == 1) {
+			children = newNodes[0];
+			keys = null;
+			directBase = 0;
+			directSize = 0;
+		} else {
+			setSorted(newKeys, newNodes);
+		}
+	}
+
+	/**
+	 * The child layouts a node can be in.
+	 */
+	enum Layout {
+		LEAF, SINGLE, SORTED, DIRECT
+	}
+}
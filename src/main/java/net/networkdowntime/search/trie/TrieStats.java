@@ -0,0 +1,146 @@
+package net.networkdowntime.search.trie;
+
+/**
+ * Node count and memory statistics for a Trie. Useful for comparing the memory footprint of different node layouts and
+ * tuning the layout thresholds in TrieNode.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public class TrieStats {
+
+	long nodeCount = 0;
+	long leafNodes = 0;
+	long singleChildNodes = 0;
+	long sortedNodes = 0;
+	long directNodes = 0;
+	long fullWordCount = 0;
+	long estimatedBytes = 0;
+	long frozenNodeCount = 0;
+
+	/**
+	 * Adds a node to the statistics
+	 * 
+	 * @param node The node to account for
+	 */
+	void addNode(TrieNode node) {
+		nodeCount++;
+		estimatedBytes += node.getEstimatedSize();
+
+		if (node.isFullWordEnd) {
+			fullWordCount++;
+		}
+
+		switch (node.getLayout()) {
+		case LEAF:
+			leafNodes++;
+			break;
+		case SINGLE:
+			singleChildNodes++;
+			break;
+		case SORTED:
+			sortedNodes++;
+			break;
+		case DIRECT:
+			directNodes++;
+			break;
+		}
+	}
+
+	/**
+	 * Adds the frozen part of a trie to the statistics. The frozen nodes are only counted in the node count and memory estimate, not in the
+	 * per layout counts.
+	 * 
+	 * @param frozenTrie The frozen trie to account for
+	 */
+	void addFrozenTrie(FrozenTrie frozenTrie) {
+		nodeCount += frozenTrie.getNodeCount();
+		frozenNodeCount += frozenTrie.getNodeCount();
+		fullWordCount += frozenTrie.getFullWordCount();
+		estimatedBytes += frozenTrie.getEstimatedSize();
+	}
+
+	/**
+	 * @return The total number of nodes in the trie, including the root node
+	 */
+	public long getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return The number of nodes without any children
+	 */
+	public long getLeafNodes() {
+		return leafNodes;
+	}
+
+	/**
+	 * @return The number of nodes holding a single inline child
+	 */
+	public long getSingleChildNodes() {
+		return singleChildNodes;
+	}
+
+	/**
+	 * @return The number of nodes using a sorted child array
+	 */
+	public long getSortedNodes() {
+		return sortedNodes;
+	}
+
+	/**
+	 * @return The number of nodes using a direct child table
+	 */
+	public long getDirectNodes() {
+		return directNodes;
+	}
+
+	/**
+	 * @return The number of nodes stored in the frozen flat layout
+	 */
+	public long getFrozenNodeCount() {
+		return frozenNodeCount;
+	}
+
+	/**
+	 * @return The number of distinct full words in the trie, words added to the overlay of a frozen trie that are already frozen are counted twice
+	 */
+	public long getFullWordCount() {
+		return fullWordCount;
+	}
+
+	/**
+	 * @return The estimated number of bytes used by the trie's nodes, assuming a 64-bit JVM using compressed oops
+	 */
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	/**
+	 * @return The estimated number of bytes used per distinct full word
+	 */
+	public double getEstimatedBytesPerWord() {
+		return (fullWordCount == 0) ? 0 : estimatedBytes / (double) fullWordCount;
+	}
+
+	@Override
+	public String toString() {
+		return "nodes: " + nodeCount + " (leaf: " + leafNodes + ", single: " + singleChildNodes + ", sorted: " + sortedNodes + ", direct: " + directNodes + ", frozen: " + frozenNodeCount + "), words: " + fullWordCount
+				+ ", estimated bytes: " + estimatedBytes + ", bytes/word: " + String.format("%.1f", getEstimatedBytesPerWord());
+	}
+}
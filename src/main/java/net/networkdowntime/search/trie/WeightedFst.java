@@ -0,0 +1,273 @@
+package net.networkdowntime.search.trie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A read-only completion index for a weighted vocabulary, compiled by WeightedFstBuilder into a minimal acyclic automaton stored as a single
+ * byte array. It answers the same queries as a full InvertedSuffixTrie with a SuffixTrie as its completion trie, the top k words containing a
+ * word part by weight, in a fraction of the heap of the tries. The byte array can be written out and loaded again without rebuilding.
+ * 
+ * Each state is written as the number of its arcs, the max weight of the words below it and then for each arc its label and the distance back
+ * to its target state, all as variable length ints. The arcs are sorted by label. A word is stored as all of its rotations, see
+ * WeightedFstBuilder, the last label of each rotation is the word's weight. The top completions are searched best first by the max weight of
+ * each state, the same as Trie.getTopCompletions(), so a query only visits the states that can hold one of the top k words.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public class WeightedFst {
+
+	/**
+	 * Label separating the parts of a rotation, words can't contain it.
+	 */
+	public static final char SEPARATOR = '\u0000';
+
+	private final byte[] bytes;
+	private final int root;
+
+	/**
+	 * Loads an automaton from the bytes of toByteArray().
+	 * 
+	 * @param bytes The bytes of the automaton, used as is
+	 */
+	public WeightedFst(byte[] bytes) {
+		if (bytes.length < 6) {
+			throw new IllegalArgumentException("Not a weighted FST, too short: " + bytes.length + " bytes");
+		}
+		this.bytes = bytes;
+		this.root = ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+		if (root < 4 || root >= bytes.length) {
+			throw new IllegalArgumentException("Not a weighted FST, bad root address: " + root);
+		}
+	}
+
+	/**
+	 * @return A copy of the bytes of the automaton, e.g. to write to a file
+	 */
+	public byte[] toByteArray() {
+		return bytes.clone();
+	}
+
+	/**
+	 * @return The size of the automaton in bytes
+	 */
+	public int sizeInBytes() {
+		return bytes.length;
+	}
+
+	/**
+	 * @param word The word
+	 * @return true if the word is in the vocabulary
+	 */
+	public boolean contains(String word) {
+		return getWeight(word) > 0;
+	}
+
+	/**
+	 * @param word The word
+	 * @return The weight of the word or 0 if the word isn't in the vocabulary
+	 */
+	public int getWeight(String word) {
+		Reader reader = new Reader();
+		int state = walk(reader, word);
+		if (state >= 0) {
+			state = reader.findArc(state, SEPARATOR);
+		}
+		if (state >= 0) {
+			state = reader.findArc(state, SEPARATOR);
+		}
+		if (state < 0) {
+			return 0;
+		}
+
+		reader.pos = state;
+		reader.readVInt(); // the arc count, the only arc is the weight
+		reader.readVInt();
+		return reader.readVInt();
+	}
+
+	/**
+	 * Gets the k words with the highest weight that contain the word part, ordered by descending weight and then alphabetically.
+	 * 
+	 * @param wordPart The word part to complete
+	 * @param k Max number of completions to return
+	 * @return The completions
+	 */
+	public List<String> getTopCompletions(String wordPart, int k) {
+		List<String> topCompletions = new ArrayList<String>();
+		Reader reader = new Reader();
+		int state = walk(reader, wordPart);
+		if (state < 0 || k <= 0) {
+			return topCompletions;
+		}
+
+		PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>(11, Candidate.BEST_FIRST);
+		List<Candidate> completions = new ArrayList<Candidate>();
+		Set<String> completedWords = new HashSet<String>();
+		candidates.add(new Candidate(state, wordPart, 0, reader.getMaxWeight(state), false));
+
+		while (!candidates.isEmpty()) {
+			Candidate candidate = candidates.poll();
+
+			if (completions.size() >= k && candidate.weight < completions.get(k - 1).weight) { // no better completions are left
+				break;
+			}
+
+			if (candidate.isCompletion) {
+				if (completedWords.add(candidate.str)) {
+					completions.add(candidate);
+				}
+			} else {
+				expand(reader, candidates, candidate);
+			}
+		}
+
+		// completions with the same weight as the k-th completion can be found out of alphabetical order
+		Collections.sort(completions, Candidate.BEST_FIRST);
+
+		for (int i = 0; i < completions.size() && i < k; i++) {
+			topCompletions.add(completions.get(i).str);
+		}
+		return topCompletions;
+	}
+
+	/**
+	 * Adds the candidates for the arcs of the candidate's state. After the second separator the arc's label is the weight of the rotation's word.
+	 */
+	private void expand(Reader reader, PriorityQueue<Candidate> candidates, Candidate candidate) {
+		reader.pos = candidate.state;
+		int arcCount = reader.readVInt();
+		reader.readVInt();
+
+		for (int i = 0; i < arcCount; i++) {
+			int label = reader.readVInt();
+			int target = candidate.state - reader.readVInt();
+
+			if (candidate.separators == 2) {
+				candidates.add(new Candidate(-1, getWord(candidate.str), 2, label, true));
+			} else {
+				int next = reader.pos;
+				int weight = reader.getMaxWeight(target);
+				reader.pos = next;
+				int separators = (label == SEPARATOR) ? candidate.separators + 1 : candidate.separators;
+				candidates.add(new Candidate(target, candidate.str + (char) label, separators, weight, false));
+			}
+		}
+	}
+
+	/**
+	 * @param rotation The labels of a rotation up to the weight, the word's ending, a separator, its beginning and a second separator
+	 * @return The word
+	 */
+	private static String getWord(String rotation) {
+		int separator = rotation.indexOf(SEPARATOR);
+		return rotation.substring(separator + 1, rotation.length() - 1) + rotation.substring(0, separator);
+	}
+
+	/**
+	 * @return The state reached by the characters from the root state or -1 if there isn't one
+	 */
+	private int walk(Reader reader, String chars) {
+		int state = root;
+		for (int i = 0; i < chars.length() && state >= 0; i++) {
+			char c = chars.charAt(i);
+			state = (c == SEPARATOR) ? -1 : reader.findArc(state, c);
+		}
+		return state;
+	}
+
+	/**
+	 * Decodes the variable length ints of the states, one per query so the automaton can be shared between threads.
+	 */
+	private class Reader {
+		int pos;
+
+		int readVInt() {
+			byte b = bytes[pos++];
+			int value = b & 0x7F;
+			for (int shift = 7; b < 0; shift += 7) {
+				b = bytes[pos++];
+				value |= (b & 0x7F) << shift;
+			}
+			return value;
+		}
+
+		int getMaxWeight(int state) {
+			pos = state;
+			readVInt();
+			return readVInt();
+		}
+
+		/**
+		 * @return The target of the state's arc with the label or -1 if there isn't one
+		 */
+		int findArc(int state, int label) {
+			pos = state;
+			int arcCount = readVInt();
+			readVInt();
+			for (int i = 0; i < arcCount; i++) {
+				int arcLabel = readVInt();
+				int distance = readVInt();
+				if (arcLabel == label) {
+					return state - distance;
+				} else if (arcLabel > label) {
+					break;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * A state, or a found word, waiting to be visited by getTopCompletions().
+	 */
+	private static class Candidate {
+		// highest weight first, words before states of the same weight, then alphabetically
+		static final Comparator<Candidate> BEST_FIRST = new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate o1, Candidate o2) {
+				if (o1.weight != o2.weight) {
+					return (o1.weight > o2.weight) ? -1 : 1;
+				} else if (o1.isCompletion != o2.isCompletion) {
+					return (o1.isCompletion) ? -1 : 1;
+				}
+				return o1.str.compareTo(o2.str);
+			}
+		};
+
+		final int state;
+		final String str; // the labels walked to the state or the word
+		final int separators; // the number of separators walked
+		final int weight; // the max weight below the state or the weight of the word
+		final boolean isCompletion;
+
+		Candidate(int state, String str, int separators, int weight, boolean isCompletion) {
+			this.state = state;
+			this.str = str;
+			this.separators = separators;
+			this.weight = weight;
+			this.isCompletion = isCompletion;
+		}
+	}
+}
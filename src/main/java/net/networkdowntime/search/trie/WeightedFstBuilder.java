@@ -0,0 +1,264 @@
+package net.networkdowntime.search.trie;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.procedure.TObjectIntProcedure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a weighted vocabulary into a WeightedFst. Meant to be run offline, e.g. a nightly rebuild, since the whole vocabulary is needed up
+ * front and the finished automaton can't be changed.
+ * 
+ * Every rotation of every word is a key of the automaton: the word's ending from each position, a separator, the beginning of the word before
+ * that position, a second separator and then the weight of the word as the last label. A word part is then completed to the words containing it
+ * by following the keys starting with it, like the prefix-trie and suffix-trie pair, and the word is put back together from its rotation.
+ * 
+ * The keys are sorted and added in order with the incremental minimization of Daciuk et al.: once a key diverges from the previous one, the
+ * states the previous key no longer shares are compiled, from the deepest up, and a state whose arcs are the same as an already compiled state's
+ * is replaced by that state. The result is the minimal automaton for the keys, the rotations of different words share their common endings.
+ * Each state is written to the byte array as soon as it is compiled, so the states it points to are always written before it.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public class WeightedFstBuilder {
+
+	private static final Comparator<int[]> KEY_ORDER = new Comparator<int[]>() {
+		@Override
+		public int compare(int[] o1, int[] o2) {
+			int length = Math.min(o1.length, o2.length);
+			for (int i = 0; i < length; i++) {
+				if (o1[i] != o2[i]) {
+					return (o1[i] < o2[i]) ? -1 : 1;
+				}
+			}
+			return o1.length - o2.length;
+		}
+	};
+
+	private final TObjectIntHashMap<String> weights = new TObjectIntHashMap<String>();
+
+	// the compiled automaton
+	private byte[] bytes;
+	private int length;
+
+	// compiled states by their arcs, and the max weight of the keys through each compiled state
+	private final Map<StateKey, Integer> register = new HashMap<StateKey, Integer>();
+	private final TIntIntHashMap maxWeights = new TIntIntHashMap();
+
+	/**
+	 * Adds a word to be compiled by build(). Adding a word again replaces its weight. Empty words, words containing the separator character
+	 * and words with a weight less than 1 are ignored.
+	 * 
+	 * @param word The word
+	 * @param weight The weight of the word, e.g. its number of occurrences
+	 */
+	public void add(String word, int weight) {
+		if (word.length() > 0 && word.indexOf(WeightedFst.SEPARATOR) < 0 && weight > 0) {
+			weights.put(word, weight);
+		}
+	}
+
+	/**
+	 * Compiles the words added so far.
+	 * 
+	 * @return The automaton
+	 */
+	public WeightedFst build() {
+		final List<int[]> keys = new ArrayList<int[]>();
+		weights.forEachEntry(new TObjectIntProcedure<String>() {
+			@Override
+			public boolean execute(String word, int weight) {
+				for (int rotation = 0; rotation < word.length(); rotation++) {
+					keys.add(getKey(word, rotation, weight));
+				}
+				return true;
+			}
+		});
+		int[][] sortedKeys = keys.toArray(new int[keys.size()][]);
+		Arrays.sort(sortedKeys, KEY_ORDER);
+
+		bytes = new byte[1024];
+		length = 4; // the address of the root state is written first
+		register.clear();
+		maxWeights.clear();
+
+		int maxLength = 0;
+		for (int[] key : sortedKeys) {
+			maxLength = Math.max(maxLength, key.length);
+		}
+		PendingState[] frontier = new PendingState[maxLength + 1];
+		for (int depth = 0; depth < frontier.length; depth++) {
+			frontier[depth] = new PendingState();
+		}
+
+		int[] previousKey = new int[0];
+		for (int[] key : sortedKeys) {
+			int prefixLength = 0;
+			while (prefixLength < key.length && prefixLength < previousKey.length && key[prefixLength] == previousKey[prefixLength]) {
+				prefixLength++;
+			}
+
+			compileFrontier(frontier, previousKey.length, prefixLength);
+			for (int depth = prefixLength; depth < key.length; depth++) {
+				frontier[depth].addArc(key[depth]);
+			}
+			previousKey = key;
+		}
+		compileFrontier(frontier, previousKey.length, 0);
+		int root = compile(frontier[0]);
+
+		bytes[0] = (byte) (root >>> 24);
+		bytes[1] = (byte) (root >>> 16);
+		bytes[2] = (byte) (root >>> 8);
+		bytes[3] = (byte) root;
+
+		WeightedFst fst = new WeightedFst(Arrays.copyOf(bytes, length));
+		bytes = null;
+		register.clear();
+		maxWeights.clear();
+		return fst;
+	}
+
+	/**
+	 * @return The key of a rotation of the word
+	 */
+	static int[] getKey(String word, int rotation, int weight) {
+		int[] key = new int[word.length() + 3];
+		int i = 0;
+		for (int j = rotation; j < word.length(); j++) {
+			key[i++] = word.charAt(j);
+		}
+		key[i++] = WeightedFst.SEPARATOR;
+		for (int j = 0; j < rotation; j++) {
+			key[i++] = word.charAt(j);
+		}
+		key[i++] = WeightedFst.SEPARATOR;
+		key[i] = weight;
+		return key;
+	}
+
+	/**
+	 * Compiles the frontier states deeper than depth, from the deepest up, and points the last arc of each state above them at the compiled state.
+	 */
+	private void compileFrontier(PendingState[] frontier, int fromDepth, int depth) {
+		for (int d = fromDepth; d > depth; d--) {
+			int address = compile(frontier[d]);
+			PendingState parent = frontier[d - 1];
+			parent.targets[parent.arcCount - 1] = address;
+			parent.arcMaxWeights[parent.arcCount - 1] = (frontier[d].arcCount == 0) ? parent.labels[parent.arcCount - 1] : maxWeights.get(address);
+			frontier[d].clear();
+		}
+	}
+
+	/**
+	 * Writes the state, unless an equivalent state was already written.
+	 * 
+	 * @return The address of the state
+	 */
+	private int compile(PendingState state) {
+		int[] arcs = new int[state.arcCount * 2];
+		int maxWeight = 0;
+		for (int i = 0; i < state.arcCount; i++) {
+			arcs[i * 2] = state.labels[i];
+			arcs[i * 2 + 1] = state.targets[i];
+			maxWeight = Math.max(maxWeight, state.arcMaxWeights[i]);
+		}
+
+		StateKey stateKey = new StateKey(arcs);
+		Integer existing = register.get(stateKey);
+		if (existing != null) {
+			return existing;
+		}
+
+		int address = length;
+		writeVInt(state.arcCount);
+		writeVInt(maxWeight);
+		for (int i = 0; i < state.arcCount; i++) {
+			writeVInt(state.labels[i]);
+			writeVInt(address - state.targets[i]);
+		}
+
+		register.put(stateKey, address);
+		maxWeights.put(address, maxWeight);
+		return address;
+	}
+
+	private void writeVInt(int value) {
+		if (length + 5 > bytes.length) {
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		}
+		while ((value & ~0x7F) != 0) {
+			bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[length++] = (byte) value;
+	}
+
+	/**
+	 * A state on the path of the last key added that hasn't been compiled yet. The target of its last arc is the next state on the path.
+	 */
+	private static class PendingState {
+		int[] labels = new int[4];
+		int[] targets = new int[4];
+		int[] arcMaxWeights = new int[4];
+		int arcCount = 0;
+
+		void addArc(int label) {
+			if (arcCount == labels.length) {
+				labels = Arrays.copyOf(labels, arcCount * 2);
+				targets = Arrays.copyOf(targets, arcCount * 2);
+				arcMaxWeights = Arrays.copyOf(arcMaxWeights, arcCount * 2);
+			}
+			labels[arcCount++] = label;
+		}
+
+		void clear() {
+			arcCount = 0;
+		}
+	}
+
+	/**
+	 * The arcs of a compiled state, two compiled states with the same arcs are equivalent.
+	 */
+	private static class StateKey {
+		final int[] arcs;
+		final int hashCode;
+
+		StateKey(int[] arcs) {
+			this.arcs = arcs;
+			this.hashCode = Arrays.hashCode(arcs);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof StateKey && Arrays.equals(arcs, ((StateKey) obj).arcs);
+		}
+	}
+}
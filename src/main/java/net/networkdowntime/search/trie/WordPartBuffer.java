@@ -0,0 +1,181 @@
+package net.networkdowntime.search.trie;
+
+import java.util.Arrays;
+
+/**
+ * The mutable search state of the edit exploration in Trie.getCompletions(). Holds the characters of a word part in node traversal
+ * order, i.e. getCharArr() ordering, and its cost. Misspellings are applied to the buffer in place and undone once the search path
+ * has been explored, instead of building a new CostString for every candidate. A String is only created when a completion is found.
+ * 
+ * getStringHashCode() and contentEquals() match the word part's String, so the buffer can be looked up in a CostStringSet without
+ * creating the String.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+class WordPartBuffer {
+
+	private char[] chars;
+	private int length;
+	private final boolean isReversed; // whether the String of the word part is the reverse of the node traversal order
+
+	int cost;
+
+	/**
+	 * @param chars The characters of the word part in node traversal order, copied into the buffer
+	 * @param cost The cost of the word part
+	 * @param isReversed Whether the String of the word part is the reverse of the node traversal order
+	 * @param extraCapacity The number of characters the word part is expected to grow by
+	 */
+	WordPartBuffer(char[] chars, int cost, boolean isReversed, int extraCapacity) {
+		this.chars = Arrays.copyOf(chars, chars.length + Math.max(0, extraCapacity));
+		this.length = chars.length;
+		this.cost = cost;
+		this.isReversed = isReversed;
+	}
+
+	int length() {
+		return length;
+	}
+
+	/**
+	 * @return A copy of the word part that can be changed independently, e.g. by another thread
+	 */
+	WordPartBuffer copy() {
+		return new WordPartBuffer(Arrays.copyOf(chars, length), cost, isReversed, chars.length - length);
+	}
+
+	char charAt(int index) {
+		return chars[index];
+	}
+
+	/**
+	 * Appends the character to the end of the word part in node traversal order. Undone by truncate().
+	 */
+	void append(char c) {
+		ensureCapacity(length + 1);
+		chars[length++] = c;
+	}
+
+	/**
+	 * Shortens the word part to the given length.
+	 */
+	void truncate(int newLength) {
+		length = newLength;
+	}
+
+	/**
+	 * Inserts the character at the index. Undone by delete(index).
+	 */
+	void insert(int index, char c) {
+		ensureCapacity(length + 1);
+		System.arraycopy(chars, index, chars, index + 1, length - index);
+		chars[index] = c;
+		length++;
+	}
+
+	/**
+	 * Deletes the character at the index. Undone by insert(index, c) with the returned character.
+	 * 
+	 * @return The deleted character
+	 */
+	char delete(int index) {
+		char c = chars[index];
+		System.arraycopy(chars, index + 1, chars, index, length - index - 1);
+		length--;
+		return c;
+	}
+
+	/**
+	 * Replaces the character at the index. Undone by replace(index, c) with the returned character.
+	 * 
+	 * @return The replaced character
+	 */
+	char replace(int index, char c) {
+		char replaced = chars[index];
+		chars[index] = c;
+		return replaced;
+	}
+
+	/**
+	 * Transposes the character at the index with the following character. Undone by calling it again.
+	 */
+	void transpose(int index) {
+		char c = chars[index];
+		chars[index] = chars[index + 1];
+		chars[index + 1] = c;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+		}
+	}
+
+	/**
+	 * @return The hash code of the word part's String and therefore of its CostString, without creating the String
+	 */
+	int getStringHashCode() {
+		int hash = 0;
+		if (isReversed) {
+			for (int i = length - 1; i >= 0; i--) {
+				hash = 31 * hash + chars[i];
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				hash = 31 * hash + chars[i];
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * @return true if the word part's String would be equal to the given String
+	 */
+	boolean contentEquals(String str) {
+		if (str.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (str.charAt(i) != chars[isReversed ? length - 1 - i : i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return A CostString for the current state of the word part
+	 */
+	CostString toCostString() {
+		return new CostString(toString(), cost);
+	}
+
+	@Override
+	public String toString() {
+		if (!isReversed) {
+			return new String(chars, 0, length);
+		}
+
+		char[] word = new char[length];
+		for (int i = 0; i < length; i++) {
+			word[i] = chars[length - 1 - i];
+		}
+		return new String(word);
+	}
+}
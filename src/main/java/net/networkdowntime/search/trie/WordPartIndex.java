@@ -0,0 +1,70 @@
+package net.networkdowntime.search.trie;
+
+import java.util.Set;
+
+/**
+ * The word part index behind substring completion, so a caller can pick the structure that fits its vocabulary: a full SuffixTrie or
+ * InvertedSuffixTrie, or a SuffixAutomaton, which uses linear space for long words like urls.
+ * 
+ * Removing words is optional. An index that can't remove words, see isRemoveSupported(), is add-only and throws an
+ * UnsupportedOperationException from remove(), it has to be rebuilt from the remaining words instead.
+ * 
+ * This software is licensed under the MIT license
+ * Copyright (c) 2016 Ryan Wiles
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation 
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software 
+ * is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE 
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR 
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * @author rwiles
+ *
+ */
+public interface WordPartIndex {
+
+	/**
+	 * Adds a word to the index. Adding a word that is already in the index doesn't change it.
+	 * 
+	 * @param word The word to add
+	 * @return The number of nodes or states walked or created, 0 if the word was already in the index
+	 */
+	public abstract int add(String word);
+
+	/**
+	 * Removes a word from the index, optional.
+	 * 
+	 * @param word The word to remove
+	 * @throws UnsupportedOperationException If the index is add-only
+	 */
+	public abstract void remove(String word);
+
+	/**
+	 * @return true if remove() is supported, false if the index is add-only
+	 */
+	public abstract boolean isRemoveSupported();
+
+	/**
+	 * @param wordCharArr The characters in the index's ordering, reversed for an inverted index
+	 * @param fullWordMatch Whether the characters have to be a full word or can be any indexed word part
+	 * @return true if the index contains the characters
+	 */
+	public abstract boolean containsWord(char[] wordCharArr, boolean fullWordMatch);
+
+	/**
+	 * Gets the completions for the given word part.
+	 * 
+	 * @param wordPart The word part to find completions for
+	 * @param editDistanceMax Max edit distance for the requested completions, each character completed costs 1
+	 * @param subStringOnly Assume that there are no typos in the wordPart, use edit distance to only find word completions
+	 * @return A set of the completed word parts
+	 */
+	public abstract Set<CostString> getCompletions(CostString wordPart, int editDistanceMax, boolean subStringOnly);
+
+}
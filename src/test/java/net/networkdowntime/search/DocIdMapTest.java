@@ -0,0 +1,53 @@
+package net.networkdowntime.search;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DocIdMapTest {
+
+	@Test
+	public void testDenseIds() {
+		DocIdMap docIdMap = new DocIdMap();
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, docIdMap.getOrAddDocId(1000L + i));
+		}
+		assertEquals(100, docIdMap.size());
+		assertEquals(42, docIdMap.getOrAddDocId(1042L));
+		assertEquals(42, docIdMap.getDocId(1042L));
+		assertEquals(1042L, docIdMap.getLongResult(42));
+		assertEquals(100, docIdMap.size());
+	}
+
+	@Test
+	public void testLongAndStringResultsShareIds() {
+		DocIdMap docIdMap = new DocIdMap();
+		int longDocId = docIdMap.getOrAddDocId(7L);
+		int stringDocId = docIdMap.getOrAddDocId("7");
+		assertTrue(longDocId != stringDocId);
+		assertEquals(7L, docIdMap.getLongResult(longDocId));
+		assertEquals("7", docIdMap.getStringResult(stringDocId));
+		assertEquals(2, docIdMap.size());
+	}
+
+	@Test
+	public void testMissingResult() {
+		DocIdMap docIdMap = new DocIdMap();
+		docIdMap.getOrAddDocId(Long.MIN_VALUE);
+		docIdMap.getOrAddDocId("foo");
+		assertEquals(0, docIdMap.getDocId(Long.MIN_VALUE));
+		assertEquals(DocIdMap.NO_DOC_ID, docIdMap.getDocId(5L));
+		assertEquals(DocIdMap.NO_DOC_ID, docIdMap.getDocId("bar"));
+	}
+
+	@Test
+	public void testHashCollisionsGetDistinctIds() {
+		DocIdMap docIdMap = new DocIdMap();
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		int aa = docIdMap.getOrAddDocId("Aa");
+		int bb = docIdMap.getOrAddDocId("BB");
+		assertTrue(aa != bb);
+		assertEquals("Aa", docIdMap.getStringResult(aa));
+		assertEquals("BB", docIdMap.getStringResult(bb));
+	}
+}
@@ -0,0 +1,40 @@
+package net.networkdowntime.search;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TermDictionaryTest {
+
+	@Test
+	public void testDenseIds() {
+		TermDictionary dictionary = new TermDictionary();
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, dictionary.getOrAddTermId("word" + i));
+		}
+		assertEquals(100, dictionary.size());
+		assertEquals(42, dictionary.getOrAddTermId("word42"));
+		assertEquals(42, dictionary.getTermId("word42"));
+		assertEquals("word42", dictionary.getTerm(42));
+		assertEquals(100, dictionary.size());
+	}
+
+	@Test
+	public void testMissingTerm() {
+		TermDictionary dictionary = new TermDictionary();
+		dictionary.getOrAddTermId("foo");
+		assertEquals(TermDictionary.NO_TERM_ID, dictionary.getTermId("bar"));
+		assertEquals(1, dictionary.size());
+	}
+
+	@Test
+	public void testHashCollisionsGetDistinctIds() {
+		TermDictionary dictionary = new TermDictionary();
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		int aa = dictionary.getOrAddTermId("Aa");
+		int bb = dictionary.getOrAddTermId("BB");
+		assertTrue(aa != bb);
+		assertEquals("Aa", dictionary.getTerm(aa));
+		assertEquals("BB", dictionary.getTerm(bb));
+	}
+}
@@ -0,0 +1,110 @@
+package net.networkdowntime.search.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AutocompleteSessionTest {
+
+	Autocomplete autocomplete = new Autocomplete();
+
+	@Before
+	public void setUp() throws Exception {
+		autocomplete.add("cacao cacao cacao cacao ban bad bad");
+		autocomplete.add("band band band band band band banana banana banana banana banana");
+		autocomplete.add("bandy bandy bandy bandana abandon");
+		autocomplete.add("The quick brown fox jumps over the lazy dog");
+	}
+
+	@Test
+	public void testTypingMatchesAutocomplete() {
+		for (boolean fuzzyMatch : new boolean[] { true, false }) {
+			for (int limit : new int[] { 1, 3, 10 }) {
+				AutocompleteSession session = new AutocompleteSession(autocomplete, fuzzyMatch, limit);
+				for (String input : Arrays.asList("bandxz", "abandonment", "lazy dog", "quick bro", "cacao b")) {
+					for (int i = 1; i <= input.length(); i++) {
+						assertCompletions(session, input.substring(0, i), fuzzyMatch, limit);
+					}
+					for (int i = input.length() - 1; i > 0; i--) {
+						assertCompletions(session, input.substring(0, i), fuzzyMatch, limit);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAppendAndBackspace() {
+		AutocompleteSession session = new AutocompleteSession(autocomplete, true, 10);
+		session.append("b");
+		session.append("an");
+		assertEquals("ban", session.getInput());
+		assertEquals(new ArrayList<String>(autocomplete.getCompletions("band", true, 10)), new ArrayList<String>(session.append("d")));
+		assertEquals(new ArrayList<String>(autocomplete.getCompletions("ban", true, 10)), new ArrayList<String>(session.backspace()));
+		assertEquals("ban", session.getInput());
+	}
+
+	@Test
+	public void testAddDiscardsStates() {
+		AutocompleteSession session = new AutocompleteSession(autocomplete, false, 10);
+		assertFalse(session.getCompletions("ban").contains("banter"));
+
+		autocomplete.add("banter");
+		assertTrue(session.getCompletions("bant").contains("banter"));
+		assertTrue(session.getCompletions("ban").contains("banter"));
+	}
+
+	@Test
+	public void testTypingMatchesAutocompleteWithFst() {
+		autocomplete.add("abxabc abxabc abcd");
+		autocomplete.setFst(autocomplete.buildFst());
+
+		AutocompleteSession session = new AutocompleteSession(autocomplete, false, 10);
+		for (String input : Arrays.asList("ab", "abc", "abcd", "xab", "xabc", "band", "bandy")) {
+			for (int i = 1; i <= input.length(); i++) {
+				assertCompletions(session, input.substring(0, i), false, 10);
+			}
+		}
+	}
+
+	@Test
+	public void testLimitLargerThanFrontier() {
+		Autocomplete many = new Autocomplete();
+		for (int i = 0; i < 100; i++) {
+			many.add("abc" + (char) ('a' + i / 26) + (char) ('a' + i % 26));
+		}
+
+		int limit = 100;
+		AutocompleteSession session = new AutocompleteSession(many, false, limit);
+		assertEquals(limit, many.getCompletions("abc", false, limit).size());
+		for (String input : Arrays.asList("a", "ab", "abc", "abcd", "abcda")) {
+			assertEquals(input, new ArrayList<String>(many.getCompletions(input, false, limit)), new ArrayList<String>(session.getCompletions(input)));
+		}
+	}
+
+	@Test
+	public void testWordRemovedFromFst() {
+		Autocomplete many = new Autocomplete();
+		for (int i = 0; i < 68; i++) {
+			String word = "abc" + (char) ('a' + i / 26) + (char) ('a' + i % 26);
+			many.add(word + " " + word);
+		}
+		many.add("abcya abcyb");
+		many.setFst(many.buildFst());
+		many.remove("abcaa abcaa");
+
+		AutocompleteSession session = new AutocompleteSession(many, false, 10);
+		for (String input : Arrays.asList("a", "ab", "abc", "abcy", "abcya")) {
+			assertEquals(input, new ArrayList<String>(many.getCompletions(input, false, 10)), new ArrayList<String>(session.getCompletions(input)));
+		}
+		assertTrue(session.getCompletions("abcy").contains("abcya"));
+	}
+
+	private void assertCompletions(AutocompleteSession session, String input, boolean fuzzyMatch, int limit) {
+		assertEquals(input, new ArrayList<String>(autocomplete.getCompletions(input, fuzzyMatch, limit)), new ArrayList<String>(session.getCompletions(input)));
+	}
+}
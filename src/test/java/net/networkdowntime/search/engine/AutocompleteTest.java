@@ -3,7 +3,13 @@ package net.networkdowntime.search.engine;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+
+import net.networkdowntime.search.trie.SearchTrace;
+import net.networkdowntime.search.trie.SearchTraceSink;
+import net.networkdowntime.search.trie.WeightedFst;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -68,6 +74,124 @@ public class AutocompleteTest {
 		assertEquals("lazy", orderedList.get(6));
 	}
 
+	@Test
+	public void testTopCompletionsFollowHistogramCounts() {
+		assertEquals(Arrays.asList("band", "banana", "cacao"), new ArrayList<String>(autocomplete.getCompletions("a", false, 3)));
+
+		autocomplete.add("bad bad bad bad bad");
+		assertEquals(Arrays.asList("bad", "band", "banana"), new ArrayList<String>(autocomplete.getCompletions("a", false, 3)));
+	}
+
+	@Test
+	public void testRemoveKeepsWordUntilLastOccurrence() {
+		autocomplete.remove("ban");
+		autocomplete.remove("bad bad");
+		autocomplete.remove("bandy");
+
+		List<String> orderedList = new ArrayList<String>(autocomplete.getCompletions("a", false, 10));
+		assertEquals(Arrays.asList("band", "banana", "cacao", "bandy", "lazy"), orderedList);
+	}
+
+	@Test
+	public void testTopCompletionsCache() {
+		autocomplete.setTopCompletionsCache(2, 3);
+		assertEquals(Arrays.asList("band", "banana", "cacao"), new ArrayList<String>(autocomplete.getCompletions("a", false, 3)));
+
+		autocomplete.add("bad bad bad bad bad"); // moves into the kept list
+		assertEquals(Arrays.asList("bad", "band", "banana"), new ArrayList<String>(autocomplete.getCompletions("a", false, 3)));
+
+		autocomplete.remove("band band band band band band"); // drops out of the kept list, which has to be found again
+		assertEquals(Arrays.asList("bad", "banana", "cacao"), new ArrayList<String>(autocomplete.getCompletions("a", false, 3)));
+		assertEquals(Arrays.asList("bad", "banana"), new ArrayList<String>(autocomplete.getCompletions("ba", false, 2)));
+
+		assertEquals(Arrays.asList("lazy"), new ArrayList<String>(autocomplete.getCompletions("z", false, 3)));
+		autocomplete.add("zebra"); // added to a list holding every completion
+		assertEquals(Arrays.asList("lazy", "zebra"), new ArrayList<String>(autocomplete.getCompletions("z", false, 3)));
+	}
+
+	@Test
+	public void testTopCompletionsCacheMatchesSearch() {
+		String[] words = { "ab", "abc", "bca", "cab", "abcab", "ba", "cc", "acb", "bbc", "caa" };
+		Autocomplete cached = new Autocomplete();
+		Autocomplete searched = new Autocomplete();
+		cached.setTopCompletionsCache(2, 4);
+
+		Random random = new Random(7);
+		for (int i = 0; i < 400; i++) {
+			String word = words[random.nextInt(words.length)];
+			if (random.nextInt(3) == 0) {
+				cached.remove(word);
+				searched.remove(word);
+			} else {
+				cached.add(word);
+				searched.add(word);
+			}
+
+			for (String wordPart : new String[] { "a", "b", "c", "ab", "ca", "cc" }) {
+				int limit = 1 + random.nextInt(5);
+				assertEquals(wordPart, new ArrayList<String>(searched.getCompletions(wordPart, false, limit)), new ArrayList<String>(cached.getCompletions(wordPart, false, limit)));
+			}
+		}
+	}
+
+	@Test
+	public void testFst() {
+		List<String> expected = new ArrayList<String>(autocomplete.getCompletions("a", false, 10));
+		List<String> expectedDigram = new ArrayList<String>(autocomplete.getCompletions("lazy d", true, 10));
+
+		WeightedFst fst = autocomplete.buildFst();
+		autocomplete.setFst(new WeightedFst(fst.toByteArray()));
+		assertEquals(expected, new ArrayList<String>(autocomplete.getCompletions("a", false, 10)));
+		assertEquals(expectedDigram, new ArrayList<String>(autocomplete.getCompletions("lazy d", true, 10)));
+
+		autocomplete.add("zebra"); // isn't completed until the next automaton
+		autocomplete.remove("ban");
+		assertTrue(autocomplete.getCompletions("zeb", false, 10).isEmpty());
+		assertFalse(autocomplete.getCompletions("an", false, 10).contains("ban"));
+
+		autocomplete.setFst(null);
+		assertEquals(Arrays.asList("zebra"), new ArrayList<String>(autocomplete.getCompletions("zeb", false, 10)));
+		assertFalse(autocomplete.getCompletions("an", false, 10).contains("ban"));
+	}
+
+	@Test
+	public void testFstWordAddedAfterSet() {
+		Autocomplete ac = new Autocomplete();
+		ac.add("alpha beta gamma");
+		ac.setFst(ac.buildFst());
+		ac.add("zebra"); // counted by the histogram but not completed by the automaton
+
+		assertEquals(Arrays.asList("zebra"), new ArrayList<String>(ac.getCompletions("zebra", false, 5)));
+		assertEquals(Arrays.asList("zebra"), new ArrayList<String>(new AutocompleteSession(ac, false, 5).getCompletions("zebra")));
+	}
+
+	@Test
+	public void testSuffixArray() {
+		List<String> expected = new ArrayList<String>(autocomplete.getCompletions("lazy d", true, 10));
+		List<String> expectedTrailingSpace = new ArrayList<String>(autocomplete.getCompletions("quick ", true, 10));
+
+		autocomplete.setSuffixArray(autocomplete.buildSuffixArray());
+		assertEquals(expected, new ArrayList<String>(autocomplete.getCompletions("lazy d", true, 10)));
+		assertEquals(expectedTrailingSpace, new ArrayList<String>(autocomplete.getCompletions("quick ", true, 10)));
+	}
+
+	@Test
+	public void testSuffixArrayRanksWholeRange() {
+		Autocomplete ac = new Autocomplete();
+		for (int i = 0; i < 40; i++) { // more words containing zz than the candidates kept for the current word
+			ac.add("zz" + (char) ('a' + i / 26) + (char) ('a' + i % 26) + "x");
+		}
+		for (int i = 0; i < 20; i++) {
+			ac.add("go zzzzx");
+		}
+
+		List<String> expected = new ArrayList<String>(ac.getCompletions("go zz", false, 3));
+		assertEquals(Arrays.asList("go zzzzx"), expected);
+
+		ac.setSuffixArray(ac.buildSuffixArray());
+		assertEquals(expected, new ArrayList<String>(ac.getCompletions("go zz", false, 3)));
+	}
+
 	@Test
 	public void testDigramHistogramCompletionFirstWordExcactMatch() {
 		List<String> orderedList = new ArrayList<String>(autocomplete.getCompletions("quick b", false, 10));
@@ -99,6 +223,84 @@ public class AutocompleteTest {
 		assertEquals("quick brown", orderedList.get(0));
 	}
 
+	@Test
+	public void testFrozenCompletions() {
+		autocomplete.freeze();
+		autocomplete.add("bandana");
+		autocomplete.add("bandana");
+		autocomplete.add("bandana");
+		autocomplete.add("bandana");
+		autocomplete.add("bandana");
+		autocomplete.add("bandana");
+		autocomplete.add("bandana");
+
+		List<String> orderedList = new ArrayList<String>(autocomplete.getCompletions("band", false, 10));
+		assertEquals("bandana", orderedList.get(0));
+		assertEquals("band", orderedList.get(1));
+		assertEquals("bandy", orderedList.get(2));
+
+		autocomplete.freeze();
+		assertEquals(orderedList, new ArrayList<String>(autocomplete.getCompletions("band", false, 10)));
+
+		List<String> digramList = new ArrayList<String>(autocomplete.getCompletions("quick b", false, 10));
+		assertEquals("quick brown", digramList.get(0));
+	}
+
+	@Test
+	public void testFrozenRemove() {
+		Autocomplete mutable = new Autocomplete();
+		Autocomplete frozen = new Autocomplete();
+		for (Autocomplete ac : Arrays.asList(mutable, frozen)) {
+			ac.add("cacao cacao ban bad bad band band banana banana bandy bandana abandon");
+		}
+		frozen.freeze();
+
+		for (Autocomplete ac : Arrays.asList(mutable, frozen)) {
+			ac.remove("banana banana bandy");
+		}
+
+		for (String input : Arrays.asList("ban", "band", "nan", "and")) {
+			assertEquals(input, new ArrayList<String>(mutable.getCompletions(input, false, 10)), new ArrayList<String>(frozen.getCompletions(input, false, 10)));
+		}
+		assertFalse(frozen.getCompletions("nan", false, 10).contains("banana"));
+	}
+
+	@Test
+	public void testDeadWordPartCache() {
+		Autocomplete uncached = new Autocomplete();
+		Autocomplete cached = new Autocomplete();
+		cached.setDeadWordPartCache(16);
+		for (Autocomplete ac : Arrays.asList(uncached, cached)) {
+			ac.add("cacao cacao ban bad bad band band banana bandy");
+		}
+
+		for (String input : Arrays.asList("bxnd", "xyz", "xyz", "ban")) {
+			assertEquals(input, new ArrayList<String>(uncached.getCompletions(input, false, 10)), new ArrayList<String>(cached.getCompletions(input, false, 10)));
+		}
+
+		for (Autocomplete ac : Arrays.asList(uncached, cached)) {
+			ac.add("xyzzy");
+		}
+		assertTrue(cached.getCompletions("xyz", false, 10).contains("xyzzy"));
+		assertEquals(new ArrayList<String>(uncached.getCompletions("xyz", false, 10)), new ArrayList<String>(cached.getCompletions("xyz", false, 10)));
+	}
+
+	@Test
+	public void testTraceSinkKeptOnRebuiltTries() {
+		final List<SearchTrace> traces = new ArrayList<SearchTrace>();
+		autocomplete.setTraceSink(new SearchTraceSink() {
+			@Override
+			public void traceCompleted(SearchTrace trace) {
+				traces.add(trace);
+			}
+		}, 1, 10);
+
+		autocomplete.setFst(autocomplete.buildFst());
+		autocomplete.setFst(null);
+		autocomplete.getCompletions("quick b", false, 10);
+		assertFalse(traces.isEmpty());
+	}
+
 	// Leaving this commented out right now because it takes a while to run
 	// Using largish numbers as strings to simulate a deterministic dataset for capacity testing
 //	@Test
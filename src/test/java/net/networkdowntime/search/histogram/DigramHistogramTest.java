@@ -2,6 +2,8 @@ package net.networkdowntime.search.histogram;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -59,4 +61,65 @@ public class DigramHistogramTest {
 		secondWords.clear();
 	}
 
+	@Test
+	public void testRemove() {
+		DigramHistogram digramHistogram = new DigramHistogram();
+		digramHistogram.add("apple", "zoo");
+		digramHistogram.add("apple", "jacks");
+		digramHistogram.add("apple", "pie");
+		digramHistogram.add("apple", "pie");
+
+		digramHistogram.remove("apple", "jacks"); // middle of apple's followers
+		digramHistogram.remove("apple", "pie");
+		digramHistogram.remove("apple", "unknown");
+		digramHistogram.remove("unknown", "pie");
+		assertEquals(0, digramHistogram.getOccuranceCount("apple", "jacks"));
+		assertEquals(1, digramHistogram.getOccuranceCount("apple", "pie"));
+		assertEquals(1, digramHistogram.getOccuranceCount("apple", "zoo"));
+
+		digramHistogram.remove("apple", "pie"); // first of apple's followers
+		digramHistogram.remove("apple", "zoo");
+		assertEquals(0, digramHistogram.getMostCommonFollowers("apple").length);
+
+		// the freed slots are reused
+		digramHistogram.add("zoo", "apple");
+		digramHistogram.add("apple", "cart");
+		assertEquals(1, digramHistogram.getOccuranceCount("zoo", "apple"));
+		assertEquals(Arrays.asList("cart 1"), toStrings(digramHistogram.getMostCommonFollowers("apple")));
+	}
+
+	@Test
+	public void testMostCommonFollowers() {
+		DigramHistogram digramHistogram = new DigramHistogram();
+		for (int i = 0; i < 64; i++) {
+			for (int j = 0; j <= i % 20; j++) {
+				digramHistogram.add("the", "w" + i);
+			}
+		}
+		digramHistogram.add("a", "b");
+
+		List<String> expected = Arrays.asList("w19 20", "w39 20", "w59 20", "w18 19", "w38 19", "w58 19", "w17 18", "w37 18", "w57 18", "w16 17",
+				"w36 17", "w56 17", "w15 16", "w35 16", "w55 16");
+		assertEquals(expected, toStrings(digramHistogram.getMostCommonFollowers("the")));
+		assertEquals(expected, toStrings(digramHistogram.getMostCommonFollowers("the"))); // kept for the hot first word
+		assertEquals(Arrays.asList("b 1"), toStrings(digramHistogram.getMostCommonFollowers("a")));
+
+		digramHistogram.add("the", "w0");
+		for (int j = 0; j < 20; j++) {
+			digramHistogram.add("the", "w0");
+		}
+		assertEquals("w0 22", toStrings(digramHistogram.getMostCommonFollowers("the")).get(0));
+		digramHistogram.remove("the", "w0");
+		assertEquals("w0 21", toStrings(digramHistogram.getMostCommonFollowers("the")).get(0));
+		assertEquals(Arrays.asList("the w0", "the w19"), digramHistogram.getOrderedResults(new HashSet<String>(Arrays.asList("the")), null, 2));
+	}
+
+	private static List<String> toStrings(Tuple<String>[] tuples) {
+		List<String> strings = new ArrayList<String>();
+		for (Tuple<String> tuple : tuples) {
+			strings.add(tuple.word + " " + tuple.count);
+		}
+		return strings;
+	}
+
 }
@@ -203,4 +203,24 @@ public class DigramStringSearchHistogramTest {
 
 	}
 
+	@Test
+	public void testResultHashCollisions() {
+		DigramStringSearchHistogram digramHistogram = new DigramStringSearchHistogram();
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+
+		digramHistogram.add("word1", "word2", "Aa");
+		digramHistogram.add("word1", "word2", "BB");
+		digramHistogram.add("word1", "word2", "BB");
+
+		TObjectIntHashMap<String> results = digramHistogram.getSearchResults(toSet("word1 word2"), 1);
+		assertEquals(2, results.size());
+		assertEquals(1, results.get("Aa"));
+		assertEquals(2, results.get("BB"));
+
+		digramHistogram.remove("word1", "word2", "Aa");
+		results = digramHistogram.getSearchResults(toSet("word1 word2"), 1);
+		assertEquals(1, results.size());
+		assertEquals(2, results.get("BB"));
+	}
+
 }
@@ -0,0 +1,84 @@
+package net.networkdowntime.search.histogram;
+
+import static org.junit.Assert.*;
+
+import gnu.trove.procedure.TIntProcedure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class OrdinalBitmapTest {
+
+	private static List<Integer> toList(OrdinalBitmap bitmap) {
+		final List<Integer> ordinals = new ArrayList<Integer>();
+		bitmap.forEach(new TIntProcedure() {
+			@Override
+			public boolean execute(int ordinal) {
+				ordinals.add(ordinal);
+				return true;
+			}
+		});
+		return ordinals;
+	}
+
+	private static OrdinalBitmap randomBitmap(Random random, TreeSet<Integer> expected, int count, int range) {
+		OrdinalBitmap bitmap = new OrdinalBitmap();
+		for (int i = 0; i < count; i++) {
+			int ordinal = random.nextInt(range);
+			assertEquals(expected.add(ordinal), bitmap.add(ordinal));
+		}
+		return bitmap;
+	}
+
+	@Test
+	public void testAdd() {
+		OrdinalBitmap bitmap = new OrdinalBitmap();
+		assertEquals(-1, bitmap.first());
+		assertTrue(bitmap.add(70000));
+		assertTrue(bitmap.add(3));
+		assertFalse(bitmap.add(3));
+		assertTrue(bitmap.contains(3));
+		assertTrue(bitmap.contains(70000));
+		assertFalse(bitmap.contains(4));
+		assertFalse(bitmap.contains(3 + 65536));
+		assertEquals(2, bitmap.getCardinality());
+		assertEquals(3, bitmap.first());
+		assertEquals(1, bitmap.rank(70000));
+	}
+
+	@Test
+	public void testBitmapContainers() {
+		Random random = new Random(3);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		OrdinalBitmap bitmap = randomBitmap(random, expected, 40000, 3 * 65536); // dense enough for bitmap containers
+
+		assertEquals(expected.size(), bitmap.getCardinality());
+		assertEquals(new ArrayList<Integer>(expected), toList(bitmap));
+		for (int i = 0; i < 1000; i++) {
+			int ordinal = random.nextInt(3 * 65536);
+			assertEquals(expected.contains(ordinal), bitmap.contains(ordinal));
+			assertEquals(expected.headSet(ordinal).size(), bitmap.rank(ordinal));
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		Random random = new Random(5);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		OrdinalBitmap bitmap = randomBitmap(random, expected, 20000, 2 * 65536);
+
+		// removes most ordinals, so the bitmap containers switch back to arrays and then are dropped
+		for (int i = 0; i < 200000; i++) {
+			int ordinal = random.nextInt(2 * 65536);
+			assertEquals(expected.remove(ordinal), bitmap.remove(ordinal));
+		}
+
+		assertEquals(expected.size(), bitmap.getCardinality());
+		assertEquals(new ArrayList<Integer>(expected), toList(bitmap));
+		assertEquals(expected.isEmpty() ? -1 : (int) expected.first(), bitmap.first());
+	}
+}
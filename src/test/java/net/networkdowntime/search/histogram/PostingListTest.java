@@ -0,0 +1,155 @@
+package net.networkdowntime.search.histogram;
+
+import static org.junit.Assert.*;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PostingListTest {
+
+	private static final int DOC_ID_COUNT = 200000;
+
+	private static TIntIntHashMap getResults(PostingList postings) {
+		ResultAccumulator accumulator = new ResultAccumulator(DOC_ID_COUNT);
+		postings.addTo(accumulator, 1);
+
+		TIntIntHashMap results = new TIntIntHashMap();
+		for (int docId = 0; docId < DOC_ID_COUNT; docId++) {
+			if (accumulator.getCount(docId) != 0) {
+				results.put(docId, accumulator.getCount(docId));
+			}
+		}
+		assertEquals(results.size(), accumulator.size());
+		return results;
+	}
+
+	@Test
+	public void testAdd() {
+		PostingList postings = new PostingList();
+		postings.add(5, 1);
+		postings.add(7, 1);
+		postings.add(DOC_ID_COUNT - 1, 1);
+		postings.add(0, 1);
+		postings.add(5, 300);
+		postings.add(7, 70000);
+
+		TIntIntHashMap results = getResults(postings);
+		assertEquals(4, results.size());
+		assertEquals(301, results.get(5));
+		assertEquals(70001, results.get(7));
+		assertEquals(1, results.get(DOC_ID_COUNT - 1));
+		assertEquals(1, results.get(0));
+		assertEquals(70304, postings.getTotalCount());
+		assertEquals(4, postings.getPostingCount());
+		assertEquals(DOC_ID_COUNT - 1, postings.getDocIdSpan());
+	}
+
+	@Test
+	public void testAddTo() {
+		PostingList postings = new PostingList();
+		for (int i = 0; i < PostingList.BLOCK_SIZE * 3; i++) {
+			postings.add(i * 100, 1 + i % 3);
+		}
+
+		ResultAccumulator accumulator = new ResultAccumulator(DOC_ID_COUNT);
+		accumulator.add(0, 10);
+		postings.addTo(accumulator, 2);
+		assertEquals(PostingList.BLOCK_SIZE * 3, accumulator.size());
+		assertEquals(12, accumulator.getCount(0));
+		assertEquals(4, accumulator.getCount(100));
+		assertEquals(6, accumulator.getCount(200));
+	}
+
+	@Test
+	public void testAddToBitmap() {
+		PostingList postings = new PostingList();
+		for (int i = 0; i < PostingList.BLOCK_SIZE * 3; i++) {
+			postings.add(i * 3, 1);
+		}
+		postings.add(1, 1); // left pending
+
+		OrdinalBitmap docIds = new OrdinalBitmap();
+		postings.addTo(docIds);
+		assertEquals(PostingList.BLOCK_SIZE * 3 + 1, docIds.getCardinality());
+		assertTrue(docIds.contains(1));
+		assertTrue(docIds.contains(3));
+		assertFalse(docIds.contains(4));
+	}
+
+	@Test
+	public void testRandomAdds() {
+		Random random = new Random(7);
+		PostingList postings = new PostingList();
+		TIntIntHashMap expected = new TIntIntHashMap();
+
+		for (int i = 0; i < 5000; i++) {
+			int docId = (i % 2 == 0) ? random.nextInt(1000) : random.nextInt(DOC_ID_COUNT);
+			int count = (i % 50 == 0) ? 1000 : 1;
+			postings.add(docId, count);
+			expected.adjustOrPutValue(docId, count, count);
+		}
+
+		assertEquals(expected, getResults(postings));
+	}
+
+	@Test
+	public void testRemove() {
+		Random random = new Random(11);
+		PostingList postings = new PostingList();
+		TIntIntHashMap expected = new TIntIntHashMap();
+
+		for (int i = 0; i < 3000; i++) {
+			int docId = random.nextInt(2000);
+			postings.add(docId, 1);
+			expected.adjustOrPutValue(docId, 1, 1);
+
+			if (i % 3 == 0) {
+				int removed = random.nextInt(2000);
+				assertEquals(expected.containsKey(removed), postings.remove(removed));
+				expected.remove(removed);
+			}
+		}
+
+		assertEquals(expected, getResults(postings));
+		int totalCount = 0;
+		for (int count : expected.values()) {
+			totalCount += count;
+		}
+		assertEquals(totalCount, postings.getTotalCount());
+	}
+
+	@Test
+	public void testRemoveAndAddAgain() {
+		PostingList postings = new PostingList();
+		for (int i = 0; i < PostingList.BLOCK_SIZE * 2; i++) {
+			postings.add(i, 2);
+		}
+
+		assertTrue(postings.remove(10));
+		assertFalse(postings.remove(10));
+		assertFalse(getResults(postings).containsKey(10));
+
+		postings.add(10, 1);
+		assertEquals(1, getResults(postings).get(10));
+		assertEquals((PostingList.BLOCK_SIZE * 2 - 1) * 2 + 1, postings.getTotalCount());
+	}
+
+	@Test
+	public void testGetOnlyDocId() {
+		PostingList postings = new PostingList();
+		for (int i = 0; i < PostingList.BLOCK_SIZE * 2; i++) {
+			postings.add(i, 1);
+		}
+		for (int i = 0; i < PostingList.BLOCK_SIZE * 2; i++) {
+			if (i != 42) {
+				postings.remove(i);
+			}
+		}
+
+		assertEquals(1, postings.getTotalCount());
+		assertEquals(42, postings.getOnlyDocId());
+	}
+}
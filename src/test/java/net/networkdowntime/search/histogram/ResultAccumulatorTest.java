@@ -0,0 +1,80 @@
+package net.networkdowntime.search.histogram;
+
+import static org.junit.Assert.*;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import org.junit.Test;
+
+import net.networkdowntime.search.DocIdMap;
+
+public class ResultAccumulatorTest {
+
+	@Test
+	public void testFewResultsStaySparse() {
+		ResultAccumulator accumulator = new ResultAccumulator(1000000);
+		accumulator.add(999999, 2);
+		accumulator.add(5, 1);
+		accumulator.add(999999, 3);
+		accumulator.add(7, 0);
+
+		assertFalse(accumulator.isDense());
+		assertEquals(2, accumulator.size());
+		assertEquals(5, accumulator.getCount(999999));
+		assertEquals(1, accumulator.getCount(5));
+		assertEquals(0, accumulator.getCount(7));
+	}
+
+	@Test
+	public void testManyResultsTurnDense() {
+		int docIdCount = ResultAccumulator.DENSE_FRACTION * 100;
+		ResultAccumulator accumulator = new ResultAccumulator(docIdCount);
+		for (int docId = 0; docId < 100; docId++) {
+			accumulator.add(docId, 1);
+		}
+		assertFalse(accumulator.isDense());
+
+		accumulator.add(100, 1);
+		accumulator.add(0, 1);
+		assertTrue(accumulator.isDense());
+		assertEquals(101, accumulator.size());
+		assertEquals(2, accumulator.getCount(0));
+		assertEquals(1, accumulator.getCount(100));
+	}
+
+	@Test
+	public void testEnsureCapacity() {
+		ResultAccumulator accumulator = new ResultAccumulator(ResultAccumulator.DENSE_FRACTION * 100);
+		accumulator.add(3, 4);
+		accumulator.ensureCapacity(10);
+		assertFalse(accumulator.isDense());
+
+		accumulator.ensureCapacity(100);
+		assertTrue(accumulator.isDense());
+		assertEquals(4, accumulator.getCount(3));
+		assertEquals(1, accumulator.size());
+	}
+
+	@Test
+	public void testToLongResults() {
+		DocIdMap docIdMap = new DocIdMap();
+		for (long result = 0; result < 1000; result++) {
+			docIdMap.getOrAddDocId(result * 7);
+		}
+
+		ResultAccumulator sparse = new ResultAccumulator(docIdMap.size());
+		ResultAccumulator dense = new ResultAccumulator(docIdMap.size());
+		dense.ensureCapacity(docIdMap.size());
+		TLongIntHashMap expected = new TLongIntHashMap();
+		for (int docId = 0; docId < 10; docId++) {
+			sparse.add(docId * 3, docId + 1);
+			dense.add(docId * 3, docId + 1);
+			expected.put(docId * 21, docId + 1);
+		}
+
+		assertFalse(sparse.isDense());
+		assertTrue(dense.isDense());
+		assertEquals(expected, sparse.toLongResults(docIdMap));
+		assertEquals(expected, dense.toLongResults(docIdMap));
+	}
+}
@@ -2,9 +2,17 @@ package net.networkdowntime.search.histogram;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import net.networkdowntime.search.TermDictionary;
+
 public class UnigramHistogramTest {
 
 	@Before
@@ -48,4 +56,74 @@ public class UnigramHistogramTest {
 		assertTrue(UnigramHistogram.getOccurrenceCount(histogram, "foo") == 1);
 	}
 
+	@Test
+	public void testHashCollisions() {
+		UnigramHistogram histogram = new UnigramHistogram();
+		UnigramHistogram.add(histogram, "Aa");
+		UnigramHistogram.add(histogram, "Aa");
+		UnigramHistogram.add(histogram, "BB");
+		assertTrue(UnigramHistogram.getOccurrenceCount(histogram, "Aa") == 2);
+		assertTrue(UnigramHistogram.getOccurrenceCount(histogram, "BB") == 1);
+
+		UnigramHistogram.remove(histogram, "BB");
+		assertFalse(UnigramHistogram.contains(histogram, "BB"));
+		assertTrue(UnigramHistogram.contains(histogram, "Aa"));
+	}
+
+	@Test
+	public void testSharedTermDictionary() {
+		TermDictionary termDictionary = new TermDictionary();
+		UnigramHistogram histogram = new UnigramHistogram(termDictionary);
+		UnigramHistogram.add(histogram, "foo");
+		UnigramHistogram.add(histogram, "foo");
+		assertEquals(2, UnigramHistogram.getOccurrenceCount(histogram, termDictionary.getTermId("foo")));
+		assertEquals(0, UnigramHistogram.getOccurrenceCount(histogram, "bar"));
+	}
+
+	@Test
+	public void testMostCommonWords() {
+		UnigramHistogram histogram = new UnigramHistogram();
+		List<String> words = new ArrayList<String>();
+		Random random = new Random(3);
+		for (int i = 0; i < 2000; i++) {
+			String word = "w" + (int) Math.abs(random.nextGaussian() * 12);
+			UnigramHistogram.add(histogram, word);
+			if (!words.contains(word)) {
+				words.add(word);
+			}
+		}
+
+		List<String> expected = new ArrayList<String>();
+		for (String word : words) {
+			expected.add(String.format("%06d %s", 1000000 - UnigramHistogram.getOccurrenceCount(histogram, word), word));
+		}
+		Collections.sort(expected);
+		expected = expected.subList(0, UnigramHistogram.MOST_COMMON_WORDS_SIZE);
+		assertEquals(expected, toStrings(UnigramHistogram.getMostCommonWords(histogram)));
+	}
+
+	@Test
+	public void testMostCommonWordsRemove() {
+		UnigramHistogram histogram = new UnigramHistogram();
+		for (String word : Arrays.asList("a", "b", "b", "c", "c", "c")) {
+			UnigramHistogram.add(histogram, word);
+		}
+		assertEquals(Arrays.asList("999997 c", "999998 b", "999999 a"), toStrings(UnigramHistogram.getMostCommonWords(histogram)));
+
+		UnigramHistogram.remove(histogram, "c");
+		UnigramHistogram.remove(histogram, "c");
+		assertEquals(Arrays.asList("999998 b", "999999 a", "999999 c"), toStrings(UnigramHistogram.getMostCommonWords(histogram)));
+
+		UnigramHistogram.remove(histogram, "a");
+		assertEquals(Arrays.asList("999998 b", "999999 c"), toStrings(UnigramHistogram.getMostCommonWords(histogram)));
+	}
+
+	private static List<String> toStrings(Tuple<String>[] tuples) {
+		List<String> strings = new ArrayList<String>();
+		for (Tuple<String> tuple : tuples) {
+			strings.add(String.format("%06d %s", 1000000 - tuple.count, tuple.word));
+		}
+		return strings;
+	}
+
 }
@@ -0,0 +1,90 @@
+package net.networkdowntime.search.histogram;
+
+import static org.junit.Assert.*;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class UnigramLongSearchHistogramTest {
+
+	@Test
+	public void testSingleAndMultiResults() {
+		UnigramLongSearchHistogram histogram = new UnigramLongSearchHistogram();
+		histogram.add("foo", 1l);
+		histogram.add("foo", 1l);
+		histogram.add("foo", 2l);
+		histogram.add("bar", 3l);
+
+		TLongIntHashMap results = UnigramSearchHistogram.getSearchResults(histogram, new HashSet<String>(Arrays.asList("foo", "bar")));
+		assertEquals(3, results.size());
+		assertEquals(2, results.get(1l));
+		assertEquals(1, results.get(2l));
+		assertEquals(1, results.get(3l));
+
+		histogram.remove("bar", 4l); // not bar's result
+		assertTrue(UnigramSearchHistogram.contains(histogram, "bar"));
+
+		histogram.remove("foo", 1l);
+		results = UnigramSearchHistogram.getSearchResults(histogram, new HashSet<String>(Arrays.asList("foo")));
+		assertEquals(1, results.size());
+		assertEquals(1, results.get(2l));
+	}
+
+	@Test
+	public void testDenseResults() {
+		Random random = new Random(9);
+		UnigramLongSearchHistogram histogram = new UnigramLongSearchHistogram();
+		TLongIntHashMap expectedCommon = new TLongIntHashMap();
+		TLongIntHashMap expectedFrequent = new TLongIntHashMap();
+		TLongIntHashMap expectedRare = new TLongIntHashMap();
+
+		for (long doc = 0; doc < UnigramSearchHistogram.DENSE_MIN_POSTINGS * 3; doc++) {
+			long result = doc - 5000; // in order and dense, some negative
+			int count = 1 + random.nextInt(3);
+			for (int i = 0; i < count; i++) {
+				histogram.add("common", result);
+			}
+			expectedCommon.put(result, count);
+			if (doc % 2 == 0) {
+				histogram.add("frequent", result);
+				expectedFrequent.put(result, 1);
+			}
+			if (doc % 100 == 0) {
+				histogram.add("rare", result);
+				expectedRare.put(result, 1);
+			}
+		}
+		histogram.add("common", -7000l); // out of order, after the switch
+		expectedCommon.put(-7000l, 1);
+		for (int i = 0; i < 300; i++) { // a count too large for a byte
+			histogram.add("frequent", 7l);
+		}
+		expectedFrequent.put(7l, 300);
+
+		assertTrue(histogram.denseResultMap.containsKey(histogram.termDictionary.getTermId("common")));
+		assertTrue(histogram.denseResultMap.containsKey(histogram.termDictionary.getTermId("frequent")));
+		assertFalse(histogram.denseResultMap.containsKey(histogram.termDictionary.getTermId("rare")));
+
+		assertEquals(expectedCommon, UnigramSearchHistogram.getSearchResults(histogram, new HashSet<String>(Arrays.asList("common"))));
+
+		TLongIntHashMap expected = new TLongIntHashMap(expectedCommon);
+		SearchHistogramUtil.addResultToMap(expected, expectedFrequent);
+		SearchHistogramUtil.addResultToMap(expected, expectedRare);
+		assertEquals(expected, UnigramSearchHistogram.getSearchResults(histogram, new HashSet<String>(Arrays.asList("common", "frequent rare"))));
+
+		for (long result : expectedCommon.keys()) {
+			if (result != -7000l) {
+				histogram.remove("common", result);
+			}
+		}
+		assertFalse(histogram.denseResultMap.containsKey(histogram.termDictionary.getTermId("common")));
+		TLongIntHashMap results = UnigramSearchHistogram.getSearchResults(histogram, new HashSet<String>(Arrays.asList("common")));
+		assertEquals(1, results.size());
+		assertEquals(1, results.get(-7000l));
+	}
+}
@@ -0,0 +1,86 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CostStringSetTest {
+
+	@Test
+	public void testAddKeepsLowestCost() {
+		CostStringSet<CostString> set = new CostStringSet<CostString>();
+		assertTrue(set.add(new CostString("band", 2)));
+		assertFalse(set.add(new CostString("band", 3)));
+		assertEquals(2, set.get(new CostString("band", 0)).cost);
+
+		assertFalse(set.add(new CostString("band", 1)));
+		assertEquals(1, set.get(new CostString("band", 0)).cost);
+		assertEquals(1, set.size());
+	}
+
+	@Test
+	public void testHashCollisionsAreDistinct() {
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+
+		CostStringSet<CostString> set = new CostStringSet<CostString>();
+		assertTrue(set.add(new CostString("Aa", 1)));
+		assertTrue(set.add(new CostString("BB", 2)));
+		assertEquals(2, set.size());
+		assertEquals(1, set.get(new CostString("Aa", 0)).cost);
+		assertEquals(2, set.get(new CostString("BB", 0)).cost);
+
+		assertTrue(set.remove(new CostString("Aa", 0)));
+		assertFalse(set.contains(new CostString("Aa", 0)));
+		assertTrue(set.contains(new CostString("BB", 0)));
+		assertTrue(set.contains("BB"));
+	}
+
+	@Test
+	public void testGrowAndRemove() {
+		CostStringSet<CostString> set = new CostStringSet<CostString>();
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(set.add(new CostString("word" + i, i)));
+		}
+		assertEquals(1000, set.size());
+
+		for (int i = 0; i < 1000; i += 2) {
+			assertTrue(set.remove(new CostString("word" + i, 0)));
+		}
+		assertEquals(500, set.size());
+
+		int count = 0;
+		for (CostString cs : set) {
+			assertEquals(1, cs.cost % 2);
+			count++;
+		}
+		assertEquals(500, count);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i % 2 == 1, set.contains(new CostString("word" + i, 0)));
+		}
+	}
+
+	@Test
+	public void testRetainAndRemoveAll() {
+		CostStringSet<CostString> set = new CostStringSet<CostString>();
+		set.addAll(Arrays.asList(new CostString("a", 0), new CostString("b", 0), new CostString("c", 0)));
+
+		assertTrue(set.retainAll(Arrays.asList(new CostString("a", 0), new CostString("b", 0))));
+		assertEquals(2, set.size());
+		assertTrue(set.removeAll(Arrays.asList(new CostString("a", 0))));
+		assertEquals(1, set.size());
+		assertTrue(set.contains("b"));
+	}
+
+	@Test
+	public void testGetWordPartBuffer() {
+		CostStringSet<CostString> set = new CostStringSet<CostString>();
+		set.add(new CostString("Aa", 1));
+		set.add(new CostString("band", 2));
+
+		assertNull(set.get(new WordPartBuffer("BB".toCharArray(), 0, false, 0)));
+		assertEquals(2, set.get(new WordPartBuffer("dnab".toCharArray(), 0, true, 0)).cost);
+		assertEquals(1, set.get(new WordPartBuffer("Aa".toCharArray(), 0, false, 0)).cost);
+	}
+}
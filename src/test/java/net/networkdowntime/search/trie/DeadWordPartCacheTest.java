@@ -0,0 +1,48 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DeadWordPartCacheTest {
+
+	@Test
+	public void testEditDistances() {
+		DeadWordPartCache cache = new DeadWordPartCache(10);
+		assertFalse(cache.isDead("foo", 0, true, 0));
+
+		cache.addDead("foo", 1, true, 0);
+		assertTrue(cache.isDead("foo", 0, true, 0));
+		assertTrue(cache.isDead("foo", 1, true, 0));
+		assertFalse(cache.isDead("foo", 2, true, 0));
+		assertFalse(cache.isDead("foo", 0, false, 0)); // a substring only miss says nothing about fuzzy matches
+
+		cache.addDead("foo", 2, false, 0);
+		assertTrue(cache.isDead("foo", 2, true, 0));
+		assertTrue(cache.isDead("foo", 2, false, 0));
+		assertFalse(cache.isDead("foo", 3, false, 0));
+	}
+
+	@Test
+	public void testGenerationClears() {
+		DeadWordPartCache cache = new DeadWordPartCache(10);
+		cache.addDead("foo", 1, true, 0);
+		assertFalse(cache.isDead("foo", 1, true, 1));
+		assertEquals(0, cache.size());
+		assertFalse(cache.isDead("foo", 1, true, 1));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		DeadWordPartCache cache = new DeadWordPartCache(2);
+		cache.addDead("a", 0, true, 0);
+		cache.addDead("b", 0, true, 0);
+		assertTrue(cache.isDead("a", 0, true, 0));
+		cache.addDead("c", 0, true, 0);
+
+		assertEquals(2, cache.size());
+		assertTrue(cache.isDead("a", 0, true, 0));
+		assertFalse(cache.isDead("b", 0, true, 0));
+		assertTrue(cache.isDead("c", 0, true, 0));
+	}
+}
@@ -0,0 +1,248 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.networkdowntime.search.TermDictionary;
+
+public class FrozenTrieTest {
+
+	private static final List<String> WORDS = Arrays.asList("oacac", "nab", "dab", "dnab", "ananab", "ydnab", "oof", "owt", "eerht");
+
+	private static List<String> toSortedStrings(Set<CostString> completions) {
+		List<String> strings = new ArrayList<String>();
+		for (CostString completion : completions) {
+			strings.add(completion.str + " - " + completion.cost);
+		}
+		Collections.sort(strings);
+		return strings;
+	}
+
+	private static void assertSameCompletions(Trie expected, Trie actual) {
+		for (String wordPart : Arrays.asList("a", "an", "ba", "nb", "dnb", "oo", "caoc", "x")) {
+			for (int editDistanceMax = 0; editDistanceMax < 4; editDistanceMax++) {
+				assertEquals(toSortedStrings(expected.getCompletions(new CostString(wordPart), editDistanceMax, true)),
+						toSortedStrings(actual.getCompletions(new CostString(wordPart), editDistanceMax, true)));
+				assertEquals(toSortedStrings(expected.getCompletions(new CostString(wordPart), editDistanceMax, false)),
+						toSortedStrings(actual.getCompletions(new CostString(wordPart), editDistanceMax, false)));
+			}
+		}
+	}
+
+	@Test
+	public void testFreezeSuffixTrie() {
+		SuffixTrie suffixTrie = new SuffixTrie();
+		SuffixTrie frozenTrie = new SuffixTrie();
+		for (String word : WORDS) {
+			suffixTrie.add(word);
+			frozenTrie.add(word);
+		}
+		frozenTrie.freeze();
+
+		assertTrue(frozenTrie.isFrozen());
+		assertEquals(suffixTrie.getTrace(), frozenTrie.getTrace());
+		assertSameCompletions(suffixTrie, frozenTrie);
+		assertTrue(frozenTrie.containsWord("ananab".toCharArray(), true));
+		assertFalse(frozenTrie.containsWord("anana".toCharArray(), true));
+		assertTrue(frozenTrie.containsWord("anana".toCharArray(), false));
+	}
+
+	@Test
+	public void testFreezeCompressedInvertedSuffixTrie() {
+		InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie(true, true);
+		InvertedSuffixTrie frozenTrie = new InvertedSuffixTrie(true, true);
+		for (String word : WORDS) {
+			prefixTrie.add(word);
+			frozenTrie.add(word);
+		}
+		frozenTrie.freeze();
+
+		assertEquals(prefixTrie.getTrace(), frozenTrie.getTrace());
+		assertSameCompletions(prefixTrie, frozenTrie);
+		assertEquals(prefixTrie.getStats().getFullWordCount(), frozenTrie.getStats().getFullWordCount());
+		assertEquals(prefixTrie.getStats().getNodeCount(), frozenTrie.getStats().getFrozenNodeCount());
+	}
+
+	@Test
+	public void testAddAfterFreeze() {
+		SuffixTrie suffixTrie = new SuffixTrie(false, true);
+		SuffixTrie frozenTrie = new SuffixTrie(false, true);
+		for (int i = 0; i < WORDS.size(); i++) {
+			suffixTrie.add(WORDS.get(i));
+			frozenTrie.add(WORDS.get(i));
+			if (i == 4) {
+				frozenTrie.freeze();
+			}
+		}
+
+		// the later words are in the overlay
+		assertSameCompletions(suffixTrie, frozenTrie);
+		assertEquals(suffixTrie.getTrace(), frozenTrie.getTrace());
+
+		// and merged into the frozen trie
+		frozenTrie.freeze();
+		assertEquals(suffixTrie.getStats().getNodeCount(), frozenTrie.getStats().getFrozenNodeCount());
+		assertSameCompletions(suffixTrie, frozenTrie);
+	}
+
+	@Test
+	public void testRemoveStaysFrozen() {
+		SuffixTrie suffixTrie = new SuffixTrie();
+		SuffixTrie frozenTrie = new SuffixTrie();
+		for (String word : WORDS) {
+			suffixTrie.add(word);
+			frozenTrie.add(word);
+		}
+		frozenTrie.freeze();
+		frozenTrie.add("ananas");
+		suffixTrie.add("ananas");
+
+		suffixTrie.remove("ananab");
+		frozenTrie.remove("ananab");
+		assertTrue(frozenTrie.isFrozen());
+		assertEquals(suffixTrie.getTrace(), frozenTrie.getTrace());
+		assertSameCompletions(suffixTrie, frozenTrie);
+		assertFalse(frozenTrie.containsWord("ananab".toCharArray(), true));
+		assertFalse(frozenTrie.containsWord("nanab".toCharArray(), false));
+		assertTrue(frozenTrie.containsWord("anan".toCharArray(), false)); // still a word part of ananas
+
+		// the removed nodes are dropped by the next freeze
+		frozenTrie.freeze();
+		assertEquals(suffixTrie.getStats().getNodeCount(), frozenTrie.getStats().getFrozenNodeCount());
+		assertSameCompletions(suffixTrie, frozenTrie);
+	}
+
+	@Test
+	public void testRemoveFromCompressedTrie() {
+		for (boolean createFullTrie : new boolean[] { true, false }) {
+			InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie(createFullTrie, true);
+			InvertedSuffixTrie frozenTrie = new InvertedSuffixTrie(createFullTrie, true);
+			for (String word : WORDS) {
+				prefixTrie.add(word);
+				frozenTrie.add(word);
+			}
+			frozenTrie.freeze();
+
+			for (String word : Arrays.asList("dnab", "nab", "oof", "missing")) {
+				prefixTrie.remove(word);
+				frozenTrie.remove(word);
+			}
+			frozenTrie.add("nab"); // added back to the overlay
+			prefixTrie.add("nab");
+
+			assertEquals(prefixTrie.getTrace(), frozenTrie.getTrace());
+			assertSameCompletions(prefixTrie, frozenTrie);
+
+			frozenTrie.freeze();
+			assertEquals(prefixTrie.getStats().getNodeCount(), frozenTrie.getStats().getFrozenNodeCount());
+			assertEquals(prefixTrie.getStats().getFullWordCount(), frozenTrie.getStats().getFullWordCount());
+			assertSameCompletions(prefixTrie, frozenTrie);
+
+			// the end counts survive freezing, so removing after a second freeze still matches
+			prefixTrie.remove("ydnab");
+			frozenTrie.remove("ydnab");
+			assertEquals(prefixTrie.getTrace(), frozenTrie.getTrace());
+			assertSameCompletions(prefixTrie, frozenTrie);
+		}
+	}
+
+	@Test
+	public void testTopCompletions() {
+		SuffixTrie frozenTrie = new SuffixTrie(false, true);
+		for (int i = 0; i < WORDS.size(); i++) {
+			frozenTrie.add(WORDS.get(i));
+			frozenTrie.setWeight(WORDS.get(i), i + 1);
+			if (i == 4) {
+				frozenTrie.freeze();
+			}
+		}
+		assertEquals(Arrays.asList("owt", "oof", "oacac"), frozenTrie.getTopCompletions("o", 3));
+
+		// the weights survive merging the overlay into the frozen trie and can still be updated afterwards
+		frozenTrie.freeze();
+		assertEquals(Arrays.asList("owt", "oof", "oacac"), frozenTrie.getTopCompletions("o", 3));
+		frozenTrie.setWeight("oacac", 10);
+		assertEquals(10, frozenTrie.getMaxWeight("o"));
+		assertEquals(Arrays.asList("oacac", "owt"), frozenTrie.getTopCompletions("o", 2));
+		assertEquals(Arrays.asList("dnab", "dab"), frozenTrie.getTopCompletions("d", 5));
+	}
+
+	@Test
+	public void testTermIds() {
+		TermDictionary termDictionary = new TermDictionary();
+		SuffixTrie trie = new SuffixTrie(true, true);
+		trie.setTermDictionary(termDictionary);
+		trie.add("band");
+		trie.add("and");
+		trie.add("bandana");
+
+		assertEquals(termDictionary.getTermId("band"), trie.getTermId("band"));
+		assertEquals(termDictionary.getTermId("and"), trie.getTermId("and"));
+		assertEquals(TermDictionary.NO_TERM_ID, trie.getTermId("ban"));
+		assertEquals(TermDictionary.NO_TERM_ID, trie.getTermId("nd")); // suffix, not a full word
+
+		trie.freeze();
+		trie.add("bandit");
+		assertEquals(termDictionary.getTermId("bandana"), trie.getTermId("bandana"));
+		assertEquals(termDictionary.getTermId("bandit"), trie.getTermId("bandit"));
+
+		trie.remove("and");
+		assertEquals(TermDictionary.NO_TERM_ID, trie.getTermId("and"));
+		assertEquals(termDictionary.getTermId("band"), trie.getTermId("band"));
+		assertEquals(termDictionary.getTermId("bandit"), trie.getTermId("bandit"));
+	}
+
+	@Test
+	public void testByteKeys() {
+		List<String> words = new ArrayList<String>(WORDS);
+		words.addAll(Arrays.asList("café", "naïve", "ñandú", "日本"));
+		SuffixTrie suffixTrie = new SuffixTrie();
+		SuffixTrie frozenTrie = new SuffixTrie();
+		for (String word : words) {
+			suffixTrie.add(word);
+			frozenTrie.add(word);
+		}
+		frozenTrie.freeze();
+
+		assertSameCompletions(suffixTrie, frozenTrie);
+		for (String word : words) {
+			assertTrue(frozenTrie.containsWord(word.toCharArray(), true));
+		}
+		assertTrue(frozenTrie.containsWord("ïve".toCharArray(), false));
+		assertTrue(frozenTrie.containsWord("本".toCharArray(), false));
+		assertFalse(frozenTrie.containsWord("cafe".toCharArray(), true));
+		assertFalse(frozenTrie.containsWord("ça".toCharArray(), false)); // not in the alphabet
+	}
+
+	@Test
+	public void testByteKeysAlphabet() {
+		SuffixTrie narrowTrie = new SuffixTrie(false, false);
+		SuffixTrie wideTrie = new SuffixTrie(false, false);
+		for (char c = 'a'; c < 'a' + 300; c++) {
+			String word = "x" + c + "y";
+			if (c < 'a' + 200) {
+				narrowTrie.add(word);
+			}
+			wideTrie.add(word);
+		}
+		FrozenTrie narrowFrozen = FrozenTrie.freeze(narrowTrie.rootNode);
+		FrozenTrie wideFrozen = FrozenTrie.freeze(wideTrie.rootNode);
+		assertTrue(narrowFrozen.hasByteKeys());
+		assertFalse(wideFrozen.hasByteKeys()); // more than 256 distinct characters
+
+		for (char c = 'a'; c < 'a' + 300; c++) {
+			char[] word = ("x" + c + "y").toCharArray();
+			assertEquals(c < 'a' + 200, narrowFrozen.containsWord(word, true));
+			assertTrue(wideFrozen.containsWord(word, true));
+		}
+		assertFalse(narrowFrozen.containsWord("xy".toCharArray(), true));
+	}
+
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -32,24 +33,24 @@ public class InvertedSuffixTrieTest {
 		expectedTracePartialFoo.add("		Child Node: o: 1 children [f]");
 		expectedTracePartialFoo.add("			Child Node: f: 0 children [￿, FWE]");
 
-		expectedTraceFooTwo.add("Root Node: 4 children [o, f, t, w]");
-		expectedTraceFooTwo.add("	Child Node: o: 3 children [o, f, w]");
+		expectedTraceFooTwo.add("Root Node: 4 children [f, o, t, w]");
+		expectedTraceFooTwo.add("	Child Node: f: 0 children [￿]");
+		expectedTraceFooTwo.add("	Child Node: o: 3 children [f, o, w]");
+		expectedTraceFooTwo.add("		Child Node: f: 0 children [￿]");
 		expectedTraceFooTwo.add("		Child Node: o: 1 children [f]");
 		expectedTraceFooTwo.add("			Child Node: f: 0 children [￿, FWE]");
-		expectedTraceFooTwo.add("		Child Node: f: 0 children [￿]");
 		expectedTraceFooTwo.add("		Child Node: w: 1 children [t]");
 		expectedTraceFooTwo.add("			Child Node: t: 0 children [￿, FWE]");
-		expectedTraceFooTwo.add("	Child Node: f: 0 children [￿]");
 		expectedTraceFooTwo.add("	Child Node: t: 0 children [￿]");
 		expectedTraceFooTwo.add("	Child Node: w: 1 children [t]");
 		expectedTraceFooTwo.add("		Child Node: t: 0 children [￿]");
 
 		expectedTracePartialFooTwo.add("Root Node: 1 children [o]");
-		expectedTracePartialFooTwo.add("	Child Node: o: 2 children [w, o]");
-		expectedTracePartialFooTwo.add("		Child Node: w: 1 children [t]");
-		expectedTracePartialFooTwo.add("			Child Node: t: 0 children [￿, FWE]");
+		expectedTracePartialFooTwo.add("	Child Node: o: 2 children [o, w]");
 		expectedTracePartialFooTwo.add("		Child Node: o: 1 children [f]");
 		expectedTracePartialFooTwo.add("			Child Node: f: 0 children [￿, FWE]");
+		expectedTracePartialFooTwo.add("		Child Node: w: 1 children [t]");
+		expectedTracePartialFooTwo.add("			Child Node: t: 0 children [￿, FWE]");
 
 	}
 
@@ -479,4 +480,86 @@ public class InvertedSuffixTrieTest {
 		}
 	}
 
+
+	@Test
+	public void testCompressedPartialTrieExpectedTraceFooTwo() {
+		InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie(false, true);
+		prefixTrie.add("foo");
+		prefixTrie.add("two");
+		List<String> actualTrace = prefixTrie.getTrace();
+		assertEquals(4, actualTrace.size());
+		assertEquals("Root Node: 1 children [o]", actualTrace.get(0));
+		assertEquals("	Child Node: o: 2 children [o, w]", actualTrace.get(1));
+		assertEquals("		Child Node: of: 0 children [￿, FWE]", actualTrace.get(2));
+		assertEquals("		Child Node: wt: 0 children [￿, FWE]", actualTrace.get(3));
+	}
+
+	@Test
+	public void testCompressedGetCompletions3() {
+		InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie(true, true);
+		prefixTrie.add("cacao");
+		prefixTrie.add("ban");
+		prefixTrie.add("bad");
+		prefixTrie.add("band");
+		prefixTrie.add("banana");
+		prefixTrie.add("bandy");
+		Set<CostString> completions = prefixTrie.getCompletions(new CostString("a"), 50, true);
+		assertEquals(5, completions.size());
+		assertTrue(completions.contains(new CostString("ca")));
+		assertTrue(completions.contains(new CostString("caca")));
+		assertTrue(completions.contains(new CostString("ba")));
+		assertTrue(completions.contains(new CostString("bana")));
+		assertTrue(completions.contains(new CostString("banana")));
+	}
+
+	@Test
+	public void testCompressedGetCompletionsWithMisspellings() {
+		InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie(true);
+		InvertedSuffixTrie compressedTrie = new InvertedSuffixTrie(true, true);
+		for (String word : Arrays.asList("cacao", "ban", "bad", "band", "banana", "bandy")) {
+			prefixTrie.add(word);
+			compressedTrie.add(word);
+		}
+		for (String wordPart : Arrays.asList("a", "an", "ba", "nb", "dnb", "caoc")) {
+			for (int editDistanceMax = 0; editDistanceMax < 5; editDistanceMax++) {
+				assertEquals(toSortedStrings(prefixTrie.getCompletions(new CostString(wordPart), editDistanceMax, false)),
+						toSortedStrings(compressedTrie.getCompletions(new CostString(wordPart), editDistanceMax, false)));
+			}
+		}
+	}
+
+	@Test
+	public void testCompressedRemoveMultipleNodeOffExistingWord() {
+		InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie(true, true);
+		prefixTrie.add("foo");
+		List<String> expectedTrace = prefixTrie.getTrace();
+		prefixTrie.add("barfoo");
+		prefixTrie.remove("barfoo");
+		assertEquals(expectedTrace, prefixTrie.getTrace());
+	}
+
+	@Test
+	public void testCompressedPartialTrieAddRemove() {
+		InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie(false, true);
+		prefixTrie.add("foo");
+		prefixTrie.add("two");
+		List<String> expectedTrace = prefixTrie.getTrace();
+		prefixTrie.add("o");
+		prefixTrie.add("barfoo");
+		prefixTrie.remove("o");
+		prefixTrie.remove("barfoo");
+		assertEquals(expectedTrace, prefixTrie.getTrace());
+		assertTrue(prefixTrie.containsWord("oof".toCharArray(), true));
+		assertFalse(prefixTrie.containsWord("oo".toCharArray(), true));
+		assertTrue(prefixTrie.containsWord("oo".toCharArray(), false));
+	}
+
+	private static List<String> toSortedStrings(Set<CostString> completions) {
+		List<String> strings = new ArrayList<String>();
+		for (CostString completion : completions) {
+			strings.add(completion.str + " - " + completion.cost);
+		}
+		Collections.sort(strings);
+		return strings;
+	}
 }
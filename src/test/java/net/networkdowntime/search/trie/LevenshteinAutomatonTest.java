@@ -0,0 +1,100 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LevenshteinAutomatonTest {
+
+	private static int distance(String query, String path, int maxDistance) {
+		LevenshteinAutomaton automaton = new LevenshteinAutomaton(query.toCharArray(), maxDistance);
+		for (int i = 0; i < path.length(); i++) {
+			if (!automaton.step(i + 1, path.charAt(i))) {
+				return maxDistance + 1;
+			}
+		}
+		return automaton.getDistance(path.length());
+	}
+
+	private static List<String> toSortedStrings(Set<CostString> completions) {
+		List<String> strings = new ArrayList<String>();
+		for (CostString completion : completions) {
+			strings.add(completion.str + " - " + completion.cost);
+		}
+		Collections.sort(strings);
+		return strings;
+	}
+
+	@Test
+	public void testDistance() {
+		assertEquals(0, distance("band", "band", 2));
+		assertEquals(1, distance("band", "bend", 2));
+		assertEquals(1, distance("band", "bnd", 2));
+		assertEquals(1, distance("band", "bands", 2));
+		assertEquals(1, distance("band", "bnad", 2));
+		assertEquals(2, distance("band", "bandit", 2));
+		assertEquals(3, distance("band", "bandits", 2));
+	}
+
+	@Test
+	public void testNoInsertionBeforeFirstCharacter() {
+		assertEquals(2, distance("and", "band", 2)); // replace a with b and insert a, rather than inserting b
+		assertEquals(1, distance("and", "bnd", 2));
+	}
+
+	@Test
+	public void testEditsAroundTransposition() {
+		assertEquals(2, distance("ec", "cde", 2));
+		assertEquals(2, distance("deb", "bd", 2));
+	}
+
+	@Test
+	public void testBacktracking() {
+		LevenshteinAutomaton automaton = new LevenshteinAutomaton("cat".toCharArray(), 1);
+		assertTrue(automaton.step(1, 'c'));
+		assertTrue(automaton.step(2, 'u'));
+		assertTrue(automaton.step(3, 't'));
+		assertEquals(1, automaton.getDistance(3));
+
+		assertTrue(automaton.step(2, 'a'));
+		assertTrue(automaton.step(3, 't'));
+		assertEquals(0, automaton.getDistance(3));
+		assertFalse(automaton.step(2, 'x') && automaton.step(3, 'y'));
+	}
+
+	@Test
+	public void testSameCompletionsAsEditExploration() {
+		List<String> words = Arrays.asList("cacao", "ban", "bad", "band", "banana", "bandy", "bandit", "dab", "nab", "abba");
+		for (boolean createFullTrie : new boolean[] { true, false }) {
+			SuffixTrie suffixTrie = new SuffixTrie(createFullTrie);
+			SuffixTrie automatonSuffixTrie = new SuffixTrie(createFullTrie, true);
+			automatonSuffixTrie.setFuzzyMatchMode(FuzzyMatchMode.LEVENSHTEIN_AUTOMATON);
+			InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie(createFullTrie);
+			InvertedSuffixTrie automatonPrefixTrie = new InvertedSuffixTrie(createFullTrie);
+			automatonPrefixTrie.setFuzzyMatchMode(FuzzyMatchMode.LEVENSHTEIN_AUTOMATON);
+
+			for (String word : words) {
+				suffixTrie.add(word);
+				automatonSuffixTrie.add(word);
+				prefixTrie.add(word);
+				automatonPrefixTrie.add(word);
+			}
+			automatonPrefixTrie.freeze();
+
+			for (String wordPart : Arrays.asList("ban", "bnad", "aab", "cocoa", "yd", "a")) {
+				for (int editDistanceMax = 0; editDistanceMax < 4; editDistanceMax++) {
+					assertEquals(toSortedStrings(suffixTrie.getCompletions(new CostString(wordPart), editDistanceMax, false)),
+							toSortedStrings(automatonSuffixTrie.getCompletions(new CostString(wordPart), editDistanceMax, false)));
+					assertEquals(toSortedStrings(prefixTrie.getCompletions(new CostString(wordPart, 1), editDistanceMax, false)),
+							toSortedStrings(automatonPrefixTrie.getCompletions(new CostString(wordPart, 1), editDistanceMax, false)));
+				}
+			}
+		}
+	}
+}
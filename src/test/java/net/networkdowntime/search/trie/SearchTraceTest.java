@@ -0,0 +1,56 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SearchTraceTest {
+
+	@Test
+	public void testRingBufferKeepsLatestEntries() {
+		SearchTrace trace = new SearchTrace("query", 3);
+		trace.add("a");
+		trace.add("b");
+		assertEquals(Arrays.asList("a", "b"), trace.getEntries());
+
+		trace.add("c");
+		trace.add("d");
+		trace.add("e");
+		assertEquals(Arrays.asList("c", "d", "e"), trace.getEntries());
+		assertEquals(5, trace.getEntryCount());
+	}
+
+	@Test
+	public void testSampledQueries() {
+		final List<SearchTrace> traces = new ArrayList<SearchTrace>();
+		SuffixTrie suffixTrie = new SuffixTrie(false);
+		suffixTrie.add("oof");
+		suffixTrie.add("owt");
+
+		suffixTrie.getCompletions(new CostString("o"), 2, true);
+		assertTrue(traces.isEmpty());
+
+		suffixTrie.setTraceSink(new SearchTraceSink() {
+			@Override
+			public void traceCompleted(SearchTrace trace) {
+				traces.add(trace);
+			}
+		}, 2, 10);
+
+		for (int i = 0; i < 4; i++) {
+			suffixTrie.getCompletions(new CostString("o"), 2, true);
+		}
+		assertEquals(2, traces.size());
+		assertEquals("SuffixTrie(wordPart=o;0, editDistanceMax=2, subStringOnly=true)", traces.get(0).getQuery());
+		assertEquals(2, traces.get(0).getEntries().size());
+		assertTrue(traces.get(0).getEntries().get(0).contains("addCompletion(): oof - 2 added"));
+
+		suffixTrie.setTraceSink(null, 1, 1);
+		suffixTrie.getCompletions(new CostString("o"), 2, true);
+		assertEquals(2, traces.size());
+	}
+}
@@ -0,0 +1,75 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SuffixArrayTest {
+
+	@Test
+	public void testWordsContaining() {
+		SuffixArray suffixArray = new SuffixArray(Arrays.asList("band", "banana", "cacao", "bandy", "bad", "ban", "band"));
+		assertEquals(6, suffixArray.size());
+
+		assertEquals(set("band", "banana", "bandy", "ban"), new HashSet<String>(suffixArray.getWordsContaining("an", 10)));
+		assertEquals(Arrays.asList("banana"), suffixArray.getWordsContaining("nana", 10));
+		assertEquals(Arrays.asList("cacao"), suffixArray.getWordsContaining("ca", 10)); // contains the word part twice
+		assertEquals(Arrays.asList("bandy"), suffixArray.getWordsContaining("bandy", 10));
+		assertTrue(suffixArray.getWordsContaining("bandit", 10).isEmpty());
+		assertTrue(suffixArray.getWordsContaining("ab", 10).isEmpty()); // doesn't match across words
+		assertTrue(suffixArray.getWordsContaining("x", 10).isEmpty());
+		assertEquals(2, suffixArray.getWordsContaining("a", 2).size());
+	}
+
+	@Test
+	public void testEmpty() {
+		SuffixArray suffixArray = new SuffixArray(Collections.<String> emptyList());
+		assertEquals(0, suffixArray.size());
+		assertTrue(suffixArray.getWordsContaining("a", 10).isEmpty());
+	}
+
+	@Test
+	public void testMatchesScan() {
+		Random random = new Random(5);
+		List<String> words = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			StringBuilder word = new StringBuilder();
+			int length = 1 + random.nextInt(8);
+			for (int j = 0; j < length; j++) {
+				word.append((char) ('a' + random.nextInt(4)));
+			}
+			words.add(word.toString());
+		}
+		SuffixArray suffixArray = new SuffixArray(words);
+
+		for (int i = 0; i < 300; i++) {
+			StringBuilder wordPart = new StringBuilder();
+			int length = 1 + random.nextInt(4);
+			for (int j = 0; j < length; j++) {
+				wordPart.append((char) ('a' + random.nextInt(5)));
+			}
+
+			Set<String> expected = new HashSet<String>();
+			for (String word : words) {
+				if (word.contains(wordPart)) {
+					expected.add(word);
+				}
+			}
+			List<String> found = suffixArray.getWordsContaining(wordPart.toString(), Integer.MAX_VALUE);
+			assertEquals(wordPart.toString(), expected.size(), found.size());
+			assertEquals(wordPart.toString(), expected, new HashSet<String>(found));
+		}
+	}
+
+	private static Set<String> set(String... words) {
+		return new HashSet<String>(Arrays.asList(words));
+	}
+}
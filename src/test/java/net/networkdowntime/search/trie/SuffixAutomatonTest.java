@@ -0,0 +1,142 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SuffixAutomatonTest {
+
+	@Test
+	public void testCompletions() {
+		SuffixAutomaton suffixAutomaton = new SuffixAutomaton();
+		suffixAutomaton.add("band");
+		suffixAutomaton.add("bandit");
+
+		Map<String, Integer> completions = toMap(suffixAutomaton.getCompletions(new CostString("an"), 4, true));
+		assertEquals(2, completions.size());
+		assertEquals(Integer.valueOf(1), completions.get("and"));
+		assertEquals(Integer.valueOf(3), completions.get("andit"));
+
+		assertTrue(suffixAutomaton.getCompletions(new CostString("ab"), 4, true).isEmpty());
+		completions = toMap(suffixAutomaton.getCompletions(new CostString("bnd"), 1, false));
+		assertEquals(3, completions.size());
+		assertEquals(Integer.valueOf(1), completions.get("band"));
+		assertEquals(Integer.valueOf(1), completions.get("and"));
+		assertEquals(Integer.valueOf(1), completions.get("nd"));
+	}
+
+	@Test
+	public void testInvertedCompletions() {
+		SuffixAutomaton suffixAutomaton = new SuffixAutomaton(true);
+		suffixAutomaton.add("band");
+		suffixAutomaton.add("bandit");
+
+		Map<String, Integer> completions = toMap(suffixAutomaton.getCompletions(new CostString("an"), 2, true));
+		assertEquals(1, completions.size());
+		assertEquals(Integer.valueOf(1), completions.get("ban"));
+	}
+
+	@Test
+	public void testContainsWord() {
+		SuffixAutomaton suffixAutomaton = new SuffixAutomaton();
+		suffixAutomaton.add("abab");
+		suffixAutomaton.add("ba");
+
+		assertTrue(suffixAutomaton.containsWord("abab".toCharArray(), true));
+		assertTrue(suffixAutomaton.containsWord("ba".toCharArray(), true));
+		assertFalse(suffixAutomaton.containsWord("bab".toCharArray(), true));
+		assertTrue(suffixAutomaton.containsWord("bab".toCharArray(), false));
+		assertFalse(suffixAutomaton.containsWord("bb".toCharArray(), false));
+		assertEquals(0, suffixAutomaton.add("abab"));
+	}
+
+	@Test
+	public void testLinearSize() {
+		SuffixAutomaton suffixAutomaton = new SuffixAutomaton();
+		StringBuilder url = new StringBuilder("http://www.example.com/");
+		Random random = new Random(3);
+		for (int i = 0; i < 2000; i++) {
+			url.append((char) ('a' + random.nextInt(26)));
+		}
+		suffixAutomaton.add(url.toString());
+
+		assertTrue(suffixAutomaton.getStateCount() <= 2 * url.length());
+		assertTrue(suffixAutomaton.getTransitionCount() <= 3 * url.length());
+		assertTrue(suffixAutomaton.containsWord(url.substring(1000, 1500).toCharArray(), false));
+	}
+
+	@Test
+	public void testMatchesFullTrie() {
+		Random random = new Random(5);
+		List<String> words = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = 1 + random.nextInt(7);
+			for (int j = 0; j < length; j++) {
+				sb.append((char) ('a' + random.nextInt(5)));
+			}
+			words.add(sb.toString());
+		}
+
+		for (boolean isInverted : new boolean[] { false, true }) {
+			Trie trie = (isInverted) ? new InvertedSuffixTrie(true) : new SuffixTrie(true);
+			trie.setFuzzyMatchMode(FuzzyMatchMode.LEVENSHTEIN_AUTOMATON);
+			SuffixAutomaton suffixAutomaton = new SuffixAutomaton(isInverted);
+			for (String word : words) {
+				trie.add(word);
+				suffixAutomaton.add(word);
+			}
+
+			for (int i = 0; i < 200; i++) {
+				String word = words.get(random.nextInt(words.size()));
+				String wordPart = word.substring(random.nextInt(word.length()));
+				CostString costString = new CostString(wordPart, random.nextInt(2));
+				int editDistanceMax = 1 + random.nextInt(3);
+				boolean subStringOnly = random.nextBoolean();
+
+				assertEquals(toMap(trie.getCompletions(costString, editDistanceMax, subStringOnly)), toMap(suffixAutomaton.getCompletions(costString, editDistanceMax, subStringOnly)));
+				assertEquals(trie.containsWord(suffixAutomaton.getCharArr(wordPart), true), suffixAutomaton.containsWord(suffixAutomaton.getCharArr(wordPart), true));
+			}
+		}
+	}
+
+	@Test
+	public void testSelectableWordPartIndex() {
+		for (WordPartIndex index : new WordPartIndex[] { new SuffixTrie(), new SuffixAutomaton() }) {
+			index.add("band");
+			index.add("bandit");
+
+			Map<String, Integer> completions = toMap(index.getCompletions(new CostString("an"), 4, true));
+			assertEquals(2, completions.size());
+			assertEquals(Integer.valueOf(3), completions.get("andit"));
+			assertTrue(index.containsWord("bandit".toCharArray(), true));
+
+			if (index.isRemoveSupported()) {
+				index.remove("bandit");
+				assertFalse(index.containsWord("bandit".toCharArray(), true));
+			} else {
+				try {
+					index.remove("bandit");
+					fail("the automaton is add-only");
+				} catch (UnsupportedOperationException e) {
+					assertTrue(index.containsWord("bandit".toCharArray(), true));
+				}
+			}
+		}
+	}
+
+	private Map<String, Integer> toMap(Set<CostString> completions) {
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for (CostString completion : completions) {
+			map.put(completion.str, completion.cost);
+		}
+		return map;
+	}
+}
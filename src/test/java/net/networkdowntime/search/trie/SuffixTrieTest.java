@@ -4,9 +4,13 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
+import net.networkdowntime.search.TermDictionary;
 import net.networkdowntime.search.trie.SuffixTrie;
 
 import org.junit.BeforeClass;
@@ -34,24 +38,24 @@ public class SuffixTrieTest {
 		expectedTracePartialOof.add("		Child Node: o: 1 children [f]");
 		expectedTracePartialOof.add("			Child Node: f: 0 children [￿, FWE]");
 
-		expectedTraceOofOwt.add("Root Node: 4 children [o, f, t, w]");
-		expectedTraceOofOwt.add("	Child Node: o: 3 children [o, f, w]");
+		expectedTraceOofOwt.add("Root Node: 4 children [f, o, t, w]");
+		expectedTraceOofOwt.add("	Child Node: f: 0 children [￿]");
+		expectedTraceOofOwt.add("	Child Node: o: 3 children [f, o, w]");
+		expectedTraceOofOwt.add("		Child Node: f: 0 children [￿]");
 		expectedTraceOofOwt.add("		Child Node: o: 1 children [f]");
 		expectedTraceOofOwt.add("			Child Node: f: 0 children [￿, FWE]");
-		expectedTraceOofOwt.add("		Child Node: f: 0 children [￿]");
 		expectedTraceOofOwt.add("		Child Node: w: 1 children [t]");
 		expectedTraceOofOwt.add("			Child Node: t: 0 children [￿, FWE]");
-		expectedTraceOofOwt.add("	Child Node: f: 0 children [￿]");
 		expectedTraceOofOwt.add("	Child Node: t: 0 children [￿]");
 		expectedTraceOofOwt.add("	Child Node: w: 1 children [t]");
 		expectedTraceOofOwt.add("		Child Node: t: 0 children [￿]");
 
 		expectedTracePartialOofOwt.add("Root Node: 1 children [o]");
-		expectedTracePartialOofOwt.add("	Child Node: o: 2 children [w, o]");
-		expectedTracePartialOofOwt.add("		Child Node: w: 1 children [t]");
-		expectedTracePartialOofOwt.add("			Child Node: t: 0 children [￿, FWE]");
+		expectedTracePartialOofOwt.add("	Child Node: o: 2 children [o, w]");
 		expectedTracePartialOofOwt.add("		Child Node: o: 1 children [f]");
 		expectedTracePartialOofOwt.add("			Child Node: f: 0 children [￿, FWE]");
+		expectedTracePartialOofOwt.add("		Child Node: w: 1 children [t]");
+		expectedTracePartialOofOwt.add("			Child Node: t: 0 children [￿, FWE]");
 
 	}
 
@@ -480,4 +484,251 @@ public class SuffixTrieTest {
 			assertEquals(expectedTrace.get(i), actualTrace.get(i));
 		}
 	}
+
+	@Test
+	public void testCompressedPartialTrieExpectedTraceFooTwo() {
+		SuffixTrie suffixTrie = new SuffixTrie(false, true);
+		suffixTrie.add("oof");
+		suffixTrie.add("owt");
+		List<String> actualTrace = suffixTrie.getTrace();
+		assertEquals(4, actualTrace.size());
+		assertEquals("Root Node: 1 children [o]", actualTrace.get(0));
+		assertEquals("	Child Node: o: 2 children [o, w]", actualTrace.get(1));
+		assertEquals("		Child Node: of: 0 children [￿, FWE]", actualTrace.get(2));
+		assertEquals("		Child Node: wt: 0 children [￿, FWE]", actualTrace.get(3));
+	}
+
+	@Test
+	public void testCompressedGetCompletions3() {
+		SuffixTrie suffixTrie = new SuffixTrie(true, true);
+		suffixTrie.add("oacac");
+		suffixTrie.add("nab");
+		suffixTrie.add("dab");
+		suffixTrie.add("dnab");
+		suffixTrie.add("ananab");
+		suffixTrie.add("ydnab");
+		Set<CostString> completions = suffixTrie.getCompletions(new CostString("a"), 50, true);
+		assertEquals(5, completions.size());
+		assertTrue(completions.contains(new CostString("ac")));
+		assertTrue(completions.contains(new CostString("acac")));
+		assertTrue(completions.contains(new CostString("ab")));
+		assertTrue(completions.contains(new CostString("anab")));
+		assertTrue(completions.contains(new CostString("ananab")));
+	}
+
+	@Test
+	public void testCompressedGetCompletionsWithMisspellings() {
+		SuffixTrie suffixTrie = new SuffixTrie(true);
+		SuffixTrie compressedTrie = new SuffixTrie(true, true);
+		for (String word : Arrays.asList("oacac", "nab", "dab", "dnab", "ananab", "ydnab")) {
+			suffixTrie.add(word);
+			compressedTrie.add(word);
+		}
+		for (String wordPart : Arrays.asList("a", "an", "ba", "nb", "dnb", "caoc")) {
+			for (int editDistanceMax = 0; editDistanceMax < 5; editDistanceMax++) {
+				assertEquals(toSortedStrings(suffixTrie.getCompletions(new CostString(wordPart), editDistanceMax, false)),
+						toSortedStrings(compressedTrie.getCompletions(new CostString(wordPart), editDistanceMax, false)));
+			}
+		}
+	}
+
+	@Test
+	public void testCompressedRemoveMultipleNodeOffExistingWord() {
+		SuffixTrie suffixTrie = new SuffixTrie(true, true);
+		suffixTrie.add("oof");
+		List<String> expectedTrace = suffixTrie.getTrace();
+		suffixTrie.add("oofrab");
+		suffixTrie.remove("oofrab");
+		assertEquals(expectedTrace, suffixTrie.getTrace());
+	}
+
+	@Test
+	public void testCompressedPartialTrieAddRemove() {
+		SuffixTrie suffixTrie = new SuffixTrie(false, true);
+		suffixTrie.add("oof");
+		suffixTrie.add("owt");
+		List<String> expectedTrace = suffixTrie.getTrace();
+		suffixTrie.add("o");
+		suffixTrie.add("oofrab");
+		suffixTrie.remove("o");
+		suffixTrie.remove("oofrab");
+		assertEquals(expectedTrace, suffixTrie.getTrace());
+		assertTrue(suffixTrie.containsWord("oof".toCharArray(), true));
+		assertFalse(suffixTrie.containsWord("oo".toCharArray(), true));
+		assertTrue(suffixTrie.containsWord("oo".toCharArray(), false));
+	}
+
+	@Test
+	public void testRemoveKeepsWordPartsOfOtherWords() {
+		SuffixTrie suffixTrie = new SuffixTrie();
+		suffixTrie.add("ed");
+		List<String> expectedTrace = suffixTrie.getTrace();
+		suffixTrie.add("aed");
+		suffixTrie.add("aed");
+		suffixTrie.remove("aed");
+
+		assertEquals(expectedTrace, suffixTrie.getTrace());
+		assertTrue(suffixTrie.containsWord("ed".toCharArray(), true));
+		assertFalse(suffixTrie.containsWord("aed".toCharArray(), false));
+	}
+
+	@Test
+	public void testRemoveWordPartOnlyIsIgnored() {
+		SuffixTrie suffixTrie = new SuffixTrie();
+		suffixTrie.add("oof");
+		List<String> expectedTrace = suffixTrie.getTrace();
+		suffixTrie.remove("of");
+		suffixTrie.remove("bar");
+
+		assertEquals(expectedTrace, suffixTrie.getTrace());
+	}
+
+	@Test
+	public void testRemoveAfterFreeze() {
+		SuffixTrie suffixTrie = new SuffixTrie(true, true);
+		suffixTrie.add("oof");
+		List<String> expectedTrace = suffixTrie.getTrace();
+		suffixTrie.add("foof");
+		suffixTrie.freeze();
+		suffixTrie.add("owt");
+
+		suffixTrie.remove("owt");
+		suffixTrie.remove("foof");
+		assertEquals(expectedTrace, suffixTrie.getTrace());
+	}
+
+	@Test
+	public void testTopCompletions() {
+		for (boolean compressPaths : new boolean[] { false, true }) {
+			SuffixTrie suffixTrie = new SuffixTrie(false, compressPaths);
+			suffixTrie.add("ban");
+			suffixTrie.add("band");
+			suffixTrie.add("bandy");
+			suffixTrie.add("banana");
+			suffixTrie.add("bad");
+			suffixTrie.add("lazy");
+			suffixTrie.setWeight("ban", 1);
+			suffixTrie.setWeight("band", 6);
+			suffixTrie.setWeight("bandy", 3);
+			suffixTrie.setWeight("banana", 5);
+			suffixTrie.setWeight("bad", 2);
+			suffixTrie.setWeight("lazy", 9);
+
+			assertEquals(6, suffixTrie.getMaxWeight("ba"));
+			assertEquals(3, suffixTrie.getMaxWeight("bandy"));
+			assertEquals(0, suffixTrie.getMaxWeight("x"));
+			assertEquals(Arrays.asList("band", "banana", "bandy"), suffixTrie.getTopCompletions("ba", 3));
+			assertEquals(Arrays.asList("band", "bandy"), suffixTrie.getTopCompletions("band", 10));
+
+			suffixTrie.setWeight("bandy", 7);
+			assertEquals(Arrays.asList("bandy", "band"), suffixTrie.getTopCompletions("ban", 2));
+			assertEquals(7, suffixTrie.getMaxWeight("b"));
+
+			suffixTrie.remove("bandy");
+			assertEquals(6, suffixTrie.getMaxWeight("b"));
+			assertEquals(Arrays.asList("band", "banana"), suffixTrie.getTopCompletions("ban", 2));
+		}
+	}
+
+	@Test
+	public void testCompletionsWithTermDictionary() {
+		List<String> words = Arrays.asList("band", "banana", "bandana", "and", "an", "nab", "bandit", "cabana");
+		List<String> queries = Arrays.asList("an", "ban", "bnd", "na", "andi", "c");
+
+		for (int i = 0; i < 8; i++) {
+			SuffixTrie trie = new SuffixTrie((i & 1) == 0, (i & 2) == 0);
+			SuffixTrie termTrie = new SuffixTrie((i & 1) == 0, (i & 2) == 0);
+			termTrie.setTermDictionary(new TermDictionary());
+			for (String word : words) {
+				trie.add(word);
+				termTrie.add(word);
+			}
+			if (i >= 4) {
+				trie.freeze();
+				termTrie.freeze();
+			}
+
+			for (FuzzyMatchMode fuzzyMatchMode : FuzzyMatchMode.values()) {
+				trie.setFuzzyMatchMode(fuzzyMatchMode);
+				termTrie.setFuzzyMatchMode(fuzzyMatchMode);
+				for (String query : queries) {
+					for (boolean subStringOnly : new boolean[] { true, false }) {
+						assertEquals(toSortedStrings(trie.getCompletions(new CostString(query), 2, subStringOnly)),
+								toSortedStrings(termTrie.getCompletions(new CostString(query), 2, subStringOnly)));
+					}
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSetTermDictionaryOnNonEmptyTrie() {
+		SuffixTrie trie = new SuffixTrie();
+		trie.add("band");
+		trie.setTermDictionary(new TermDictionary());
+	}
+
+	@Test
+	public void testDeadWordPartCache() {
+		SuffixTrie trie = new SuffixTrie();
+		trie.setDeadWordPartCacheSize(10);
+		trie.add("band");
+
+		assertTrue(trie.getCompletions(new CostString("xyz"), 1, true).isEmpty());
+		assertTrue(trie.getCompletions(new CostString("xyz"), 1, true).isEmpty());
+		assertFalse(trie.getCompletions(new CostString("bnd"), 1, false).isEmpty()); // a substring miss doesn't prune the fuzzy query
+		assertTrue(trie.getCompletions(new CostString("bnd"), 1, true).isEmpty());
+
+		trie.add("xyzzy");
+		assertEquals(Arrays.asList("xyzzy - 2"), toSortedStrings(trie.getCompletions(new CostString("xyz"), 2, true)));
+		trie.freeze();
+		trie.add("bnd");
+		assertEquals(Arrays.asList("bnd - 0"), toSortedStrings(trie.getCompletions(new CostString("bnd"), 1, true)));
+	}
+
+	@Test
+	public void testParallelSearch() {
+		Random random = new Random(7);
+		List<String> words = new ArrayList<String>();
+		for (int i = 0; i < 300; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int j = 3 + random.nextInt(6); j > 0; j--) {
+				word.append((char) ('a' + random.nextInt(6)));
+			}
+			words.add(word.toString());
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (boolean compressPaths : Arrays.asList(false, true)) {
+			SuffixTrie trie = new SuffixTrie(true, compressPaths);
+			SuffixTrie parallelTrie = new SuffixTrie(true, compressPaths);
+			parallelTrie.setParallelSearch(pool, 4);
+			for (int i = 0; i < words.size(); i++) {
+				trie.add(words.get(i));
+				parallelTrie.add(words.get(i));
+				if (i == 200) { // searches the frozen trie and the overlay
+					trie.freeze();
+					parallelTrie.freeze();
+				}
+			}
+
+			for (int i = 0; i < 20; i++) {
+				CostString wordPart = new CostString(words.get(random.nextInt(words.size())) + (char) ('a' + random.nextInt(6)), random.nextInt(2));
+				for (int editDistanceMax = 1; editDistanceMax <= 3; editDistanceMax++) {
+					assertEquals(toSortedStrings(trie.getCompletions(wordPart, editDistanceMax, false)),
+							toSortedStrings(parallelTrie.getCompletions(wordPart, editDistanceMax, false)));
+				}
+			}
+		}
+		pool.shutdown();
+	}
+
+	private static List<String> toSortedStrings(Set<CostString> completions) {
+		List<String> strings = new ArrayList<String>();
+		for (CostString completion : completions) {
+			strings.add(completion.str + " - " + completion.cost);
+		}
+		Collections.sort(strings);
+		return strings;
+	}
 }
@@ -0,0 +1,77 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TopCompletionsCacheTest {
+
+	private TopCompletionsCache newCache() {
+		TopCompletionsCache cache = new TopCompletionsCache(2, 3);
+		cache.put("a", new String[] { "ab", "ac", "ad" }, new int[] { 5, 3, 3 }, 3, 3);
+		return cache;
+	}
+
+	@Test
+	public void testIsCacheable() {
+		TopCompletionsCache cache = new TopCompletionsCache(2, 3);
+		assertTrue(cache.isCacheable("ab", 3));
+		assertFalse(cache.isCacheable("abc", 3));
+		assertFalse(cache.isCacheable("ab", 4));
+		assertFalse(cache.isCacheable("", 3));
+	}
+
+	@Test
+	public void testGet() {
+		TopCompletionsCache cache = newCache();
+		assertNull(cache.get("b", 3));
+		assertEquals(Arrays.asList("ab", "ac"), cache.get("a", 2));
+	}
+
+	@Test
+	public void testUpdate() {
+		TopCompletionsCache cache = newCache();
+		cache.update("a", "ae", 4); // better than the last completion
+		assertEquals(Arrays.asList("ab", "ae", "ac"), cache.get("a", 3));
+
+		cache.update("a", "af", 3); // ties with the last completion and sorts after it
+		assertEquals(Arrays.asList("ab", "ae", "ac"), cache.get("a", 3));
+
+		cache.update("a", "ac", 6);
+		assertEquals(Arrays.asList("ac", "ab", "ae"), cache.get("a", 3));
+
+		cache.update("a", "ab", 4); // still ahead of the last completion
+		assertEquals(Arrays.asList("ac", "ab", "ae"), cache.get("a", 3));
+
+		cache.update("b", "ab", 1); // not cached
+		assertNull(cache.get("b", 3));
+	}
+
+	@Test
+	public void testUpdateDiscardsFullList() {
+		TopCompletionsCache cache = newCache();
+		cache.update("a", "ab", 2); // a completion that wasn't kept could now be ahead of it
+		assertNull(cache.get("a", 3));
+
+		cache = newCache();
+		cache.update("a", "ac", 0);
+		assertNull(cache.get("a", 3));
+	}
+
+	@Test
+	public void testUpdateKeepsPartialList() {
+		TopCompletionsCache cache = new TopCompletionsCache(2, 3);
+		cache.put("a", new String[] { "ab", "ac" }, new int[] { 5, 3 }, 2, 3);
+
+		cache.update("a", "ab", 1);
+		assertEquals(Arrays.asList("ac", "ab"), cache.get("a", 3));
+
+		cache.update("a", "ac", 0);
+		assertEquals(Arrays.asList("ab"), cache.get("a", 3));
+
+		cache.update("a", "ad", 2);
+		assertEquals(Arrays.asList("ad", "ab"), cache.get("a", 3));
+	}
+}
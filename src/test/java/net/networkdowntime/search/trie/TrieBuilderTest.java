@@ -0,0 +1,79 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.networkdowntime.search.TermDictionary;
+
+public class TrieBuilderTest {
+
+	@Test
+	public void testBuildMatchesAdd() {
+		List<String> words = getRandomWords(2000);
+
+		for (int i = 0; i < 8; i++) {
+			boolean createFullTrie = (i & 1) == 0;
+			boolean compressPaths = (i & 2) == 0;
+			Trie addedTrie = (i < 4) ? new SuffixTrie(createFullTrie, compressPaths) : new InvertedSuffixTrie(createFullTrie, compressPaths);
+			Trie builtTrie = (i < 4) ? new SuffixTrie(createFullTrie, compressPaths) : new InvertedSuffixTrie(createFullTrie, compressPaths);
+
+			for (String word : words) {
+				addedTrie.add(word);
+			}
+			new TrieBuilder(builtTrie).addAll(words).build();
+			assertEquals(addedTrie.getTrace(), builtTrie.getTrace());
+
+			// the end counts have to match for removal to keep the word parts of the remaining words
+			for (int j = 0; j < words.size(); j += 3) {
+				addedTrie.remove(words.get(j));
+				builtTrie.remove(words.get(j));
+			}
+			assertEquals(addedTrie.getTrace(), builtTrie.getTrace());
+		}
+	}
+
+	@Test
+	public void testBuildIntoNonEmptyTrie() {
+		SuffixTrie suffixTrie = new SuffixTrie(false);
+		suffixTrie.add("foo");
+		new TrieBuilder(suffixTrie).addAll(Arrays.asList("bar", "foo", "")).build();
+
+		assertTrue(suffixTrie.containsWord("foo".toCharArray(), true));
+		assertTrue(suffixTrie.containsWord("bar".toCharArray(), true));
+		assertEquals(2, suffixTrie.getTopCompletions("", 10).size());
+	}
+
+	@Test
+	public void testBuildTermIds() {
+		List<String> words = getRandomWords(500);
+		TermDictionary termDictionary = new TermDictionary();
+		InvertedSuffixTrie trie = new InvertedSuffixTrie(true, true);
+		trie.setTermDictionary(termDictionary);
+		new TrieBuilder(trie).addAll(words).build();
+
+		for (String word : words) {
+			int termId = trie.getTermId(word);
+			assertEquals(word, termDictionary.getTerm(termId));
+		}
+	}
+
+	private List<String> getRandomWords(int count) {
+		Random random = new Random(11);
+		List<String> words = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = 1 + random.nextInt(8);
+			for (int j = 0; j < length; j++) {
+				sb.append((char) ('a' + random.nextInt(6)));
+			}
+			words.add(sb.toString());
+		}
+		return words;
+	}
+}
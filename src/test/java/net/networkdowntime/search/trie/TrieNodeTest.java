@@ -0,0 +1,146 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TrieNodeTest {
+
+	private static String childChars(TrieNode node) {
+		StringBuilder sb = new StringBuilder();
+		for (int slot = 0; slot < node.getChildSlotCount(); slot++) {
+			TrieNode child = node.getChildInSlot(slot);
+			if (child != null) {
+				sb.append(child.c);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testLeaf() {
+		TrieNode node = new TrieNode('a');
+		assertEquals(TrieNode.Layout.LEAF, node.getLayout());
+		assertFalse(node.hasChildren());
+		assertEquals(0, node.getChildCount());
+		assertNull(node.getChild('b'));
+	}
+
+	@Test
+	public void testSingleChild() {
+		TrieNode node = new TrieNode('a');
+		TrieNode child = node.addChild('b');
+		assertEquals(TrieNode.Layout.SINGLE, node.getLayout());
+		assertSame(child, node.getChild('b'));
+		assertSame(child, node.addChild('b'));
+		assertNull(node.getChild('c'));
+		assertEquals(1, node.getChildCount());
+	}
+
+	@Test
+	public void testSortedChildren() {
+		TrieNode node = new TrieNode('a');
+		node.addChild('q');
+		node.addChild('c');
+		node.addChild('x');
+		assertEquals(TrieNode.Layout.SORTED, node.getLayout());
+		assertEquals(3, node.getChildCount());
+		assertEquals("cqx", childChars(node));
+		assertEquals('q', node.getChild('q').c);
+		assertNull(node.getChild('d'));
+	}
+
+	@Test
+	public void testUpgradeToDirect() {
+		TrieNode node = new TrieNode('a');
+		for (char c = 'z'; c >= 'a'; c--) {
+			node.addChild(c);
+		}
+		assertEquals(TrieNode.Layout.DIRECT, node.getLayout());
+		assertEquals(26, node.getChildCount());
+		assertEquals("abcdefghijklmnopqrstuvwxyz", childChars(node));
+		for (char c = 'a'; c <= 'z'; c++) {
+			assertEquals(c, node.getChild(c).c);
+		}
+		assertNull(node.getChild('A'));
+	}
+
+	@Test
+	public void testDirectTableGrows() {
+		TrieNode node = new TrieNode('a');
+		for (char c = 'a'; c <= 'z'; c++) {
+			node.addChild(c);
+		}
+		node.addChild('0');
+		assertEquals(TrieNode.Layout.DIRECT, node.getLayout());
+		assertEquals(27, node.getChildCount());
+		assertEquals('0', node.getChild('0').c);
+		assertEquals("0abcdefghijklmnopqrstuvwxyz", childChars(node));
+	}
+
+	@Test
+	public void testWideSpanStaysSorted() {
+		TrieNode node = new TrieNode('a');
+		for (char c = 'a'; c <= 'z'; c++) {
+			node.addChild(c);
+		}
+		node.addChild('中');
+		assertEquals(TrieNode.Layout.SORTED, node.getLayout());
+		assertEquals(27, node.getChildCount());
+		assertEquals('中', node.getChild('中').c);
+		assertEquals('m', node.getChild('m').c);
+	}
+
+	@Test
+	public void testDowngradeOnRemove() {
+		TrieNode node = new TrieNode('a');
+		for (char c = 'a'; c <= 'z'; c++) {
+			node.addChild(c);
+		}
+		for (char c = 'z'; c > 'a'; c--) {
+			assertEquals(c, node.removeChild(c).c);
+		}
+		assertEquals(TrieNode.Layout.SINGLE, node.getLayout());
+		assertEquals("a", childChars(node));
+
+		node.removeChild('a');
+		assertEquals(TrieNode.Layout.LEAF, node.getLayout());
+		assertNull(node.removeChild('a'));
+	}
+
+	@Test
+	public void testTrieStats() {
+		SuffixTrie suffixTrie = new SuffixTrie(false);
+		suffixTrie.add("oof");
+		suffixTrie.add("owt");
+		TrieStats stats = suffixTrie.getStats();
+		assertEquals(6, stats.getNodeCount());
+		assertEquals(2, stats.getFullWordCount());
+		assertEquals(2, stats.getLeafNodes());
+		assertEquals(1, stats.getSortedNodes());
+		assertTrue(stats.getEstimatedBytes() > 0);
+	}
+
+	@Test
+	public void testSplitAndMergeRun() {
+		TrieNode node = new TrieNode('a');
+		node.run = "bcd".toCharArray();
+		node.isEnd = true;
+		node.addChild('x');
+
+		TrieNode tail = node.splitRun(1);
+		assertEquals("b", new String(node.run));
+		assertFalse(node.isEnd);
+		assertSame(tail, node.getChild('c'));
+		assertEquals("d", new String(tail.run));
+		assertTrue(tail.isEnd);
+		assertEquals("x", childChars(tail));
+
+		assertEquals(2, node.matchRun("zbq".toCharArray(), 1) + node.matchRun("ab".toCharArray(), 1));
+		assertTrue(node.mergeWithOnlyChild());
+		assertEquals("bcd", new String(node.run));
+		assertTrue(node.isEnd);
+		assertEquals("x", childChars(node));
+		assertFalse(node.mergeWithOnlyChild());
+	}
+}
@@ -0,0 +1,111 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class WeightedFstTest {
+
+	private WeightedFst build() {
+		WeightedFstBuilder builder = new WeightedFstBuilder();
+		builder.add("band", 6);
+		builder.add("banana", 5);
+		builder.add("cacao", 4);
+		builder.add("bandy", 3);
+		builder.add("bad", 2);
+		builder.add("ban", 1);
+		return builder.build();
+	}
+
+	@Test
+	public void testTopCompletions() {
+		WeightedFst fst = build();
+		assertEquals(Arrays.asList("band", "banana", "cacao"), fst.getTopCompletions("a", 3));
+		assertEquals(Arrays.asList("band", "banana", "bandy", "ban"), fst.getTopCompletions("an", 10));
+		assertEquals(Arrays.asList("banana"), fst.getTopCompletions("nana", 10));
+		assertEquals(Arrays.asList("cacao"), fst.getTopCompletions("ca", 10)); // contains the word part twice
+		assertTrue(fst.getTopCompletions("x", 10).isEmpty());
+		assertTrue(fst.getTopCompletions("bandit", 10).isEmpty());
+	}
+
+	@Test
+	public void testTies() {
+		WeightedFstBuilder builder = new WeightedFstBuilder();
+		builder.add("cab", 1);
+		builder.add("abc", 1);
+		builder.add("bca", 1);
+		builder.add("ab", 2);
+		assertEquals(Arrays.asList("ab", "abc", "bca"), builder.build().getTopCompletions("b", 3));
+	}
+
+	@Test
+	public void testWeights() {
+		WeightedFst fst = build();
+		assertEquals(6, fst.getWeight("band"));
+		assertEquals(1, fst.getWeight("ban"));
+		assertEquals(0, fst.getWeight("ba"));
+		assertEquals(0, fst.getWeight("bandit"));
+		assertTrue(fst.contains("cacao"));
+		assertFalse(fst.contains("aca"));
+	}
+
+	@Test
+	public void testToByteArray() {
+		WeightedFst fst = build();
+		WeightedFst loaded = new WeightedFst(fst.toByteArray());
+		assertEquals(fst.sizeInBytes(), loaded.sizeInBytes());
+		assertEquals(fst.getTopCompletions("a", 10), loaded.getTopCompletions("a", 10));
+	}
+
+	@Test
+	public void testEmpty() {
+		WeightedFst fst = new WeightedFstBuilder().build();
+		assertTrue(fst.getTopCompletions("a", 10).isEmpty());
+		assertEquals(0, fst.getWeight("a"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadBytes() {
+		new WeightedFst(new byte[] { 0, 0, 0, 99, 0, 0 });
+	}
+
+	@Test
+	public void testMatchesTries() {
+		Random random = new Random(11);
+		WeightedFstBuilder builder = new WeightedFstBuilder();
+		InvertedSuffixTrie prefixTrie = new InvertedSuffixTrie();
+		SuffixTrie suffixTrie = new SuffixTrie(false);
+
+		String[] words = new String[500];
+		for (int i = 0; i < words.length; i++) {
+			StringBuilder word = new StringBuilder();
+			int length = 2 + random.nextInt(6);
+			for (int j = 0; j < length; j++) {
+				word.append((char) ('a' + random.nextInt(5)));
+			}
+			words[i] = word.toString();
+			int weight = 1 + random.nextInt(20);
+
+			builder.add(words[i], weight);
+			prefixTrie.add(words[i]);
+			suffixTrie.add(words[i]);
+			suffixTrie.setWeight(words[i], weight);
+			for (int j = 1; j <= words[i].length(); j++) {
+				String wordPart = words[i].substring(0, j);
+				prefixTrie.setWeight(wordPart, suffixTrie.getMaxWeight(wordPart));
+			}
+		}
+		WeightedFst fst = builder.build();
+
+		for (int i = 0; i < 200; i++) {
+			String word = words[random.nextInt(words.length)];
+			int start = random.nextInt(word.length());
+			String wordPart = word.substring(start, start + 1 + random.nextInt(Math.min(3, word.length() - start)));
+			int k = 1 + random.nextInt(10);
+			assertEquals(wordPart, prefixTrie.getTopCompletions(wordPart, k, suffixTrie), fst.getTopCompletions(wordPart, k));
+		}
+	}
+}
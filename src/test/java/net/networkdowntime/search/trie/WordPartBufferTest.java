@@ -0,0 +1,56 @@
+package net.networkdowntime.search.trie;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class WordPartBufferTest {
+
+	@Test
+	public void testApplyAndUndoEdits() {
+		WordPartBuffer wordPart = new WordPartBuffer("band".toCharArray(), 0, false, 0);
+
+		char deleted = wordPart.delete(1);
+		assertEquals("bnd", wordPart.toString());
+		wordPart.insert(1, deleted);
+		assertEquals("band", wordPart.toString());
+
+		wordPart.transpose(2);
+		assertEquals("badn", wordPart.toString());
+		wordPart.transpose(2);
+
+		char replaced = wordPart.replace(0, 'l');
+		assertEquals("land", wordPart.toString());
+		wordPart.replace(0, replaced);
+
+		wordPart.append('y');
+		wordPart.insert(0, 'a');
+		assertEquals("abandy", wordPart.toString());
+		wordPart.delete(0);
+		wordPart.truncate(4);
+		assertEquals("band", wordPart.toString());
+	}
+
+	@Test
+	public void testReversedWordPart() {
+		WordPartBuffer wordPart = new WordPartBuffer("dnab".toCharArray(), 2, true, 1);
+		assertEquals("band", wordPart.toString());
+
+		wordPart.append('a');
+		CostString costString = wordPart.toCostString();
+		assertEquals("aband", costString.str);
+		assertEquals(2, costString.cost);
+	}
+
+	@Test
+	public void testStringHashCode() {
+		WordPartBuffer wordPart = new WordPartBuffer("band".toCharArray(), 0, false, 0);
+		WordPartBuffer reversedWordPart = new WordPartBuffer("dnab".toCharArray(), 0, true, 0);
+		assertEquals("band".hashCode(), wordPart.getStringHashCode());
+		assertEquals("band".hashCode(), reversedWordPart.getStringHashCode());
+
+		wordPart.delete(3);
+		assertEquals("ban".hashCode(), wordPart.getStringHashCode());
+		assertEquals(new WordPartBuffer(new char[0], 0, false, 0).getStringHashCode(), "".hashCode());
+	}
+}